@@ -24,7 +24,8 @@ import java.util.Collection;
 import java.util.concurrent.locks.Condition;
 
 /**
- * Interface implemented by the internal queues.
+ * Interface implemented by the internal queues. Implementations must be thread safe
+ * and non-blocking, since the MultiPriorityBlockingQueue accesses them without locking.
  * @param <E>
  */
 @SuppressWarnings({"UnusedDeclaration"})
@@ -47,14 +48,20 @@ public interface InternalQueue<E> extends Queue<E> {
      * Get not full condition
      *
      * @return not full condition
+     * @deprecated the MultiPriorityBlockingQueue no longer uses a lock and doesn't set or
+     * wait on this condition
      */
+    @Deprecated
     public Condition getNotFullCond();
 
     /**
      * Get not full condition
      *
-     * @param condition condition     
+     * @param condition condition
+     * @deprecated the MultiPriorityBlockingQueue no longer uses a lock and doesn't set or
+     * wait on this condition
      */
+    @Deprecated
     public void setNotFullCond(Condition condition);
 
 
@@ -20,9 +20,10 @@
 package org.apache.synapse.commons.executors;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.Condition;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.*;
 
 /**
@@ -33,6 +34,17 @@ import java.util.*;
  * fixed priorities. When inserting an element, it will be put in to one of these queues
  * depending on its importance.</p>
  *
+ * <p> The queue doesn't use a global lock. The internal queues are non-blocking and thread
+ * safe, so producers of different priorities and the consumers only contend on the
+ * internal queue they are operating on. Threads that have to wait (a take on an empty queue
+ * or a put on a full internal queue) register themselves in a waiter list and park until
+ * the opposite operation unparks them. The bulk operations (drainTo, remove, iterator, etc)
+ * are weakly consistent.</p>
+ *
+ * <p> The default PRRNextQueueAlgorithm is thread safe and is invoked without locking. Any
+ * other NextQueueAlgorithm is assumed to be stateful and is invoked while holding its
+ * monitor.</p>
+ *
  * @param <E> E should implement the Importance interface.
  */
 public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
@@ -42,18 +54,21 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
     private List<InternalQueue<E>> queues;
 
     /** Number of items in the queue */
-    private int count = 0;
+    private final AtomicInteger count = new AtomicInteger(0);
 
-    /** Lock held by take, poll, etc */
-    private final ReentrantLock lock = new ReentrantLock();
+    /** Threads waiting for an element to be available */
+    private final Queue<Thread> takers = new ConcurrentLinkedQueue<Thread>();
 
-    /** Waiting queue for takes */
-    private final Condition notEmpty = lock.newCondition();
+    /** Threads waiting for space, in the same order as the queues */
+    private Queue<Thread>[] putters;
 
     private int capacity = Integer.MAX_VALUE;
 
     /** Algorithm for determining next queue */
     private NextQueueAlgorithm<E> nextQueueAlgorithm;
+
+    /** whether the algorithm can be invoked concurrently */
+    private boolean isThreadSafeAlgorithm;
     
     /** whether fixed size queues are used */
     private boolean isFixedSizeQueues;
@@ -70,6 +85,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
      * @param isFixedQueues weather fixed size queues are used
      * @param algorithm algorithm for calculating next queue
      */
+    @SuppressWarnings("unchecked")
     public MultiPriorityBlockingQueue(List<InternalQueue<E>> queues,
                          boolean isFixedQueues, NextQueueAlgorithm<E> algorithm) {
 
@@ -91,8 +107,9 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
             }
         });
 
-        for (InternalQueue<E> queue : this.queues) {
-            queue.setNotFullCond(lock.newCondition());
+        putters = new Queue[this.queues.size()];
+        for (int i = 0; i < putters.length; i++) {
+            putters[i] = new ConcurrentLinkedQueue<Thread>();
         }
 
         if (algorithm == null) {
@@ -100,6 +117,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
         } else {
             nextQueueAlgorithm = algorithm;
         }
+        isThreadSafeAlgorithm = nextQueueAlgorithm.getClass() == PRRNextQueueAlgorithm.class;
         // initialize the algorithm
         nextQueueAlgorithm.init(queues);
     }
@@ -113,27 +131,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
      */
     @Override
     public void put(E e) throws InterruptedException {
-        Importance i = (Importance) e;
-        InternalQueue<E> internalQueue = getQueueForPriority(i.getPriority());
-        final ReentrantLock lock = this.lock;
-        lock.lockInterruptibly();
-        try {
-            try {
-                while (internalQueue.remainingCapacity() == 0) {
-                    internalQueue.getNotFullCond().await();
-                }
-            } catch (InterruptedException ie) {
-                internalQueue.getNotFullCond().signal();
-                throw ie;
-            }
-
-            internalQueue.offer(e);
-            count++;
-
-            notEmpty.signal();
-        } finally {
-            lock.unlock();
-        }        
+        doOffer(e, -1);
     }
 
     /**
@@ -145,22 +143,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
      */
     @Override
     public boolean offer(E e) {
-        Importance i = (Importance) e;
-        InternalQueue<E> internalQueue = getQueueForPriority(i.getPriority());
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            if (internalQueue.remainingCapacity() > 0) {
-                internalQueue.offer(e);
-                count++;
-                notEmpty.signal();
-                return true;
-            } else {
-                return false;
-            }
-        } finally {
-            lock.unlock();
-        }
+        return enqueue(indexOf(e), e);
     }
 
     /**
@@ -176,32 +159,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
      */
     @Override
     public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
-        Importance i = (Importance) e;
-        InternalQueue<E> internalQueue = getQueueForPriority(i.getPriority());
-
-        long nanos = unit.toNanos(timeout);
-        final ReentrantLock lock = this.lock;
-        lock.lockInterruptibly();
-        try {
-            for (;;) {
-                if (internalQueue.remainingCapacity() > 0) {
-                    internalQueue.offer(e);
-                    count++;
-                    notEmpty.signal();
-                    return true;
-                }
-                if (nanos <= 0)
-                    return false;
-                try {
-                    nanos = internalQueue.getNotFullCond().awaitNanos(nanos);
-                } catch (InterruptedException ie) {
-                    internalQueue.getNotFullCond().signal();
-                    throw ie;
-                }
-            }
-        } finally {
-            lock.unlock();
-        }
+        return doOffer(e, Math.max(unit.toNanos(timeout), 0));
     }
 
     /**
@@ -211,26 +169,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
      */
     @Override
     public E take() throws InterruptedException {
-        final ReentrantLock lock = this.lock;
-        lock.lockInterruptibly();
-        try {
-            InternalQueue<E> internalQueue = nextQueueAlgorithm.getNextQueue();
-            try {
-                while (internalQueue == null) {
-                    notEmpty.await();
-                    internalQueue = nextQueueAlgorithm.getNextQueue();
-                }
-            } catch (InterruptedException ie) {
-                notEmpty.signal();
-                throw ie;
-            }
-            E e = internalQueue.poll();
-            count--;
-            internalQueue.getNotFullCond().signal();
-            return e;
-        } finally {
-            lock.unlock();
-        }
+        return doPoll(-1);
     }
 
     /**
@@ -244,30 +183,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
      */
     @Override
     public E poll(long timeout, TimeUnit unit) throws InterruptedException {
-        long nanos = unit.toNanos(timeout);
-        final ReentrantLock lock = this.lock;
-        lock.lockInterruptibly();
-        try {
-            for (;;) {
-                InternalQueue<E> internalQueue = nextQueueAlgorithm.getNextQueue();
-                if (internalQueue != null) {
-                    E e = internalQueue.poll();
-                    count--;
-                    internalQueue.getNotFullCond().signal();
-                    return e;
-                }
-                if (nanos <= 0)
-                    return null;
-                try {
-                    nanos = notEmpty.awaitNanos(nanos);
-                } catch (InterruptedException ie) {
-                    notEmpty.signal();
-                    throw ie;
-                }
-            }
-        } finally {
-            lock.unlock();
-        }
+        return doPoll(Math.max(unit.toNanos(timeout), 0));
     }
 
     /**
@@ -279,19 +195,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
      */
     @Override
     public int drainTo(Collection<? super E> c) {
-        int count = 0;
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-
-        try {
-            for (InternalQueue<E> internalQueue : queues) {
-                count += internalQueue.drainTo(c);
-            }
-            this.count = this.count - count;
-        } finally {
-            lock.unlock();
-        }
-        return count;
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
     /**
@@ -305,64 +209,41 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
     @Override
     public int drainTo(Collection<? super E> c, int maxElements) {
         int elementsCopied = 0;
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            for (InternalQueue<E> internalQueue : queues) {
-                elementsCopied += internalQueue.drainTo(c,
-                        internalQueue.size() > (maxElements - elementsCopied) ?
-                                (maxElements - elementsCopied) : internalQueue.size());
+        for (int i = 0; i < queues.size() && elementsCopied < maxElements; i++) {
+            int n = queues.get(i).drainTo(c, maxElements - elementsCopied);
+            if (n > 0) {
+                elementsCopied += n;
+                count.addAndGet(-n);
+                signalAll(putters[i]);
             }
-            count = count - elementsCopied;
-        } finally {
-            lock.unlock();
         }
         return elementsCopied;
     }
 
     /**
-     * Block indefinitely until a object is available for retrieval.
+     * Retrieve an element if one is available without blocking.
      *
-     * @return an object
+     * @return an object or null if the queue is empty
      */
     @Override
     public E poll() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            InternalQueue<E> internalQueue = nextQueueAlgorithm.getNextQueue();
-            if (internalQueue != null) {
-                count--;
-                E e = internalQueue.poll();
-                internalQueue.getNotFullCond().signal();
-                return e;
-            } else {
-                return null;
-            }
-        } finally {
-            lock.unlock();
-        }
+        return dequeue();
     }
 
     @Override
     public int remainingCapacity() {
-        return capacity - count;
+        return capacity - count.get();
     }
 
     @Override
     public E peek() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            InternalQueue<E> internalQueue = nextQueueAlgorithm.getNextQueue();
-            if (internalQueue != null) {
-                return internalQueue.peek();
-            } else {
-                return null;
+        for (InternalQueue<E> internalQueue : queues) {
+            E e = internalQueue.peek();
+            if (e != null) {
+                return e;
             }
-        } finally {
-            lock.unlock();
         }
+        return null;
     }
 
     @Override
@@ -372,109 +253,232 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
 
     @Override
     public int size() {
-        return count;
+        return count.get();
     }
 
     @Override
     public boolean isEmpty() {
-        return count == 0;
+        return count.get() == 0;
     }
 
     @Override
     public boolean remove(Object o) {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            for (InternalQueue<E> internalQueue : queues) {
-                if (internalQueue.remove(o)) {
-                    count--;
-                    return true;
-                }
+        for (int i = 0; i < queues.size(); i++) {
+            if (queues.get(i).remove(o)) {
+                count.decrementAndGet();
+                signal(putters[i]);
+                return true;
             }
-            return false;
-        } finally {
-            lock.unlock();
         }
+        return false;
     }
 
     @Override
     public boolean contains(Object o) {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            for (InternalQueue<E> internalQueue : queues) {
-                if (internalQueue.contains(o)) return true;
-            }
-            return false;
-        } finally {
-            lock.unlock();
+        for (InternalQueue<E> internalQueue : queues) {
+            if (internalQueue.contains(o)) return true;
         }
+        return false;
     }
 
     @Override
     public String toString() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            StringBuffer s = new StringBuffer();
-            for (InternalQueue<E> internalQueue : queues) {
-                s.append(internalQueue.toString());
-            }
-            return s.toString();
-        } finally {
-            lock.unlock();
+        StringBuffer s = new StringBuffer();
+        for (InternalQueue<E> internalQueue : queues) {
+            s.append(internalQueue.toString());
         }
+        return s.toString();
     }
 
     @Override
     public void clear() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            for (InternalQueue<E> intQueue : queues) {
-                intQueue.clear();
+        for (int i = 0; i < queues.size(); i++) {
+            InternalQueue<E> intQueue = queues.get(i);
+            int n = 0;
+            while (intQueue.poll() != null) {
+                n++;
             }
-            count = 0;
-        } finally {
-            lock.unlock();
-        }                
+            if (n > 0) {
+                count.addAndGet(-n);
+                signalAll(putters[i]);
+            }
+        }
     }
 
     @Override
     @SuppressWarnings({"SuspiciousToArrayCall"})
     public <T> T[] toArray(T[] a) {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
+        List<E> list = new ArrayList<E>();
+        for (InternalQueue<E> internalQueue : queues) {
+            list.addAll(internalQueue);
+        }
+        return list.toArray(a);
+    }
+
+    @Override
+    public Object[] toArray() {
+        List<E> list = new ArrayList<E>();
+        for (InternalQueue<E> internalQueue : queues) {
+            list.addAll(internalQueue);
+        }
+        return list.toArray();
+    }
+
+    /**
+     * Insert the element in to the given internal queue, waiting for space if required.
+     *
+     * @param e element to be added
+     * @param nanos time to wait, negative to wait until space is available
+     * @return true if the element is added
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private boolean doOffer(E e, long nanos) throws InterruptedException {
+        int index = indexOf(e);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (enqueue(index, e)) {
+            return true;
+        }
+        if (nanos == 0) {
+            return false;
+        }
+
+        final long deadline = System.nanoTime() + nanos;
+        final Thread current = Thread.currentThread();
+        final Queue<Thread> waiters = putters[index];
+        waiters.add(current);
         try {
-            List<E> list = new ArrayList<E>();
-            for (InternalQueue<E> internalQueue : queues) {
-                list.addAll(internalQueue);
+            for (;;) {
+                // re-check after registering, so that a concurrent take can't be missed
+                if (enqueue(index, e)) {
+                    return true;
+                }
+                if (nanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
             }
-            return list.toArray(a);
         } finally {
-            lock.unlock();
+            waiters.remove(current);
+            // pass the wake up to the next waiting producer if space is still available
+            if (queues.get(index).remainingCapacity() > 0) {
+                signal(waiters);
+            }
         }
     }
 
-    @Override
-    public Object[] toArray() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
+    /**
+     * Retrieve an element, waiting for one to be available if required.
+     *
+     * @param nanos time to wait, negative to wait until an element is available
+     * @return an element or null if the time elapsed
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private E doPoll(long nanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        E e = dequeue();
+        if (e != null || nanos == 0) {
+            return e;
+        }
+
+        final long deadline = System.nanoTime() + nanos;
+        final Thread current = Thread.currentThread();
+        takers.add(current);
         try {
-            List<E> list = new ArrayList<E>();
-            for (InternalQueue<E> internalQueue : queues) {
-                list.addAll(internalQueue);
+            for (;;) {
+                // re-check after registering, so that a concurrent put can't be missed
+                e = dequeue();
+                if (e != null) {
+                    return e;
+                }
+                if (nanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
             }
-            return list.toArray();
         } finally {
-            lock.unlock();
+            takers.remove(current);
+            // pass the wake up to the next waiting consumer if elements are still available
+            if (count.get() > 0) {
+                signal(takers);
+            }
+        }
+    }
+
+    private boolean enqueue(int index, E e) {
+        // count first, so that a consumer taking the element right away never drives
+        // the count below zero
+        count.incrementAndGet();
+        if (queues.get(index).offer(e)) {
+            signal(takers);
+            return true;
+        }
+        count.decrementAndGet();
+        return false;
+    }
+
+    private E dequeue() {
+        for (;;) {
+            InternalQueue<E> internalQueue = getNextQueue();
+            if (internalQueue == null) {
+                return null;
+            }
+            E e = internalQueue.poll();
+            if (e != null) {
+                count.decrementAndGet();
+                signal(putters[queues.indexOf(internalQueue)]);
+                return e;
+            }
+            // another consumer emptied the selected queue, select again
+        }
+    }
+
+    private InternalQueue<E> getNextQueue() {
+        if (isThreadSafeAlgorithm) {
+            return nextQueueAlgorithm.getNextQueue();
+        }
+        synchronized (nextQueueAlgorithm) {
+            return nextQueueAlgorithm.getNextQueue();
+        }
+    }
+
+    private static void signal(Queue<Thread> waiters) {
+        Thread t = waiters.peek();
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private static void signalAll(Queue<Thread> waiters) {
+        for (Thread t : waiters) {
+            LockSupport.unpark(t);
         }
     }
 
-    private InternalQueue<E> getQueueForPriority(int priority) {
-        for (InternalQueue<E> q : queues) {
-            if (q.getPriority() == priority) {
-                return q;
+    private int indexOf(E e) {
+        int priority = ((Importance) e).getPriority();
+        for (int i = 0; i < queues.size(); i++) {
+            if (queues.get(i).getPriority() == priority) {
+                return i;
             }
         }
         throw new IllegalArgumentException();
@@ -496,6 +500,7 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public E next() {
             if (cursor >= array.length)
                 throw new NoSuchElementException();
@@ -509,18 +514,15 @@ public class MultiPriorityBlockingQueue<E> extends AbstractQueue<E>
                 throw new IllegalStateException();
             Object x = array[lastRet];
             lastRet = -1;
-            lock.lock();
-            try {
-                for (InternalQueue<E> internalQueue : queues) {
-                    for (Iterator<E> it = internalQueue.iterator(); it.hasNext();) {
-                        if (it.next() == x) {
-                            it.remove();
-                            return;
-                        }
+            for (int i = 0; i < queues.size(); i++) {
+                for (Iterator<E> it = queues.get(i).iterator(); it.hasNext();) {
+                    if (it.next() == x) {
+                        it.remove();
+                        count.decrementAndGet();
+                        signal(putters[i]);
+                        return;
                     }
                 }
-            } finally {
-                lock.unlock();
             }
         }
     }
@@ -20,6 +20,7 @@
 package org.apache.synapse.commons.executors;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is a priority based round robin algorithm for getting the next queue </p>
@@ -33,7 +34,12 @@ import java.util.List;
  *
  * <p>This algorithm choose the queues in the above order if all the queues have messages at the
  * point of selection. If a queue doesn't have messages it will skip the queue and move to the
- * next. If none of the queues have messages it will return null.
+ * next. If none of the queues have messages it will return null.</p>
+ *
+ * <p>The cycle is pre computed in to a slot table at initialization time, where each queue
+ * occupies as many consecutive slots as its priority. A selection only needs to increment an
+ * atomic ticket and pick the slot, so this algorithm is thread safe and the
+ * {@link MultiPriorityBlockingQueue} calls it without holding a lock.</p>
  */
 public class PRRNextQueueAlgorithm<E> implements NextQueueAlgorithm<E> {
     
@@ -43,50 +49,43 @@ public class PRRNextQueueAlgorithm<E> implements NextQueueAlgorithm<E> {
     /** Number of queues, we keep this to avoid the overhead of calculation this again and again */
     private int size = 0;
 
-    /** Current queue we are operating on */
-    private int currentQueue = 0;
+    /** Index of the queue owning each slot of a single cycle */
+    private int[] slots;
 
-    /** Number of messages sent from the current queue */
-    private int currentCount = 0;
+    /** Position in the cycle, incremented for every selection */
+    private final AtomicLong ticket = new AtomicLong(0);
 
     @Override
     public InternalQueue<E> getNextQueue() {
-        InternalQueue<E> internalQueue = queues.get(currentQueue);
-
-        int priority = internalQueue.getPriority();
-
-        if (priority == currentCount || internalQueue.size() == 0) {
-            currentCount = 0;
-            // we need to move to the next queue not empty
-            int c = 0;
-            do {
-                if (currentQueue == queues.size() - 1) {
-                    currentQueue = 0;
-                } else {
-                    currentQueue++;
-                }
+        int start = slots[(int) ((ticket.getAndIncrement() & Long.MAX_VALUE) % slots.length)];
 
-                internalQueue = queues.get(currentQueue);
-
-                c++;
-                // we move forward until we find a non empty queue or everything is empty
-            } while (internalQueue.size() == 0 && c < size);
-
-            // if we come to the initial queue, that means all the queues are empty.
-            if (internalQueue.size() == 0) {
-                currentQueue = 0;
-                return null;
+        // we move forward until we find a non empty queue or everything is empty
+        for (int c = 0; c < size; c++) {
+            InternalQueue<E> internalQueue = queues.get((start + c) % size);
+            if (internalQueue.size() > 0) {
+                return internalQueue;
             }
         }
-
-        currentCount++;
-
-        return internalQueue;
+        return null;
     }
 
     @Override
     public void init(List<InternalQueue<E>> queues) {
         this.queues = queues;
         size = queues.size();
+
+        int total = 0;
+        for (InternalQueue<E> q : queues) {
+            total += Math.max(q.getPriority(), 1);
+        }
+
+        slots = new int[Math.max(total, 1)];
+        int s = 0;
+        for (int i = 0; i < size; i++) {
+            int p = Math.max(queues.get(i).getPriority(), 1);
+            for (int j = 0; j < p; j++) {
+                slots[s++] = i;
+            }
+        }
     }
 }
@@ -16,17 +16,22 @@
  *  specific language governing permissions and limitations
  *  under the License.
  */
-
 package org.apache.synapse.commons.executors.queues;
 
 import org.apache.synapse.commons.executors.InternalQueue;
 
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
-import java.util.*;
 
 /**
- * A bounded queue implementation for internal queues. This queue is backed by an
- * fixed size array.
+ * A bounded queue implementation for internal queues. This queue is thread safe and
+ * non-blocking. A slot is reserved with a compare-and-set on the element count before an
+ * element is added to the backing ConcurrentLinkedQueue, so the queue never holds more
+ * elements than its capacity.
  *
  * @param <E> Should implement the Importance interface
  */
@@ -43,29 +48,19 @@ public class FixedSizeQueue<E> extends AbstractQueue<E> implements InternalQueue
     private Condition notFullCond;
 
     /**
-     * Array holding the queues
+     * The elements of the queue
      */
-    private E[] array;
+    private final ConcurrentLinkedQueue<E> elements = new ConcurrentLinkedQueue<E>();
 
     /**
      * Capacity of the queue
      */
-    private int capacity;
-
-    /**
-     * Number of elements in the queue
-     */
-    private int count = 0;
-
-    /**
-     * Head of the queue
-     */
-    private int head = 0;
+    private final int capacity;
 
     /**
-     * Tail of the queue
+     * Number of elements in the queue, including the slots reserved by inserts in progress
      */
-    private int tail = 0;
+    private final AtomicInteger count = new AtomicInteger(0);
 
     /**
      * Create a queue with the given priority and capacity.
@@ -75,8 +70,6 @@ public class FixedSizeQueue<E> extends AbstractQueue<E> implements InternalQueue
     public FixedSizeQueue(int priority, int capacity) {
         this.priority = priority;        
         this.capacity = capacity;
-
-        array = (E[]) new Object[capacity];
     }
 
     @Override
@@ -101,12 +94,12 @@ public class FixedSizeQueue<E> extends AbstractQueue<E> implements InternalQueue
 
     @Override
     public Iterator<E> iterator() {
-        return new Itr<E>();
+        return new Itr();
     }
 
     @Override
     public int size() {
-        return count;
+        return count.get();
     }
 
     @Override
@@ -116,68 +109,54 @@ public class FixedSizeQueue<E> extends AbstractQueue<E> implements InternalQueue
 
     @Override
     public boolean offer(E e) {
-        if (count == array.length) {
-            return false;
-        } else {
-            insert(e);
-            return true;
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            int c = count.get();
+            if (c >= capacity) {
+                return false;
+            }
+            if (count.compareAndSet(c, c + 1)) {
+                break;
+            }
         }
+        elements.add(e);
+        return true;
     }
 
     @Override
     public E poll() {
-        if (count == 0)
-            return null;
-        return get();
+        E e = elements.poll();
+        if (e != null) {
+            count.decrementAndGet();
+        }
+        return e;
     }
 
     @Override
     public E peek() {
-        return (count == 0) ? null : array[head];
+        return elements.peek();
     }
 
     @Override
     public int remainingCapacity() {
-        return capacity - count;        
+        return capacity - count.get();
     }
 
     @Override
     public int drainTo(Collection<? super E> c) {
-        final E[] items = this.array;
-        int i = head;
-        int n = 0;
-        int max = count;
-        while (n < max) {
-            c.add(items[i]);
-            items[i] = null;
-            i = increment(i);
-            n++;
-        }
-        if (n > 0) {
-            count = 0;
-            tail = 0;
-            head = 0;
-
-        }
-        return n;
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
     @Override
     public int drainTo(Collection<? super E> c, int maxElements) {
-        final E[] items = this.array;
-        int i = head;
         int n = 0;
-        int max = (maxElements < count) ? maxElements : count;
-        while (n < max) {
-            c.add(items[i]);
-            items[i] = null;
-            i = increment(i);
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
             n++;
         }
-        if (n > 0) {
-            count -= n;
-            head = i;
-        }
         return n;
     }
 
@@ -188,86 +167,42 @@ public class FixedSizeQueue<E> extends AbstractQueue<E> implements InternalQueue
 
     @Override
     public boolean contains(Object o) {
-        for (E e : array) {
-            if (e.equals(o)) return true;
-        }
-        return false;
+        return elements.contains(o);
     }
 
     @Override
     public boolean remove(Object o) {
-        boolean found = false;
-        int i = head;
-        int iterations = 0;
-        while (iterations++ < count) {
-            if (!found && array[i].equals(o)) {
-                found = true;
-            }
-
-            if (found) {
-                int j = increment(i);
-                array[i] = array[j];
-            }
-
-            i = increment(i);
+        if (elements.remove(o)) {
+            count.decrementAndGet();
+            return true;
         }
+        return false;
+    }
 
-        if (found) {
-            count--;
-            tail = decrement(tail);
-        }
+    private class Itr implements Iterator<E> {
 
-        return found;
-    }
+        private final Iterator<E> it = elements.iterator();
 
-    private class Itr<E> implements Iterator<E> {
-	    int index = head;
+        private E last;
 
         @Override
         public boolean hasNext() {
-            return index != tail;
+            return it.hasNext();
         }
 
         @Override
         public E next() {
-            if (!hasNext()) {
-                throw new NoSuchElementException();
-            }
-
-            return (E) array[index++];
-
+            last = it.next();
+            return last;
         }
 
         @Override
-        public void remove() {            
-            while (index != tail) {
-                int j = increment(index);
-
-                array[index] = array[j];
-                index = j;
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
             }
+            FixedSizeQueue.this.remove(last);
+            last = null;
         }
     }
-
-    private int decrement(int n) {
-        return (n == 0) ? array.length - 1 : n;
-    }
-
-    private int increment(int n) {
-        return (++n == array.length) ? 0 : n;
-    }
-
-    private void insert(E e) {
-        array[tail] = e;
-        tail = increment(tail);
-        count++;
-    }
-
-    private E get() {
-        E e = array[head];
-        array[head] = null;
-        head = increment(head);
-        count--;
-        return e;
-    }
 }
@@ -16,21 +16,33 @@
  *  specific language governing permissions and limitations
  *  under the License.
  */
-
 package org.apache.synapse.commons.executors.queues;
 
 import org.apache.synapse.commons.executors.InternalQueue;
 
-import java.util.*;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 
 /**
- * An unbounded queue backed by and ArrayList. 
+ * An unbounded queue backed by a non-blocking ConcurrentLinkedQueue. This queue is thread
+ * safe and can be accessed concurrently by the producers and the consumers of a
+ * {@link org.apache.synapse.commons.executors.MultiPriorityBlockingQueue} without locking.
+ *
  * @param <E>
  */
 public class UnboundedQueue<E> extends AbstractQueue<E> implements InternalQueue<E> {
 
-    private List<E> elements = new ArrayList<E>();
+    private final ConcurrentLinkedQueue<E> elements = new ConcurrentLinkedQueue<E>();
+
+    /**
+     * Number of elements in the queue, kept separately since the size of a
+     * ConcurrentLinkedQueue is computed by traversing it
+     */
+    private final AtomicInteger count = new AtomicInteger(0);
 
      /**
      * Priority of this queue
@@ -48,33 +60,34 @@ public class UnboundedQueue<E> extends AbstractQueue<E> implements InternalQueue
 
     @Override
     public Iterator<E> iterator() {
-        return elements.iterator();
+        return new Itr();
     }
 
     @Override
     public int size() {
-        return elements.size();
+        return count.get();
     }
 
     @Override
     public boolean offer(E e) {
+        // count before adding, so that the size never goes below the number of elements
+        // which can be polled
+        count.incrementAndGet();
         return elements.add(e);
     }
 
     @Override
     public E poll() {
-        if (elements.size() > 0) {
-            return elements.remove(elements.size() - 1);
+        E e = elements.poll();
+        if (e != null) {
+            count.decrementAndGet();
         }
-        return null;
+        return e;
     }
 
     @Override
     public E peek() {
-        if (elements.size() > 0) {
-            return elements.get(elements.size() - 1);
-        }
-        return null;
+        return elements.peek();
     }
 
     @Override
@@ -99,20 +112,18 @@ public class UnboundedQueue<E> extends AbstractQueue<E> implements InternalQueue
 
     @Override
     public int drainTo(Collection<? super E> c) {
-        int count = elements.size();
-        c.addAll(elements);
-        elements.clear();
-        return count;
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
     @Override
     public int drainTo(Collection<? super E> c, int maxElements) {
-        if (maxElements >= elements.size()) {
-            return drainTo(c);
-        } else {
-            elements.subList(elements.size() - maxElements - 1, elements.size());
-            return maxElements;
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            n++;
         }
+        return n;
     }
 
     @Override
@@ -132,6 +143,37 @@ public class UnboundedQueue<E> extends AbstractQueue<E> implements InternalQueue
 
     @Override
     public boolean remove(Object o) {
-        return elements.remove(o);
+        if (elements.remove(o)) {
+            count.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private class Itr implements Iterator<E> {
+
+        private final Iterator<E> it = elements.iterator();
+
+        private E last;
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public E next() {
+            last = it.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            UnboundedQueue.this.remove(last);
+            last = null;
+        }
     }
 }
@@ -0,0 +1,391 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.commons.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A fixed size, log-linear histogram of latency values (in milliseconds) which keeps
+ * track of the distribution of the values over a set of sliding time windows. Values below
+ * 64 ms are counted exactly, and every power of two above that is split into 32 linear
+ * buckets, so any reported value is within about 3% of the actual value. Values of more
+ * than 2^24 ms (about 4.6 hours) are counted in the last bucket.</p>
+ *
+ * <p>Recording a value is allocation free and lock free. The counts are striped across a
+ * number of arrays selected by the thread ID, so the IO dispatcher threads rarely contend
+ * on the same counters. A single collector thread calls {@link #collect()} periodically
+ * to harvest the stripes into an immutable snapshot of the current minute. Completed
+ * minutes are kept in a ring of 60 minutes, and are also folded into a ring of 24 hours,
+ * which bounds the memory used by the histogram regardless of the load.</p>
+ */
+public class LatencyHistogram {
+
+    /** Number of bits of a value counted exactly */
+    private static final int PRECISION_BITS = 6;
+
+    private static final int SUB_BUCKETS = 1 << (PRECISION_BITS - 1);
+
+    /** Position of the highest bit of the largest value tracked */
+    private static final int MAX_VALUE_BIT = 23;
+
+    public static final long MAX_VALUE = (1L << (MAX_VALUE_BIT + 1)) - 1;
+
+    static final int BUCKET_COUNT = (MAX_VALUE_BIT - PRECISION_BITS + 3) * SUB_BUCKETS;
+
+    private static final int MINUTES = 60;
+
+    private static final int HOURS = 24;
+
+    private final Stripe[] stripes;
+
+    private final int stripeMask;
+
+    private final int collectionsPerMinute;
+
+    /** Snapshots of the last minutes, the current (partial) minute included */
+    private final AtomicReferenceArray<Snapshot> minutes =
+            new AtomicReferenceArray<Snapshot>(MINUTES + 1);
+
+    /** Snapshots of the last hours, the current (partial) hour included */
+    private final AtomicReferenceArray<Snapshot> hours =
+            new AtomicReferenceArray<Snapshot>(HOURS + 1);
+
+    private volatile int minuteCursor = 0;
+
+    private volatile int hourCursor = 0;
+
+    private int collections = 0;
+
+    private int minutesInHour = 0;
+
+    private final AtomicLong allTimeCount = new AtomicLong(0);
+
+    private final AtomicLong allTimeSum = new AtomicLong(0);
+
+    /**
+     * Create a histogram
+     *
+     * @param collectionsPerMinute number of times {@link #collect()} is called each minute
+     */
+    public LatencyHistogram(int collectionsPerMinute) {
+        this(collectionsPerMinute, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LatencyHistogram(int collectionsPerMinute, int stripeCount) {
+        this.collectionsPerMinute = collectionsPerMinute;
+        int count = 1;
+        while (count < stripeCount) {
+            count <<= 1;
+        }
+        stripeMask = count - 1;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Record a latency value
+     *
+     * @param value latency in milliseconds, negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        long id = Thread.currentThread().getId();
+        Stripe stripe = stripes[(int) (id ^ (id >>> 16)) & stripeMask];
+        stripe.counts.incrementAndGet(getBucketIndex(value));
+        stripe.sum.addAndGet(value);
+        long max;
+        while (value > (max = stripe.max.get())) {
+            if (stripe.max.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Harvest the values recorded since the last collection into the current minute, and
+     * move on to the next minute (and hour) when due. Must be called by a single thread.
+     */
+    public synchronized void collect() {
+        long[] counts = new long[BUCKET_COUNT];
+        long sum = 0;
+        long max = 0;
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (stripe.counts.get(i) != 0) {
+                    counts[i] += stripe.counts.getAndSet(i, 0);
+                }
+            }
+            sum += stripe.sum.getAndSet(0);
+            max = Math.max(max, stripe.max.getAndSet(0));
+        }
+
+        Snapshot harvested = Snapshot.create(counts, sum, max);
+        allTimeCount.addAndGet(harvested.count);
+        allTimeSum.addAndGet(sum);
+
+        int minute = minuteCursor;
+        Snapshot current = Snapshot.merge(minutes.get(minute), harvested);
+        minutes.set(minute, current);
+
+        if (++collections < collectionsPerMinute) {
+            return;
+        }
+        collections = 0;
+
+        // the current minute is complete
+        int hour = hourCursor;
+        hours.set(hour, Snapshot.merge(hours.get(hour), current));
+        int nextMinute = (minute + 1) % minutes.length();
+        minutes.set(nextMinute, null);
+        minuteCursor = nextMinute;
+
+        if (++minutesInHour < MINUTES) {
+            return;
+        }
+        minutesInHour = 0;
+
+        int nextHour = (hour + 1) % hours.length();
+        hours.set(nextHour, null);
+        hourCursor = nextHour;
+    }
+
+    /**
+     * Get a percentile of the values recorded during the given window. The window covers
+     * the given number of complete minutes (or hours, for windows longer than an hour) and
+     * the values collected during the current minute.
+     *
+     * @param windowMinutes length of the window in minutes, up to 24 hours
+     * @param percentile the percentile to compute, between 0 and 100
+     * @return the percentile value in milliseconds, or 0 if no value has been recorded
+     */
+    public double getPercentile(int windowMinutes, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile : " + percentile);
+        }
+
+        long[] counts = new long[BUCKET_COUNT];
+        long[] totals = aggregate(windowMinutes, counts);
+        long total = totals[0];
+        if (total == 0) {
+            return 0.0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(getHighestEquivalentValue(i), totals[2]);
+            }
+        }
+        return totals[2];
+    }
+
+    /**
+     * Get the average of the values recorded during the given window
+     *
+     * @param windowMinutes length of the window in minutes, up to 24 hours
+     * @return the average value in milliseconds, or 0 if no value has been recorded
+     */
+    public double getAverage(int windowMinutes) {
+        long[] totals = aggregate(windowMinutes, null);
+        return totals[0] == 0 ? 0.0 : (double) totals[1] / totals[0];
+    }
+
+    /**
+     * @return the average of the values collected since creation or the last reset
+     */
+    public double getAllTimeAverage() {
+        long count = allTimeCount.get();
+        return count == 0 ? 0.0 : (double) allTimeSum.get() / count;
+    }
+
+    /**
+     * @return number of values collected since creation or the last reset
+     */
+    public long getAllTimeCount() {
+        return allTimeCount.get();
+    }
+
+    public synchronized void reset() {
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                stripe.counts.set(i, 0);
+            }
+            stripe.sum.set(0);
+            stripe.max.set(0);
+        }
+        for (int i = 0; i < minutes.length(); i++) {
+            minutes.set(i, null);
+        }
+        for (int i = 0; i < hours.length(); i++) {
+            hours.set(i, null);
+        }
+        collections = 0;
+        minutesInHour = 0;
+        allTimeCount.set(0);
+        allTimeSum.set(0);
+    }
+
+    /**
+     * Add up the snapshots of a window
+     *
+     * @param windowMinutes length of the window in minutes
+     * @param counts array into which the bucket counts are added, or null
+     * @return an array of the total count, the sum and the maximum of the window
+     */
+    private long[] aggregate(int windowMinutes, long[] counts) {
+        if (windowMinutes <= 0 || windowMinutes > HOURS * MINUTES) {
+            throw new IllegalArgumentException("Invalid window : " + windowMinutes + " minutes");
+        }
+
+        long[] totals = new long[3];
+        int minute = minuteCursor;
+        if (windowMinutes <= MINUTES) {
+            for (int i = 0; i <= windowMinutes; i++) {
+                add(minutes.get((minute - i + minutes.length()) % minutes.length()),
+                        counts, totals);
+            }
+        } else {
+            int windowHours = (windowMinutes + MINUTES - 1) / MINUTES;
+            int hour = hourCursor;
+            add(minutes.get(minute), counts, totals);
+            for (int i = 0; i <= windowHours; i++) {
+                add(hours.get((hour - i + hours.length()) % hours.length()), counts, totals);
+            }
+        }
+        return totals;
+    }
+
+    private void add(Snapshot snapshot, long[] counts, long[] totals) {
+        if (snapshot == null) {
+            return;
+        }
+        if (counts != null) {
+            for (int i = 0; i < snapshot.buckets.length; i++) {
+                counts[snapshot.buckets[i]] += snapshot.counts[i];
+            }
+        }
+        totals[0] += snapshot.count;
+        totals[1] += snapshot.sum;
+        totals[2] = Math.max(totals[2], snapshot.max);
+    }
+
+    /**
+     * @param value a latency value
+     * @return index of the bucket counting the given value
+     */
+    static int getBucketIndex(long value) {
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        if (value < (1 << PRECISION_BITS)) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - PRECISION_BITS + 1;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @param index index of a bucket
+     * @return the largest value counted by the bucket
+     */
+    static long getHighestEquivalentValue(int index) {
+        if (index < (1 << PRECISION_BITS)) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Counters updated by the threads mapped to the stripe
+     */
+    private static final class Stripe {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong sum = new AtomicLong(0);
+        private final AtomicLong max = new AtomicLong(0);
+    }
+
+    /**
+     * Immutable, sparse copy of the bucket counts of a period of time
+     */
+    private static final class Snapshot {
+
+        private final int[] buckets;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(int[] buckets, long[] counts, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        private static Snapshot create(long[] dense, long sum, long max) {
+            int used = 0;
+            for (long c : dense) {
+                if (c != 0) {
+                    used++;
+                }
+            }
+            int[] buckets = new int[used];
+            long[] counts = new long[used];
+            long count = 0;
+            for (int i = 0, j = 0; i < dense.length; i++) {
+                if (dense[i] != 0) {
+                    buckets[j] = i;
+                    counts[j++] = dense[i];
+                    count += dense[i];
+                }
+            }
+            return new Snapshot(buckets, counts, count, sum, max);
+        }
+
+        private static Snapshot merge(Snapshot a, Snapshot b) {
+            if (a == null || a.count == 0) {
+                return b;
+            }
+            if (b.count == 0) {
+                return a;
+            }
+            long[] dense = new long[BUCKET_COUNT];
+            for (int i = 0; i < a.buckets.length; i++) {
+                dense[a.buckets[i]] += a.counts[i];
+            }
+            for (int i = 0; i < b.buckets.length; i++) {
+                dense[b.buckets[i]] += b.counts[i];
+            }
+            return create(dense, a.sum + b.sum, Math.max(a.max, b.max));
+        }
+    }
+}
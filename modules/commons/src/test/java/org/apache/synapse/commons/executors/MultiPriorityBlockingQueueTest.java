@@ -59,6 +59,23 @@ public class MultiPriorityBlockingQueueTest extends MultiPriorityBlockingQueueAb
         assertEquals(0, fixedQueue.size());
     }
 
+    public void testPriorityRatio() {
+        performOffer(fixedQueue, sizes, priorities);
+
+        // with both queues full, a single cycle takes 10 high priority items and 1 low
+        int high = 0;
+        for (int i = 0; i < 11 * 5; i++) {
+            DummyTask task = (DummyTask) fixedQueue.poll();
+            assertNotNull(task);
+            if (task.getPriority() == 10) {
+                high++;
+            }
+        }
+        assertEquals(50, high);
+        assertEquals(ITEMS * 2 - 55, fixedQueue.size());
+        assertEquals(55, fixedQueue.remainingCapacity());
+    }
+
     public void testUnboundedQueueOffer() {
         performOffer(unboundedQueue, sizes, priorities);
 
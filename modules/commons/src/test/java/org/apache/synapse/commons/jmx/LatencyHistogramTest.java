@@ -0,0 +1,115 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.commons.jmx;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBucketBoundaries() {
+        long previous = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long highest = LatencyHistogram.getHighestEquivalentValue(i);
+            assertTrue(highest > previous);
+            assertEquals(i, LatencyHistogram.getBucketIndex(previous + 1));
+            assertEquals(i, LatencyHistogram.getBucketIndex(highest));
+            previous = highest;
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, previous);
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+                LatencyHistogram.getBucketIndex(Long.MAX_VALUE));
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(12, 4);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        histogram.collect();
+
+        assertEquals(500.5, histogram.getAverage(1), 0.001);
+        assertEquals(500.5, histogram.getAllTimeAverage(), 0.001);
+        assertEquals(1000, histogram.getAllTimeCount());
+        assertWithinPrecision(500, histogram.getPercentile(1, 50));
+        assertWithinPrecision(990, histogram.getPercentile(1, 99));
+        assertWithinPrecision(999, histogram.getPercentile(1, 99.9));
+        assertEquals(1000, histogram.getPercentile(1, 100), 0.001);
+        assertEquals(1, histogram.getPercentile(1, 0), 0.001);
+    }
+
+    public void testWindows() {
+        LatencyHistogram histogram = new LatencyHistogram(1, 1);
+        histogram.record(10);
+        histogram.collect();
+        for (int i = 0; i < 5; i++) {
+            histogram.record(100);
+            histogram.collect();
+        }
+
+        // the last minute window holds the current and the previous minute
+        assertEquals(100, histogram.getPercentile(1, 100), 0.001);
+        assertEquals(10, histogram.getPercentile(15, 0), 0.001);
+        assertEquals(85, histogram.getAverage(15), 0.001);
+
+        // moving on past the hour keeps the values in the hourly windows
+        for (int i = 0; i < 60; i++) {
+            histogram.collect();
+        }
+        assertEquals(0, histogram.getAverage(15), 0.001);
+        assertEquals(85, histogram.getAverage(8 * 60), 0.001);
+        assertEquals(85, histogram.getAverage(24 * 60), 0.001);
+    }
+
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram(12, 2);
+        histogram.record(42);
+        histogram.collect();
+        histogram.record(42);
+        histogram.reset();
+        histogram.collect();
+        assertEquals(0, histogram.getAverage(5), 0.001);
+        assertEquals(0, histogram.getAllTimeCount());
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram(12);
+        final CountDownLatch latch = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i % 100);
+                    }
+                    latch.countDown();
+                }
+            }.start();
+        }
+        latch.await();
+        histogram.collect();
+        assertEquals(80000, histogram.getAllTimeCount());
+        assertEquals(49.5, histogram.getAverage(1), 0.001);
+    }
+
+    private void assertWithinPrecision(long expected, double actual) {
+        assertEquals(expected, actual, expected * 0.032);
+    }
+}
@@ -46,9 +46,11 @@ import org.apache.synapse.core.axis2.ProxyService;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.dispatch.SALSessions;
 import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.registry.AbstractRegistry;
 import org.apache.synapse.registry.Registry;
 import org.apache.axiom.om.OMNode;
 import org.apache.synapse.rest.API;
+import org.apache.synapse.rest.APIIndex;
 
 import javax.xml.namespace.QName;
 import java.io.IOException;
@@ -154,6 +156,11 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
 
     private Map<String, API> apiTable = new ConcurrentHashMap<String, API>();
 
+    /**
+     * Index of the above APIs by their URL contexts, used to dispatch requests to the APIs
+     */
+    private APIIndex apiIndex = new APIIndex();
+
     /**
      * Description/documentation of the configuration
      */
@@ -326,6 +333,7 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
                 }
             }
             apiTable.put(name, api);
+            apiIndex.add(name, api);
         } else {
             handleException("Duplicate resource definition by the name: " + name);
         }
@@ -342,6 +350,7 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
                 }
             }
             apiTable.put(name, api);
+            apiIndex.add(name, api);
         }
     }
 
@@ -349,6 +358,17 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
         return Collections.unmodifiableCollection(apiTable.values());
     }
 
+    /**
+     * Find the APIs which have a URL context matching the given request path. APIs with
+     * longer (more specific) contexts are placed ahead of the others in the returned list.
+     *
+     * @param path request path, optionally with a query string
+     * @return the list of matching APIs
+     */
+    public List<API> getMatchingAPIs(String path) {
+        return apiIndex.getMatchingAPIs(path);
+    }
+
     public API getAPI(String name) {
         return apiTable.get(name);
     }
@@ -357,6 +377,7 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
         API api = apiTable.get(name);
         if (api != null) {
             apiTable.remove(name);
+            apiIndex.remove(name);
         } else {
             handleException("No API exists by the name: " + name);
         }
@@ -703,9 +724,17 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
         Object o = localRegistry.get(key);
         if (o != null && o instanceof Entry) {
             Entry entry = (Entry) o;
-            if (!entry.isDynamic() || (entry.isCached() && !entry.isExpired())) {
-                // If the entry is not dynamic or if it is a cached dynamic entry with the
-                // cache still not expired, return the existing value.
+            if (!entry.isDynamic()) {
+                // If the entry is not dynamic, return the existing value.
+                return entry.getValue();
+            } else if (entry.isCached() && !entry.isExpired()) {
+                // If it is a cached dynamic entry with the cache still not expired, return the
+                // existing value. A refresh-ahead registry is consulted so that it may reload
+                // the resource in the background before it expires.
+                if (registry instanceof AbstractRegistry &&
+                        ((AbstractRegistry) registry).isRefreshAheadEnabled()) {
+                    return registry.getResource(entry, getProperties());
+                }
                 return entry.getValue();
             }
 
@@ -39,7 +39,7 @@ import java.util.Properties;
  *   &lt;completeCondition [timeout="time-in-seconds"]&gt;
  *     &lt;messageCount min="int-min" max="int-max"/&gt;?
  *   &lt;/completeCondition&gt;?
- *   &lt;onComplete expression="xpath" [sequence="sequence-ref"]&gt;
+ *   &lt;onComplete expression="xpath" [sequence="sequence-ref"] [incremental="true|false"]&gt;
  *     (mediator +)?
  *   &lt;/onComplete&gt;
  * &lt;/aggregate&gt;
@@ -72,6 +72,8 @@ public class AggregateMediatorFactory extends AbstractMediatorFactory {
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "sequence");
     private static final QName ID_Q
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "id");
+    private static final QName INCREMENTAL_Q
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "incremental");
 
 
     @Override
@@ -133,6 +135,12 @@ public class AggregateMediatorFactory extends AbstractMediatorFactory {
                 }
             }
 
+            OMAttribute incremental = onComplete.getAttribute(INCREMENTAL_Q);
+            if (incremental != null) {
+                mediator.setIncrementalMerge(
+                        Boolean.parseBoolean(incremental.getAttributeValue()));
+            }
+
             OMAttribute onCompleteSequence = onComplete.getAttribute(SEQUENCE_Q);
             if (onCompleteSequence != null) {
                 mediator.setOnCompleteSequenceRef(onCompleteSequence.getAttributeValue());
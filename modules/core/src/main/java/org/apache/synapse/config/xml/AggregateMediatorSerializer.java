@@ -77,6 +77,9 @@ public class AggregateMediatorSerializer extends AbstractMediatorSerializer {
             SynapseXPathSerializer.serializeXPath(
                 mediator.getAggregationExpression(), onCompleteElem, "expression");
         }
+        if (mediator.isIncrementalMerge()) {
+            onCompleteElem.addAttribute("incremental", "true", nullNS);
+        }
         if (mediator.getOnCompleteSequenceRef() != null) {
             onCompleteElem.addAttribute("sequence", mediator.getOnCompleteSequenceRef(), nullNS);
         } else if (mediator.getOnCompleteSequence() != null) {
@@ -35,7 +35,8 @@ import java.util.Properties;
  * different message contexts and mediated using the specified targets
  *
  * <pre>
- * &lt;clone [continueParent=(true | false)]&gt;
+ * &lt;clone [continueParent=(true | false)] [maxConcurrency="n"] [maxPending="n"]
+ *        [executor=(shared | dedicated | forkjoin)]&gt;
  *   &lt;target [to="uri"] [soapAction="qname"] [sequence="sequence_ref"]
  *          [endpoint="endpoint_ref"]&gt;
  *     &lt;sequence&gt;
@@ -91,6 +92,10 @@ public class CloneMediatorFactory extends AbstractMediatorFactory {
                     continueParent.getAttributeValue()));
         }
 
+        mediator.setMaxConcurrency(TargetFactory.getMaxConcurrency(elem));
+        mediator.setMaxPending(TargetFactory.getMaxPending(elem));
+        mediator.setExecutorType(TargetFactory.getExecutorType(elem));
+
         OMAttribute synchronousExeAttr= elem.getAttribute(SEQUENTIAL_Q);
         if (synchronousExeAttr != null && synchronousExeAttr.getAttributeValue().equals("true")) {
         	asynchronousExe = false;
@@ -30,7 +30,8 @@ import java.util.Iterator;
  * This will serialize the CloneMediator to the xml configuration as specified bellow
  *
  * <pre>
- *  &lt;clone [continueParent=(true | false)]&gt;
+ *  &lt;clone [continueParent=(true | false)] [maxConcurrency="n"] [maxPending="n"]
+ *         [executor=(shared | dedicated | forkjoin)]&gt;
  *   &lt;target [to="uri"] [soapAction="qname"] [sequence="sequence_ref"]
  *          [endpoint="endpoint_ref"]&gt;
  *     &lt;sequence&gt;
@@ -71,6 +72,19 @@ public class CloneMediatorSerializer extends AbstractMediatorSerializer {
             cloneElem.addAttribute("sequential", "true", nullNS);
         }
 
+        if (clone.getMaxConcurrency() > 0) {
+            cloneElem.addAttribute("maxConcurrency",
+                    String.valueOf(clone.getMaxConcurrency()), nullNS);
+        }
+
+        if (clone.getMaxPending() > 0) {
+            cloneElem.addAttribute("maxPending", String.valueOf(clone.getMaxPending()), nullNS);
+        }
+
+        if (clone.getExecutorType() != null) {
+            cloneElem.addAttribute("executor", clone.getExecutorType(), nullNS);
+        }
+
         for (Target o : clone.getTargets()) {
             cloneElem.addChild(TargetSerializer.serializeTarget(o));
         }
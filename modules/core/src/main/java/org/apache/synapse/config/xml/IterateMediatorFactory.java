@@ -25,6 +25,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.Mediator;
 import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
 import org.apache.synapse.mediators.eip.splitter.IterateMediator;
 import org.apache.synapse.mediators.eip.Target;
 import org.apache.synapse.util.xpath.SynapseXPath;
@@ -39,7 +40,9 @@ import java.util.Properties;
  * <p/>
  * <pre>
  * &lt;iterate [continueParent=(true | false)] [preservePayload=(true | false)]
- *          (attachPath="xpath")? expression="xpath"&gt;
+ *          [maxConcurrency="n"] [maxPending="n"]
+ *          [executor=(shared | dedicated | forkjoin)]
+ *          [streaming=(true | false)] (attachPath="xpath")? expression="xpath"&gt;
  *   &lt;target [to="uri"] [soapAction="qname"] [sequence="sequence_ref"]
  *          [endpoint="endpoint_ref"]&gt;
  *     &lt;sequence&gt;
@@ -64,6 +67,7 @@ public class IterateMediatorFactory extends AbstractMediatorFactory {
     private static final QName ATT_PREPLD = new QName("preservePayload");
     private static final QName ATT_ATTACHPATH = new QName("attachPath");
     private static final QName ATT_SEQUENTIAL = new QName("sequential");
+    private static final QName ATT_STREAMING = new QName("streaming");
 
     private static final QName ID_Q
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "id");
@@ -129,6 +133,24 @@ public class IterateMediatorFactory extends AbstractMediatorFactory {
                 attachPathValue, e);
         }
 
+        OMAttribute streamingAttr = elem.getAttribute(ATT_STREAMING);
+        if (streamingAttr != null && Boolean.valueOf(streamingAttr.getAttributeValue())) {
+            if (mediator.isContinueParent() || mediator.isPreservePayload()) {
+                handleException("Wrong configuration for the iterate mediator :: the streaming " +
+                    "mode can not be used with continueParent or preservePayload, since the " +
+                    "original payload is consumed while it is being split");
+            }
+            try {
+                mediator.setStreaming(true);
+            } catch (SynapseException e) {
+                handleException("Unable to build the IterateMediator. " + e.getMessage(), e);
+            }
+        }
+
+        mediator.setMaxConcurrency(TargetFactory.getMaxConcurrency(elem));
+        mediator.setMaxPending(TargetFactory.getMaxPending(elem));
+        mediator.setExecutorType(TargetFactory.getExecutorType(elem));
+
         boolean asynchronous = true;
         OMAttribute sequentialAttr = elem.getAttribute(ATT_SEQUENTIAL);
         if (sequentialAttr != null && sequentialAttr.getAttributeValue().equals("true")) {
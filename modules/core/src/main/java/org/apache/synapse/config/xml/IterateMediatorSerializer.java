@@ -29,7 +29,9 @@ import org.apache.synapse.mediators.eip.splitter.IterateMediator;
  *
  * <pre>
  * &lt;iterate [continueParent=(true | false)] [preservePayload=(true | false)]
- *          (attachPath="xpath")? expression="xpath"&gt;
+ *          [maxConcurrency="n"] [maxPending="n"]
+ *          [executor=(shared | dedicated | forkjoin)]
+ *          [streaming=(true | false)] (attachPath="xpath")? expression="xpath"&gt;
  *   &lt;target [to="uri"] [soapAction="qname"] [sequence="sequence_ref"]
  *          [endpoint="endpoint_ref"]&gt;
  *     &lt;sequence&gt;
@@ -90,6 +92,23 @@ public class IterateMediatorSerializer extends AbstractMediatorSerializer {
             itrElem.addAttribute("sequential", "true", nullNS);
         }
 
+        if (itrMed.isStreaming()) {
+            itrElem.addAttribute("streaming", Boolean.toString(true), nullNS);
+        }
+
+        if (itrMed.getMaxConcurrency() > 0) {
+            itrElem.addAttribute("maxConcurrency",
+                    String.valueOf(itrMed.getMaxConcurrency()), nullNS);
+        }
+
+        if (itrMed.getMaxPending() > 0) {
+            itrElem.addAttribute("maxPending", String.valueOf(itrMed.getMaxPending()), nullNS);
+        }
+
+        if (itrMed.getExecutorType() != null) {
+            itrElem.addAttribute("executor", itrMed.getExecutorType(), nullNS);
+        }
+
         itrElem.addChild(TargetSerializer.serializeTarget(itrMed.getTarget()));
 
         return itrElem;
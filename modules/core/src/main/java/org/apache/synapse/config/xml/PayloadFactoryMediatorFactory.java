@@ -34,8 +34,8 @@ import java.util.Properties;
  * Creates a payloadFactory mediator from the provided XML configuration
  * <p/>
  * <pre>
- * &lt;payloadFactory&gt;
- *   &lt;format&gt;&quot;xmlstring&quot;&lt;/format&gt;
+ * &lt;payloadFactory [media-type=&quot;xml|json&quot;]&gt;
+ *   &lt;format&gt;&quot;xmlstring&quot; | &quot;jsonstring&quot;&lt;/format&gt;
  *   &lt;args&gt;
  *     &lt;arg (value=&quot;literal&quot; | expression=&quot;xpath&quot;)/&gt;*
  *   &lt;/args&gt;
@@ -49,15 +49,29 @@ public class PayloadFactoryMediatorFactory extends AbstractMediatorFactory {
 
     private static final QName FORMAT_Q = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "format");
     private static final QName ARGS_Q = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "args");
+    private static final QName ATT_MEDIA_TYPE = new QName("media-type");
 
     @Override
     public Mediator createSpecificMediator(OMElement elem, Properties properties) {
 
         PayloadFactoryMediator payloadFactoryMediator = new PayloadFactoryMediator();
 
+        String mediaType = elem.getAttributeValue(ATT_MEDIA_TYPE);
+        if (mediaType != null) {
+            if (PayloadFactoryMediator.XML_TYPE.equals(mediaType) ||
+                    PayloadFactoryMediator.JSON_TYPE.equals(mediaType)) {
+                payloadFactoryMediator.setMediaType(mediaType);
+            } else {
+                handleException("Unsupported media-type for the payloadFactory mediator: " +
+                        mediaType);
+            }
+        }
+
         OMElement formatElem = elem.getFirstChildWithName(FORMAT_Q);
 
-        if (formatElem != null) {
+        if (formatElem != null && PayloadFactoryMediator.JSON_TYPE.equals(mediaType)) {
+            payloadFactoryMediator.setFormat(formatElem.getText().trim());
+        } else if (formatElem != null && formatElem.getFirstElement() != null) {
             OMElement copy = formatElem.getFirstElement().cloneOMElement();
             removeIndentations(copy);
             payloadFactoryMediator.setFormat(copy.toString());
@@ -40,6 +40,7 @@ public class PayloadFactoryMediatorSerializer extends AbstractMediatorSerializer
     private static final String ARG = "arg";
     private static final String VALUE = "value";
     private static final String EXPRESSION = "expression";
+    private static final String MEDIA_TYPE = "media-type";
 
 
     @Override
@@ -55,7 +56,17 @@ public class PayloadFactoryMediatorSerializer extends AbstractMediatorSerializer
         OMElement payloadFactoryElem = fac.createOMElement(PAYLOAD_FACTORY, synNS);
         saveTracingState(payloadFactoryElem, mediator);
 
-        if (mediator.getFormat() != null) {
+        boolean json = PayloadFactoryMediator.JSON_TYPE.equals(mediator.getMediaType());
+        if (json) {
+            payloadFactoryElem.addAttribute(fac.createOMAttribute(MEDIA_TYPE, nullNS,
+                    mediator.getMediaType()));
+        }
+
+        if (mediator.getFormat() != null && json) {
+            OMElement formatElem = fac.createOMElement(FORMAT, synNS);
+            formatElem.setText(mediator.getFormat());
+            payloadFactoryElem.addChild(formatElem);
+        } else if (mediator.getFormat() != null) {
 
             try {
                 OMElement formatElem = fac.createOMElement(FORMAT, synNS);
@@ -20,6 +20,7 @@
 package org.apache.synapse.config.xml;
 
 import org.apache.synapse.mediators.eip.Target;
+import org.apache.synapse.mediators.eip.TargetExecutor;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.config.xml.endpoints.EndpointFactory;
 import org.apache.axiom.om.OMElement;
@@ -52,6 +53,10 @@ public class TargetFactory {
      */
     private static final QName TARGET_Q = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "target");
 
+    private static final QName ATT_MAX_CONCURRENCY = new QName("maxConcurrency");
+    private static final QName ATT_MAX_PENDING = new QName("maxPending");
+    private static final QName ATT_EXECUTOR = new QName("executor");
+
     /**
      * This static method will be used to build the Target from the specified element
      * 
@@ -105,6 +110,73 @@ public class TargetFactory {
         return target;
     }
 
+    /**
+     * Reads the maxConcurrency attribute of an EIP mediator (i.e. clone or iterate) element,
+     * which limits the number of messages mediated concurrently by its targets
+     *
+     * @param elem - OMElement describing the EIP mediator
+     * @return the value of the attribute, or -1 if it is not specified
+     */
+    public static int getMaxConcurrency(OMElement elem) {
+        OMAttribute maxConcurrencyAttr = elem.getAttribute(ATT_MAX_CONCURRENCY);
+        if (maxConcurrencyAttr == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(maxConcurrencyAttr.getAttributeValue().trim());
+        } catch (NumberFormatException e) {
+            handleException("Invalid maxConcurrency value : " +
+                    maxConcurrencyAttr.getAttributeValue());
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the maxPending attribute of an EIP mediator (i.e. clone or iterate) element, which
+     * limits the number of messages waiting for the running messages to complete, once the
+     * maxConcurrency limit has been reached
+     *
+     * @param elem - OMElement describing the EIP mediator
+     * @return the value of the attribute, or -1 if it is not specified
+     */
+    public static int getMaxPending(OMElement elem) {
+        OMAttribute maxPendingAttr = elem.getAttribute(ATT_MAX_PENDING);
+        if (maxPendingAttr == null) {
+            return -1;
+        }
+        int maxPending = -1;
+        try {
+            maxPending = Integer.parseInt(maxPendingAttr.getAttributeValue().trim());
+        } catch (NumberFormatException e) {
+            handleException("Invalid maxPending value : " + maxPendingAttr.getAttributeValue());
+        }
+        if (maxPending <= 0) {
+            handleException("Invalid maxPending value : " + maxPending + ", expected a " +
+                    "positive number");
+        }
+        return maxPending;
+    }
+
+    /**
+     * Reads the executor attribute of an EIP mediator (i.e. clone or iterate) element, which
+     * selects the executor used by its asynchronous targets
+     *
+     * @param elem - OMElement describing the EIP mediator
+     * @return one of shared, dedicated or forkjoin, or null if the attribute is not specified
+     */
+    public static String getExecutorType(OMElement elem) {
+        OMAttribute executorAttr = elem.getAttribute(ATT_EXECUTOR);
+        if (executorAttr == null) {
+            return null;
+        }
+        String executorType = executorAttr.getAttributeValue().trim();
+        if (!TargetExecutor.isValidType(executorType)) {
+            handleException("Invalid executor type : " + executorType + ", expected one " +
+                    "of shared, dedicated or forkjoin");
+        }
+        return executorType;
+    }
+
     /**
      * This private method is used for exception handling and logging purposes.
      *
@@ -22,6 +22,7 @@ package org.apache.synapse.core.axis2;
 import org.apache.axis2.client.async.AxisCallback;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.util.concurrent.TimerWheel;
 
 /**
  * This class only "holds" the Synapse out message context for the Synapse callback message
@@ -38,6 +39,15 @@ public class AsyncCallback implements AxisCallback {
     /** Action to perform when timeout occurs */
     private int timeOutAction = SynapseConstants.NONE;
 
+    /** Name of the endpoint the request was sent to, used for the callback store statistics */
+    private String endpointName;
+
+    /** Message ID under which this callback is registered in the callback store */
+    private String messageID;
+
+    /** Timeout of this callback in the callback store */
+    private TimerWheel.Timeout<AsyncCallback> timeout;
+
     public AsyncCallback(MessageContext synapseOutMsgCtx) {
         this.synapseOutMsgCtx = synapseOutMsgCtx;
     }
@@ -73,4 +83,28 @@ public class AsyncCallback implements AxisCallback {
     public void setTimeOutAction(int timeOutAction) {
         this.timeOutAction = timeOutAction;
     }
+
+    public String getEndpointName() {
+        return endpointName;
+    }
+
+    public void setEndpointName(String endpointName) {
+        this.endpointName = endpointName;
+    }
+
+    String getMessageID() {
+        return messageID;
+    }
+
+    void setMessageID(String messageID) {
+        this.messageID = messageID;
+    }
+
+    TimerWheel.Timeout<AsyncCallback> getTimeout() {
+        return timeout;
+    }
+
+    void setTimeout(TimerWheel.Timeout<AsyncCallback> timeout) {
+        this.timeout = timeout;
+    }
 }
@@ -39,6 +39,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.endpoints.algorithms.AbstractLoadAwareAlgorithm;
 import org.apache.synapse.rest.RESTConstants;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.util.MessageHelper;
@@ -382,6 +383,7 @@ public class Axis2FlexibleMEPClient {
                 // TimeoutHandler can detect timed out callbacks and take approprite action.
                 callback.setTimeOutOn(System.currentTimeMillis() + endpoint.getTimeoutDuration());
                 callback.setTimeOutAction(endpoint.getTimeoutAction());
+                callback.setEndpointName(endpoint.toString());
             } else {
                 callback.setTimeOutOn(System.currentTimeMillis());
             }
@@ -410,6 +412,11 @@ public class Axis2FlexibleMEPClient {
         }
 
         mepClient.execute(true);
+
+        if (outOnlyMessage) {
+            // no response is expected, so the request is over once it is sent
+            AbstractLoadAwareAlgorithm.completeDispatches(synapseOutMessageContext, true);
+        }
    }
 
     private static MessageContext cloneForSend(MessageContext ori, String preserveAddressing)
@@ -145,9 +145,11 @@ public class Axis2MessageContext implements MessageContext {
             Mediator m = getConfiguration().getSequence(key);
             if (m instanceof SequenceMediator) {
                 SequenceMediator seqMediator = (SequenceMediator) m;
-                synchronized (m) {
-                    if (!seqMediator.isInitialized()) {
-                        seqMediator.init(synEnv);
+                if (!seqMediator.isInitialized()) {
+                    synchronized (m) {
+                        if (!seqMediator.isInitialized()) {
+                            seqMediator.init(synEnv);
+                        }
                     }
                 }
             }
@@ -163,9 +165,11 @@ public class Axis2MessageContext implements MessageContext {
             return (Mediator) o;
         } else {
             TemplateMediator m = getConfiguration().getSequenceTemplate(key);
-            synchronized (m) {
-                if (!m.isInitialized()) {
-                    m.init(synEnv);
+            if (!m.isInitialized()) {
+                synchronized (m) {
+                    if (!m.isInitialized()) {
+                        m.init(synEnv);
+                    }
                 }
             }
             localEntries.put(key, m);
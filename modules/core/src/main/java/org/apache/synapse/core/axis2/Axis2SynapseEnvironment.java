@@ -34,6 +34,7 @@ import org.apache.synapse.ServerContextInformation;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.aspects.statistics.StatisticsCollector;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.endpoints.EndpointDefinition;
@@ -44,7 +45,9 @@ import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.rest.RESTRequestHandler;
 import org.apache.synapse.task.SynapseTaskManager;
 import org.apache.synapse.transport.passthru.util.RelayUtils;
+import org.apache.synapse.transport.passthru.util.VirtualThreadWorkerPool;
 import org.apache.synapse.util.concurrent.SynapseThreadPool;
+import org.apache.synapse.util.concurrent.SynapseThreadPoolView;
 import org.apache.synapse.util.xpath.ext.SynapseXpathFunctionContextProvider;
 import org.apache.synapse.util.xpath.ext.SynapseXpathVariableResolver;
 
@@ -61,9 +64,14 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
 
     private static final Log log = LogFactory.getLog(Axis2SynapseEnvironment.class);
 
+    private static final String THREAD_POOL_CATEGORY = "ThreadPool";
+
     private SynapseConfiguration synapseConfig;
     private ConfigurationContext configContext;
     private ExecutorService executorService;
+    private String threadIdPrefix;
+    /** Record the task latencies of the thread pool - always on with adaptive sizing */
+    private boolean monitorThreadPool = false;
     private boolean initialized = false;
     private SynapseTaskManager taskManager;
     private RESTRequestHandler restHandler;
@@ -85,6 +93,39 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
 
     public Axis2SynapseEnvironment(SynapseConfiguration synCfg) {
 
+        threadIdPrefix = synCfg.getProperty(SynapseThreadPool.SYN_THREAD_IDPREFIX,
+                SynapseThreadPool.SYNAPSE_THREAD_ID_PREFIX);
+
+        if (Boolean.parseBoolean(synCfg.getProperty(SynapseThreadPool.SYN_THREAD_VIRTUAL))) {
+            executorService = VirtualThreadWorkerPool.newExecutor(threadIdPrefix);
+            if (executorService == null) {
+                log.warn("Virtual threads are not supported by this JVM - using a thread " +
+                        "pool for asynchronous mediation");
+            }
+        }
+        if (executorService == null) {
+            executorService = createThreadPool(synCfg);
+        }
+
+        taskManager = new SynapseTaskManager();
+        restHandler = new RESTRequestHandler();
+    }
+
+    public Axis2SynapseEnvironment(ConfigurationContext cfgCtx,
+        SynapseConfiguration synapseConfig) {
+        this(synapseConfig);
+        this.configContext = cfgCtx;
+        this.synapseConfig = synapseConfig;
+    }
+
+    public Axis2SynapseEnvironment(ConfigurationContext cfgCtx,
+        SynapseConfiguration synapseConfig, ServerContextInformation contextInformation) {
+        this(cfgCtx, synapseConfig);
+        this.contextInformation = contextInformation;        
+    }
+
+    private SynapseThreadPool createThreadPool(SynapseConfiguration synCfg) {
+
         int coreThreads = SynapseThreadPool.SYNAPSE_CORE_THREADS;
         int maxThreads  = SynapseThreadPool.SYNAPSE_MAX_THREADS;
         long keepAlive  = SynapseThreadPool.SYNAPSE_KEEP_ALIVE;
@@ -106,27 +147,31 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
             keepAlive = Long.parseLong(synCfg.getProperty(SynapseThreadPool.SYN_THREAD_ALIVE));
         } catch (Exception ignore) {}
 
-        this.executorService = new SynapseThreadPool(coreThreads, maxThreads, keepAlive, qLength,
-            synCfg.getProperty(SynapseThreadPool.SYN_THREAD_GROUP,
-                SynapseThreadPool.SYNAPSE_THREAD_GROUP),
-            synCfg.getProperty(SynapseThreadPool.SYN_THREAD_IDPREFIX,
-                SynapseThreadPool.SYNAPSE_THREAD_ID_PREFIX));
+        SynapseThreadPool threadPool = new SynapseThreadPool(coreThreads, maxThreads, keepAlive,
+            qLength, synCfg.getProperty(SynapseThreadPool.SYN_THREAD_GROUP,
+                SynapseThreadPool.SYNAPSE_THREAD_GROUP), threadIdPrefix);
 
-        taskManager = new SynapseTaskManager();
-        restHandler = new RESTRequestHandler();
-    }
+        if (Boolean.parseBoolean(synCfg.getProperty(SynapseThreadPool.SYN_THREAD_ADAPTIVE))) {
+            long targetWait = SynapseThreadPool.SYNAPSE_ADAPTIVE_TARGET_WAIT;
+            double maxCpu = SynapseThreadPool.SYNAPSE_ADAPTIVE_MAX_CPU;
 
-    public Axis2SynapseEnvironment(ConfigurationContext cfgCtx,
-        SynapseConfiguration synapseConfig) {
-        this(synapseConfig);
-        this.configContext = cfgCtx;
-        this.synapseConfig = synapseConfig;
-    }
+            try {
+                targetWait = Long.parseLong(synCfg.getProperty(
+                        SynapseThreadPool.SYN_THREAD_ADAPTIVE_TARGET_WAIT));
+            } catch (Exception ignore) {}
 
-    public Axis2SynapseEnvironment(ConfigurationContext cfgCtx,
-        SynapseConfiguration synapseConfig, ServerContextInformation contextInformation) {
-        this(cfgCtx, synapseConfig);
-        this.contextInformation = contextInformation;        
+            try {
+                maxCpu = Double.parseDouble(synCfg.getProperty(
+                        SynapseThreadPool.SYN_THREAD_ADAPTIVE_MAX_CPU));
+            } catch (Exception ignore) {}
+
+            threadPool.enableAdaptiveSizing(targetWait, maxCpu);
+            monitorThreadPool = true;
+        } else {
+            monitorThreadPool = Boolean.parseBoolean(
+                    synCfg.getProperty(SynapseThreadPool.SYN_THREAD_MONITORING));
+        }
+        return threadPool;
     }
 
     @Override
@@ -442,6 +487,16 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
      */
     @Override
     public void setInitialized(boolean state) {
+        if (state && !initialized && executorService instanceof SynapseThreadPool) {
+            SynapseThreadPool threadPool = (SynapseThreadPool) executorService;
+            if (monitorThreadPool) {
+                threadPool.enableMonitoring(threadIdPrefix + "-monitor");
+            }
+            MBeanRegistrar.getInstance().registerMBean(new SynapseThreadPoolView(threadPool),
+                    THREAD_POOL_CATEGORY, threadIdPrefix);
+        } else if (!state && initialized) {
+            MBeanRegistrar.getInstance().unRegisterMBean(THREAD_POOL_CATEGORY, threadIdPrefix);
+        }
         this.initialized = state;
     }
 
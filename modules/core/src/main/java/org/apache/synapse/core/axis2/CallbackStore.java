@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import org.apache.axis2.client.async.AxisCallback;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.util.concurrent.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the callbacks registered for the outstanding requests sent out by Synapse, keyed by
+ * the message ID of the request. Registering and removing a callback are constant time, non
+ * blocking operations. The timeouts of the {@link AsyncCallback}s are tracked by a timing
+ * wheel, so that the {@link TimeoutHandler} only visits the callbacks which are due instead
+ * of scanning the whole store.
+ * <p/>
+ * A callback with a timeout action expires at its timeout time, while a callback without a
+ * timeout action expires after the global timeout on top of that.
+ * <p/>
+ * The store also keeps the number of in-flight requests and timeouts per endpoint, which are
+ * exposed through the {@link SynapseCallbackStoreView}.
+ */
+public class CallbackStore {
+
+    /** Length of the time covered by a slot of the timing wheel */
+    private static final long TICK_MILLIS = 1000;
+
+    /** Number of slots of the timing wheel */
+    private static final int WHEEL_SIZE = 512;
+
+    /** Upper bound on the number of endpoints tracked individually */
+    private static final int MAX_TRACKED_ENDPOINTS = 1024;
+
+    private static final String OTHER_ENDPOINTS = "[other endpoints]";
+
+    private static final String UNKNOWN_ENDPOINT = "[unknown endpoint]";
+
+    private final ConcurrentMap<String, AxisCallback> callbacks =
+            new ConcurrentHashMap<String, AxisCallback>();
+
+    private final TimerWheel<AsyncCallback> wheel;
+
+    private final ConcurrentMap<String, EndpointCounters> endpoints =
+            new ConcurrentHashMap<String, EndpointCounters>();
+
+    /** The callbacks expired by the current call to {@link #expire(long)} */
+    private List<AsyncCallback> expired = null;
+
+    private volatile long globalTimeout;
+
+    private final AtomicLong registeredCount = new AtomicLong(0);
+
+    private final AtomicLong timeoutCount = new AtomicLong(0);
+
+    private long lastRateTime = System.currentTimeMillis();
+
+    private long lastRateTimeouts = 0;
+
+    private volatile double timeoutRate = 0.0;
+
+    /**
+     * @param globalTimeout the time in millis after which the callbacks without a timeout
+     *                      action are expired, counting from their timeout time
+     */
+    public CallbackStore(long globalTimeout) {
+        this.globalTimeout = globalTimeout;
+        this.wheel = new TimerWheel<AsyncCallback>(TICK_MILLIS, WHEEL_SIZE,
+                new TimerWheel.ExpiryHandler<AsyncCallback>() {
+                    @Override
+                    public void expired(AsyncCallback callback) {
+                        if (callbacks.remove(callback.getMessageID(), callback)) {
+                            timeoutCount.incrementAndGet();
+                            EndpointCounters counters = getCounters(callback);
+                            counters.inFlight.decrementAndGet();
+                            counters.timeouts.incrementAndGet();
+                            expired.add(callback);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Register a callback for the request with the given message ID
+     *
+     * @param messageID message ID of the outgoing request
+     * @param callback the callback to be invoked on the response
+     */
+    public void put(String messageID, AxisCallback callback) {
+        AxisCallback previous = callbacks.put(messageID, callback);
+        if (previous != null) {
+            released(previous);
+        }
+
+        registeredCount.incrementAndGet();
+        if (callback instanceof AsyncCallback) {
+            AsyncCallback asyncCallback = (AsyncCallback) callback;
+            asyncCallback.setMessageID(messageID);
+            getCounters(asyncCallback).inFlight.incrementAndGet();
+
+            long deadline = asyncCallback.getTimeOutOn();
+            if (asyncCallback.getTimeOutAction() == SynapseConstants.NONE) {
+                deadline += globalTimeout;
+            }
+            asyncCallback.setTimeout(wheel.schedule(asyncCallback, deadline));
+        }
+    }
+
+    /**
+     * Remove the callback registered for the request with the given message ID
+     *
+     * @param messageID message ID of the outgoing request
+     * @return the callback or null if there is no callback registered (anymore)
+     */
+    public AxisCallback remove(String messageID) {
+        AxisCallback callback = callbacks.remove(messageID);
+        if (callback != null) {
+            released(callback);
+        }
+        return callback;
+    }
+
+    public boolean containsKey(String messageID) {
+        return callbacks.containsKey(messageID);
+    }
+
+    public int size() {
+        return callbacks.size();
+    }
+
+    /**
+     * @return the message IDs of the pending callbacks
+     */
+    public String[] getMessageIDs() {
+        List<String> list = new ArrayList<String>(callbacks.keySet());
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Remove the callbacks which have expired by the given time from the store
+     *
+     * @param now the current time in millis
+     * @return the expired callbacks
+     */
+    public synchronized List<AsyncCallback> expire(long now) {
+        expired = new ArrayList<AsyncCallback>();
+        try {
+            wheel.expire(now);
+            return expired;
+        } finally {
+            expired = null;
+            updateTimeoutRate(now);
+        }
+    }
+
+    /**
+     * Set the time after which the callbacks without a timeout action are expired, counting
+     * from their timeout time. This applies to the callbacks registered from now on.
+     *
+     * @param globalTimeout the global timeout in millis
+     */
+    public void setGlobalTimeout(long globalTimeout) {
+        this.globalTimeout = globalTimeout;
+    }
+
+    public long getRegisteredCount() {
+        return registeredCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return timeouts per second, as observed between the last two calls to
+     * {@link #expire(long)}
+     */
+    public double getTimeoutRate() {
+        return timeoutRate;
+    }
+
+    public Map<String, Integer> getInFlightCountByEndpoint() {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for (Map.Entry<String, EndpointCounters> entry : endpoints.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().inFlight.get());
+        }
+        return map;
+    }
+
+    public Map<String, Long> getTimeoutCountByEndpoint() {
+        Map<String, Long> map = new HashMap<String, Long>();
+        for (Map.Entry<String, EndpointCounters> entry : endpoints.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().timeouts.get());
+        }
+        return map;
+    }
+
+    /**
+     * Reset the timeout statistics, the in-flight counts are not affected
+     */
+    public void resetStatistics() {
+        registeredCount.set(0);
+        timeoutCount.set(0);
+        for (EndpointCounters counters : endpoints.values()) {
+            counters.timeouts.set(0);
+        }
+        synchronized (this) {
+            lastRateTimeouts = 0;
+            timeoutRate = 0.0;
+        }
+    }
+
+    private void released(AxisCallback callback) {
+        if (callback instanceof AsyncCallback) {
+            AsyncCallback asyncCallback = (AsyncCallback) callback;
+            TimerWheel.Timeout<AsyncCallback> timeout = asyncCallback.getTimeout();
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            getCounters(asyncCallback).inFlight.decrementAndGet();
+        }
+    }
+
+    private void updateTimeoutRate(long now) {
+        long timeouts = timeoutCount.get();
+        long elapsed = now - lastRateTime;
+        if (elapsed > 0) {
+            timeoutRate = (timeouts - lastRateTimeouts) * 1000.0 / elapsed;
+            lastRateTime = now;
+            lastRateTimeouts = timeouts;
+        }
+    }
+
+    private EndpointCounters getCounters(AsyncCallback callback) {
+        String name = callback.getEndpointName();
+        if (name == null) {
+            name = UNKNOWN_ENDPOINT;
+        }
+        EndpointCounters counters = endpoints.get(name);
+        if (counters == null) {
+            if (endpoints.size() >= MAX_TRACKED_ENDPOINTS) {
+                name = OTHER_ENDPOINTS;
+            }
+            counters = new EndpointCounters();
+            EndpointCounters existing = endpoints.putIfAbsent(name, counters);
+            if (existing != null) {
+                counters = existing;
+            }
+        }
+        return counters;
+    }
+
+    private static class EndpointCounters {
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        private final AtomicLong timeouts = new AtomicLong(0);
+    }
+}
@@ -44,6 +44,7 @@ import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.algorithms.AbstractLoadAwareAlgorithm;
 import org.apache.synapse.endpoints.dispatch.Dispatcher;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
@@ -70,13 +71,14 @@ public class SynapseCallbackReceiver implements MessageReceiver {
 
     private static final SynapseCallbackReceiver instance = new SynapseCallbackReceiver();
 
-    /** This is the synchronized callbackStore that maps outgoing messageID's to callback objects */
-    private final Map<String, AxisCallback> callbackStore;  // will be made thread safe in the constructor
+    /** This is the concurrent callbackStore that maps outgoing messageID's to callback objects */
+    private final CallbackStore callbackStore;
 
     private boolean initialized = false;
 
     private SynapseCallbackReceiver() {
-        callbackStore = Collections.synchronizedMap(new HashMap<String, AxisCallback>());
+        // the configured global timeout is only read once the receiver is initialized
+        callbackStore = new CallbackStore(SynapseConstants.DEFAULT_GLOBAL_TIMEOUT);
     }
 
     /**
@@ -107,6 +109,8 @@ public class SynapseCallbackReceiver implements MessageReceiver {
             log.debug("Initializing SynapseCallbackReceiver");
         }
 
+        callbackStore.setGlobalTimeout(SynapseConfigUtils.getGlobalTimeoutInterval());
+
         // create the Timer object and a TimeoutHandler task
         TimeoutHandler timeoutHandler = new TimeoutHandler(callbackStore, contextInformation);
         
@@ -143,15 +147,14 @@ public class SynapseCallbackReceiver implements MessageReceiver {
     }
 
     public String[] getPendingCallbacks() {
-        Set<String> keys = callbackStore.keySet();
-        List<String> list = new ArrayList<String>();
-        synchronized (callbackStore) {
-            Iterator<String> iterator = keys.iterator();
-            while (iterator.hasNext()) {
-                list.add(iterator.next());
-            }
-        }
-        return list.toArray(new String[list.size()]);
+        return callbackStore.getMessageIDs();
+    }
+
+    /**
+     * @return the callback store holding the callbacks of the outstanding requests
+     */
+    public CallbackStore getCallbackStore() {
+        return callbackStore;
     }
 
     public void addCallback(String MsgID, AxisCallback callback) {
@@ -181,8 +184,12 @@ public class SynapseCallbackReceiver implements MessageReceiver {
          */
         if (messageCtx.getProperty(NhttpConstants.HTTP_202_RECEIVED) != null && "true".equals(
                 messageCtx.getProperty(NhttpConstants.HTTP_202_RECEIVED))) {
-            if (callbackStore.containsKey(messageCtx.getMessageID())) {
-                callbackStore.remove(messageCtx.getMessageID());
+            AxisCallback callback = callbackStore.remove(messageCtx.getMessageID());
+            if (callback != null) {
+                if (callback instanceof AsyncCallback) {
+                    AbstractLoadAwareAlgorithm.completeDispatches(
+                            ((AsyncCallback) callback).getSynapseOutMsgCtx(), true);
+                }
                 if (log.isDebugEnabled()) {
                     log.debug("CallBack registered with Message id : " + messageCtx.getMessageID() +
                             " removed from the " +
@@ -252,6 +259,12 @@ public class SynapseCallbackReceiver implements MessageReceiver {
         org.apache.synapse.MessageContext synapseOutMsgCtx, AsyncCallback callback) throws AxisFault {
 
         Object o = response.getProperty(SynapseConstants.SENDING_FAULT);
+
+        // let the load balance algorithms know the outcome, before a fault handler
+        // picks another endpoint for the message
+        AbstractLoadAwareAlgorithm.completeDispatches(synapseOutMsgCtx,
+                !(o != null && Boolean.TRUE.equals(o)));
+
         if (o != null && Boolean.TRUE.equals(o)) {
 
             Pipe pipe = (Pipe) ((Axis2MessageContext) synapseOutMsgCtx).getAxis2MessageContext()
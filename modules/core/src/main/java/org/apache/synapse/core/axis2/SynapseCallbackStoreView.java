@@ -19,6 +19,8 @@
 
 package org.apache.synapse.core.axis2;
 
+import java.util.Map;
+
 public class SynapseCallbackStoreView implements SynapseCallbackStoreViewMBean {
 
     private SynapseCallbackReceiver receiver;
@@ -36,4 +38,41 @@ public class SynapseCallbackStoreView implements SynapseCallbackStoreViewMBean {
     public String[] getPendingCallbacks() {
         return receiver.getPendingCallbacks();
     }
+
+    @Override
+    public Map<String, Integer> getInFlightCallbacksByEndpoint() {
+        return receiver.getCallbackStore().getInFlightCountByEndpoint();
+    }
+
+    @Override
+    public Map<String, Long> getTimeoutsByEndpoint() {
+        return receiver.getCallbackStore().getTimeoutCountByEndpoint();
+    }
+
+    @Override
+    public long getRegisteredCallbackCount() {
+        return receiver.getCallbackStore().getRegisteredCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return receiver.getCallbackStore().getTimeoutCount();
+    }
+
+    @Override
+    public double getTimeoutRate() {
+        return receiver.getCallbackStore().getTimeoutRate();
+    }
+
+    @Override
+    public double getTimeoutRatio() {
+        CallbackStore store = receiver.getCallbackStore();
+        long registered = store.getRegisteredCount();
+        return registered == 0 ? 0.0 : (double) store.getTimeoutCount() / registered;
+    }
+
+    @Override
+    public void resetStatistics() {
+        receiver.getCallbackStore().resetStatistics();
+    }
 }
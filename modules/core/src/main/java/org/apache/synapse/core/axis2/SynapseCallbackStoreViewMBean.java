@@ -19,6 +19,8 @@
 
 package org.apache.synapse.core.axis2;
 
+import java.util.Map;
+
 /**
  * JMX MBean interface for monitoring the Synapse callback store.
  */
@@ -38,4 +40,50 @@ public interface SynapseCallbackStoreViewMBean {
      */
     public String[] getPendingCallbacks();
 
+    /**
+     * Get the number of in-flight requests (pending callbacks) per endpoint
+     *
+     * @return A map of endpoint names to in-flight request counts
+     */
+    public Map<String, Integer> getInFlightCallbacksByEndpoint();
+
+    /**
+     * Get the number of requests timed out per endpoint, since the last reset
+     *
+     * @return A map of endpoint names to timeout counts
+     */
+    public Map<String, Long> getTimeoutsByEndpoint();
+
+    /**
+     * Get the number of callbacks registered since the last reset
+     *
+     * @return A long
+     */
+    public long getRegisteredCallbackCount();
+
+    /**
+     * Get the number of callbacks timed out since the last reset
+     *
+     * @return A long
+     */
+    public long getTimeoutCount();
+
+    /**
+     * Get the number of timeouts per second, as observed by the last run of the timeout handler
+     *
+     * @return A double
+     */
+    public double getTimeoutRate();
+
+    /**
+     * Get the fraction of the registered callbacks which timed out since the last reset
+     *
+     * @return A double between 0 and 1
+     */
+    public double getTimeoutRatio();
+
+    /**
+     * Reset the timeout statistics
+     */
+    public void resetStatistics();
 }
@@ -28,16 +28,18 @@ import org.apache.synapse.ServerContextInformation;
 import org.apache.synapse.aspects.statistics.StatisticsCleaner;
 import org.apache.synapse.aspects.statistics.StatisticsCollector;
 import org.apache.synapse.config.SynapseConfigUtils;
+import org.apache.synapse.endpoints.algorithms.AbstractLoadAwareAlgorithm;
 import org.apache.synapse.endpoints.dispatch.SALSessions;
 
-import java.util.Map;
+import java.util.List;
 import java.util.Stack;
 import java.util.TimerTask;
 
 /**
  * An object of this class is registered to be invoked in some predefined time intervals. This
- * checks the timeouts of callbacks stored in the SynapseCallbackReceiver and removes all expired
- * callbacks. Timeouts of the callbacks are stored as the time, not the duration. So that the
+ * removes the expired callbacks from the callback store of the SynapseCallbackReceiver, which
+ * tracks the timeouts with a timing wheel so that only the expired callbacks are visited.
+ * Timeouts of the callbacks are stored as the time, not the duration. So that the
  * time or the interval of invoking this class does not affect the correctness of the timeouts,
  * although longer intervals would introduce larger error between the actual timeout and the
  * specified timeout.
@@ -50,8 +52,8 @@ public class TimeoutHandler extends TimerTask {
 
     private static final Log log = LogFactory.getLog(TimeoutHandler.class);
 
-    /** The callback map - already a Collections.synchronized() hash map */
-    private final Map callbackStore;
+    /** The callback store of the SynapseCallbackReceiver */
+    private final CallbackStore callbackStore;
     /** a lock to prevent concurrent execution while ensuring least overhead */
     private final Object lock = new Object();
     private boolean alreadyExecuting = false;
@@ -61,7 +63,7 @@ public class TimeoutHandler extends TimerTask {
     private StatisticsCleaner statisticsCleaner;
     private ServerContextInformation contextInfo = null;
 
-    public TimeoutHandler(Map callbacks, ServerContextInformation contextInfo) {
+    public TimeoutHandler(CallbackStore callbacks, ServerContextInformation contextInfo) {
         this.callbackStore = callbacks;
         this.contextInfo = contextInfo;
         this.globalTimeout = SynapseConfigUtils.getGlobalTimeoutInterval();
@@ -103,60 +105,37 @@ public class TimeoutHandler extends TimerTask {
         //clear all the expired sessions
         SALSessions.getInstance().clearSessions();
 
-        // checks if callback store contains at least one entry before proceeding. otherwise getting
-        // the time for doing nothing would be a inefficient task.
+        // the callback store hands over only the expired callbacks, which have already been
+        // removed from the store, so a response arriving meanwhile will not find them
+        List<AsyncCallback> expired = callbackStore.expire(currentTime());
 
-        // we have to synchronize this on the callbackStore as iterators of thread safe collections
-        // are not thread safe. callbackStore can be modified
-        // concurrently by the SynapseCallbackReceiver.
-        synchronized(callbackStore) {
+        for (AsyncCallback callback : expired) {
 
-            if (callbackStore.size() > 0) {
+            AbstractLoadAwareAlgorithm.completeDispatches(callback.getSynapseOutMsgCtx(), false);
 
-                long currentTime = currentTime();
+            if (callback.getTimeOutAction() == SynapseConstants.NONE) {
+                log.warn("Expiring message ID : " + callback.getMessageID() + "; dropping " +
+                        "message after global timeout of : " + (globalTimeout / 1000) +
+                        " seconds");
 
-                for (Object key : callbackStore.keySet()) {
+            } else if (callback.getTimeOutAction() == SynapseConstants.DISCARD_AND_FAULT) {
 
-                    AsyncCallback callback = (AsyncCallback) callbackStore.get(key);
-                    if (callback == null) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("There is no callback for key :" + key);
-                        }
-                        continue;
-                    }
-                    if (callback.getTimeOutAction() != SynapseConstants.NONE) {
-
-                        if (callback.getTimeOutOn() <= currentTime) {
-                            callbackStore.remove(key);
-
-                            if (callback.getTimeOutAction() == SynapseConstants.DISCARD_AND_FAULT) {
-
-                                // actiavte the fault sequence of the current sequence mediator
-                                MessageContext msgContext = callback.getSynapseOutMsgCtx();
-
-                                // add an error code to the message context, so that error sequences
-                                // can identify the cause of error
-                                msgContext.setProperty(SynapseConstants.ERROR_CODE,
-                                        SynapseConstants.HANDLER_TIME_OUT);
-                                msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
-                                        SEND_TIMEOUT_MESSAGE);
-
-                                Stack faultStack = msgContext.getFaultStack();
+                // actiavte the fault sequence of the current sequence mediator
+                MessageContext msgContext = callback.getSynapseOutMsgCtx();
 
-                                for (int j = 0; j < faultStack.size(); j++) {
-                                    Object o = faultStack.pop();
-                                    if (o instanceof FaultHandler) {
-                                        ((FaultHandler) o).handleFault(msgContext);
-                                    }
-                                }
+                // add an error code to the message context, so that error sequences
+                // can identify the cause of error
+                msgContext.setProperty(SynapseConstants.ERROR_CODE,
+                        SynapseConstants.HANDLER_TIME_OUT);
+                msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
+                        SEND_TIMEOUT_MESSAGE);
 
-                            }
-                        }
+                Stack faultStack = msgContext.getFaultStack();
 
-                    } else if (currentTime > globalTimeout + callback.getTimeOutOn()) {
-                        log.warn("Expiring message ID : " + key + "; dropping message after " +
-                                "global timeout of : " + (globalTimeout / 1000) + " seconds");
-                        callbackStore.remove(key);
+                for (int j = 0; j < faultStack.size(); j++) {
+                    Object o = faultStack.pop();
+                    if (o instanceof FaultHandler) {
+                        ((FaultHandler) o).handleFault(msgContext);
                     }
                 }
             }
@@ -0,0 +1,280 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.axis2.clustering.Member;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.PropertyInclude;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.mediators.MediatorProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Base class for the load balance algorithms which choose the endpoints based on the
+ * outcome of the messages previously sent to them. The number of outstanding requests of
+ * each endpoint is tracked, and the response time of each completed request is reported to
+ * the algorithm through {@link #completeDispatches(MessageContext, boolean)}, which is called
+ * by the Synapse callback receiver when the response, the fault or the timeout of a request
+ * is processed.
+ * <p/>
+ * An endpoint is chosen by sampling two ready endpoints at random and picking the one with
+ * the lower cost (the power of two choices). This avoids both scanning all the endpoints for
+ * every message and herding all the concurrent messages to the same endpoint.
+ */
+public abstract class AbstractLoadAwareAlgorithm implements LoadbalanceAlgorithm,
+        ManagedLifecycle {
+
+    private static final Log log = LogFactory.getLog(AbstractLoadAwareAlgorithm.class);
+
+    /**
+     * The message context property holding the requests dispatched by these algorithms
+     * and not completed yet
+     */
+    public static final String PENDING_DISPATCHES = "_SYNAPSE_LB_PENDING_DISPATCHES";
+
+    /** Endpoints list */
+    protected List<Endpoint> endpoints;
+
+    /** The load balance endpoint using this algorithm */
+    protected Endpoint loadBalanceEndpoint;
+
+    /** Number of outstanding requests of each endpoint, by position */
+    private volatile AtomicIntegerArray outstandingRequests = new AtomicIntegerArray(0);
+
+    @Override
+    public void setApplicationMembers(List<Member> members) {
+        throw new UnsupportedOperationException("This algorithm doesn't operate on Members");
+    }
+
+    @Override
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+        this.outstandingRequests = new AtomicIntegerArray(endpoints != null ? endpoints.size() : 0);
+        endpointsChanged(endpoints != null ? endpoints.size() : 0);
+    }
+
+    @Override
+    public void setLoadBalanceEndpoint(Endpoint endpoint) {
+        this.loadBalanceEndpoint = endpoint;
+    }
+
+    @Override
+    public Endpoint getNextEndpoint(MessageContext synCtx, AlgorithmContext algorithmContext) {
+        int size = endpoints.size();
+        if (size == 0) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = size > 1 ? (first + 1 + random.nextInt(size - 1)) % size : first;
+
+        int chosen;
+        boolean firstReady = endpoints.get(first).readyToSend();
+        boolean secondReady = second != first && endpoints.get(second).readyToSend();
+        if (firstReady && secondReady) {
+            chosen = getCost(second, now) < getCost(first, now) ? second : first;
+        } else if (firstReady) {
+            chosen = first;
+        } else if (secondReady) {
+            chosen = second;
+        } else {
+            // fall back to the cheapest of the remaining ready endpoints
+            chosen = -1;
+            double lowest = Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (i != first && i != second && endpoints.get(i).readyToSend()) {
+                    double cost = getCost(i, now);
+                    if (chosen == -1 || cost < lowest) {
+                        chosen = i;
+                        lowest = cost;
+                    }
+                }
+            }
+            if (chosen == -1) {
+                return null;
+            }
+        }
+
+        dispatched(synCtx, chosen);
+        return endpoints.get(chosen);
+    }
+
+    @Override
+    public Member getNextApplicationMember(AlgorithmContext algorithmContext) {
+        throw new UnsupportedOperationException("This algorithm doesn't operate on Members");
+    }
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        if (endpoints == null) {
+            String msg = "Endpoints are not set, cannot initialize the algorithm";
+            log.error(msg);
+            throw new SynapseException(msg);
+        }
+    }
+
+    @Override
+    public void destroy() {}
+
+    @Override
+    public abstract LoadbalanceAlgorithm clone();
+
+    /**
+     * @param position position of the endpoint
+     * @return number of requests sent to the endpoint and not completed yet
+     */
+    public int getOutstandingRequests(int position) {
+        return outstandingRequests.get(position);
+    }
+
+    /**
+     * Compute the cost of sending the next message to an endpoint. The endpoint with the
+     * lower cost is preferred.
+     *
+     * @param position position of the endpoint
+     * @param now      the current time in milliseconds
+     * @return the cost of the endpoint
+     */
+    protected abstract double getCost(int position, long now);
+
+    /**
+     * Invoked when a request sent to an endpoint is completed
+     *
+     * @param position     position of the endpoint
+     * @param responseTime time taken to complete the request in milliseconds
+     * @param success      whether a response was received, as opposed to a fault or a timeout
+     */
+    protected void onCompletion(int position, long responseTime, boolean success) {}
+
+    /**
+     * Invoked when the list of endpoints is changed
+     *
+     * @param size the number of endpoints
+     */
+    protected void endpointsChanged(int size) {}
+
+    /**
+     * Read a numeric property of the load balance endpoint
+     *
+     * @param name         name of the property
+     * @param defaultValue value to be used if the property is not set
+     * @return the value of the property
+     */
+    protected long getLongProperty(String name, long defaultValue) {
+        if (loadBalanceEndpoint instanceof PropertyInclude) {
+            MediatorProperty property = ((PropertyInclude) loadBalanceEndpoint).getProperty(name);
+            if (property != null) {
+                try {
+                    return Long.parseLong(property.getValue().trim());
+                } catch (NumberFormatException e) {
+                    String msg = "Invalid value : " + property.getValue() + " for the " +
+                            "load balance property : " + name;
+                    log.error(msg);
+                    throw new SynapseException(msg, e);
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatched(MessageContext synCtx, int position) {
+        AtomicIntegerArray outstanding = outstandingRequests;
+        outstanding.incrementAndGet(position);
+
+        // never modify the list of a message, it may be shared with a clone
+        Object pending = synCtx.getProperty(PENDING_DISPATCHES);
+        List<Dispatch> dispatches = new ArrayList<Dispatch>();
+        if (pending instanceof List) {
+            dispatches.addAll((List<Dispatch>) pending);
+        }
+        dispatches.add(new Dispatch(this, outstanding, position));
+        synCtx.setProperty(PENDING_DISPATCHES, Collections.unmodifiableList(dispatches));
+    }
+
+    /**
+     * Complete the requests of the given message dispatched by the load aware algorithms,
+     * if any. This releases the requests from the outstanding requests of the endpoints,
+     * and reports their response times to the algorithms.
+     *
+     * @param synCtx  the message sent to the endpoints
+     * @param success whether a response was received, as opposed to a fault or a timeout
+     */
+    public static void completeDispatches(MessageContext synCtx, boolean success) {
+        Object pending = synCtx.getProperty(PENDING_DISPATCHES);
+        if (!(pending instanceof List)) {
+            return;
+        }
+        // setting a null value does not remove a property of the message
+        synCtx.getPropertyKeySet().remove(PENDING_DISPATCHES);
+
+        long now = System.currentTimeMillis();
+        for (Object o : (List) pending) {
+            Dispatch dispatch = (Dispatch) o;
+            if (!dispatch.completed.compareAndSet(false, true)) {
+                // already completed, possibly through a clone of the message
+                continue;
+            }
+            dispatch.outstanding.decrementAndGet(dispatch.position);
+            // requests dispatched before the endpoints were changed are not reported
+            if (dispatch.outstanding == dispatch.algorithm.outstandingRequests) {
+                dispatch.algorithm.onCompletion(dispatch.position, now - dispatch.startTime,
+                        success);
+            }
+        }
+    }
+
+    /**
+     * A request sent to an endpoint
+     */
+    private static class Dispatch {
+
+        private final AbstractLoadAwareAlgorithm algorithm;
+
+        private final AtomicIntegerArray outstanding;
+
+        private final int position;
+
+        private final long startTime = System.currentTimeMillis();
+
+        /** Whether the request has been completed, so that it is completed only once */
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        private Dispatch(AbstractLoadAwareAlgorithm algorithm, AtomicIntegerArray outstanding,
+                         int position) {
+            this.algorithm = algorithm;
+            this.outstanding = outstanding;
+            this.position = position;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.apache.synapse.util.Replicator;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Keeps the runtime state of the algorithm
@@ -49,7 +50,7 @@ public class AlgorithmContext {
     private String PROPERTY_KEY_PREFIX;
 
     /* The pointer to current epr - The position of the current EPR */
-    private int currentEPR = 0;
+    private final AtomicInteger currentEPR = new AtomicInteger(0);
 
     /* The map of properties stored locally */
     private Map<String, Object> localProperties;
@@ -83,7 +84,7 @@ public class AlgorithmContext {
                 return ((Integer) value);
             }
         } else {
-            return currentEPR;
+            return currentEPR.get();
         }
         return 0;
     }
@@ -94,10 +95,41 @@ public class AlgorithmContext {
      * @param currentEPR The current position
      */
     public void setCurrentEndpointIndex(int currentEPR) {
-        this.currentEPR = currentEPR;
+        this.currentEPR.set(currentEPR);
         cfgCtx.setNonReplicableProperty(CURRENT_EPR_PROP_KEY, currentEPR);
     }
 
+    /**
+     * Move the pointer to the next EPR in a list of the given size, and return the position
+     * it was pointing to. In a non-clustered environment this does not block concurrent
+     * callers, each of which gets a different position.
+     *
+     * @param size number of EPRs
+     * @return The position of the EPR to be used
+     */
+    public int getAndIncrementEndpointIndex(int size) {
+
+        if (isClusteringEnabled) {
+            synchronized (this) {
+                int current = getCurrentEndpointIndex();
+                if (current >= size) {
+                    current = 0;
+                }
+                setCurrentEndpointIndex(current == size - 1 ? 0 : current + 1);
+                return current;
+            }
+        }
+
+        while (true) {
+            int current = currentEPR.get();
+            int position = current >= size ? 0 : current;
+            int next = position == size - 1 ? 0 : position + 1;
+            if (currentEPR.compareAndSet(current, next)) {
+                return position;
+            }
+        }
+    }
+
     /**
      * Get the configuration context instance . This is only available for cluster env.
      *
@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+/**
+ * This algorithm sends each message to the endpoint with the least number of outstanding
+ * requests, i.e. requests sent through this load balance endpoint for which a response has
+ * not been received yet. A slow endpoint accumulates outstanding requests, and therefore
+ * receives fewer new messages than the others.
+ * <p/>
+ * Two ready endpoints are sampled at random for each message, and the one with fewer
+ * outstanding requests is chosen.
+ */
+public class LeastOutstandingRequests extends AbstractLoadAwareAlgorithm {
+
+    @Override
+    protected double getCost(int position, long now) {
+        return getOutstandingRequests(position);
+    }
+
+    @Override
+    public void reset(AlgorithmContext algorithmContext) {
+        // the outstanding requests are still in progress, nothing to reset
+    }
+
+    @Override
+    public String getName() {
+        return LeastOutstandingRequests.class.getName();
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new LeastOutstandingRequests();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.synapse.core.SynapseEnvironment;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This algorithm sends each message to the endpoint with the lowest expected response time.
+ * An exponentially weighted moving average of the response time is kept for each endpoint,
+ * and is multiplied by the number of outstanding requests of the endpoint (plus one) to
+ * estimate the time the next message would take. A response time higher than the average
+ * replaces the average at once, so that a slow endpoint is avoided as soon as it slows down,
+ * while improvements are taken into account gradually.
+ * <p/>
+ * The following properties of the load balance endpoint configure the algorithm:
+ * <ul>
+ * <li>loadbalance.ewma.window - the time (in milliseconds) over which the past response times
+ * lose most of their influence on the average. Defaults to 10 seconds. The average of an
+ * endpoint which did not receive any message for a while decays over the same window, so that
+ * a recovered endpoint is eventually tried again.</li>
+ * <li>loadbalance.ewma.failurePenalty - the response time (in milliseconds) recorded for a
+ * request which ends in a fault or a timeout. Defaults to 10 seconds.</li>
+ * </ul>
+ * Endpoints which did not complete any request yet have an average of zero, so they are
+ * preferred until their first response time is known.
+ */
+public class LeastResponseTime extends AbstractLoadAwareAlgorithm {
+
+    public static final String LB_EWMA_WINDOW = "loadbalance.ewma.window";
+
+    public static final String LB_EWMA_FAILURE_PENALTY = "loadbalance.ewma.failurePenalty";
+
+    private long window = 10000;
+
+    private long failurePenalty = 10000;
+
+    /** The moving average of each endpoint, stored as the bits of a double */
+    private volatile AtomicLongArray averages = new AtomicLongArray(0);
+
+    /** The last time the moving average of each endpoint was updated */
+    private volatile AtomicLongArray updateTimes = new AtomicLongArray(0);
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+        window = getLongProperty(LB_EWMA_WINDOW, window);
+        failurePenalty = getLongProperty(LB_EWMA_FAILURE_PENALTY, failurePenalty);
+        if (window <= 0) {
+            window = 1;
+        }
+    }
+
+    @Override
+    protected void endpointsChanged(int size) {
+        updateTimes = new AtomicLongArray(size);
+        averages = new AtomicLongArray(size);
+    }
+
+    @Override
+    protected double getCost(int position, long now) {
+        return getAverageResponseTime(position, now) * (getOutstandingRequests(position) + 1);
+    }
+
+    @Override
+    protected void onCompletion(int position, long responseTime, boolean success) {
+        double sample = success ? responseTime : Math.max(responseTime, failurePenalty);
+        AtomicLongArray averages = this.averages;
+        AtomicLongArray updateTimes = this.updateTimes;
+        long now = System.currentTimeMillis();
+
+        while (true) {
+            long bits = averages.get(position);
+            long last = updateTimes.get(position);
+            double average = Double.longBitsToDouble(bits);
+            double updated;
+            if (last == 0 || sample > average) {
+                // react to a slow down immediately, rather than waiting for it to sink in
+                updated = sample;
+            } else {
+                // the longer since the last update, the more the new sample counts
+                double weight = Math.exp(-Math.max(now - last, 0) / (double) window);
+                updated = average * weight + sample * (1 - weight);
+            }
+            if (averages.compareAndSet(position, bits, Double.doubleToLongBits(updated))) {
+                updateTimes.set(position, now);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param position position of the endpoint
+     * @param now      the current time in milliseconds
+     * @return the moving average of the response time of the endpoint, in milliseconds
+     */
+    public double getAverageResponseTime(int position, long now) {
+        double average = Double.longBitsToDouble(averages.get(position));
+        long last = updateTimes.get(position);
+        if (last == 0 || now <= last) {
+            return average;
+        }
+        // forget an endpoint which has not been used for a while
+        return average * Math.exp(-(now - last) / (double) window);
+    }
+
+    @Override
+    public void reset(AlgorithmContext algorithmContext) {
+        endpointsChanged(averages.length());
+    }
+
+    @Override
+    public String getName() {
+        return LeastResponseTime.class.getName();
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new LeastResponseTime();
+    }
+}
@@ -35,6 +35,8 @@ import org.apache.commons.logging.LogFactory;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.net.URL;
 import java.net.MalformedURLException;
 
@@ -50,6 +52,11 @@ import java.net.MalformedURLException;
  * to endpoint weight to total weights ratio. If the ratios are different it tries to align them
  * by changing the weights dynamically.</p>
  *
+ * <p> The order of the messages within a round is computed when the round starts, and the
+ * position within the round is advanced atomically. Only the thread completing a round
+ * recalculates the weights and starts the next round; concurrent messages arriving in the
+ * meantime keep on using the previous round, or wait on a lock for the next round if the
+ * previous one was empty.</p>
  */
 public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifecycle {
     private static final Log log = LogFactory.getLog(WeightedRRLCAlgorithm.class);
@@ -63,8 +70,10 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     /** We keep a sorted array of endpoint states, first state will point to the
      * endpoint with the highest weight */
     private WeightedState[] list;
-    /** Keep track of the current poistion we are operating on the endpointStates array */
-    private int endpointCursor = 0;
+    /** The round currently in progress */
+    private volatile Round round;
+    /** Held by the thread completing the current round */
+    private final Lock roundLock = new ReentrantLock();
     /** How many rounds should go before re-calculating the dynamic weights based
      * on number of active connections */
     private int roundsPerRecalculation = 1;
@@ -73,7 +82,7 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     /** total weight of the endpoints */
     private int totalWeight = 0;
     /** current connection count */
-    private int totalConnections = 0;
+    private volatile int totalConnections = 0;
 
     public static final String LB_WEIGHTED_RRLC_ROUNDS_PER_RECAL =
             "loadbalance.weightedRRLC.roundsPerRecal";
@@ -96,33 +105,48 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     }
 
     @Override
-    public synchronized Endpoint getNextEndpoint(MessageContext messageContext,
-                                                 AlgorithmContext algorithmContext) {                
-        WeightedState s = list[endpointCursor];
-
-        // once we choose an endpoit we countinue to use that until all
-        // the chances are over for this round
-        if (!s.isSendsAvailable()) {
-            // reset this state for this round
-            s.resetPerRound();
-            do {
-                if (++endpointCursor == list.length) {
-                    endpointCursor = 0;             
-                    // if we we have gone through enough cycles to recalculate the weights based
-                    // on the current connection count recalculate the current weights
+    public Endpoint getNextEndpoint(MessageContext messageContext,
+                                    AlgorithmContext algorithmContext) {
+        while (true) {
+            Round r = round;
+            int slot = r.cursor.getAndIncrement();
+            if (slot >= 0 && slot < r.schedule.length) {
+                // get the endpoint corresponding to the current position and return it
+                return endpoints.get(list[r.schedule[slot]].getEndpointPosition());
+            }
+
+            // this round is over, only one thread moves on to the next round
+            if (!roundLock.tryLock()) {
+                if (r.schedule.length > 0) {
+                    // the next round is being prepared, keep on using the previous one
+                    int position = r.schedule[(slot & Integer.MAX_VALUE) % r.schedule.length];
+                    return endpoints.get(list[position].getEndpointPosition());
+                }
+                // nothing to fall back on, wait for the next round instead of spinning
+                roundLock.lock();
+            }
+
+            Round next;
+            try {
+                if (round == r) {
+                    // if we we have gone through enough cycles to recalculate the weights
+                    // based on the current connection count recalculate the current weights
                     if (++currentRound == roundsPerRecalculation) {
                         currentRound = 0;
-                        // we recalculate the current weights based on the connections and weights
+                        // we recalculate the current weights based on the connections
+                        // and weights
                         reCalcuateWeights(messageContext);
                     }
+                    round = new Round(list);
                 }
-                s = list[endpointCursor];
-            } while (!s.isSendsAvailable());
+                next = round;
+            } finally {
+                roundLock.unlock();
+            }
+            if (next.schedule.length == 0) {
+                return null;
+            }
         }
-
-        s.chosenToSend();
-        // get the endpoint correspondint to the current poistion and return it
-        return endpoints.get(s.getEndpointPosition());
     }
 
     /**
@@ -225,6 +249,8 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
                 return o2.getFixedWeight() - o1.getFixedWeight();
             }
         });
+
+        round = new Round(list);
     }
 
     @Override
@@ -238,6 +264,7 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
         for (WeightedState state : list) {
             state.reset();
         }
+        round = new Round(list);
     }
 
     @Override
@@ -251,7 +278,12 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     }
 
     public int getEndpointCursor() {
-        return endpointCursor;
+        Round r = round;
+        if (r.schedule.length == 0) {
+            return 0;
+        }
+        int slot = r.cursor.get();
+        return r.schedule[slot >= 0 && slot < r.schedule.length ? slot : 0];
     }
 
     public int getRoundsPerRecalculation() {
@@ -321,6 +353,31 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     @Override
     public void destroy() {}
 
+    /**
+     * The order in which the states are used within a round. Each state appears as many
+     * times as its current weight.
+     */
+    private static class Round {
+        /** positions in the states list */
+        private final int[] schedule;
+        /** next position in the schedule */
+        private final AtomicInteger cursor = new AtomicInteger(0);
+
+        private Round(WeightedState[] states) {
+            int length = 0;
+            for (WeightedState state : states) {
+                length += Math.max(state.getCurrentWeight(), 0);
+            }
+            schedule = new int[length];
+            int slot = 0;
+            for (int i = 0; i < states.length; i++) {
+                for (int j = 0; j < states[i].getCurrentWeight(); j++) {
+                    schedule[slot++] = i;
+                }
+            }
+        }
+    }
+
     /**
      * Simple class for holding the states about the endpoints.
      */
@@ -331,8 +388,6 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
         private int endpointPosition = 0;
         /** current weight of the algorithm, this is calculated based on sends through this epr */
         private int currentWeight = 1;
-        /** calculated weight for this round */
-        private int currentCalcWeight = 0;
         /** current connection count */
         private int currentConnectionCount = 0;
         /** minimum possible weight */
@@ -346,7 +401,6 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
             this.fixedWeight = weight;
             this.endpointPosition = endpointPosition;
             this.currentWeight = fixedWeight;
-            this.currentCalcWeight = fixedWeight;
             this.keyToConnectionCount = keyToConnectionCount;
             this.maxWeight = fixedWeight + LB_WEIGHTED_RRLC_WEIGHT_SKEW;
             this.minWeight = fixedWeight - LB_WEIGHTED_RRLC_WEIGHT_SKEW > 0 ?
@@ -361,14 +415,6 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
             return fixedWeight;
         }
 
-        public boolean isSendsAvailable() {
-            return currentCalcWeight > 0;
-        }
-
-        public void chosenToSend() {
-            currentCalcWeight--;
-        }
-
         public int getCurrentWeight() {
             return currentWeight;
         }
@@ -421,18 +467,12 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
                     // we always return the min from maxWeight and calculated Current weight
                     currentWeight = maxWeight < currentWeight ? maxWeight : currentWeight;
                 }
-                currentCalcWeight = currentWeight;
             }
         }
 
-        public void resetPerRound() {
-            currentCalcWeight = currentWeight;
-        }
-
         public void reset() {
             currentWeight = fixedWeight;
             currentConnectionCount = 0;
-            currentCalcWeight = fixedWeight;
         }
     }
 }
@@ -34,9 +34,7 @@ import org.apache.commons.logging.LogFactory;
 import java.util.List;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This algorithm sends messages based on the weights of the endpoints. For example we may
@@ -48,7 +46,13 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * </ul>
  * <p> This algorithm will send the first 5 messages through Epr1, next 3 messages through
  * Epr2 and next 2 messages with Epr3. Then algorithm moves again to the first endpoint
- * and cycle continues.</p>  
+ * and cycle continues.</p>
+ * <p> If the <code>loadbalance.smooth</code> property of the load balance endpoint is set to
+ * true, the messages of a cycle are interleaved instead (Epr1, Epr2, Epr3, Epr1, Epr1, Epr2, ...),
+ * so that no endpoint receives a burst of consecutive messages.</p>
+ * <p> The order of a cycle is computed up front whenever the weights change, and the
+ * position within the cycle is advanced atomically, so concurrent messages never wait for
+ * each other. Endpoints which are not ready to send are skipped.</p>
  */
 public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycle {
 
@@ -63,8 +67,11 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
 
     private Endpoint loadBalanceEndpoint;
 
-    /** Keep track of the current poistion we are operating on the endpointStates array */
-    private int endpointCursor = 0;
+    /** The positions of the endpoints to be used within a cycle, in order */
+    private volatile int[] schedule = new int[0];
+
+    /** Keep track of the current position we are operating on the schedule */
+    private final AtomicInteger scheduleCursor = new AtomicInteger(0);
 
     /** If a weight is not specified by the user, we use the default as 1 */
     private static final int DEFAULT_WEIGHT = 1;
@@ -75,11 +82,14 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
     /** Configuration key used by the endpoints for indicating their weight */
     private static final String LOADBALANCE_ThEADLOCAL = "loadbalance.threadLocal";
 
+    /** Configuration key used to interleave the messages sent to the endpoints */
+    private static final String LOADBALANCE_SMOOTH = "loadbalance.smooth";
+
     private boolean isThreadLocal = false;
 
-    private AlgorithmThreadLocal threadedAlgorithm = null;
+    private boolean isSmooth = false;
 
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    private AlgorithmThreadLocal threadedAlgorithm = null;
 
     private WeightedRoundRobinViewMBean view;
 
@@ -103,47 +113,29 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
     public Endpoint getNextEndpoint(MessageContext synapseMessageContext,
                                     AlgorithmContext algorithmContext) {
 
-        Lock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            if (!isThreadLocal) {
-                synchronized (this) {
-                    EndpointState state = endpointStates[endpointCursor];
-                    if (state.getCurrentWeight() == 0) {
-                        // reset the current state
-                        state.reset();
-
-                        // go to the next endpoint
-                        if (endpointCursor == endpointStates.length - 1) {
-                            endpointCursor = 0;
-                        } else {
-                            ++endpointCursor;
-                        }
-
-                        state = endpointStates[endpointCursor];
-                    }
-
-                    // we are about to use this endpoint, so decrement its current count
-                    state.decrementCurrentWeight();
-
-                    // return the endpoint corresponding to the current position
-                    return endpoints.get(state.getEndpointPosition());
+        if (!isThreadLocal) {
+            int[] current = schedule;
+            for (int attempts = 0; attempts < current.length; attempts++) {
+                int position = current[(scheduleCursor.getAndIncrement() & Integer.MAX_VALUE)
+                        % current.length];
+                Endpoint endpoint = endpoints.get(position);
+                if (endpoint.readyToSend()) {
+                    return endpoint;
                 }
-            } else {
-                if (threadedAlgorithm != null) {
-                    Algorithm algo = threadedAlgorithm.get();
+            }
+            return null;
+        } else {
+            if (threadedAlgorithm != null) {
+                Algorithm algo = threadedAlgorithm.get();
 
-                    int position = algo.getNextEndpoint();
+                int position = algo.getNextEndpoint();
 
-                    return endpoints.get(position);
-                } else {
-                    String msg = "Algorithm: WeightedRoundRobin algorithm not initialized properly";
-                    log.error(msg);
-                    throw new SynapseException(msg);
-                }
+                return endpoints.get(position);
+            } else {
+                String msg = "Algorithm: WeightedRoundRobin algorithm not initialized properly";
+                log.error(msg);
+                throw new SynapseException(msg);
             }
-        } finally {
-            readLock.unlock();
         }
     }        
 
@@ -158,7 +150,7 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
             state.reset();
         }
 
-        endpointCursor = 0;
+        scheduleCursor.set(0);
     }
 
     @Override
@@ -215,6 +207,19 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
             if (threadLocalProperty != null && threadLocalProperty.getValue().equals("true")) {
                 isThreadLocal = true;
             }
+
+            MediatorProperty smoothProperty = ((PropertyInclude) loadBalanceEndpoint).
+                    getProperty(LOADBALANCE_SMOOTH);
+
+            if (smoothProperty != null && smoothProperty.getValue().equals("true")) {
+                isSmooth = true;
+            }
+        }
+
+        calculate();
+
+        if (isThreadLocal) {
+            threadedAlgorithm = new AlgorithmThreadLocal();
         }
 
         view = new WeightedRoundRobinView(this);
@@ -334,31 +339,79 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
                 return o2.getWeight() - o1.getWeight();
             }
         });
-    }
 
-    public void changeWeight(int pos, int weight) {
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            EndpointState state = null;
-            for (EndpointState s : endpointStates) {
-                if (s.getEndpointPosition() == pos) {
-                    state = s;
+        int[] newSchedule;
+        if (isSmooth) {
+            // weights sharing a common divisor produce the same distribution with a
+            // shorter cycle
+            int divisor = 0;
+            for (EndpointState state : endpointStates) {
+                divisor = gcd(state.getWeight(), divisor);
+            }
+            int[] weights = new int[endpointStates.length];
+            int totalWeight = 0;
+            for (int i = 0; i < endpointStates.length; i++) {
+                weights[i] = endpointStates[i].getWeight() / divisor;
+                totalWeight += weights[i];
+            }
+
+            // at each step pick the endpoint with the highest running weight, and
+            // penalize it by the total weight
+            newSchedule = new int[totalWeight];
+            int[] running = new int[endpointStates.length];
+            for (int i = 0; i < totalWeight; i++) {
+                int selected = 0;
+                for (int j = 0; j < endpointStates.length; j++) {
+                    running[j] += weights[j];
+                    if (running[j] > running[selected]) {
+                        selected = j;
+                    }
                 }
+                running[selected] -= totalWeight;
+                newSchedule[i] = endpointStates[selected].getEndpointPosition();
+            }
+        } else {
+            int totalWeight = 0;
+            for (EndpointState state : endpointStates) {
+                totalWeight += state.getWeight();
             }
 
-            if (state == null) {
-                throw new SynapseException("The specified endpoint position cannot be found");
+            newSchedule = new int[totalWeight];
+            int i = 0;
+            for (EndpointState state : endpointStates) {
+                for (int j = 0; j < state.getWeight(); j++) {
+                    newSchedule[i++] = state.getEndpointPosition();
+                }
             }
+        }
+        schedule = newSchedule;
+    }
 
-            state.weight = weight;
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    public synchronized void changeWeight(int pos, int weight) {
+        if (weight <= 0) {
+            throw new SynapseException("Weight must be greater than zero");
+        }
 
-            calculate();
+        EndpointState state = null;
+        for (EndpointState s : endpointStates) {
+            if (s.getEndpointPosition() == pos) {
+                state = s;
+            }
+        }
 
-            reset(null);
-        } finally {
-            writeLock.unlock();
+        if (state == null) {
+            throw new SynapseException("The specified endpoint position cannot be found");
         }
+
+        state.weight = weight;
+
+        calculate();
+
+        reset(null);
     }
 
     public int[] getCurrentWeights() {
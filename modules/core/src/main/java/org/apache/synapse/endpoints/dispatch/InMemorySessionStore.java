@@ -0,0 +1,238 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.dispatch;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link SessionStore}, which keeps the sessions in a concurrent map on the heap.
+ * <p/>
+ * Expiry is driven by a timing wheel: each session is placed in the slot of the wheel
+ * corresponding to its expiry time, and {@link #expire(long)} only visits the slots whose
+ * time has passed since the previous call, instead of scanning all the sessions. A session
+ * found in a slot before it expires (because its expiry time was extended, or it belongs to
+ * a later turn of the wheel) is moved to its new slot.
+ * <p/>
+ * The number of sessions is bounded by the <code>synapse.sal.sessions.max</code> entry of the
+ * synapse.properties file. When the store is full, the sessions closest to expiry are
+ * evicted first.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    private static final Log log = LogFactory.getLog(InMemorySessionStore.class);
+
+    public static final String MAX_SESSIONS = "synapse.sal.sessions.max";
+
+    private static final int DEFAULT_MAX_SESSIONS = 1000000;
+
+    /** Length of the time covered by a slot of the wheel */
+    private static final long TICK_MILLIS = 1000;
+
+    /** Number of slots in the wheel, a power of two */
+    private static final int WHEEL_SIZE = 1024;
+
+    private final ConcurrentMap<String, SessionInformation> sessions =
+            new ConcurrentHashMap<String, SessionInformation>();
+
+    private final Queue<SessionInformation>[] wheel;
+
+    /** The last tick processed by the wheel */
+    private final AtomicLong currentTick = new AtomicLong(
+            System.currentTimeMillis() / TICK_MILLIS);
+
+    /** Only one thread turns the wheel at a time */
+    private final AtomicBoolean turning = new AtomicBoolean(false);
+
+    private final AtomicLong expiredCount = new AtomicLong(0);
+
+    private final AtomicLong evictedCount = new AtomicLong(0);
+
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
+
+    public InMemorySessionStore() {
+        this(DEFAULT_MAX_SESSIONS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public InMemorySessionStore(int maxSessions) {
+        this.maxSessions = maxSessions;
+        wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<SessionInformation>();
+        }
+    }
+
+    @Override
+    public void init() {
+        maxSessions = Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(
+                MAX_SESSIONS, String.valueOf(maxSessions)));
+    }
+
+    @Override
+    public SessionInformation get(String sessionID) {
+        return sessions.get(sessionID);
+    }
+
+    @Override
+    public void put(SessionInformation information) {
+        sessions.put(information.getId(), information);
+        schedule(information, currentTick.get() + 1);
+        if (sessions.size() > maxSessions) {
+            evict();
+        }
+    }
+
+    @Override
+    public void remove(String sessionID) {
+        // the slot of the session is cleaned up when the wheel reaches it
+        sessions.remove(sessionID);
+    }
+
+    @Override
+    public int expire(long now) {
+        if (!turning.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        int expired = 0;
+        try {
+            long from = currentTick.get() + 1;
+            long to = now / TICK_MILLIS;
+            if (to - from >= WHEEL_SIZE) {
+                // visit each slot once
+                from = to - WHEEL_SIZE + 1;
+            }
+
+            for (long tick = from; tick <= to; tick++) {
+                Queue<SessionInformation> slot = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+                List<SessionInformation> due = new ArrayList<SessionInformation>();
+                SessionInformation information;
+                while ((information = slot.poll()) != null) {
+                    due.add(information);
+                }
+
+                for (SessionInformation session : due) {
+                    if (sessions.get(session.getId()) != session) {
+                        // removed or replaced by a newer session
+                        continue;
+                    }
+                    if (session.getExpiryTime() < now) {
+                        if (sessions.remove(session.getId(), session)) {
+                            expired++;
+                            if (log.isDebugEnabled()) {
+                                log.debug("Expired session with id :" + session.getId());
+                            }
+                        }
+                    } else {
+                        schedule(session, to + 1);
+                    }
+                }
+            }
+            currentTick.set(Math.max(to, currentTick.get()));
+        } finally {
+            turning.set(false);
+        }
+
+        expiredCount.addAndGet(expired);
+        return expired;
+    }
+
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    @Override
+    public void clear() {
+        sessions.clear();
+        for (Queue<SessionInformation> slot : wheel) {
+            slot.clear();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        clear();
+    }
+
+    /**
+     * Place a session in the slot corresponding to its expiry time
+     *
+     * @param information the session
+     * @param earliestTick the earliest tick which has not been processed yet
+     */
+    private void schedule(SessionInformation information, long earliestTick) {
+        long tick = Math.max(information.getExpiryTime() / TICK_MILLIS, earliestTick);
+        wheel[(int) (tick & (WHEEL_SIZE - 1))].offer(information);
+    }
+
+    /**
+     * Drop the sessions closest to expiry until the store is within its bounds
+     */
+    private void evict() {
+        if (!turning.compareAndSet(false, true)) {
+            // another thread is already making room
+            return;
+        }
+
+        try {
+            long tick = currentTick.get() + 1;
+            for (int i = 0; i < WHEEL_SIZE && sessions.size() > maxSessions; i++, tick++) {
+                Queue<SessionInformation> slot = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+                SessionInformation information;
+                while (sessions.size() > maxSessions && (information = slot.poll()) != null) {
+                    if (sessions.remove(information.getId(), information)) {
+                        evictedCount.incrementAndGet();
+                        if (log.isDebugEnabled()) {
+                            log.debug("Evicted session with id :" + information.getId());
+                        }
+                    }
+                }
+            }
+        } finally {
+            turning.set(false);
+        }
+    }
+}
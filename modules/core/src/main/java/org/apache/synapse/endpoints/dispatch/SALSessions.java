@@ -26,6 +26,8 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.IndirectEndpoint;
 import org.apache.synapse.endpoints.SALoadbalanceEndpoint;
@@ -33,9 +35,14 @@ import org.apache.synapse.endpoints.DynamicLoadbalanceEndpoint;
 import org.apache.synapse.util.Replicator;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Keeps the states of the sessions
+ * Keeps the states of the sessions. In a non-clustered environment the sessions are kept in
+ * a {@link SessionStore}, which defaults to the {@link InMemorySessionStore}. A different
+ * implementation can be plugged in through the <code>synapse.sal.sessions.store</code> entry
+ * of the synapse.properties file.
  */
 public class SALSessions {
 
@@ -45,6 +52,12 @@ public class SALSessions {
 
     private final static String SESSION_IDS = "synapse.salep.sessionids.";
 
+    public static final String SESSION_STORE = "synapse.sal.sessions.store";
+
+    private static final String MBEAN_CATEGORY = "SALSessions";
+
+    private static final String MBEAN_NAME = "SessionStore";
+
     private ConfigurationContext configCtx;
 
     /* Is this env. support clustering*/
@@ -54,14 +67,13 @@ public class SALSessions {
 
     /*Cache all path with its endpoint sequence. This is only need for a clustered environment */
     private final Map<List<String>, List<Endpoint>> namesToEndpointsMap =
-            new HashMap<List<String>, List<Endpoint>>();
+            new ConcurrentHashMap<List<String>, List<Endpoint>>();
 
     /* Non- clustered environment , all the established sessions*/
-    private final Map<String, SessionInformation> establishedSessions =
-            new HashMap<String, SessionInformation>();
+    private volatile SessionStore establishedSessions = new InMemorySessionStore();
     /* all child endpoints .  This is only need for a clustered environment*/
-    private final Map<String, Map<String, Endpoint>> childEndpoints =
-            new HashMap<String, Map<String, Endpoint>>();
+    private final ConcurrentMap<String, Map<String, Endpoint>> childEndpoints =
+            new ConcurrentHashMap<String, Map<String, Endpoint>>();
 
     private SALSessions() {
     }
@@ -76,7 +88,7 @@ public class SALSessions {
      * @param isClusteringEnable is this a clustered environment
      * @param cc                 Axis config context
      */
-    public void initialize(boolean isClusteringEnable, ConfigurationContext cc) {
+    public synchronized void initialize(boolean isClusteringEnable, ConfigurationContext cc) {
 
         if (!initialized) {
             if (log.isDebugEnabled()) {
@@ -86,6 +98,10 @@ public class SALSessions {
             if (isClusteringEnable) {
                 isClustered = isClusteringEnable;
                 configCtx = cc;
+            } else {
+                establishedSessions = createSessionStore();
+                MBeanRegistrar.getInstance().registerMBean(new SALSessionsView(this),
+                        MBEAN_CATEGORY, MBEAN_NAME);
             }
             initialized = true;
         }
@@ -114,7 +130,7 @@ public class SALSessions {
                 Map<String, Endpoint> children = new HashMap<String, Endpoint>();
                 children.put(endpointName, endpoint);
                 fillMap(endpoints, children);
-                childEndpoints.put(endpointName, children);
+                childEndpoints.putIfAbsent(endpointName, children);
 
             }
         }
@@ -207,7 +223,7 @@ public class SALSessions {
             if (isClustered) {
                 Replicator.setAndReplicateState(SESSION_IDS + sessionID, newInformation, configCtx);
             } else {
-                establishedSessions.put(sessionID, newInformation);
+                establishedSessions.put(newInformation);
             }
         }
     }
@@ -313,63 +329,61 @@ public class SALSessions {
     /**
      * Clear all the expired sessions
      */
-    public synchronized void clearSessions() {
+    public void clearSessions() {
 
         if (!initialized) {
             return;
         }
 
-        try {
-            if (isClustered) {
-
-                List<String> toBeRemoved = new ArrayList<String>();
-                for (Iterator<String> props = configCtx.getPropertyNames(); props.hasNext();) {
-                    Object name = props.next();
-
-                    if (name instanceof String && ((String) name).startsWith(SESSION_IDS)) {
-                        String key = (String) name;
-                        SessionInformation info = (SessionInformation) configCtx.getProperty(key);
-
-                        if (info != null && info.isExpired()) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("Clustered Environment :" +
-                                        "Expired session with id :" + key);
-                            }
-
-                            toBeRemoved.add(key);
-                        }
-                    }
+        if (!isClustered) {
+            try {
+                int expired = establishedSessions.expire(System.currentTimeMillis());
+                if (expired > 0 && log.isDebugEnabled()) {
+                    log.debug("Cleared " + expired + " expired sessions");
                 }
+            } catch (Throwable ignored) {
+                log.debug("Ignored error clearing sessions : Error " + ignored);
+            }
+            return;
+        }
 
-                if (!toBeRemoved.isEmpty()) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Clearing expired sessions");
-                    }
+        synchronized (this) {
+            clearClusteredSessions();
+        }
+    }
 
-                    for (String key : toBeRemoved) {
-                        Replicator.removeAndReplicateState(key, configCtx);
-                    }
-                }
+    /*
+     * Clear the expired sessions replicated in the cluster
+     */
+    private void clearClusteredSessions() {
 
-            } else {
+        try {
+            List<String> toBeRemoved = new ArrayList<String>();
+            for (Iterator<String> props = configCtx.getPropertyNames(); props.hasNext();) {
+                Object name = props.next();
 
-                List<String> toBeRemoved = new ArrayList<String>();
-                for (SessionInformation information : establishedSessions.values()) {
+                if (name instanceof String && ((String) name).startsWith(SESSION_IDS)) {
+                    String key = (String) name;
+                    SessionInformation info = (SessionInformation) configCtx.getProperty(key);
 
-                    if (information != null && information.isExpired()) {
-                        String id = information.getId();
+                    if (info != null && info.isExpired()) {
                         if (log.isDebugEnabled()) {
-                            log.debug("Expired session with id :" + id);
+                            log.debug("Clustered Environment :" +
+                                    "Expired session with id :" + key);
                         }
-                        toBeRemoved.add(id);
+
+                        toBeRemoved.add(key);
                     }
                 }
+            }
 
-                if (!toBeRemoved.isEmpty()) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Clearing expired sessions");
-                    }
-                    establishedSessions.keySet().removeAll(toBeRemoved);
+            if (!toBeRemoved.isEmpty()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Clearing expired sessions");
+                }
+
+                for (String key : toBeRemoved) {
+                    Replicator.removeAndReplicateState(key, configCtx);
                 }
             }
         } catch (Throwable ignored) {
@@ -381,6 +395,39 @@ public class SALSessions {
         return initialized;
     }
 
+    /**
+     * @return the store of the sessions, which is only used in a non-clustered environment
+     */
+    public SessionStore getSessionStore() {
+        return establishedSessions;
+    }
+
+    /*
+     * Create the session store configured in the synapse.properties file
+     */
+    private SessionStore createSessionStore() {
+
+        String storeClass = SynapsePropertiesLoader.getPropertyValue(SESSION_STORE, null);
+        SessionStore store;
+        if (storeClass == null) {
+            store = new InMemorySessionStore();
+        } else {
+            try {
+                store = (SessionStore) Class.forName(storeClass.trim()).newInstance();
+            } catch (Exception e) {
+                String msg = "Cannot instantiate the session store implementation : " +
+                        storeClass;
+                log.error(msg, e);
+                throw new SynapseException(msg, e);
+            }
+        }
+        store.init();
+        if (log.isDebugEnabled()) {
+            log.debug("Using session store : " + store.getClass().getName());
+        }
+        return store;
+    }
+
     /**
      * Helper methods for handle errors.
      *
@@ -399,7 +446,11 @@ public class SALSessions {
         
         log.info("Clearing all states ");
         initialized = false;
-        establishedSessions.clear();
+        establishedSessions.destroy();
+        establishedSessions = new InMemorySessionStore();
+        if (!isClustered) {
+            MBeanRegistrar.getInstance().unRegisterMBean(MBEAN_CATEGORY, MBEAN_NAME);
+        }
         namesToEndpointsMap.clear();
         childEndpoints.clear();
     }
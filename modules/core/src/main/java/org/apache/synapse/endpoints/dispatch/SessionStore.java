@@ -0,0 +1,94 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.dispatch;
+
+/**
+ * Stores the sessions established by the session affinity load balance endpoints in a
+ * non-clustered environment. The implementation is selected with the
+ * <code>synapse.sal.sessions.store</code> entry of the synapse.properties file, and must be
+ * thread-safe.
+ * <p/>
+ * An implementation may keep the sessions outside the heap, or persist them so that they
+ * survive restarts. Note that the endpoints of a session are not serializable; the names of
+ * the endpoints are available through {@link SessionInformation#getPath()} and
+ * {@link SessionInformation#getRootEndpointName()} for this purpose.
+ */
+public interface SessionStore {
+
+    /**
+     * Prepare the store for use
+     */
+    void init();
+
+    /**
+     * Look up a session
+     *
+     * @param sessionID the session identifier
+     * @return the session, or null if there is no such session
+     */
+    SessionInformation get(String sessionID);
+
+    /**
+     * Add or replace a session
+     *
+     * @param information the session
+     */
+    void put(SessionInformation information);
+
+    /**
+     * Remove a session
+     *
+     * @param sessionID the session identifier
+     */
+    void remove(String sessionID);
+
+    /**
+     * Remove the sessions which expired by the given time
+     *
+     * @param now the current time in milliseconds
+     * @return number of sessions removed
+     */
+    int expire(long now);
+
+    /**
+     * @return number of sessions in the store
+     */
+    int size();
+
+    /**
+     * @return number of sessions removed from the store because they expired
+     */
+    long getExpiredCount();
+
+    /**
+     * @return number of live sessions dropped because the store was full
+     */
+    long getEvictedCount();
+
+    /**
+     * Remove all the sessions
+     */
+    void clear();
+
+    /**
+     * Release the resources held by the store
+     */
+    void destroy();
+}
@@ -49,7 +49,9 @@ import org.wso2.eventing.SubscriptionManager;
 import org.wso2.eventing.exceptions.EventException;
 
 import javax.xml.namespace.QName;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -215,17 +217,36 @@ public class SynapseEventSource extends SynapseMessageReceiver {
                 handleException("Matching subscriptions fetching error", e);
             }
 
+            if (subscriptions == null || subscriptions.isEmpty()) {
+                return;
+            }
+            synCtx.setProperty(SynapseConstants.OUT_ONLY, "true");    // Set one way message for events
+
+            // group the subscriptions by their endpoints, so that an endpoint is created only
+            // once per event no matter how many subscriptions share it
+            Map<String, List<Subscription>> subscriptionsByUrl =
+                    new LinkedHashMap<String, List<Subscription>>();
             for (Subscription subscription : subscriptions) {
-                synCtx.setProperty(SynapseConstants.OUT_ONLY,
-                        "true");    // Set one way message for events
-                try {
-                    getEndpointFromURL(subscription.getEndpointUrl(), synCtx.getEnvironment())
-                            .send(MessageHelper.cloneMessageContext(synCtx));
-                } catch (AxisFault axisFault) {
-                    log.error("Event sending failure " + axisFault.toString());
+                String url = subscription.getEndpointUrl().trim();
+                List<Subscription> group = subscriptionsByUrl.get(url);
+                if (group == null) {
+                    group = new ArrayList<Subscription>(1);
+                    subscriptionsByUrl.put(url, group);
                 }
-                if (log.isDebugEnabled()) {
-                    log.debug("Event push to  : " + subscription.getEndpointUrl());
+                group.add(subscription);
+            }
+
+            for (Map.Entry<String, List<Subscription>> entry : subscriptionsByUrl.entrySet()) {
+                Endpoint endpoint = getEndpointFromURL(entry.getKey(), synCtx.getEnvironment());
+                for (Subscription subscription : entry.getValue()) {
+                    try {
+                        endpoint.send(MessageHelper.cloneMessageContext(synCtx));
+                    } catch (AxisFault axisFault) {
+                        log.error("Event sending failure " + axisFault.toString());
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("Event push to  : " + subscription.getEndpointUrl());
+                    }
                 }
             }
         }
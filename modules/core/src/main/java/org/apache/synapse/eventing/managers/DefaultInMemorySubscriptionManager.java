@@ -21,11 +21,11 @@ package org.apache.synapse.eventing.managers;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.util.UIDGenerator;
 import org.apache.axis2.context.MessageContext;
 import org.apache.synapse.SynapseException;
-import org.apache.synapse.eventing.SynapseEventingConstants;
-import org.apache.synapse.eventing.filters.TopicBasedEventFilter;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 import org.wso2.eventing.*;
@@ -41,6 +41,7 @@ public class DefaultInMemorySubscriptionManager implements SubscriptionManager<M
 
     private final Map<String, Subscription> store =
             new ConcurrentHashMap<String, Subscription>();
+    private final SubscriptionIndex index = new SubscriptionIndex();
     private String topicHeaderName;
     private String topicHeaderNS;
     private SynapseXPath topicXPath;
@@ -63,15 +64,20 @@ public class DefaultInMemorySubscriptionManager implements SubscriptionManager<M
         if (subscription.getId() == null) {
             subscription.setId(UIDGenerator.generateURNString());
         }
-        store.put(subscription.getId(), subscription);
+        Subscription existing = store.put(subscription.getId(), subscription);
+        if (existing != null) {
+            index.remove(existing);
+        }
+        index.add(subscription);
         return subscription.getId();
 
     }
 
   @Override
 public boolean unsubscribe(String id) throws EventException {
-        if (store.containsKey(id)) {
-            store.remove(id);
+        Subscription subscription = store.remove(id);
+        if (subscription != null) {
+            index.remove(subscription);
             return true;
         } else {
             return false;
@@ -111,29 +117,33 @@ public boolean unsubscribe(String id) throws EventException {
     @Override
     public List<Subscription> getMatchingSubscriptions(Event<MessageContext> event)
             throws EventException {
-        final LinkedList<Subscription> list = new LinkedList<Subscription>();
-        for (Map.Entry<String, Subscription> stringSubscriptionEntry : store.entrySet()) {
-            //TODO : pick the filter based on the dialect
-            //XPathBasedEventFilter filter = new XPathBasedEventFilter();
-            TopicBasedEventFilter filter = new TopicBasedEventFilter();
-            if (filter != null) {
-                filter.setResultValue(stringSubscriptionEntry.getValue().getFilterValue());
-                filter.setSourceXpath(topicXPath);
-                //evaluatedValue = topicXPath.stringValueOf(mc);
+        SOAPEnvelope envelope = event.getMessage().getEnvelope();
+
+        // find the topic of the event once, instead of evaluating a topic filter for each
+        // and every subscription
+        String topic = null;
+        if (topicXPath != null && index.hasTopicSubscriptions()) {
+            try {
+                OMElement topicNode = (OMElement) topicXPath.selectSingleNode(envelope);
+                if (topicNode != null) {
+                    topic = topicNode.getText();
+                }
+            } catch (JaxenException e) {
+                handleException("Error creating topic xpath", e);
             }
-            if (filter == null || filter.match(event)) {
-                Subscription subscription = stringSubscriptionEntry.getValue();
-                Calendar current = Calendar.getInstance(); //Get current date and time
-                if (subscription.getExpires() != null) {
-                    if (current.before(subscription.getExpires())) {
-                        // add only valid subscriptions by checking the expiration
-                        list.add(subscription);
-                    }
-                } else {
-                    // If a expiration dosen't exisits treat it as a never expire subscription, valid till unsubscribe
+        }
+
+        final LinkedList<Subscription> list = new LinkedList<Subscription>();
+        Calendar current = Calendar.getInstance(); //Get current date and time
+        for (Subscription subscription : index.getMatchingSubscriptions(topic, envelope)) {
+            if (subscription.getExpires() != null) {
+                if (current.before(subscription.getExpires())) {
+                    // add only valid subscriptions by checking the expiration
                     list.add(subscription);
                 }
-
+            } else {
+                // If a expiration dosen't exisits treat it as a never expire subscription, valid till unsubscribe
+                list.add(subscription);
             }
         }
         return list;
@@ -0,0 +1,298 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.eventing.managers;
+
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.eventing.SynapseEventingConstants;
+import org.apache.synapse.util.xpath.SynapseXPath;
+import org.jaxen.JaxenException;
+import org.wso2.eventing.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the subscriptions held by the {@link DefaultInMemorySubscriptionManager}, which
+ * finds the subscriptions matching an event without going through every subscription.
+ * <p>
+ * Topic filters are kept in a trie of topic segments. A topic filter matches the events
+ * published on the same topic, and on any topic below it (i.e. <code>weather/storms</code>
+ * matches <code>weather/storms</code> and <code>weather/storms/north</code>), and a filter
+ * segment of <code>*</code> matches any single topic segment. Subscriptions with the XPath
+ * filter dialect are grouped by their expressions, so that each distinct expression is
+ * compiled once and evaluated once per event.
+ * <p>
+ * Updates are serialized, while lookups run without locking against a consistent view of
+ * each trie node and filter group.
+ */
+class SubscriptionIndex {
+
+    private static final Log log = LogFactory.getLog(SubscriptionIndex.class);
+
+    private static final String TOPIC_SEP = "/";
+    private static final String TOPIC_WILDCARD = "*";
+
+    private static final Subscription[] EMPTY = new Subscription[0];
+
+    private final TopicNode root = new TopicNode();
+
+    private final Map<String, XPathFilterGroup> xpathFilters =
+            new ConcurrentHashMap<String, XPathFilterGroup>();
+
+    /** Number of subscriptions with topic filters */
+    private volatile int topicSubscriptions = 0;
+
+    synchronized void add(Subscription subscription) {
+        if (isXPathFilter(subscription)) {
+            String expression = subscription.getFilterValue().toString();
+            XPathFilterGroup group = xpathFilters.get(expression);
+            if (group == null) {
+                try {
+                    group = new XPathFilterGroup(new SynapseXPath(expression));
+                } catch (JaxenException e) {
+                    log.warn("Invalid XPath filter : " + expression + " in the subscription : " +
+                            subscription.getId() + " - The subscription will not receive any " +
+                            "events", e);
+                    return;
+                }
+                xpathFilters.put(expression, group);
+            }
+            group.subscriptions = append(group.subscriptions, subscription);
+            return;
+        }
+
+        String filter = getTopicFilter(subscription);
+        if (filter != null) {
+            TopicNode node = getNode(filter, true);
+            node.exact = append(node.exact, subscription);
+        }
+        TopicNode node = getNode(getParentTopic(filter), true);
+        node.descendants = append(node.descendants, subscription);
+        topicSubscriptions++;
+    }
+
+    synchronized void remove(Subscription subscription) {
+        if (isXPathFilter(subscription)) {
+            String expression = subscription.getFilterValue().toString();
+            XPathFilterGroup group = xpathFilters.get(expression);
+            if (group != null) {
+                group.subscriptions = remove(group.subscriptions, subscription);
+                if (group.subscriptions.length == 0) {
+                    xpathFilters.remove(expression);
+                }
+            }
+            return;
+        }
+
+        String filter = getTopicFilter(subscription);
+        boolean removed = false;
+        if (filter != null) {
+            TopicNode node = getNode(filter, false);
+            if (node != null) {
+                int count = node.exact.length;
+                node.exact = remove(node.exact, subscription);
+                removed = node.exact.length < count;
+            }
+        }
+        TopicNode node = getNode(getParentTopic(filter), false);
+        if (node != null) {
+            int count = node.descendants.length;
+            node.descendants = remove(node.descendants, subscription);
+            removed |= node.descendants.length < count;
+        }
+        if (removed) {
+            topicSubscriptions--;
+        }
+
+        if (filter != null) {
+            prune(filter);
+        }
+        prune(getParentTopic(filter));
+    }
+
+    /**
+     * Is there any subscription with a topic filter, i.e. is it necessary to find the topic
+     * of an event before calling {@link #getMatchingSubscriptions(String, SOAPEnvelope)}
+     *
+     * @return true if at least one subscription has a topic filter
+     */
+    boolean hasTopicSubscriptions() {
+        return topicSubscriptions > 0;
+    }
+
+    /**
+     * Find the subscriptions with a filter matching the given event
+     *
+     * @param topic topic of the event, or null if the event doesn't have a topic
+     * @param envelope the event message
+     * @return the matching subscriptions, including expired subscriptions
+     */
+    List<Subscription> getMatchingSubscriptions(String topic, SOAPEnvelope envelope) {
+        List<Subscription> result = new ArrayList<Subscription>();
+        if (topic != null) {
+            String[] segments = topic.split(TOPIC_SEP, -1);
+            collect(root, segments, 0, result);
+        }
+
+        for (XPathFilterGroup group : xpathFilters.values()) {
+            Subscription[] subscriptions = group.subscriptions;
+            if (subscriptions.length == 0) {
+                continue;
+            }
+            try {
+                if (group.xpath.booleanValueOf(envelope)) {
+                    for (Subscription subscription : subscriptions) {
+                        result.add(subscription);
+                    }
+                }
+            } catch (JaxenException e) {
+                log.warn("Error evaluating the XPath filter : " + group.xpath +
+                        " on the event", e);
+            }
+        }
+        return result;
+    }
+
+    private void collect(TopicNode node, String[] segments, int depth, List<Subscription> result) {
+        if (depth == segments.length) {
+            for (Subscription subscription : node.exact) {
+                result.add(subscription);
+            }
+            return;
+        }
+
+        // the subscriptions to this topic get the events on all the topics below it
+        for (Subscription subscription : node.descendants) {
+            result.add(subscription);
+        }
+
+        TopicNode child = node.children.get(segments[depth]);
+        if (child != null) {
+            collect(child, segments, depth + 1, result);
+        }
+        if (!TOPIC_WILDCARD.equals(segments[depth])) {
+            child = node.children.get(TOPIC_WILDCARD);
+            if (child != null) {
+                collect(child, segments, depth + 1, result);
+            }
+        }
+    }
+
+    private TopicNode getNode(String topic, boolean create) {
+        TopicNode node = root;
+        for (String segment : topic.split(TOPIC_SEP, -1)) {
+            TopicNode child = node.children.get(segment);
+            if (child == null) {
+                if (!create) {
+                    return null;
+                }
+                child = new TopicNode();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Drop the nodes on the path to the given topic which no longer lead to any subscription
+     */
+    private void prune(String topic) {
+        String[] segments = topic.split(TOPIC_SEP, -1);
+        TopicNode[] path = new TopicNode[segments.length + 1];
+        path[0] = root;
+        for (int i = 0; i < segments.length; i++) {
+            path[i + 1] = path[i].children.get(segments[i]);
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        for (int i = segments.length; i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].children.remove(segments[i - 1]);
+        }
+    }
+
+    private static boolean isXPathFilter(Subscription subscription) {
+        return SynapseEventingConstants.XPATH_FILTER_DIALECT.equals(
+                subscription.getFilterDialect()) && subscription.getFilterValue() != null;
+    }
+
+    private static String getTopicFilter(Subscription subscription) {
+        Object filter = subscription.getFilterValue();
+        return filter != null ? filter.toString() : null;
+    }
+
+    /**
+     * Get the topic whose sub topics are matched by the given topic filter. This follows the
+     * TopicBasedEventFilter, which matches any topic starting with the trimmed filter
+     * followed by a '/'.
+     */
+    private static String getParentTopic(String filter) {
+        String prefix = (filter + TOPIC_SEP).trim();
+        return prefix.substring(0, prefix.length() - TOPIC_SEP.length());
+    }
+
+    private static Subscription[] append(Subscription[] subscriptions, Subscription subscription) {
+        Subscription[] result = new Subscription[subscriptions.length + 1];
+        System.arraycopy(subscriptions, 0, result, 0, subscriptions.length);
+        result[subscriptions.length] = subscription;
+        return result;
+    }
+
+    private static Subscription[] remove(Subscription[] subscriptions, Subscription subscription) {
+        List<Subscription> result = new ArrayList<Subscription>(subscriptions.length);
+        for (Subscription s : subscriptions) {
+            if (s != subscription) {
+                result.add(s);
+            }
+        }
+        return result.isEmpty() ? EMPTY : result.toArray(new Subscription[result.size()]);
+    }
+
+    private static class TopicNode {
+
+        private final Map<String, TopicNode> children = new ConcurrentHashMap<String, TopicNode>();
+
+        /** Subscriptions with a filter equal to the topic of this node */
+        private volatile Subscription[] exact = EMPTY;
+
+        /** Subscriptions to the topics below this node */
+        private volatile Subscription[] descendants = EMPTY;
+
+        private boolean isEmpty() {
+            return exact.length == 0 && descendants.length == 0 && children.isEmpty();
+        }
+    }
+
+    private static class XPathFilterGroup {
+
+        private final SynapseXPath xpath;
+
+        private volatile Subscription[] subscriptions = EMPTY;
+
+        private XPathFilterGroup(SynapseXPath xpath) {
+            this.xpath = xpath;
+        }
+    }
+}
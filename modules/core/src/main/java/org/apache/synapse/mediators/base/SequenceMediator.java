@@ -49,7 +49,7 @@ public class SequenceMediator extends AbstractListMediator implements Nameable {
     /** is this definition dynamic */
     private boolean dynamic = false;
     /** flag to ensure that each and every sequence is initialized and destroyed atmost once */
-    private boolean initialized = false;
+    private volatile boolean initialized = false;
     /** the registry key to load this definition if dynamic */
     private String registryKey = null;
     /** The name of the file where this sequence is defined */
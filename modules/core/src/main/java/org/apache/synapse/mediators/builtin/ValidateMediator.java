@@ -20,13 +20,16 @@
 package org.apache.synapse.mediators.builtin;
 
 import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.OMContainer;
 import org.apache.synapse.FaultHandler;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
 import org.apache.synapse.SynapseLog;
 import org.apache.synapse.config.Entry;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.mediators.AbstractListMediator;
 import org.apache.synapse.mediators.Value;
 import org.apache.synapse.mediators.MediatorProperty;
@@ -49,14 +52,27 @@ import javax.xml.validation.Validator;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Validate a message or an element against a schema
  * <p/>
  * This internally uses the Xerces2-j parser, which cautions a lot about thread-safety and
- * memory leaks. Hence this initial implementation will create a single parser instance
- * for each unique mediator instance, and re-use it to validate multiple messages - even
- * concurrently - by synchronizing access
+ * memory leaks. Hence a single (thread-safe) schema instance is compiled for each unique
+ * mediator instance, and the (non thread-safe) validators created from it are kept in a
+ * bounded pool so that they can be reset and re-used by the concurrent messages. When a
+ * dynamic schema expires, it is re-compiled in the background while the messages keep on
+ * being validated against the previously loaded schema.
+ * <p/>
+ * The {@value #STREAMING_VALIDATION} feature can be enabled to validate the source element
+ * directly from the underlying parser, without building the AXIOM tree. This consumes the
+ * source element, so it should only be used when the element is not accessed after the
+ * validation.
  */
 public class ValidateMediator extends AbstractListMediator {
 
@@ -84,16 +100,43 @@ public class ValidateMediator extends AbstractListMediator {
     private final List<MediatorProperty> explicityFeatures = new ArrayList<MediatorProperty>();
 
     /**
-     * This is the actual schema instance used to create a new schema
-     * This is a thred-safe instance.
+     * The feature which enables validating the source element without building it
+     */
+    public static final String STREAMING_VALIDATION =
+            "http://ws.apache.org/ns/synapse/validate/feature/streaming";
+
+    /**
+     * The synapse.properties entry which limits the number of validators kept for re-use
+     */
+    public static final String VALIDATOR_POOL_SIZE = "synapse.validate.validator.pool.size";
+
+    private static final int DEFAULT_VALIDATOR_POOL_SIZE = 32;
+
+    private static final int validatorPoolSize = Integer.parseInt(
+            SynapsePropertiesLoader.getPropertyValue(VALIDATOR_POOL_SIZE,
+                    String.valueOf(DEFAULT_VALIDATOR_POOL_SIZE)));
+
+    /**
+     * This is the actual schema instance used to create new validators, along with the
+     * pool of validators created from it. The schema is a thread-safe instance.
      */
-    private Schema cachedSchema;
+    private volatile ValidatorPool cachedSchema;
 
     /**
-     * Lock used to ensure thread-safe creation and use of the above Validator
+     * Lock used to ensure thread-safe creation of the above schema
      */
     private final Object validatorLock = new Object();
 
+    /**
+     * Whether a background re-creation of the schema is in progress
+     */
+    private final AtomicBoolean schemaRefreshInProgress = new AtomicBoolean(false);
+
+    /**
+     * Whether the source element should be validated without building it
+     */
+    private boolean streamingValidation = false;
+
     /**
      * The SchemaFactory used to create new schema instances.
      */
@@ -116,10 +159,12 @@ public class ValidateMediator extends AbstractListMediator {
 
         // flag to check if we need to initialize/re-initialize the schema
         boolean reCreate = false;
+        List<String> propKeys = new ArrayList<String>(schemaKeys.size());
         // if any of the schemas are not loaded, or have expired, load or re-load them
         for (Value schemaKey : schemaKeys) {
             // Derive actual key from message context
             String propKey = schemaKey.evaluateValue(synCtx);
+            propKeys.add(propKey);
             Entry dp = synCtx.getConfiguration().getEntryDefinition(propKey);
             if (dp != null && dp.isDynamic()) {
                 if (!dp.isCached() || dp.isExpired()) {
@@ -132,48 +177,33 @@ public class ValidateMediator extends AbstractListMediator {
         ValidateMediatorErrorHandler errorHandler = new ValidateMediatorErrorHandler();
 
         // do not re-initialize schema unless required
-        synchronized (validatorLock) {
-            if (reCreate || cachedSchema == null) {
-
-                factory.setErrorHandler(errorHandler);
-                StreamSource[] sources = new StreamSource[schemaKeys.size()];
-                int i = 0;
-                for (Value schemaKey : schemaKeys) {
-                    // Derive actual key from message context
-                    String propName = schemaKey.evaluateValue(synCtx);
-                    sources[i++] = SynapseConfigUtils.getStreamSource(synCtx.getEntry(propName));
-                }
-                // load the UserDefined SchemaURIResolver implementations
-                try {
-                    SynapseConfiguration synCfg = synCtx.getConfiguration();
-                    if (synCfg.getProperty(SynapseConstants.SYNAPSE_SCHEMA_RESOLVER) != null) {
-                        setUserDefinedSchemaResourceResolver(synCtx);
-                    } else {
-                        factory.setResourceResolver(
-                                new SchemaResourceResolver(synCtx.getConfiguration(), resourceMap));
+        ValidatorPool validatorPool = cachedSchema;
+        if (validatorPool == null) {
+            synchronized (validatorLock) {
+                validatorPool = cachedSchema;
+                if (validatorPool == null) {
+                    try {
+                        validatorPool = new ValidatorPool(
+                                createSchema(synCtx.getConfiguration(), propKeys));
+                        cachedSchema = validatorPool;
+                    } catch (SAXException e) {
+                        handleException("Error creating a new schema objects for " +
+                                "schemas : " + schemaKeys.toString(), e, synCtx);
+                    } catch (RuntimeException e) {
+                        handleException("Error creating a new schema objects for " +
+                                "schemas : " + schemaKeys.toString(), e, synCtx);
                     }
-                    cachedSchema = factory.newSchema(sources);
-                } catch (SAXException e) {
-                    handleException("Error creating a new schema objects for " +
-                            "schemas : " + schemaKeys.toString(), e, synCtx);
-                } catch (RuntimeException e) {
-                    handleException("Error creating a new schema objects for " +
-                            "schemas : " + schemaKeys.toString(), e, synCtx);
-                }
-
-                if (errorHandler.isValidationError()) {
-                    //reset the errorhandler state
-                    errorHandler.setValidationError(false);
-                    cachedSchema = null;
-                    handleException("Error creating a new schema objects for schemas : "
-                            + schemaKeys.toString(), errorHandler.getSaxParseException(), synCtx);
                 }
             }
+        } else if (reCreate) {
+            // keep on using the current schema until the new one is ready
+            refreshSchema(synCtx, propKeys);
         }
 
-        // no need to synchronize, schema instances are thread-safe
+        // no need to synchronize, schema instances are thread-safe and
+        // validators are never shared between threads
+        Validator validator = validatorPool.borrowValidator();
         try {
-            Validator validator = cachedSchema.newValidator();
             validator.setErrorHandler(errorHandler);
 
             // perform actual validation
@@ -211,6 +241,8 @@ public class ValidateMediator extends AbstractListMediator {
             handleException("Error validating " + source + " element", e, synCtx);
         } catch (IOException e) {
             handleException("Error validating " + source + " element", e, synCtx);
+        } finally {
+            validatorPool.returnValidator(validator);
         }
 
         if (synLog.isTraceOrDebugEnabled()) {
@@ -222,13 +254,87 @@ public class ValidateMediator extends AbstractListMediator {
         return true;
     }
 
+    /**
+     * Compile the schema made of the given schema resources
+     *
+     * @param synCfg the Synapse configuration to load the schema resources from
+     * @param propKeys keys of the schema resources
+     * @return the compiled schema
+     * @throws SAXException if the schema cannot be compiled
+     */
+    private Schema createSchema(SynapseConfiguration synCfg, List<String> propKeys)
+            throws SAXException {
+
+        // The SchemaFactory is not thread-safe
+        synchronized (validatorLock) {
+            ValidateMediatorErrorHandler errorHandler = new ValidateMediatorErrorHandler();
+            factory.setErrorHandler(errorHandler);
+            StreamSource[] sources = new StreamSource[propKeys.size()];
+            int i = 0;
+            for (String propName : propKeys) {
+                sources[i++] = SynapseConfigUtils.getStreamSource(synCfg.getEntry(propName));
+            }
+            // load the UserDefined SchemaURIResolver implementations
+            if (synCfg.getProperty(SynapseConstants.SYNAPSE_SCHEMA_RESOLVER) != null) {
+                setUserDefinedSchemaResourceResolver(synCfg);
+            } else {
+                factory.setResourceResolver(new SchemaResourceResolver(synCfg, resourceMap));
+            }
+            Schema schema = factory.newSchema(sources);
+
+            if (errorHandler.isValidationError()) {
+                throw errorHandler.getSaxParseException();
+            }
+            return schema;
+        }
+    }
+
+    /**
+     * Re-create the schema in the background. Only one re-creation is performed at a time,
+     * and the messages are validated against the previously loaded schema in the meantime.
+     *
+     * @param synCtx the current message
+     * @param propKeys keys of the schema resources
+     */
+    private void refreshSchema(MessageContext synCtx, final List<String> propKeys) {
+        if (!schemaRefreshInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        final SynapseConfiguration synCfg = synCtx.getConfiguration();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cachedSchema = new ValidatorPool(createSchema(synCfg, propKeys));
+                } catch (Exception e) {
+                    log.warn("Error re-creating the schema objects for schemas : " +
+                            schemaKeys + ". The previously loaded schemas will be used", e);
+                } finally {
+                    schemaRefreshInProgress.set(false);
+                }
+            }
+        };
+
+        ExecutorService executor = synCtx.getEnvironment() != null ?
+                synCtx.getEnvironment().getExecutorService() : null;
+        if (executor == null) {
+            task.run();
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+    }
+
     /**
      * UserDefined schema resource resolver
      *
-     * @param synCtx message context
+     * @param synCfg the Synapse configuration
      */
-    private void setUserDefinedSchemaResourceResolver(MessageContext synCtx) {
-        SynapseConfiguration synCfg = synCtx.getConfiguration();
+    private void setUserDefinedSchemaResourceResolver(SynapseConfiguration synCfg) {
         String schemaResolverName = synCfg.getProperty(SynapseConstants.SYNAPSE_SCHEMA_RESOLVER);
         Class schemaClazz;
         Object schemaClazzObject;
@@ -238,8 +344,8 @@ public class ValidateMediator extends AbstractListMediator {
             String msg =
                     "System could not find the class defined for the specific properties" +
                             "\n SchemaResolverImplementation:" + schemaResolverName;
-            handleException(msg, e, synCtx);
-            return;
+            log.error(msg, e);
+            throw new SynapseException(msg, e);
         }
 
         try {
@@ -251,7 +357,8 @@ public class ValidateMediator extends AbstractListMediator {
             factory.setResourceResolver(userDefSchemaResResolver);
         } catch (Exception e) {
             String msg = "Could not create an instance from the class";
-            handleException(msg, e, synCtx);
+            log.error(msg, e);
+            throw new SynapseException(msg, e);
         }
     }
 
@@ -270,6 +377,10 @@ public class ValidateMediator extends AbstractListMediator {
                 synLog.traceOrDebug("Validation source : " + validateSource.toString());
             }
 
+            if (streamingValidation && validateSource instanceof OMContainer) {
+                // read the element straight from the parser without building it
+                return ((OMContainer) validateSource).getSAXSource(false);
+            }
             return AXIOMUtils.asSource(validateSource);
 
         } catch (Exception e) {
@@ -278,6 +389,45 @@ public class ValidateMediator extends AbstractListMediator {
         return null; // never reaches here
     }
 
+    /**
+     * A schema along with a bounded pool of the validators created from it. Validators
+     * are reset before being returned to the pool.
+     */
+    private static class ValidatorPool {
+
+        private final Schema schema;
+
+        private final Queue<Validator> validators = new ConcurrentLinkedQueue<Validator>();
+
+        private final AtomicInteger size = new AtomicInteger(0);
+
+        private ValidatorPool(Schema schema) {
+            this.schema = schema;
+        }
+
+        private Validator borrowValidator() {
+            Validator validator = validators.poll();
+            if (validator == null) {
+                return schema.newValidator();
+            }
+            size.decrementAndGet();
+            return validator;
+        }
+
+        private void returnValidator(Validator validator) {
+            if (size.get() < validatorPoolSize) {
+                try {
+                    validator.reset();
+                } catch (RuntimeException e) {
+                    // do not re-use a validator which cannot be reset
+                    return;
+                }
+                size.incrementAndGet();
+                validators.offer(validator);
+            }
+        }
+    }
+
     /**
      * This class handles validation errors to be used for the error reporting
      */
@@ -355,7 +505,11 @@ public class ValidateMediator extends AbstractListMediator {
             mp.setValue("false");
         }
         explicityFeatures.add(mp);
-        factory.setFeature(featureName, isFeatureEnable);
+        if (STREAMING_VALIDATION.equals(featureName)) {
+            streamingValidation = isFeatureEnable;
+        } else {
+            factory.setFeature(featureName, isFeatureEnable);
+        }
     }
 
     /**
@@ -56,6 +56,9 @@ public class Target {
      * thread invoked the mediate method*/
     private boolean asynchronous = true;
 
+    /** An optional executor limiting the concurrency of the asynchronous mediation */
+    private TargetExecutor executor = null;
+
     /**
      * process the message through this target (may be to mediate
      * using the target sequence, send message to the target endpoint or both)
@@ -97,7 +100,7 @@ public class Target {
                 if (log.isDebugEnabled()) {
                     log.debug("Asynchronously mediating using the in-lined anonymous sequence");
                 }
-                synCtx.getEnvironment().injectAsync(synCtx, sequence);
+                injectAsync(synCtx, sequence);
             } else {
                 if (log.isDebugEnabled()) {
                     log.debug("Synchronously mediating using the in-lined anonymous sequence");
@@ -112,7 +115,7 @@ public class Target {
                         log.debug("Asynchronously mediating using the sequence " +
                                 "named : " + sequenceRef);
                     }
-                    synCtx.getEnvironment().injectAsync(synCtx, refSequence);
+                    injectAsync(synCtx, refSequence);
                 } else {
                     if (log.isDebugEnabled()) {
                         log.debug("Synchronously mediating using the sequence " +
@@ -147,6 +150,14 @@ public class Target {
         return returnValue;
     }
 
+    private void injectAsync(MessageContext synCtx, SequenceMediator seq) {
+        if (executor != null) {
+            executor.execute(synCtx, seq);
+        } else {
+            synCtx.getEnvironment().injectAsync(synCtx, seq);
+        }
+    }
+
     private void handleException(String message) {
         log.error(message);
         throw new SynapseException(message);
@@ -211,4 +222,12 @@ public class Target {
     public boolean isAsynchronous() {
         return asynchronous;
     }
-}
\ No newline at end of file
+
+    public TargetExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(TargetExecutor executor) {
+        this.executor = executor;
+    }
+}
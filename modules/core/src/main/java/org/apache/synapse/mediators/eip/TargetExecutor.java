@@ -0,0 +1,324 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.mediators.eip;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.mediators.MediatorWorker;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.transport.passthru.util.VirtualThreadWorkerPool;
+import org.apache.synapse.util.concurrent.SynapseThreadPool;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the asynchronous targets of an EIP mediator (i.e. clone or iterate) with an optional
+ * limit on the number of messages of the mediator being mediated concurrently. Messages handed
+ * over while the limit is reached are queued, and each completing message submits the next
+ * queued one, so a large split cannot flood the executor and starve unrelated services.
+ * <p/>
+ * The queue is bounded as well (by the concurrency limit, unless configured otherwise), so that
+ * the thread splitting the message is held back instead of building all the split messages up
+ * front. Once the queue is full, the splitting thread blocks until a queued message is
+ * submitted to the executor. If the splitting thread is itself a thread of the executor, it
+ * mediates the message on its own instead, since all the threads of the executor could
+ * otherwise end up waiting on each other.
+ * <p/>
+ * The messages are executed using one of the following executors
+ * <ul>
+ *   <li>shared - the executor of the SynapseEnvironment (default)</li>
+ *   <li>dedicated - a thread pool owned by the mediator</li>
+ *   <li>forkjoin - a work-stealing pool owned by the mediator</li>
+ * </ul>
+ * A dedicated or fork-join pool is sized by the concurrency limit, or by the number of
+ * available processors if there is no limit.
+ */
+public class TargetExecutor {
+
+    private static final Log log = LogFactory.getLog(TargetExecutor.class);
+
+    public static final String SHARED = "shared";
+    public static final String DEDICATED = "dedicated";
+    public static final String FORK_JOIN = "forkjoin";
+
+    /** Maximum number of messages mediated concurrently, or -1 if there is no limit */
+    private final int maxConcurrency;
+
+    /** Maximum number of messages waiting for the running messages to complete */
+    private final int maxPending;
+
+    /** One of shared, dedicated or forkjoin */
+    private final String executorType;
+
+    /** Name used for the threads of a dedicated pool */
+    private final String name;
+
+    /** Messages waiting for one of the running messages to complete */
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+
+    /** Free places in the above queue */
+    private final Semaphore pendingSlots;
+
+    /** Number of messages submitted to the executor and not yet completed */
+    private final AtomicInteger running = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    /** Whether the executor is owned by (and has to be shutdown with) this instance */
+    private boolean ownExecutor = false;
+
+    public TargetExecutor(String name, int maxConcurrency, String executorType) {
+        this(name, maxConcurrency, -1, executorType);
+    }
+
+    /**
+     * @param name           name of the mediator, used for the threads of a dedicated pool
+     * @param maxConcurrency maximum number of messages mediated concurrently, or -1
+     * @param maxPending     maximum number of messages waiting once maxConcurrency is
+     *                       reached, or -1 to allow as many as maxConcurrency
+     * @param executorType   one of shared, dedicated or forkjoin, or null for shared
+     */
+    public TargetExecutor(String name, int maxConcurrency, int maxPending, String executorType) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency > 0 ? maxConcurrency : -1;
+        this.maxPending = maxPending > 0 ? maxPending : this.maxConcurrency;
+        this.pendingSlots = new Semaphore(Math.max(this.maxPending, 0));
+        this.executorType = executorType != null ? executorType : SHARED;
+
+        if (!isValidType(this.executorType)) {
+            handleException("Unsupported executor type : " + executorType);
+        }
+    }
+
+    /**
+     * @param executorType an executor type
+     * @return true if the given type is one of shared, dedicated or forkjoin
+     */
+    public static boolean isValidType(String executorType) {
+        return SHARED.equals(executorType) || DEDICATED.equals(executorType) ||
+                FORK_JOIN.equals(executorType);
+    }
+
+    public void init(SynapseEnvironment se) {
+        int poolSize = maxConcurrency > 0 ?
+                maxConcurrency : Runtime.getRuntime().availableProcessors();
+        if (DEDICATED.equals(executorType)) {
+            executor = new SynapseThreadPool(poolSize, poolSize,
+                    SynapseThreadPool.SYNAPSE_KEEP_ALIVE, SynapseThreadPool.SYNAPSE_THREAD_QLEN,
+                    SynapseThreadPool.SYNAPSE_THREAD_GROUP, name + "-Worker");
+            ownExecutor = true;
+        } else if (FORK_JOIN.equals(executorType)) {
+            executor = new ForkJoinPool(poolSize);
+            ownExecutor = true;
+        } else {
+            executor = se.getExecutorService();
+        }
+    }
+
+    public void destroy() {
+        if (ownExecutor && executor != null) {
+            executor.shutdown();
+        }
+        executor = null;
+        int discarded = discardPending();
+        if (discarded > 0) {
+            log.warn("Discarding " + discarded + " messages waiting to be mediated");
+        }
+    }
+
+    /**
+     * Mediate the message asynchronously using the given sequence. If the maximum number of
+     * messages are being mediated, the message is queued and mediated once one of them
+     * completes. If the queue is full as well, this method blocks until there is room in the
+     * queue, or mediates the message on the calling thread if it is a thread of the executor.
+     *
+     * @param synCtx the message to be mediated
+     * @param seq the target sequence
+     */
+    public void execute(MessageContext synCtx, SequenceMediator seq) {
+
+        if (executor == null) {
+            handleException("Target executor is not initialized");
+        }
+
+        MediatorWorker worker = new MediatorWorker(seq, synCtx);
+        if (maxConcurrency < 0) {
+            executor.execute(worker);
+            return;
+        }
+
+        if (!pendingSlots.tryAcquire()) {
+            if (isExecutorThread()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Maximum number of pending messages of " + name + " reached, " +
+                            "mediating the message " + synCtx.getMessageID() + " in place");
+                }
+                worker.run();
+                return;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Maximum number of pending messages of " + name + " reached, " +
+                        "waiting to queue the message " + synCtx.getMessageID());
+            }
+            try {
+                pendingSlots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                handleException("Interrupted while waiting to queue the message " +
+                        synCtx.getMessageID());
+            }
+        }
+
+        pending.offer(worker);
+        if (log.isDebugEnabled() && running.get() >= maxConcurrency) {
+            log.debug("Maximum concurrency of " + maxConcurrency + " reached, queued the " +
+                    "message " + synCtx.getMessageID());
+        }
+        dispatch();
+    }
+
+    /**
+     * Submit queued messages to the executor while the number of running messages is below
+     * the limit. Called when a message is queued and whenever a running message completes.
+     */
+    private void dispatch() {
+        while (true) {
+            int current = running.get();
+            if (current >= maxConcurrency) {
+                // a completing message will dispatch the rest
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            final Runnable worker = pending.poll();
+            if (worker != null) {
+                pendingSlots.release();
+            } else {
+                running.decrementAndGet();
+                // a message queued after the poll may have seen our slot as taken and
+                // left it to us, so look again before giving up
+                if (pending.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            ExecutorService executor = this.executor;
+            if (executor == null) {
+                running.decrementAndGet();
+                discardPending();
+                return;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            worker.run();
+                        } finally {
+                            running.decrementAndGet();
+                            dispatch();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running.decrementAndGet();
+                log.error("Executor rejected a message of " + name + ", discarding it", e);
+            }
+        }
+    }
+
+    /**
+     * Check whether the calling thread is one of the threads of the executor, which must not
+     * block waiting for the other threads of the executor. A virtual thread can always block,
+     * while for an executor of an unknown kind the answer is yes, to be on the safe side.
+     */
+    private boolean isExecutorThread() {
+        ExecutorService executor = this.executor;
+        Thread thread = Thread.currentThread();
+        if (VirtualThreadWorkerPool.isVirtualThread(thread)) {
+            return false;
+        } else if (executor instanceof SynapseThreadPool) {
+            return ((SynapseThreadPool) executor).isPoolThread(thread);
+        } else if (executor instanceof ForkJoinPool) {
+            return thread instanceof ForkJoinWorkerThread &&
+                    ((ForkJoinWorkerThread) thread).getPool() == executor;
+        }
+        return true;
+    }
+
+    /**
+     * Discard the queued messages, releasing any thread waiting to queue a message
+     *
+     * @return number of messages discarded
+     */
+    private int discardPending() {
+        int discarded = 0;
+        while (pending.poll() != null) {
+            pendingSlots.release();
+            discarded++;
+        }
+        return discarded;
+    }
+
+    /**
+     * @return number of messages being mediated, or -1 if the concurrency is not limited
+     */
+    public int getActiveCount() {
+        return maxConcurrency > 0 ? running.get() : -1;
+    }
+
+    /**
+     * @return number of messages waiting for a running message to complete
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public String getExecutorType() {
+        return executorType;
+    }
+
+    private void handleException(String message) {
+        log.error(message);
+        throw new SynapseException(message);
+    }
+}
@@ -23,19 +23,29 @@ import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseLog;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.eip.EIPConstants;
+import org.apache.synapse.util.concurrent.TimerWheel;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.TimerTask;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An instance of this class is created to manage each aggregation group, and it holds
- * the aggregation properties and the messages collected during aggregation. This class also
- * times out itself after the timeout expires it
+ * the aggregation properties and the messages collected during aggregation. The aggregate
+ * is timed out by the timer wheel of the AggregateMediator once its timeout expires.
+ * <p/>
+ * Messages are collected without locking: a slot is reserved with an atomic counter (to
+ * honour the maximum message count), the message is appended to a concurrent queue and only
+ * then counted as collected, so that the completion condition never sees a message which is
+ * not yet available. In the incremental merge mode each message is folded into the
+ * aggregated message as it arrives, and only the aggregated message is retained.
  */
-public class Aggregate extends TimerTask {
+public class Aggregate {
 
     private static final Log log = LogFactory.getLog(Aggregate.class);
 
@@ -49,11 +59,25 @@ public class Aggregate extends TimerTask {
     private String correlation = null;
     /** The AggregateMediator that should be invoked on completion of the aggregation */
     private AggregateMediator aggregateMediator = null;
-    private List<MessageContext> messages = new ArrayList<MessageContext>();
-    private boolean locked = false;
-    private boolean completed = false;
+    private Queue<MessageContext> messages = new ConcurrentLinkedQueue<MessageContext>();
+    /** Number of message slots reserved, bounded by the maxCount */
+    private final AtomicInteger reservedCount = new AtomicInteger(0);
+    /** Number of messages actually collected (or merged) by this aggregation */
+    private final AtomicInteger collectedCount = new AtomicInteger(0);
+    /** Total number of messages of the group as specified by the message sequence property */
+    private volatile int expectedCount = -1;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
     private SynapseEnvironment synEnv = null;
 
+    /** Whether the messages are merged as they arrive rather than on completion */
+    private boolean incremental = false;
+    /** The aggregated message in the incremental merge mode, guarded by the mergeLock */
+    private MessageContext mergedMessage = null;
+    private final Object mergeLock = new Object();
+
+    /** The pending completion timeout of this aggregation if any */
+    private volatile TimerWheel.Timeout<Aggregate> timeout = null;
+
     /**
      * Save aggregation properties and timeout
      *
@@ -65,10 +89,26 @@ public class Aggregate extends TimerTask {
      */
     public Aggregate(SynapseEnvironment synEnv, String corelation, long timeoutMillis, int min,
         int max, AggregateMediator mediator) {
+        this(synEnv, corelation, timeoutMillis, min, max, mediator, false);
+    }
+
+    /**
+     * Save aggregation properties and timeout
+     *
+     * @param corelation representing the corelation name of the messages in the aggregate
+     * @param timeoutMillis the timeout duration in milliseconds
+     * @param min the minimum number of messages to be aggregated
+     * @param max the maximum number of messages to be aggregated
+     * @param mediator the mediator to be invoked on completion, and used to merge messages
+     * @param incremental whether to merge each message into the aggregated message on arrival
+     */
+    public Aggregate(SynapseEnvironment synEnv, String corelation, long timeoutMillis, int min,
+        int max, AggregateMediator mediator, boolean incremental) {
 
         this.synEnv = synEnv;
         this.correlation = corelation;
         if (timeoutMillis > 0) {
+            this.timeoutMillis = timeoutMillis;
             expiryTimeMillis = System.currentTimeMillis() + timeoutMillis;
         }
         if (min > 0) {
@@ -78,21 +118,55 @@ public class Aggregate extends TimerTask {
             maxCount = max;
         }
         this.aggregateMediator = mediator;
+        this.incremental = incremental;
     }
 
     /**
-     * Add a message to the interlan message list
+     * Add a message to the interlan message list, or merge it into the aggregated message
+     * in the incremental merge mode
      *
      * @param synCtx message to be added into this aggregation group
-     * @return true if the message was added or false if not
+     * @return true if the message was added or false if not, because the maximum number of
+     * messages has been reached or the aggregation has already been completed
      */
-    public synchronized boolean addMessage(MessageContext synCtx) {
-        if (maxCount <= 0 || (maxCount > 0 && messages.size() < maxCount)) {
-            messages.add(synCtx);
-            return true;
-        } else {
+    public boolean addMessage(MessageContext synCtx) {
+        if (completed.get() || !reserve()) {
             return false;
         }
+
+        if (expectedCount < 0) {
+            // messages split in the streaming mode do not know the total, except for the
+            // last one - never let them overwrite a total already found
+            int total = getMessageSequenceTotal(synCtx);
+            if (total > 0) {
+                expectedCount = total;
+            }
+        }
+
+        if (incremental) {
+            synchronized (mergeLock) {
+                if (completed.get()) {
+                    reservedCount.decrementAndGet();
+                    return false;
+                }
+                if (mergedMessage == null) {
+                    mergedMessage = synCtx;
+                } else {
+                    aggregateMediator.mergeMessage(mergedMessage, synCtx);
+                }
+            }
+        } else {
+            messages.offer(synCtx);
+            // if the aggregation got completed meanwhile, the message may or may not have been
+            // drained - only the one who manages to remove it from the queue owns it
+            if (completed.get() && messages.remove(synCtx)) {
+                reservedCount.decrementAndGet();
+                return false;
+            }
+        }
+
+        collectedCount.incrementAndGet();
+        return true;
     }
 
     /**
@@ -102,29 +176,25 @@ public class Aggregate extends TimerTask {
      *
      * @return boolean true if aggregation is complete
      */
-    public synchronized boolean isComplete(SynapseLog synLog) {
+    public boolean isComplete(SynapseLog synLog) {
+
+        if (!completed.get()) {
 
-        if (!completed) {
+            int collected = collectedCount.get();
 
             // if any messages have been collected, check if the completion criteria is met
-            if (!messages.isEmpty()) {
-
-                // get total messages for this group, from the first message we have collected
-                MessageContext mc = messages.get(0);
-                Object prop = mc.getProperty(EIPConstants.MESSAGE_SEQUENCE +
-                        (aggregateMediator.getId() != null ? "." + aggregateMediator.getId() : ""));
-            
-                if (prop != null && prop instanceof String) {
-                    String[] msgSequence = prop.toString().split(
-                            EIPConstants.MESSAGE_SEQUENCE_DELEMITER);
-                    int total = Integer.parseInt(msgSequence[1]);
+            if (collected > 0) {
+
+                // get total messages for this group, as found in the collected messages
+                int total = expectedCount;
+                if (total > 0) {
 
                     if (synLog.isTraceOrDebugEnabled()) {
-                        synLog.traceOrDebug(messages.size() +
+                        synLog.traceOrDebug(collected +
                                 " messages of " + total + " collected in current aggregation");
                     }
 
-                    if (messages.size() >= total) {
+                    if (collected >= total) {
                         synLog.traceOrDebug("Aggregation complete");
                         return true;
                     }
@@ -134,7 +204,7 @@ public class Aggregate extends TimerTask {
             }
 
             // if the minimum number of messages has been reached, its complete
-            if (minCount > 0 && messages.size() >= minCount) {
+            if (minCount > 0 && collected >= minCount) {
                 if (synLog.isTraceOrDebugEnabled()) {
                     synLog.traceOrDebug(
                             "Aggregation complete - the minimum : " + minCount
@@ -143,7 +213,7 @@ public class Aggregate extends TimerTask {
                 return true;
             }
 
-            if (maxCount > 0 && messages.size() >= maxCount) {
+            if (maxCount > 0 && collected >= maxCount) {
                 if (synLog.isTraceOrDebugEnabled()) {
                     synLog.traceOrDebug(
                             "Aggregation complete - the maximum : " + maxCount
@@ -167,6 +237,73 @@ public class Aggregate extends TimerTask {
         return false;
     }
 
+    /**
+     * Mark this aggregation as completed and cancel its timeout. Only one caller succeeds,
+     * and that caller owns the collected messages from then onwards.
+     *
+     * @return true if the aggregation was completed by this call
+     */
+    public boolean markCompleted() {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        TimerWheel.Timeout<Aggregate> t = timeout;
+        if (t != null) {
+            t.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Remove the collected messages from this aggregation, in the order of their arrival.
+     * Should only be called by the caller who completed the aggregation.
+     *
+     * @return the collected messages
+     */
+    List<MessageContext> drainMessages() {
+        List<MessageContext> drained = new ArrayList<MessageContext>();
+        MessageContext synCtx;
+        while ((synCtx = messages.poll()) != null) {
+            drained.add(synCtx);
+        }
+        return drained;
+    }
+
+    /**
+     * Get the aggregated message of the incremental merge mode. Any message which has not
+     * been merged yet at the time of the completion is rejected by {@link #addMessage}.
+     *
+     * @return the aggregated message or null if no message was collected
+     */
+    MessageContext getMergedMessage() {
+        synchronized (mergeLock) {
+            return mergedMessage;
+        }
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int reserved = reservedCount.get();
+            if (maxCount > 0 && reserved >= maxCount) {
+                return false;
+            }
+            if (reservedCount.compareAndSet(reserved, reserved + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private int getMessageSequenceTotal(MessageContext synCtx) {
+        Object prop = synCtx.getProperty(EIPConstants.MESSAGE_SEQUENCE +
+                (aggregateMediator.getId() != null ? "." + aggregateMediator.getId() : ""));
+        if (prop != null && prop instanceof String) {
+            String[] msgSequence = prop.toString().split(
+                    EIPConstants.MESSAGE_SEQUENCE_DELEMITER);
+            return Integer.parseInt(msgSequence[1]);
+        }
+        return -1;
+    }
+
     public long getTimeoutMillis() {
         return timeoutMillis;
     }
@@ -199,12 +336,33 @@ public class Aggregate extends TimerTask {
         this.correlation = correlation;
     }
 
-    public synchronized List<MessageContext> getMessages() {
+    /**
+     * @return a snapshot of the messages collected so far, in the incremental merge mode
+     * this is the aggregated message alone
+     */
+    public List<MessageContext> getMessages() {
+        if (incremental) {
+            List<MessageContext> list = new ArrayList<MessageContext>(1);
+            MessageContext merged = getMergedMessage();
+            if (merged != null) {
+                list.add(merged);
+            }
+            return list;
+        }
         return new ArrayList<MessageContext>(messages);
     }
 
     public void setMessages(List<MessageContext> messages) {
-        this.messages = messages;
+        this.messages = new ConcurrentLinkedQueue<MessageContext>(messages);
+        reservedCount.set(messages.size());
+        collectedCount.set(messages.size());
+    }
+
+    /**
+     * @return number of messages collected by this aggregation
+     */
+    public int getMessageCount() {
+        return collectedCount.get();
     }
 
     public long getExpiryTimeMillis() {
@@ -215,23 +373,34 @@ public class Aggregate extends TimerTask {
         this.expiryTimeMillis = expiryTimeMillis;
     }
 
-    @Override
-    public void run() {
-        while (true) {
-            if (completed) {
-                break;
-            }
-            if (getLock()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Time : " + System.currentTimeMillis() + " and this aggregator " +
-                            "expired at : " + expiryTimeMillis);
-                }
-                synEnv.getExecutorService().execute(new AggregateTimeout(this));
-                break;
-            }
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    void setTimeout(TimerWheel.Timeout<Aggregate> timeout) {
+        this.timeout = timeout;
+        if (completed.get()) {
+            // completed before the timeout could be recorded
+            timeout.cancel();
         }
     }
 
+    /**
+     * Invoked by the timer wheel of the AggregateMediator once the completion timeout of
+     * this aggregation has expired. The completion is handed over to the Synapse worker pool
+     * to keep the timer thread free.
+     */
+    void expire() {
+        if (completed.get()) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Time : " + System.currentTimeMillis() + " and this aggregator " +
+                    "expired at : " + expiryTimeMillis);
+        }
+        synEnv.getExecutorService().execute(new AggregateTimeout(this));
+    }
+
     private class AggregateTimeout implements Runnable {
         private Aggregate aggregate = null;
         AggregateTimeout(Aggregate aggregate) {
@@ -244,19 +413,11 @@ public class Aggregate extends TimerTask {
         }
     }
 
-    public synchronized boolean getLock() {
-        return !locked;
-    }
-
-    public void releaseLock() {
-        locked = false;
-    }
-
     public boolean isCompleted() {
-        return completed;
+        return completed.get();
     }
 
     public void setCompleted(boolean completed) {
-        this.completed = completed;
+        this.completed.set(completed);
     }
 }
@@ -31,12 +31,15 @@ import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.synapse.mediators.eip.EIPUtils;
+import org.apache.synapse.util.concurrent.TimerWheel;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Aggregate a number of messages that are determined to be for a particular group, and combine
@@ -44,14 +47,20 @@ import java.util.Map;
  * an aggregator acts like a filter, and may look at a correlation XPath expression to select
  * messages for aggregation - or look at messageSequence number properties for aggregation or
  * let any other (i.e. non aggregatable) messages flow through
- * An instance of this mediator will register with a Timer to be notified after a specified timeout,
- * so that aggregations that never would complete could be timed out and cleared from memory and
+ * The completion timeouts of the aggregations of an instance of this mediator are tracked by a
+ * single timer wheel, which is turned by one task registered with the Synapse timer, so that
+ * aggregations that never would complete could be timed out and cleared from memory and
  * any fault conditions handled
  */
 public class AggregateMediator extends AbstractMediator implements ManagedLifecycle {
 
     private static final Log log = LogFactory.getLog(AggregateMediator.class);
 
+    /** Resolution of the completion timeouts */
+    private static final long TIMEOUT_TICK_MILLIS = 100;
+    /** Number of slots of the timer wheel, covering 51.2 seconds in a single turn */
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
+
     /** The duration as a number of milliseconds for this aggregation to complete */
     private long completionTimeoutMillis = 0;
     /** The minimum number of messages required to complete aggregation */
@@ -72,19 +81,27 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
      */
     private SynapseXPath aggregationExpression = null;
 
+    /**
+     * Whether each message is merged into the aggregated message as it arrives, instead of
+     * holding on to all the messages until the aggregation completes
+     */
+    private boolean incrementalMerge = false;
+
     /** This holds the reference sequence name of the */
     private String onCompleteSequenceRef = null;
     /** Inline sequence definition holder that holds the onComplete sequence */
     private SequenceMediator onCompleteSequence = null;
 
     /** The active aggregates currently being processd */
-    private Map<String, Aggregate> activeAggregates =
-        Collections.synchronizedMap(new HashMap<String, Aggregate>());
+    private final ConcurrentMap<String, Aggregate> activeAggregates =
+        new ConcurrentHashMap<String, Aggregate>();
 
     private String id = null;
 
-    /** Lock object to provide the synchronized access to the activeAggregates on checking */
-    private final Object lock = new Object();
+    /** Tracks the completion timeouts of the active aggregates, created on first use */
+    private volatile TimerWheel<Aggregate> timeoutWheel = null;
+    /** The Synapse timer task turning the timeoutWheel */
+    private TimerTask timeoutTask = null;
 
     public AggregateMediator() {
         try {
@@ -112,6 +129,20 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         if (onCompleteSequence != null) {
             onCompleteSequence.destroy();
         }
+        synchronized (this) {
+            if (timeoutTask != null) {
+                timeoutTask.cancel();
+                timeoutTask = null;
+            }
+            if (timeoutWheel != null) {
+                if (timeoutWheel.size() > 0) {
+                    log.warn("Destroying the aggregate mediator with " + timeoutWheel.size() +
+                            " incomplete aggregations, which will not be timed out");
+                }
+                timeoutWheel.clear();
+                timeoutWheel = null;
+            }
+        }
     }
 
     /**
@@ -135,7 +166,7 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         }
 
         try {
-            Aggregate aggregate = null;
+            String correlation;
             String correlationIdName = (id != null ? EIPConstants.AGGREGATE_CORRELATION + "." + id :
                     EIPConstants.AGGREGATE_CORRELATION);
             // if a correlateExpression is provided and there is a corresponding
@@ -143,44 +174,7 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
             if (correlateExpression != null
                     && correlateExpression.evaluate(synCtx) != null) {
 
-                while (aggregate == null) {
-
-                    synchronized (lock) {
-
-                        if (activeAggregates.containsKey(correlateExpression.toString())) {
-
-                            aggregate = activeAggregates.get(correlateExpression.toString());
-                            if (aggregate != null) {
-                                if (!aggregate.getLock()) {
-                                    aggregate = null;
-                                }
-                            }
-
-                        } else {
-
-                            if (synLog.isTraceOrDebugEnabled()) {
-                                synLog.traceOrDebug("Creating new Aggregator - " +
-                                        (completionTimeoutMillis > 0 ? "expires in : "
-                                                + (completionTimeoutMillis / 1000) + "secs" :
-                                                "without expiry time"));
-                            }
-
-                            aggregate = new Aggregate(
-                                    synCtx.getEnvironment(),
-                                    correlateExpression.toString(),
-                                    completionTimeoutMillis,
-                                    minMessagesToComplete,
-                                    maxMessagesToComplete, this);
-
-                            if (completionTimeoutMillis > 0) {
-                                synCtx.getConfiguration().getSynapseTimer().
-                                        schedule(aggregate, completionTimeoutMillis);
-                            }
-                            aggregate.getLock();
-                            activeAggregates.put(correlateExpression.toString(), aggregate);
-                        }
-                    }
-                }
+                correlation = correlateExpression.toString();
 
             } else if (synCtx.getProperty(correlationIdName) != null) {
                 // if the correlation cannot be found using the correlateExpression then
@@ -189,50 +183,8 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
                 // which thus can be used to uniquely group messages into aggregates
 
                 Object o = synCtx.getProperty(correlationIdName);
-                String correlation;
-
-                if (o != null && o instanceof String) {
+                if (o instanceof String) {
                     correlation = (String) o;
-                    while (aggregate == null) {
-                        synchronized (lock) {
-                            if (activeAggregates.containsKey(correlation)) {
-                                aggregate = activeAggregates.get(correlation);
-                                if (aggregate != null) {
-                                    if (!aggregate.getLock()) {
-                                        aggregate = null;
-                                    }
-                                } else {
-                                    break;
-                                }
-                            } else {
-                                if (synLog.isTraceOrDebugEnabled()) {
-                                    synLog.traceOrDebug("Creating new Aggregator - " +
-                                            (completionTimeoutMillis > 0 ? "expires in : "
-                                                    + (completionTimeoutMillis / 1000) + "secs" :
-                                                    "without expiry time"));
-                                }
-                        
-                                aggregate = new Aggregate(
-                                        synCtx.getEnvironment(),
-                                        correlation,
-                                        completionTimeoutMillis,
-                                        minMessagesToComplete,
-                                        maxMessagesToComplete, this);
-
-                                if (completionTimeoutMillis > 0) {
-                                    synchronized(aggregate) {
-                                        if (!aggregate.isCompleted()) {
-                                            synCtx.getConfiguration().getSynapseTimer().
-                                                schedule(aggregate, completionTimeoutMillis);
-                                        }
-                                    }
-                                }
-                                aggregate.getLock();
-                                activeAggregates.put(correlation, aggregate);
-                            }
-                        }
-                    }
-                    
                 } else {
                     synLog.traceOrDebug("Unable to find aggrgation correlation property");
                     return true;
@@ -242,36 +194,36 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
                 return true;
             }
 
-            // if there is an aggregate continue on aggregation
-            if (aggregate != null) {
-                boolean collected = aggregate.addMessage(synCtx);
-                if (synLog.isTraceOrDebugEnabled()) {
-                    if (collected) {
-                        synLog.traceOrDebug("Collected a message during aggregation");
-                        if (synLog.isTraceTraceEnabled()) {
-                            synLog.traceTrace("Collected message : " + synCtx);
-                        }
-                    }
+            Aggregate aggregate;
+            boolean collected;
+            while (true) {
+                aggregate = getAggregate(correlation, synCtx, synLog);
+                collected = aggregate.addMessage(synCtx);
+                if (collected || !aggregate.isCompleted()) {
+                    break;
                 }
-                
-                // check the completeness of the aggregate and if completed aggregate the messages
-                // if not completed return false and block the message sequence till it completes
-
-                if (aggregate.isComplete(synLog)) {
-                    synLog.traceOrDebug("Aggregation completed - invoking onComplete");
-                    completeAggregate(aggregate);
-                    
-                    synLog.traceOrDebug("End : Aggregate mediator");
-                    return true;
-                } else {
-                    aggregate.releaseLock();
+                // the aggregate was completed by another thread meanwhile, so this message
+                // starts a new aggregation for the same correlation
+                activeAggregates.remove(correlation, aggregate);
+            }
+
+            if (synLog.isTraceOrDebugEnabled()) {
+                if (collected) {
+                    synLog.traceOrDebug("Collected a message during aggregation");
+                    if (synLog.isTraceTraceEnabled()) {
+                        synLog.traceTrace("Collected message : " + synCtx);
+                    }
                 }
+            }
 
-            } else {
-                // if the aggregation correlation cannot be found then continue the message on the
-                // normal path by returning true
+            // check the completeness of the aggregate and if completed aggregate the messages
+            // if not completed return false and block the message sequence till it completes
 
-                synLog.traceOrDebug("Unable to find an aggregate for this message - skip");
+            if (aggregate.isComplete(synLog)) {
+                synLog.traceOrDebug("Aggregation completed - invoking onComplete");
+                completeAggregate(aggregate);
+
+                synLog.traceOrDebug("End : Aggregate mediator");
                 return true;
             }
 
@@ -284,6 +236,86 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         return true;
     }
 
+    /**
+     * Find the active aggregate for the given correlation, or create and register a new one
+     *
+     * @param correlation the correlation of the message
+     * @param synCtx the message being aggregated
+     * @param synLog the Synapse log to use
+     * @return the active aggregate for the correlation
+     */
+    private Aggregate getAggregate(String correlation, MessageContext synCtx,
+                                   SynapseLog synLog) {
+
+        Aggregate aggregate = activeAggregates.get(correlation);
+        if (aggregate != null) {
+            return aggregate;
+        }
+
+        Aggregate newAggregate = new Aggregate(
+                synCtx.getEnvironment(),
+                correlation,
+                completionTimeoutMillis,
+                minMessagesToComplete,
+                maxMessagesToComplete, this, incrementalMerge);
+
+        aggregate = activeAggregates.putIfAbsent(correlation, newAggregate);
+        if (aggregate != null) {
+            // lost the race to another message of the same correlation
+            return aggregate;
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Creating new Aggregator - " +
+                    (completionTimeoutMillis > 0 ? "expires in : "
+                            + (completionTimeoutMillis / 1000) + "secs" :
+                            "without expiry time"));
+        }
+
+        if (completionTimeoutMillis > 0) {
+            newAggregate.setTimeout(getTimeoutWheel(synCtx).schedule(
+                    newAggregate, newAggregate.getExpiryTimeMillis()));
+        }
+        return newAggregate;
+    }
+
+    /**
+     * Get the timer wheel tracking the completion timeouts, creating it and scheduling the
+     * task which turns it with the Synapse timer on first use
+     *
+     * @param synCtx the current message
+     * @return the timer wheel of this mediator
+     */
+    private TimerWheel<Aggregate> getTimeoutWheel(MessageContext synCtx) {
+        TimerWheel<Aggregate> wheel = timeoutWheel;
+        if (wheel != null) {
+            return wheel;
+        }
+
+        synchronized (this) {
+            if (timeoutWheel == null) {
+                final TimerWheel<Aggregate> newWheel = new TimerWheel<Aggregate>(
+                        TIMEOUT_TICK_MILLIS, TIMEOUT_WHEEL_SIZE,
+                        new TimerWheel.ExpiryHandler<Aggregate>() {
+                            @Override
+                            public void expired(Aggregate aggregate) {
+                                aggregate.expire();
+                            }
+                        });
+                timeoutTask = new TimerTask() {
+                    @Override
+                    public void run() {
+                        newWheel.expire(System.currentTimeMillis());
+                    }
+                };
+                synCtx.getConfiguration().getSynapseTimer().schedule(
+                        timeoutTask, TIMEOUT_TICK_MILLIS, TIMEOUT_TICK_MILLIS);
+                timeoutWheel = newWheel;
+            }
+            return timeoutWheel;
+        }
+    }
+
     /**
      * Invoked by the Aggregate objects that are timed out, to signal timeout/completion of
      * itself
@@ -291,9 +323,8 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
      */
     public void completeAggregate(Aggregate aggregate) {
 
-        boolean markedCompletedNow = false;
-        boolean wasComplete = aggregate.isCompleted();
-        if (wasComplete) {
+        // only one of the threads completing or timing out the aggregate gets through
+        if (!aggregate.markCompleted()) {
             return;
         }
 
@@ -301,27 +332,19 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
             log.debug("Aggregation completed or timed out");
         }
 
-        // cancel the timer
-        synchronized(this) {
-            if (!aggregate.isCompleted()) {
-                aggregate.cancel();
-                aggregate.setCompleted(true);
-                markedCompletedNow = true;
-            }
-        }
+        activeAggregates.remove(aggregate.getCorrelation(), aggregate);
 
-        if (!markedCompletedNow) {
-            return;
+        MessageContext newSynCtx;
+        if (aggregate.isIncremental()) {
+            newSynCtx = aggregate.getMergedMessage();
+        } else {
+            newSynCtx = getAggregatedMessage(aggregate.drainMessages());
         }
-        
-        MessageContext newSynCtx = getAggregatedMessage(aggregate);
         if (newSynCtx == null) {
             log.warn("An aggregation of messages timed out with no aggregated messages", null);
             return;
         }
 
-        activeAggregates.remove(aggregate.getCorrelation());
-
         if ((correlateExpression != null &&
             !correlateExpression.toString().equals(aggregate.getCorrelation())) ||
             correlateExpression == null) {
@@ -341,17 +364,16 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
     }
 
     /**
-     * Get the aggregated message from the specified Aggregate instance
+     * Get the aggregated message from the messages collected by an aggregation
      *
-     * @param aggregate the Aggregate object that holds collected messages and properties of the
-     * aggregation
+     * @param messages the messages collected by the aggregation, in the order of arrival
      * @return the aggregated message context
      */
-    private MessageContext getAggregatedMessage(Aggregate aggregate) {
+    private MessageContext getAggregatedMessage(List<MessageContext> messages) {
 
         MessageContext newCtx = null;
 
-        for (MessageContext synCtx : aggregate.getMessages()) {
+        for (MessageContext synCtx : messages) {
             
             if (newCtx == null) {
                 newCtx = synCtx;
@@ -361,26 +383,37 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
                 }
 
             } else {
-                try {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Merging message : " + synCtx.getEnvelope() + " using XPath : " +
-                                aggregationExpression);
-                    }
+                mergeMessage(newCtx, synCtx);
+            }
+        }
+        return newCtx;
+    }
 
-                    EIPUtils.enrichEnvelope(
-                            newCtx.getEnvelope(), synCtx.getEnvelope(), synCtx, aggregationExpression);
+    /**
+     * Merge the elements selected by the aggregation expression from a message into the
+     * aggregated message
+     *
+     * @param newCtx the aggregated message
+     * @param synCtx the message to be merged
+     */
+    void mergeMessage(MessageContext newCtx, MessageContext synCtx) {
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Merging message : " + synCtx.getEnvelope() + " using XPath : " +
+                        aggregationExpression);
+            }
 
-                    if (log.isDebugEnabled()) {
-                        log.debug("Merged result : " + newCtx.getEnvelope());
-                    }
+            EIPUtils.enrichEnvelope(
+                    newCtx.getEnvelope(), synCtx.getEnvelope(), synCtx, aggregationExpression);
 
-                } catch (JaxenException e) {
-                    handleException("Error merging aggregation results using XPath : " +
-                            aggregationExpression.toString(), e, synCtx);
-                }
+            if (log.isDebugEnabled()) {
+                log.debug("Merged result : " + newCtx.getEnvelope());
             }
+
+        } catch (JaxenException e) {
+            handleException("Error merging aggregation results using XPath : " +
+                    aggregationExpression.toString(), e, synCtx);
         }
-        return newCtx;
     }
 
     public SynapseXPath getCorrelateExpression() {
@@ -423,6 +456,14 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         this.aggregationExpression = aggregationExpression;
     }
 
+    public boolean isIncrementalMerge() {
+        return incrementalMerge;
+    }
+
+    public void setIncrementalMerge(boolean incrementalMerge) {
+        this.incrementalMerge = incrementalMerge;
+    }
+
     public String getOnCompleteSequenceRef() {
         return onCompleteSequenceRef;
     }
@@ -28,6 +28,7 @@ import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.eip.Target;
+import org.apache.synapse.mediators.eip.TargetExecutor;
 import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
@@ -58,6 +59,20 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
 
     private boolean sequential = false;
 
+    /** Maximum number of messages mediated concurrently by the targets, or -1 if unlimited */
+    private int maxConcurrency = -1;
+
+    /**
+     * Maximum number of messages waiting for the running ones once maxConcurrency is reached,
+     * or -1 to allow as many as maxConcurrency
+     */
+    private int maxPending = -1;
+
+    /** The executor type used by the asynchronous targets, see {@link TargetExecutor} */
+    private String executorType = null;
+
+    private TargetExecutor targetExecutor = null;
+
     /**
      * This will implement the mediate method of the Mediator interface and will provide the
      * functionality of cloning message into the specified targets and mediation
@@ -120,9 +135,16 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
     private MessageContext getClonedMessageContext(MessageContext synCtx, int messageSequence,
                                                    int messageCount) {
 
+        // unless the parent message is going to be mediated further, the last target can take
+        // over the original envelope instead of a clone of it
+        boolean reuseEnvelope = !continueParent && messageSequence == messageCount - 1;
+
         MessageContext newCtx = null;
         try {
-            newCtx = MessageHelper.cloneMessageContext(synCtx);
+            newCtx = MessageHelper.cloneMessageContext(synCtx, !reuseEnvelope);
+            if (reuseEnvelope) {
+                newCtx.setEnvelope(synCtx.getEnvelope());
+            }
             // Set isServerSide property in the cloned message context
             ((Axis2MessageContext) newCtx).getAxis2MessageContext().setServerSide(
                     ((Axis2MessageContext) synCtx).getAxis2MessageContext().isServerSide());
@@ -188,10 +210,41 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
         this.sequential = sequential;
     }
 
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    public String getExecutorType() {
+        return executorType;
+    }
+
+    public void setExecutorType(String executorType) {
+        this.executorType = executorType;
+    }
+
     @Override
     public void init(SynapseEnvironment se) {
 
+        if (maxConcurrency > 0 || executorType != null) {
+            targetExecutor = new TargetExecutor(id != null ? id : "CloneMediator",
+                    maxConcurrency, maxPending, executorType);
+            targetExecutor.init(se);
+        }
+
         for (Target target : targets) {
+            target.setExecutor(targetExecutor);
             ManagedLifecycle seq = target.getSequence();
             if (seq != null) {
                 seq.init(se);
@@ -206,7 +259,13 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
     @Override
     public void destroy() {
 
+        if (targetExecutor != null) {
+            targetExecutor.destroy();
+            targetExecutor = null;
+        }
+
         for (Target target : targets) {
+            target.setExecutor(null);
             ManagedLifecycle seq = target.getSequence();
             if (seq != null) {
                 seq.destroy();
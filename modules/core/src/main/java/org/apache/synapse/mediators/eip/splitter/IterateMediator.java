@@ -20,8 +20,12 @@
 package org.apache.synapse.mediators.eip.splitter;
 
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMNamespace;
 import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.util.ElementHelper;
 import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axiom.soap.SOAPHeader;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.context.OperationContext;
@@ -35,11 +39,20 @@ import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.synapse.mediators.eip.EIPUtils;
 import org.apache.synapse.mediators.eip.Target;
+import org.apache.synapse.mediators.eip.TargetExecutor;
+import org.apache.synapse.transport.passthru.util.RelayUtils;
 import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Splits a message using an XPath expression and creates a new message to hold
@@ -72,6 +85,26 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
 
     private String id = null;
 
+    /** Maximum number of messages mediated concurrently by the targets, or -1 if unlimited */
+    private int maxConcurrency = -1;
+
+    /**
+     * Maximum number of messages waiting for the running ones once maxConcurrency is reached,
+     * or -1 to allow as many as maxConcurrency
+     */
+    private int maxPending = -1;
+
+    /** The executor type used by the asynchronous targets, see {@link TargetExecutor} */
+    private String executorType = null;
+
+    private TargetExecutor targetExecutor = null;
+
+    /** Split the message while it is being read, using the expression as a streaming path */
+    private boolean streaming = false;
+
+    /** The expression compiled as a streaming path */
+    private StreamingPath streamingPath = null;
+
     /**
      * Splits the message by iterating over the results of the given XPath expression
      *
@@ -92,52 +125,17 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         }
 
         try {
-            // get a copy of the message for the processing, if the continueParent is set to true
-            // this original message can go in further mediations and hence we should not change
-            // the original message context
-            SOAPEnvelope envelope = MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope());
-
-            // get the iteration elements and iterate through the list,
-            // this call will also detach all the iteration elements 
-            List splitElements = EIPUtils.getDetachedMatchingElements(envelope, synCtx, expression);
-
-            if (synLog.isTraceOrDebugEnabled()) {
-                synLog.traceOrDebug("Splitting with XPath : " + expression + " resulted in " +
-                    splitElements.size() + " elements");
-            }
-
-            // if not preservePayload remove all the child elements
-            if (!preservePayload && envelope.getBody() != null) {
-                envelope.getBody().removeChildren();
-            }
-
-            int msgCount = splitElements.size();
-            int msgNumber = 0;
-
-            // iterate through the list
-            for (Object o : splitElements) {
-
-                // for the moment iterator will look for an OMNode as the iteration element
-                if (!(o instanceof OMNode)) {
-                    handleException("Error splitting message with XPath : "
-                        + expression + " - result not an OMNode", synCtx);
-                }
-
-                if (synLog.isTraceOrDebugEnabled()) {
-                    synLog.traceOrDebug("Submitting " + (msgNumber + 1) + " of " + msgNumber +
-                            (target.isAsynchronous() ?
-                                    " messages for processing in parallel" :
-                                    " messages for processing sequentially"));
-                }
-
-                target.mediate(
-                    getIteratedMessage(synCtx, msgNumber++, msgCount, envelope, (OMNode) o));
+            if (streaming) {
+                splitStreaming(synCtx, synLog);
+            } else {
+                split(synCtx, synLog);
             }
-
         } catch (JaxenException e) {
             handleException("Error evaluating split XPath expression : " + expression, e, synCtx);
         } catch (AxisFault af) {
             handleException("Error creating an iterated copy of the message", af, synCtx);
+        } catch (XMLStreamException e) {
+            handleException("Error streaming the message to be split", e, synCtx);
         }
 
         // if the continuation of the parent message is stopped from here set the RESPONSE_WRITTEN
@@ -154,6 +152,144 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         return continueParent;
     }
 
+    /**
+     * Splits the message in memory by evaluating the XPath expression against the message
+     *
+     * @param synCtx - MessageContext to be split
+     * @param synLog - the Synapse log to use
+     * @throws AxisFault if there is a message creation failure
+     * @throws JaxenException if the expression evaluation failure
+     */
+    private void split(MessageContext synCtx, SynapseLog synLog)
+            throws AxisFault, JaxenException {
+
+        // get a copy of the message for the processing, if the continueParent is set to true
+        // this original message can go in further mediations and hence we should not change
+        // the original message context. Otherwise the original envelope is not used anymore
+        // and can be split without copying it first
+        SOAPEnvelope envelope = continueParent ?
+                MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope()) : synCtx.getEnvelope();
+
+        // get the iteration elements and iterate through the list,
+        // this call will also detach all the iteration elements 
+        List splitElements = EIPUtils.getDetachedMatchingElements(envelope, synCtx, expression);
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Splitting with XPath : " + expression + " resulted in " +
+                splitElements.size() + " elements");
+        }
+
+        // if not preservePayload remove all the child elements
+        if (!preservePayload && envelope.getBody() != null) {
+            envelope.getBody().removeChildren();
+        }
+
+        int msgCount = splitElements.size();
+        int msgNumber = 0;
+
+        // iterate through the list
+        for (Object o : splitElements) {
+
+            // for the moment iterator will look for an OMNode as the iteration element
+            if (!(o instanceof OMNode)) {
+                handleException("Error splitting message with XPath : "
+                    + expression + " - result not an OMNode", synCtx);
+            }
+
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Submitting " + (msgNumber + 1) + " of " + msgNumber +
+                        (target.isAsynchronous() ?
+                                " messages for processing in parallel" :
+                                " messages for processing sequentially"));
+            }
+
+            target.mediate(
+                getIteratedMessage(synCtx, msgNumber++, msgCount, envelope, (OMNode) o));
+        }
+    }
+
+    /**
+     * Splits the message while it is being read, without building the payload in memory.
+     * The SOAP body is read as a stream of StAX events and each element matched by the
+     * streaming path is built and handed over to the target as soon as it has been read.
+     * As the total number of messages is only known once the end of the body has been
+     * reached, all but the last message carry -1 as the message count of the message
+     * sequence. An aggregate mediator picks up the actual count from the last message.
+     *
+     * @param synCtx - MessageContext to be split
+     * @param synLog - the Synapse log to use
+     * @throws AxisFault if there is a message creation failure
+     * @throws XMLStreamException on an error reading the message
+     */
+    private void splitStreaming(MessageContext synCtx, SynapseLog synLog)
+            throws AxisFault, XMLStreamException {
+
+        try {
+            // make sure the message is available as a (deferred) envelope, without reading it
+            RelayUtils.buildMessage(((Axis2MessageContext) synCtx).getAxis2MessageContext(), false);
+        } catch (IOException e) {
+            handleException("Error reading the message to be split", e, synCtx);
+        }
+
+        SOAPEnvelope envelope = synCtx.getEnvelope();
+        SOAPFactory fac = (SOAPFactory) envelope.getOMFactory();
+
+        // the headers precede the body, so they can be copied into a template envelope for
+        // the new messages before the body is streamed
+        SOAPEnvelope template = fac.getDefaultEnvelope();
+        SOAPHeader header = envelope.getHeader();
+        if (header != null) {
+            for (Iterator itr = header.getChildElements(); itr.hasNext();) {
+                OMElement headerBlock = ((OMElement) itr.next()).cloneOMElement();
+                try {
+                    template.getHeader().addChild(ElementHelper.toSOAPHeaderBlock(headerBlock, fac));
+                } catch (Exception e) {
+                    handleException("Error copying the SOAP header : " +
+                            headerBlock.getQName(), e, synCtx);
+                }
+            }
+        }
+
+        List<QName> ancestors = new ArrayList<QName>();
+        ancestors.add(envelope.getQName());
+        Map<String, String> namespaces = new HashMap<String, String>();
+        for (Iterator itr = envelope.getAllDeclaredNamespaces(); itr.hasNext();) {
+            OMNamespace ns = (OMNamespace) itr.next();
+            namespaces.put(ns.getPrefix(), ns.getNamespaceURI());
+        }
+        StreamingSplitter splitter = new StreamingSplitter(
+                envelope.getBody().getXMLStreamReaderWithoutCaching(), ancestors, namespaces,
+                streamingPath, fac);
+
+        int msgNumber = 0;
+        OMElement current = splitter.next();
+        while (current != null) {
+            // read ahead one element to find out whether the current one is the last
+            OMElement next = splitter.next();
+            int msgCount = next == null ? msgNumber + 1 : -1;
+
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Submitting streamed message " + (msgNumber + 1) +
+                        (target.isAsynchronous() ?
+                                " for processing in parallel" : " for processing sequentially"));
+            }
+
+            MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx, false);
+            setMessageSequence(newCtx, synCtx, msgNumber++, msgCount);
+            SOAPEnvelope newEnvelope = MessageHelper.cloneSOAPEnvelope(template);
+            newEnvelope.getBody().addChild(current);
+            newCtx.setEnvelope(newEnvelope);
+
+            target.mediate(newCtx);
+            current = next;
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Streaming split with path : " + expression + " resulted in " +
+                    msgNumber + " messages");
+        }
+    }
+
     /**
      * Create a new message context using the given original message context, the envelope
      * and the split result element.
@@ -170,23 +306,11 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
     private MessageContext getIteratedMessage(MessageContext synCtx, int msgNumber, int msgCount,
         SOAPEnvelope envelope, OMNode o) throws AxisFault, JaxenException {
         
-        // clone the message for the mediation in iteration
-        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx);
+        // clone the message for the mediation in iteration, the envelope is not cloned since
+        // it is replaced by the iterated envelope below
+        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx, false);
 
-        if (id != null) {
-            // set the parent correlation details to the cloned MC -
-            //                              for the use of aggregation like tasks
-            newCtx.setProperty(EIPConstants.AGGREGATE_CORRELATION + "." + id,
-                    synCtx.getMessageID());
-            // set the messageSequence property for possibal aggreagtions
-            newCtx.setProperty(
-                    EIPConstants.MESSAGE_SEQUENCE + "." + id,
-                    msgNumber + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + msgCount);
-        } else {
-            newCtx.setProperty(
-                    EIPConstants.MESSAGE_SEQUENCE,
-                    msgNumber + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + msgCount);
-        }
+        setMessageSequence(newCtx, synCtx, msgNumber, msgCount);
 
         // get a clone of the envelope to be attached
         SOAPEnvelope newEnvelope = MessageHelper.cloneSOAPEnvelope(envelope);
@@ -221,6 +345,24 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         return newCtx;
     }
 
+    private void setMessageSequence(MessageContext newCtx, MessageContext synCtx, int msgNumber,
+                                    int msgCount) {
+        if (id != null) {
+            // set the parent correlation details to the cloned MC -
+            //                              for the use of aggregation like tasks
+            newCtx.setProperty(EIPConstants.AGGREGATE_CORRELATION + "." + id,
+                    synCtx.getMessageID());
+            // set the messageSequence property for possibal aggreagtions
+            newCtx.setProperty(
+                    EIPConstants.MESSAGE_SEQUENCE + "." + id,
+                    msgNumber + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + msgCount);
+        } else {
+            newCtx.setProperty(
+                    EIPConstants.MESSAGE_SEQUENCE,
+                    msgNumber + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + msgCount);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////
     //                        Getters and Setters                                        //
     ///////////////////////////////////////////////////////////////////////////////////////
@@ -247,6 +389,32 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
 
     public void setExpression(SynapseXPath expression) {
         this.expression = expression;
+        compileStreamingPath();
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Enable or disable the streaming mode
+     *
+     * @param streaming whether the message should be split while being read
+     * @throws org.apache.synapse.SynapseException if the expression is not supported as a
+     * streaming path
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        compileStreamingPath();
+    }
+
+    private void compileStreamingPath() {
+        if (streaming && expression != null) {
+            streamingPath = StreamingPath.compile(expression.toString(),
+                    expression.getNamespaces());
+        } else {
+            streamingPath = null;
+        }
     }
 
     public SynapseXPath getAttachPath() {
@@ -273,9 +441,40 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         this.id = id;
     }
 
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    public String getExecutorType() {
+        return executorType;
+    }
+
+    public void setExecutorType(String executorType) {
+        this.executorType = executorType;
+    }
+
     @Override
     public void init(SynapseEnvironment se) {
+        if (maxConcurrency > 0 || executorType != null) {
+            targetExecutor = new TargetExecutor(id != null ? id : "IterateMediator",
+                    maxConcurrency, maxPending, executorType);
+            targetExecutor.init(se);
+        }
+
         if (target != null) {
+            target.setExecutor(targetExecutor);
             Endpoint endpoint = target.getEndpoint();
             if (endpoint != null) {
                 endpoint.init(se);
@@ -290,7 +489,13 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
 
     @Override
     public void destroy() {
+        if (targetExecutor != null) {
+            targetExecutor.destroy();
+            targetExecutor = null;
+        }
+
         if (target != null) {
+            target.setExecutor(null);
             Endpoint endpoint = target.getEndpoint();
             if (endpoint != null && endpoint.isInitialized()) {
                 endpoint.destroy();
@@ -0,0 +1,185 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.mediators.eip.splitter;
+
+import org.apache.synapse.SynapseException;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simple location path which can be matched against the element stack of a StAX event
+ * stream, used by the streaming mode of the iterate mediator. The following subset of XPath
+ * is supported, where every step is a (optionally prefixed) element name or *
+ * <ul>
+ *   <li>absolute paths starting at the envelope, e.g. /soapenv:Envelope/soapenv:Body/m:order</li>
+ *   <li>descendant steps, e.g. //m:orders/m:order or /soapenv:Envelope//m:order</li>
+ *   <li>paths relative to the envelope, e.g. soapenv:Body/m:orders/m:order</li>
+ *   <li>paths relative to the SOAP body, e.g. $body/m:orders/m:order</li>
+ * </ul>
+ * Predicates, functions and any other axes are not supported.
+ */
+class StreamingPath {
+
+    private static final String ANY = "*";
+
+    private final Step[] steps;
+
+    /** Whether the first step is matched against the children of the envelope */
+    private final boolean relative;
+
+    private StreamingPath(Step[] steps, boolean relative) {
+        this.steps = steps;
+        this.relative = relative;
+    }
+
+    /**
+     * Compile the given expression
+     *
+     * @param expression the location path
+     * @param namespaces the namespace prefix to URI mappings of the expression
+     * @return the compiled path
+     * @throws SynapseException if the expression is not a supported location path
+     */
+    static StreamingPath compile(String expression, Map namespaces) {
+        String path = expression.trim();
+        List<Step> stepList = new ArrayList<Step>();
+        boolean relative = true;
+
+        if (path.startsWith("$body")) {
+            stepList.add(new Step(null, "Body", false));
+            path = path.substring("$body".length());
+            if (path.length() > 0 && !path.startsWith("/")) {
+                throw new SynapseException("Unsupported streaming path : " + expression);
+            }
+        } else if (path.startsWith("/")) {
+            relative = false;
+        } else {
+            path = "/" + path;
+        }
+
+        int i = 0;
+        while (i < path.length()) {
+            boolean descendant = false;
+            if (path.startsWith("//", i)) {
+                descendant = true;
+                i += 2;
+            } else if (path.charAt(i) == '/') {
+                i++;
+            } else {
+                throw new SynapseException("Unsupported streaming path : " + expression);
+            }
+
+            int end = path.indexOf('/', i);
+            if (end < 0) {
+                end = path.length();
+            }
+            stepList.add(createStep(path.substring(i, end).trim(), descendant,
+                    namespaces, expression));
+            i = end;
+        }
+
+        if (stepList.isEmpty() || (relative && stepList.get(0).descendant)) {
+            throw new SynapseException("Unsupported streaming path : " + expression);
+        }
+        return new StreamingPath(stepList.toArray(new Step[stepList.size()]), relative);
+    }
+
+    /**
+     * Does the element at the top of the given stack match this path?
+     *
+     * @param stack the names of the current element and its ancestors, starting from
+     * the envelope
+     * @return true if the current element is selected by this path
+     */
+    boolean matches(List<QName> stack) {
+        return !stack.isEmpty() && matches(stack, stack.size() - 1, steps.length - 1);
+    }
+
+    private boolean matches(List<QName> stack, int i, int j) {
+        Step step = steps[j];
+        if (!step.matches(stack.get(i))) {
+            return false;
+        }
+        if (j == 0) {
+            int first = relative ? 1 : 0;
+            return step.descendant ? i >= first : i == first;
+        }
+        if (step.descendant) {
+            for (int k = i - 1; k >= 0; k--) {
+                if (matches(stack, k, j - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return i > 0 && matches(stack, i - 1, j - 1);
+    }
+
+    private static Step createStep(String name, boolean descendant, Map namespaces,
+                                   String expression) {
+        if (name.length() == 0) {
+            throw new SynapseException("Unsupported streaming path : " + expression);
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != ':' && c != '_' && c != '-' &&
+                    c != '.' && c != '*') {
+                throw new SynapseException("Unsupported streaming path : " + expression +
+                        ", only element names are supported as location steps");
+            }
+        }
+
+        int colon = name.indexOf(':');
+        if (colon < 0) {
+            return new Step(ANY.equals(name) ? null : "", name, descendant);
+        }
+
+        String prefix = name.substring(0, colon);
+        Object uri = namespaces != null ? namespaces.get(prefix) : null;
+        if (uri == null) {
+            throw new SynapseException("Undeclared namespace prefix : " + prefix +
+                    " in the streaming path : " + expression);
+        }
+        return new Step(uri.toString(), name.substring(colon + 1), descendant);
+    }
+
+    private static final class Step {
+
+        /** The namespace URI, or null to match any namespace */
+        private final String namespaceURI;
+        private final String localName;
+        private final boolean descendant;
+
+        private Step(String namespaceURI, String localName, boolean descendant) {
+            this.namespaceURI = namespaceURI;
+            this.localName = localName;
+            this.descendant = descendant;
+        }
+
+        private boolean matches(QName name) {
+            if (!ANY.equals(localName) && !localName.equals(name.getLocalPart())) {
+                return false;
+            }
+            return namespaceURI == null || namespaceURI.equals(name.getNamespaceURI());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.mediators.eip.splitter;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pulls the elements selected by a {@link StreamingPath} out of a StAX event stream one at a
+ * time. Only the element being returned is built as an AXIOM tree, everything else in the
+ * stream is skipped, so the memory required does not depend on the size of the message.
+ * Matches are not nested, i.e. the descendants of a selected element are never matched.
+ */
+class StreamingSplitter {
+
+    private final XMLStreamReader reader;
+
+    private final StreamingPath path;
+
+    private final OMFactory fac;
+
+    /** Names of the current element and its ancestors */
+    private final List<QName> stack = new ArrayList<QName>();
+
+    /**
+     * Namespace declarations (prefix followed by URI) of the elements read from the stream,
+     * at the same depths as their names in the stack
+     */
+    private final List<String[]> declarations = new ArrayList<String[]>();
+
+    /** Namespaces declared by the ancestors of the root element, by their prefixes */
+    private final Map<String, String> inheritedNamespaces;
+
+    /** Stack depth at which the stream ends */
+    private final int rootDepth;
+
+    private boolean started = false;
+
+    private boolean done = false;
+
+    /**
+     * @param reader the reader, positioned at the start of the stream or at the start element of
+     * the root element to be scanned
+     * @param ancestors names of the ancestors of the root element of the reader
+     * @param inheritedNamespaces namespaces declared by the ancestors of the root element of
+     * the reader, by their prefixes
+     * @param path the path selecting the elements
+     * @param fac the factory used to build the selected elements
+     */
+    StreamingSplitter(XMLStreamReader reader, List<QName> ancestors,
+                      Map<String, String> inheritedNamespaces, StreamingPath path,
+                      OMFactory fac) {
+        this.reader = reader;
+        this.inheritedNamespaces = inheritedNamespaces;
+        this.path = path;
+        this.fac = fac;
+        this.stack.addAll(ancestors);
+        this.rootDepth = ancestors.size();
+    }
+
+    /**
+     * @return the next selected element, or null if the end of the stream has been reached
+     * @throws XMLStreamException on an error reading the stream
+     */
+    OMElement next() throws XMLStreamException {
+        while (!done) {
+            int event;
+            if (started) {
+                if (!reader.hasNext()) {
+                    done = true;
+                    break;
+                }
+                event = reader.next();
+            } else {
+                started = true;
+                event = reader.getEventType();
+            }
+
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    stack.add(reader.getName());
+                    if (path.matches(stack)) {
+                        stack.remove(stack.size() - 1);
+                        OMElement element = buildElement();
+                        declareInScopeNamespaces(element);
+                        return element;
+                    }
+                    declarations.add(getDeclarations());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    stack.remove(stack.size() - 1);
+                    declarations.remove(declarations.size() - 1);
+                    if (stack.size() <= rootDepth) {
+                        done = true;
+                    }
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    done = true;
+                    break;
+                default:
+                    // skipped
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build the element starting at the current start element event, consuming the events up
+     * to and including the matching end element event
+     */
+    private OMElement buildElement() throws XMLStreamException {
+        OMElement root = null;
+        OMElement current = null;
+        int depth = 0;
+        int event = reader.getEventType();
+        while (true) {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    current = createElement(current);
+                    if (root == null) {
+                        root = current;
+                    }
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    if (depth > 0) {
+                        current = (OMElement) current.getParent();
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    fac.createOMText(current, reader.getText());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    fac.createOMText(current, reader.getText(), XMLStreamConstants.CDATA);
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    fac.createOMComment(current, reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    fac.createOMProcessingInstruction(current, reader.getPITarget(),
+                            reader.getPIData());
+                    break;
+                default:
+                    // other events can not occur within an element
+            }
+            if (depth == 0) {
+                return root;
+            }
+            event = reader.next();
+        }
+    }
+
+    private OMElement createElement(OMElement parent) {
+        OMNamespace ns = createNamespace(reader.getNamespaceURI(), reader.getPrefix());
+        OMElement element = parent != null ?
+                fac.createOMElement(reader.getLocalName(), ns, parent) :
+                fac.createOMElement(reader.getLocalName(), ns);
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            if (prefix == null || prefix.length() == 0) {
+                element.declareDefaultNamespace(uri != null ? uri : "");
+            } else {
+                element.declareNamespace(uri, prefix);
+            }
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.addAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i),
+                    createNamespace(reader.getAttributeNamespace(i),
+                            reader.getAttributePrefix(i)));
+        }
+        return element;
+    }
+
+    private String[] getDeclarations() {
+        String[] result = new String[reader.getNamespaceCount() * 2];
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            result[2 * i] = prefix != null ? prefix : "";
+            result[2 * i + 1] = uri != null ? uri : "";
+        }
+        return result;
+    }
+
+    /**
+     * Declare the namespaces in scope at the position of the given element on the element, so
+     * that prefixes used in its content (i.e. in attribute values or text as in XPath
+     * expressions or QNames) still resolve once it is taken out of the original message
+     */
+    private void declareInScopeNamespaces(OMElement element) {
+        Map<String, String> inScope = new LinkedHashMap<String, String>(inheritedNamespaces);
+        for (String[] declared : declarations) {
+            for (int i = 0; i < declared.length; i += 2) {
+                inScope.put(declared[i], declared[i + 1]);
+            }
+        }
+
+        for (Map.Entry<String, String> ns : inScope.entrySet()) {
+            String prefix = ns.getKey();
+            // the default namespace is left alone, since declaring it would change the
+            // namespace of unqualified elements, and declarations made by the element itself
+            // take precedence
+            if (prefix.length() > 0 && ns.getValue().length() > 0 &&
+                    element.findNamespaceURI(prefix) == null) {
+                element.declareNamespace(ns.getValue(), prefix);
+            }
+        }
+    }
+
+    private OMNamespace createNamespace(String uri, String prefix) {
+        if (uri == null || uri.length() == 0) {
+            return null;
+        }
+        return fac.createOMNamespace(uri, prefix != null ? prefix : "");
+    }
+}
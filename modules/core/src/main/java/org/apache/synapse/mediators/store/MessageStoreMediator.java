@@ -81,7 +81,12 @@ public class MessageStoreMediator extends AbstractMediator{
 
                 }
 
-                messageStore.offer(synCtx);
+                if (!messageStore.offer(synCtx)) {
+                    // e.g. the store is full, or failed to write the message - the message
+                    // must not be treated as stored and accepted
+                    handleException("Message store : " + messageStoreName + " refused to " +
+                            "store the message with id " + synCtx.getMessageID(), synCtx);
+                }
 
                 // with the nio transport, this causes the listener not to write a 202
                 // Accepted response, as this implies that Synapse does not yet know if
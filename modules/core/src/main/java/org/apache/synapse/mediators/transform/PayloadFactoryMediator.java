@@ -22,16 +22,20 @@ package org.apache.synapse.mediators.transform;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.util.AXIOMUtil;
 import org.apache.axiom.soap.SOAPBody;
+import org.apache.axis2.Constants;
+import org.apache.axis2.builder.Builder;
+import org.apache.axis2.builder.BuilderUtil;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.util.xpath.SynapseXPath;
 
 import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Payload-factory mediator creates a new SOAP payload for the message, replacing the existing one.
@@ -39,25 +43,39 @@ import java.util.regex.Pattern;
  * mediator.<p/>
  * Each argument in the mediator configuration could be a static value or an XPath expression.
  * When an expression is used, argument value is fetched at runtime by evaluating the provided XPath
- * expression against the existing SOAP message/message context.
+ * expression against the existing SOAP message/message context.<p/>
+ * The format is compiled once when it is set (see {@link PayloadTemplate}). With the default
+ * XML media type the new payload is created directly as AXIOM nodes whenever possible. With the
+ * JSON media type the format is plain text, which is handed over to the message builder
+ * registered for application/json, and the message type of the message is set to
+ * application/json so that the payload is written out by the JSON message formatter.
  */
 public class PayloadFactoryMediator extends AbstractMediator {
 
+    public static final String XML_TYPE = "xml";
+    public static final String JSON_TYPE = "json";
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
     /**
      * Stores the new payload format.
      */
     private String format;
 
     /**
-     * Stores the argument list, argument values are computed dynamically at mediation time.
+     * Media type of the format, one of xml (default) or json
      */
-    private List<Argument> argumentList = new ArrayList<Argument>();
+    private String mediaType = XML_TYPE;
 
     /**
-     * Pattern object used for regex processing. This finds occurrences of $n, where n is a positive
-     * number, to replace them with argument values.
+     * The compiled format
      */
-    private Pattern pattern = Pattern.compile("\\$(\\d)+");
+    private PayloadTemplate template;
+
+    /**
+     * Stores the argument list, argument values are computed dynamically at mediation time.
+     */
+    private List<Argument> argumentList = new ArrayList<Argument>();
 
     /**
      * Replaces the existing payload with a new payload as defined by the format and the argument list
@@ -67,14 +85,29 @@ public class PayloadFactoryMediator extends AbstractMediator {
     @Override
     public boolean mediate(MessageContext synCtx) {
 
+        String[] argValues = getArgValues(synCtx);
+
         SOAPBody soapBody = synCtx.getEnvelope().getBody();
 
-        StringBuffer result = new StringBuffer();
-        transformPayload(result, synCtx);
+        if (JSON_TYPE.equals(mediaType)) {
+            return setJsonPayload(synCtx, soapBody, template.render(argValues));
+        }
+
+        if (template.canBuildNodes(argValues)) {
+            List<OMElement> payload = template.buildNodes(soapBody.getOMFactory(), argValues);
+
+            // replace the existing payload with the new payload
+            soapBody.removeChildren();
+            for (OMElement child : payload) {
+                soapBody.addChild(child);
+            }
+            return true;
+        }
 
+        // the arguments contain markup, so the payload has to be parsed
         OMElement resultElement;
         try {
-            resultElement = AXIOMUtil.stringToOM(result.toString());
+            resultElement = AXIOMUtil.stringToOM(template.render(argValues));
         } catch (XMLStreamException e) {
             handleException("Unable to create a valid XML payload. Invalid format/arguments are " +
                     "provided in the payloadFactory mediator configuration", synCtx);
@@ -94,20 +127,40 @@ public class PayloadFactoryMediator extends AbstractMediator {
     }
 
     /**
-     * Replaces occurrences of $n with argument values.
-     * @param result StringBuffer that stores the result.
+     * Replaces the existing payload with the given JSON payload, using the message builder
+     * registered for the JSON content type, and makes the message go out as JSON.
+     *
      * @param synCtx Current message under mediation.
+     * @param soapBody body of the current message
+     * @param json the new JSON payload
+     * @return true if the payload was replaced
      */
-    private void transformPayload(StringBuffer result, MessageContext synCtx) {
-
-        Object[] argValues = getArgValues(synCtx);
-        Matcher matcher = pattern.matcher("<dummy>" + format + "</dummy>");
-        while (matcher.find()) {
-            String matchSeq = matcher.group();
-            int argIndex = Integer.parseInt(matchSeq.substring(1));
-            matcher.appendReplacement(result, argValues[argIndex - 1].toString());
+    private boolean setJsonPayload(MessageContext synCtx, SOAPBody soapBody, String json) {
+
+        org.apache.axis2.context.MessageContext axis2MsgCtx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        OMElement payload = null;
+        try {
+            Builder builder = BuilderUtil.getBuilderFromSelector(JSON_CONTENT_TYPE, axis2MsgCtx);
+            if (builder == null) {
+                handleException("No message builder is registered for the content type : " +
+                        JSON_CONTENT_TYPE, synCtx);
+                return false;
+            }
+            payload = builder.processDocument(new ByteArrayInputStream(json.getBytes("UTF-8")),
+                    JSON_CONTENT_TYPE, axis2MsgCtx);
+        } catch (IOException e) {
+            handleException("Unable to create a valid JSON payload. Invalid format/arguments " +
+                    "are provided in the payloadFactory mediator configuration", e, synCtx);
         }
-        matcher.appendTail(result);
+
+        // replace the existing payload with the new payload
+        soapBody.removeChildren();
+        soapBody.addChild(payload);
+
+        axis2MsgCtx.setProperty(Constants.Configuration.MESSAGE_TYPE, JSON_CONTENT_TYPE);
+        axis2MsgCtx.setProperty(Constants.Configuration.CONTENT_TYPE, JSON_CONTENT_TYPE);
+        return true;
     }
 
     /**
@@ -115,9 +168,9 @@ public class PayloadFactoryMediator extends AbstractMediator {
      * @param synCtx Current message under mediation.
      * @return Extracted argument values.
      */
-    private Object[] getArgValues(MessageContext synCtx) {
+    private String[] getArgValues(MessageContext synCtx) {
 
-        Object[] argValues = new Object[argumentList.size()];
+        String[] argValues = new String[argumentList.size()];
         for (int i = 0; i < argumentList.size(); ++i) {
             Argument arg = argumentList.get(i);
             if (arg.getValue() != null) {
@@ -137,12 +190,29 @@ public class PayloadFactoryMediator extends AbstractMediator {
         return argValues;
     }
 
+    private void compile() {
+        if (format != null) {
+            template = JSON_TYPE.equals(mediaType) ?
+                    PayloadTemplate.compileText(format) : PayloadTemplate.compileXml(format);
+        }
+    }
+
     public String getFormat() {
         return format;
     }
 
     public void setFormat(String format) {
         this.format = format;
+        compile();
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public void setMediaType(String mediaType) {
+        this.mediaType = mediaType;
+        compile();
     }
 
     public void addArgument(Argument arg) {
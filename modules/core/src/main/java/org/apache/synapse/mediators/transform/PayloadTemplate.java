@@ -0,0 +1,381 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMComment;
+import org.apache.axiom.om.OMContainer;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.OMText;
+import org.apache.axiom.om.util.AXIOMUtil;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A payload format of the payloadFactory mediator, compiled once at configuration time into
+ * a sequence of static segments and argument slots (occurrences of $n, where n is a positive
+ * number). The template can be rendered as a string by concatenating the segments and the
+ * argument values, without any regex processing.
+ * <p/>
+ * An XML format is also pre-parsed into a tree of element, text and comment nodes whose
+ * text values are in turn compiled into segments and slots, so the new payload can be
+ * created directly as AXIOM nodes without serializing and re-parsing the payload. This is
+ * only possible when all the argument slots are located in text, comment or attribute
+ * values, and the argument values do not contain markup - otherwise the payload has to be
+ * created by parsing the rendered string as the arguments may change the structure of
+ * the payload.
+ */
+class PayloadTemplate {
+
+    /** Static segments surrounding the argument slots, one more than the number of slots */
+    private final String[] segments;
+
+    /** Zero based argument index of each slot */
+    private final int[] slots;
+
+    /** The root elements of a pre-parsed XML format, or null if not available */
+    private final List<ElementNode> elements;
+
+    private PayloadTemplate(String[] segments, int[] slots, List<ElementNode> elements) {
+        this.segments = segments;
+        this.slots = slots;
+        this.elements = elements;
+    }
+
+    /**
+     * Compile a plain text format (e.g. JSON) into segments and slots
+     *
+     * @param format the format
+     * @return the compiled template
+     */
+    static PayloadTemplate compileText(String format) {
+        List<String> segmentList = new ArrayList<String>();
+        List<Integer> slotList = new ArrayList<Integer>();
+        split(format, segmentList, slotList);
+        return new PayloadTemplate(segmentList.toArray(new String[segmentList.size()]),
+                toArray(slotList), null);
+    }
+
+    /**
+     * Compile an XML format into segments and slots, and pre-parse it into a tree of nodes
+     * if all the slots are located in text values
+     *
+     * @param format the format, a sequence of one or more XML elements
+     * @return the compiled template
+     */
+    static PayloadTemplate compileXml(String format) {
+        List<String> segmentList = new ArrayList<String>();
+        List<Integer> slotList = new ArrayList<Integer>();
+        split("<dummy>" + format + "</dummy>", segmentList, slotList);
+
+        List<ElementNode> elements = null;
+        try {
+            OMElement root = AXIOMUtil.stringToOM("<dummy>" + format + "</dummy>");
+            List<ElementNode> parsed = new ArrayList<ElementNode>();
+            int[] slotCount = new int[1];
+            boolean supported = true;
+            for (Iterator itr = root.getChildElements(); itr.hasNext() && supported;) {
+                ElementNode node = ElementNode.compile((OMElement) itr.next(), slotCount);
+                if (node == null) {
+                    supported = false;
+                } else {
+                    parsed.add(node);
+                }
+            }
+            // every slot of the format must have been found in a text value
+            if (supported && slotCount[0] == slotList.size()) {
+                elements = parsed;
+            }
+        } catch (XMLStreamException ignore) {
+            // the format can only be parsed once the arguments are in place
+        }
+
+        return new PayloadTemplate(segmentList.toArray(new String[segmentList.size()]),
+                toArray(slotList), elements);
+    }
+
+    /**
+     * @return true if the payload can be created as AXIOM nodes for the given arguments
+     */
+    boolean canBuildNodes(String[] args) {
+        if (elements == null) {
+            return false;
+        }
+        for (int slot : slots) {
+            String value = args[slot];
+            if (value.indexOf('<') >= 0 || value.indexOf('&') >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Render the template as a string
+     *
+     * @param args the argument values
+     * @return the rendered string
+     */
+    String render(String[] args) {
+        return render(segments, slots, args);
+    }
+
+    /**
+     * Create the payload as AXIOM nodes, which should only be called if
+     * {@link #canBuildNodes(String[])} returns true for the arguments
+     *
+     * @param fac the factory to create the nodes
+     * @param args the argument values
+     * @return the root elements of the payload
+     */
+    List<OMElement> buildNodes(OMFactory fac, String[] args) {
+        List<OMElement> result = new ArrayList<OMElement>(elements.size());
+        for (ElementNode node : elements) {
+            result.add(node.create(fac, null, args));
+        }
+        return result;
+    }
+
+    int getSlotCount() {
+        return slots.length;
+    }
+
+    /**
+     * Split a string at the occurrences of $n
+     */
+    private static void split(String format, List<String> segmentList, List<Integer> slotList) {
+        StringBuilder segment = new StringBuilder();
+        int length = format.length();
+        int i = 0;
+        while (i < length) {
+            char c = format.charAt(i);
+            int end = i + 1;
+            while (c == '$' && end < length && Character.isDigit(format.charAt(end))) {
+                end++;
+            }
+            if (end > i + 1) {
+                segmentList.add(segment.toString());
+                segment.setLength(0);
+                slotList.add(Integer.parseInt(format.substring(i + 1, end)) - 1);
+                i = end;
+            } else {
+                segment.append(c);
+                i++;
+            }
+        }
+        segmentList.add(segment.toString());
+    }
+
+    private static String render(String[] segments, int[] slots, String[] args) {
+        if (slots.length == 0) {
+            return segments[0];
+        }
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        for (int slot : slots) {
+            length += args[slot].length();
+        }
+        StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < slots.length; i++) {
+            result.append(segments[i]).append(args[slots[i]]);
+        }
+        return result.append(segments[slots.length]).toString();
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * A text value of the template, which may contain argument slots
+     */
+    private static final class Value {
+
+        private final String text;
+        private final String[] segments;
+        private final int[] slots;
+
+        private Value(String text, int[] slotCount) {
+            List<String> segmentList = new ArrayList<String>();
+            List<Integer> slotList = new ArrayList<Integer>();
+            split(text, segmentList, slotList);
+            this.text = text;
+            this.segments = segmentList.toArray(new String[segmentList.size()]);
+            this.slots = toArray(slotList);
+            slotCount[0] += slots.length;
+        }
+
+        private String render(String[] args) {
+            return slots.length == 0 ? text : PayloadTemplate.render(segments, slots, args);
+        }
+    }
+
+    private interface Node {
+        void build(OMFactory fac, OMElement parent, String[] args);
+    }
+
+    private static final class TextNode implements Node {
+
+        private final Value value;
+        private final int type;
+
+        private TextNode(Value value, int type) {
+            this.value = value;
+            this.type = type;
+        }
+
+        @Override
+        public void build(OMFactory fac, OMElement parent, String[] args) {
+            if (type == OMNode.COMMENT_NODE) {
+                fac.createOMComment(parent, value.render(args));
+            } else {
+                fac.createOMText(parent, value.render(args), type);
+            }
+        }
+    }
+
+    private static final class AttributeNode {
+
+        private final String localName;
+        private final String namespaceURI;
+        private final String prefix;
+        private final Value value;
+
+        private AttributeNode(String localName, String namespaceURI, String prefix, Value value) {
+            this.localName = localName;
+            this.namespaceURI = namespaceURI;
+            this.prefix = prefix;
+            this.value = value;
+        }
+    }
+
+    private static final class ElementNode implements Node {
+
+        private String localName;
+        private String namespaceURI;
+        private String prefix;
+        /** Namespace declarations, as prefix and URI pairs */
+        private final List<String[]> declarations = new ArrayList<String[]>();
+        private final List<AttributeNode> attributes = new ArrayList<AttributeNode>();
+        private final List<Node> children = new ArrayList<Node>();
+
+        /**
+         * @return the compiled element, or null if the element contains slots outside of
+         * text values or unsupported nodes
+         */
+        private static ElementNode compile(OMElement element, int[] slotCount) {
+            ElementNode node = new ElementNode();
+            node.localName = element.getLocalName();
+            OMNamespace ns = element.getNamespace();
+            if (ns != null && ns.getNamespaceURI().length() > 0) {
+                node.namespaceURI = ns.getNamespaceURI();
+                node.prefix = ns.getPrefix();
+            }
+
+            for (Iterator itr = element.getAllDeclaredNamespaces(); itr.hasNext();) {
+                OMNamespace declared = (OMNamespace) itr.next();
+                node.declarations.add(
+                        new String[] {declared.getPrefix(), declared.getNamespaceURI()});
+            }
+
+            for (Iterator itr = element.getAllAttributes(); itr.hasNext();) {
+                OMAttribute attribute = (OMAttribute) itr.next();
+                OMNamespace attrNs = attribute.getNamespace();
+                node.attributes.add(new AttributeNode(attribute.getLocalName(),
+                        attrNs != null ? attrNs.getNamespaceURI() : null,
+                        attrNs != null ? attrNs.getPrefix() : null,
+                        new Value(attribute.getAttributeValue(), slotCount)));
+            }
+
+            for (Iterator itr = element.getChildren(); itr.hasNext();) {
+                OMNode child = (OMNode) itr.next();
+                switch (child.getType()) {
+                    case OMNode.ELEMENT_NODE:
+                        ElementNode childElement = compile((OMElement) child, slotCount);
+                        if (childElement == null) {
+                            return null;
+                        }
+                        node.children.add(childElement);
+                        break;
+                    case OMNode.TEXT_NODE:
+                    case OMNode.SPACE_NODE:
+                    case OMNode.CDATA_SECTION_NODE:
+                        node.children.add(new TextNode(
+                                new Value(((OMText) child).getText(), slotCount),
+                                child.getType()));
+                        break;
+                    case OMNode.COMMENT_NODE:
+                        node.children.add(new TextNode(
+                                new Value(((OMComment) child).getValue(), slotCount),
+                                OMNode.COMMENT_NODE));
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return node;
+        }
+
+        @Override
+        public void build(OMFactory fac, OMElement parent, String[] args) {
+            create(fac, parent, args);
+        }
+
+        private OMElement create(OMFactory fac, OMContainer parent, String[] args) {
+            OMNamespace ns = namespaceURI != null ?
+                    fac.createOMNamespace(namespaceURI, prefix) : null;
+            OMElement element = parent != null ?
+                    fac.createOMElement(localName, ns, parent) :
+                    fac.createOMElement(localName, ns);
+
+            for (String[] declaration : declarations) {
+                if (declaration[0] == null || declaration[0].length() == 0) {
+                    element.declareDefaultNamespace(declaration[1]);
+                } else {
+                    element.declareNamespace(declaration[1], declaration[0]);
+                }
+            }
+
+            for (AttributeNode attribute : attributes) {
+                OMNamespace attrNs = attribute.namespaceURI != null &&
+                        attribute.namespaceURI.length() > 0 ?
+                        fac.createOMNamespace(attribute.namespaceURI, attribute.prefix) : null;
+                element.addAttribute(attribute.localName, attribute.value.render(args), attrNs);
+            }
+
+            for (Node child : children) {
+                child.build(fac, element, args);
+            }
+            return element;
+        }
+    }
+}
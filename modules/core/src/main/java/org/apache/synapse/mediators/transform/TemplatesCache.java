@@ -0,0 +1,244 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+
+import javax.xml.transform.Templates;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of compiled XSLT {@link Templates}, shared by all the XSLT mediators.
+ * Lookups do not take any locks. When several threads miss on the same key at the same
+ * time, only one of them compiles the stylesheet while the others wait for the result.
+ * Once the cache is full, the least recently used templates are evicted to make room for
+ * new ones. The maximum number of cached templates can be set using the
+ * {@value #TEMPLATES_CACHE_SIZE} property in synapse.properties.
+ */
+public class TemplatesCache {
+
+    private static final Log log = LogFactory.getLog(TemplatesCache.class);
+
+    public static final String TEMPLATES_CACHE_SIZE = "synapse.xslt.templates.cache.size";
+
+    private static final int DEFAULT_TEMPLATES_CACHE_SIZE = 256;
+
+    private static final TemplatesCache instance = new TemplatesCache(
+            Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(TEMPLATES_CACHE_SIZE,
+                    String.valueOf(DEFAULT_TEMPLATES_CACHE_SIZE))));
+
+    private final ConcurrentMap<String, CachedTemplates> cache =
+            new ConcurrentHashMap<String, CachedTemplates>();
+
+    private final int capacity;
+
+    /** Logical clock used to order the cached templates by their last access */
+    private final AtomicLong clock = new AtomicLong(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong compilations = new AtomicLong(0);
+    private final AtomicLong totalCompileTime = new AtomicLong(0);
+
+    TemplatesCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public static TemplatesCache getInstance() {
+        return instance;
+    }
+
+    static {
+        MBeanRegistrar.getInstance().registerMBean(new TemplatesCacheView(instance),
+                "XSLTTemplatesCache", "XSLTTemplatesCache");
+    }
+
+    /**
+     * Get the templates cached against the given key, compiling them if they are not
+     * cached yet or if the cached templates are out of date.
+     *
+     * @param key unique key of the templates
+     * @param source the object the templates are compiled from (e.g. the entry definition
+     *               of the stylesheet). Cached templates compiled from a different source
+     *               object are considered to be out of date
+     * @param refresh whether the cached templates should be re-compiled regardless of
+     *                their source
+     * @param compiler callback used to compile the templates
+     * @return the compiled templates
+     * @throws Exception if the templates cannot be compiled
+     */
+    public Templates getTemplates(String key, Object source, boolean refresh,
+                                  Callable<Templates> compiler) throws Exception {
+
+        CachedTemplates cached = cache.get(key);
+        if (cached != null && cached.isDone() && (refresh || cached.source != source)) {
+            // Only the first thread to see the stale templates gets to replace them
+            cache.remove(key, cached);
+            cached = cache.get(key);
+        }
+
+        if (cached == null) {
+            CachedTemplates newTemplates = new CachedTemplates(source, compiler);
+            cached = cache.putIfAbsent(key, newTemplates);
+            if (cached == null) {
+                misses.incrementAndGet();
+                cached = newTemplates;
+                cached.touch();
+                evictIfRequired();
+                compile(key, cached);
+            } else {
+                hits.incrementAndGet();
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+
+        cached.touch();
+        try {
+            return cached.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remove the templates cached against the given key
+     *
+     * @param key unique key of the templates
+     */
+    public void invalidate(String key) {
+        cache.remove(key);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getCompilationCount() {
+        return compilations.get();
+    }
+
+    /**
+     * @return average time (in milliseconds) taken to compile a stylesheet
+     */
+    public double getAverageCompileTime() {
+        long count = compilations.get();
+        return count == 0 ? 0.0 : (double) totalCompileTime.get() / count;
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+        compilations.set(0);
+        totalCompileTime.set(0);
+    }
+
+    private void compile(String key, CachedTemplates cached) {
+        long start = System.currentTimeMillis();
+        cached.run();
+        compilations.incrementAndGet();
+        totalCompileTime.addAndGet(System.currentTimeMillis() - start);
+        try {
+            cached.get();
+        } catch (Exception e) {
+            // Do not cache failures - the next request should try to compile again
+            cache.remove(key, cached);
+        }
+    }
+
+    /**
+     * Evict the least recently used templates until the cache is within its capacity. This
+     * only runs when new templates are added to the cache, so the linear scan does not
+     * affect the cache hits.
+     */
+    private void evictIfRequired() {
+        while (cache.size() > capacity) {
+            String eldestKey = null;
+            CachedTemplates eldest = null;
+            for (Map.Entry<String, CachedTemplates> entry : cache.entrySet()) {
+                CachedTemplates cached = entry.getValue();
+                if (eldest == null || cached.lastAccess < eldest.lastAccess) {
+                    eldestKey = entry.getKey();
+                    eldest = cached;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            if (cache.remove(eldestKey, eldest)) {
+                evictions.incrementAndGet();
+                if (log.isDebugEnabled()) {
+                    log.debug("Evicted the XSLT templates with key : " + eldestKey);
+                }
+            }
+        }
+    }
+
+    private class CachedTemplates extends FutureTask<Templates> {
+
+        private final Object source;
+
+        private volatile long lastAccess;
+
+        private CachedTemplates(Object source, Callable<Templates> compiler) {
+            super(compiler);
+            this.source = source;
+        }
+
+        private void touch() {
+            lastAccess = clock.incrementAndGet();
+        }
+    }
+}
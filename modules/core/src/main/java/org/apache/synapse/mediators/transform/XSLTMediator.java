@@ -41,6 +41,7 @@ import org.apache.synapse.util.xpath.SynapseXPath;
 import javax.xml.transform.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * The XSLT mediator performs an XSLT transformation requested, using
@@ -147,11 +148,11 @@ public class XSLTMediator extends AbstractMediator {
     private ResourceMap resourceMap;
 
     /**
-     * Cache multiple templates
-     * Unique string used as a key for each template
-     * The Template instance used to create a Transformer object. This is  thread-safe
+     * Prefix of the keys under which the templates compiled by this mediator are cached.
+     * Mediators configured with the same TransformerFactory features and attributes share
+     * the templates compiled for the same XSLT key.
      */
-    private Map<String, Templates> cachedTemplatesMap = new Hashtable<String, Templates>();
+    private volatile String templatesCacheKeyPrefix = null;
 
     /**
      * The TransformerFactory instance which use to create Templates. This is not thread-safe.
@@ -160,7 +161,7 @@ public class XSLTMediator extends AbstractMediator {
     private final TransformerFactory transFact = TransformerFactory.newInstance();
 
     /**
-     * Lock used to ensure thread-safe creation and use of the above Transformer
+     * Lock used to ensure thread-safe use of the above TransformerFactory
      */
     private final Object transformerLock = new Object();
 
@@ -220,31 +221,12 @@ public class XSLTMediator extends AbstractMediator {
         // Derive actual key from message context
         String generatedXsltKey = xsltKey.evaluateValue(synCtx);
 
-        // get templates from generatedXsltKey
-        Templates cachedTemplates = null;
-
         if (synLog.isTraceTraceEnabled()) {
             synLog.traceTrace("Transformation source : " + sourceNode.toString());
         }
 
-        // determine if it is needed to create or create the template
-        if (isCreationOrRecreationRequired(synCtx)) {
-            // many threads can see this and come here for acquiring the lock
-            synchronized (transformerLock) {
-                // only first thread should create the template
-                if (isCreationOrRecreationRequired(synCtx)) {
-                    cachedTemplates = createTemplate(synCtx, synLog, generatedXsltKey);
-                } else {
-                    cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
-                }
-            }
-        }
-        else{
-            //If already cached template then load it from cachedTemplatesMap
-            synchronized (transformerLock){
-                cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
-            }
-        }
+        // get templates from generatedXsltKey
+        Templates cachedTemplates = getTemplates(synCtx, synLog, generatedXsltKey);
 
         try {
             // perform transformation
@@ -363,62 +345,98 @@ public class XSLTMediator extends AbstractMediator {
     }
 
     /**
-     * Create a XSLT template object and assign it to the cachedTemplates variable
+     * Get the compiled XSLT template for the given key from the shared templates cache,
+     * compiling it if it is not cached yet or if the cached template is out of date
      * @param synCtx current message
      * @param synLog logger to use
-     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key 
+     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key
      * @return cached template
      */
-    private Templates createTemplate(MessageContext synCtx, SynapseLog synLog, String generatedXsltKey) {
-        // Assign created template
-        Templates cachedTemplates = null;
+    private Templates getTemplates(final MessageContext synCtx, final SynapseLog synLog,
+                                   final String generatedXsltKey) {
 
-        // Set an error listener (SYNAPSE-307).
-        transFact.setErrorListener(new ErrorListenerImpl(synLog, "stylesheet parsing"));
-        // Allow xsl:import and xsl:include resolution
-        transFact.setURIResolver(new CustomJAXPURIResolver(resourceMap,
-                synCtx.getConfiguration()));
+        Entry dp = synCtx.getConfiguration().getEntryDefinition(generatedXsltKey);
+        // if the xsltKey refers to a dynamic resource, and if it has been expired
+        // it is a recreation case
+        boolean expired = dp != null && dp.isDynamic() && (!dp.isCached() || dp.isExpired());
 
         try {
-            cachedTemplates = transFact.newTemplates(
-                    SynapseConfigUtils.getStreamSource(synCtx.getEntry(generatedXsltKey)));
-            if (cachedTemplates == null) {
-                // if cached template creation failed
-                handleException("Error compiling the XSLT with key : " + xsltKey, synCtx);
-            } else {
-                // if cached template is created then put it in to cachedTemplatesMap
-                cachedTemplatesMap.put(generatedXsltKey, cachedTemplates);
-            }
+            return TemplatesCache.getInstance().getTemplates(
+                    getTemplatesCacheKeyPrefix() + generatedXsltKey, dp, expired,
+                    new Callable<Templates>() {
+                        @Override
+                        public Templates call() throws Exception {
+                            return createTemplate(synCtx, synLog, generatedXsltKey);
+                        }
+                    });
+        } catch (SynapseException e) {
+            throw e;
         } catch (Exception e) {
             handleException("Error creating XSLT transformer using : " + xsltKey, e, synCtx);
         }
-        return cachedTemplates;
+        return null;
     }
 
     /**
-     * Utility method to determine weather it is needed to create a XSLT template
-     *
+     * Create a XSLT template object
      * @param synCtx current message
-     * @return true if it is needed to create a new XSLT template
+     * @param synLog logger to use
+     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key 
+     * @return compiled template
      */
-    private boolean isCreationOrRecreationRequired(MessageContext synCtx) {
+    private Templates createTemplate(MessageContext synCtx, SynapseLog synLog, String generatedXsltKey) {
+        // Assign created template
+        Templates cachedTemplates = null;
 
-        // Derive actual key from message context
-        String generatedXsltKey = xsltKey.evaluateValue(synCtx);
+        // The TransformerFactory is not thread-safe
+        synchronized (transformerLock) {
+            // Set an error listener (SYNAPSE-307).
+            transFact.setErrorListener(new ErrorListenerImpl(synLog, "stylesheet parsing"));
+            // Allow xsl:import and xsl:include resolution
+            transFact.setURIResolver(new CustomJAXPURIResolver(resourceMap,
+                    synCtx.getConfiguration()));
 
-        // if there are no cachedTemplates inside cachedTemplatesMap or
-        // if the template related to this generated key is not cached
-        // then it need to be cached
-        if (cachedTemplatesMap.isEmpty() || !cachedTemplatesMap.containsKey(generatedXsltKey)) {
-            // this is a creation case
-            return true;
-        } else {
-            // build transformer - if necessary
-            Entry dp = synCtx.getConfiguration().getEntryDefinition(generatedXsltKey);
-            // if the xsltKey refers to a dynamic resource, and if it has been expired
-            // it is a recreation case
-            return dp != null && dp.isDynamic() && (!dp.isCached() || dp.isExpired());
+            try {
+                cachedTemplates = transFact.newTemplates(
+                        SynapseConfigUtils.getStreamSource(synCtx.getEntry(generatedXsltKey)));
+                if (cachedTemplates == null) {
+                    // if cached template creation failed
+                    handleException("Error compiling the XSLT with key : " + xsltKey, synCtx);
+                }
+            } catch (SynapseException e) {
+                throw e;
+            } catch (Exception e) {
+                handleException("Error creating XSLT transformer using : " + xsltKey, e, synCtx);
+            }
+        }
+        return cachedTemplates;
+    }
+
+    /**
+     * Templates compiled by TransformerFactory instances with different features, attributes
+     * or resource maps must not be shared. Therefore the key under which the templates are
+     * cached is prefixed with a string identifying the TransformerFactory configuration.
+     *
+     * @return the prefix of the templates cache keys used by this mediator
+     */
+    private String getTemplatesCacheKeyPrefix() {
+        String prefix = templatesCacheKeyPrefix;
+        if (prefix == null) {
+            StringBuilder sb = new StringBuilder();
+            for (MediatorProperty feature : transformerFactoryFeatures) {
+                sb.append(feature.getName()).append('=').append(feature.getValue()).append(';');
+            }
+            for (MediatorProperty attribute : transformerFactoryAttributes) {
+                sb.append(attribute.getName()).append('=').append(attribute.getValue()).append(';');
+            }
+            if (resourceMap != null) {
+                sb.append("resources=").append(System.identityHashCode(resourceMap)).append(';');
+            }
+            sb.append('|');
+            prefix = sb.toString();
+            templatesCacheKeyPrefix = prefix;
         }
+        return prefix;
     }
 
     public SynapseXPath getSource() {
@@ -493,6 +511,7 @@ public class XSLTMediator extends AbstractMediator {
             mp.setValue("false");
         }
         transformerFactoryFeatures.add(mp);
+        templatesCacheKeyPrefix = null;
         if (USE_DOM_SOURCE_AND_RESULTS.equals(featureName)) {
             if (isFeatureEnable) {
                 sourceBuilderFactory = new DOOMSourceBuilderFactory();
@@ -525,6 +544,7 @@ public class XSLTMediator extends AbstractMediator {
         mp.setName(name);
         mp.setValue(value);
         transformerFactoryAttributes.add(mp);
+        templatesCacheKeyPrefix = null;
         if (SOURCE_BUILDER_FACTORY.equals(name) || RESULT_BUILDER_FACTORY.equals(name)) {
             Object instance;
             try {
@@ -594,6 +614,7 @@ public class XSLTMediator extends AbstractMediator {
 
     public void setResourceMap(ResourceMap resourceMap) {
         this.resourceMap = resourceMap;
+        templatesCacheKeyPrefix = null;
     }
 }
 
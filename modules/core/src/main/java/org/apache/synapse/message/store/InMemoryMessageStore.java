@@ -16,171 +16,386 @@
  *  specific language governing permissions and limitations
  *  under the License.
  */
-
 package org.apache.synapse.message.store;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * InMemory Message store will store Failed Messages in the local memory
+ * <p>
+ * Each stored message is given a sequence number, and the messages are kept in a concurrent
+ * skip list ordered by those numbers, along with an index of the sequence numbers by message
+ * ID. A message is looked up by its ID in constant time. Looking a message up by its position
+ * skips over the messages removed from the middle of the store by ID using the set of their
+ * sequence numbers, which takes time linear in the number of such messages ahead of the
+ * position, and is cheap as long as messages are mostly taken off the head of the store.
+ * Should the same message be stored more than once, the sequence numbers of the later copies
+ * are kept per message ID, so that the next copy is found without scanning the store. Adding
+ * and removing messages only contend on a lock striped by message ID, which keeps the index
+ * in step with the stored messages.
+ * <p>
+ * The store may optionally be bounded using the {@link #CAPACITY} parameter, in which case
+ * the {@link #OVERFLOW_POLICY} parameter decides whether a new message is rejected or the
+ * oldest message is dropped to make room for it, once the store is full.
  */
 public class InMemoryMessageStore extends AbstractMessageStore {
 
     private static final Log log = LogFactory.getLog(InMemoryMessageStore.class);
 
-    /** The map that keeps the stored messages */
-    private Queue<MessageContext> messageList = new ConcurrentLinkedQueue<MessageContext>();
+    /** Maximum number of messages in the store. The store is unbounded by default */
+    public static final String CAPACITY = "store.capacity";
+
+    /** What to do with a new message when the store is full - reject or dropOldest */
+    public static final String OVERFLOW_POLICY = "store.overflow.policy";
+
+    public static final String OVERFLOW_REJECT = "reject";
+    public static final String OVERFLOW_DROP_OLDEST = "dropOldest";
+
+    private static final int ID_LOCKS = 32;
+
+    /** The map that keeps the stored messages by their sequence numbers */
+    private final ConcurrentNavigableMap<Long, MessageContext> messages =
+            new ConcurrentSkipListMap<Long, MessageContext>();
+
+    /** Sequence numbers of the stored messages by message ID */
+    private final ConcurrentMap<String, Long> messageIds = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Sequence numbers of the other messages with the ID of a message in messageIds, in case
+     * the same message is stored more than once
+     */
+    private final ConcurrentMap<String, TreeSet<Long>> duplicateIds =
+            new ConcurrentHashMap<String, TreeSet<Long>>();
+
+    /**
+     * Locks striped by message ID, serializing the updates of the above indexes for a given
+     * message ID. A message is put into the store while holding its lock, so that it can not
+     * be removed before it is indexed and its addition is queued for the observers. Messages
+     * without an ID share the first lock
+     */
+    private final Object[] idLocks = new Object[ID_LOCKS];
+
+    /** Sequence numbers of the messages removed from somewhere other than the head */
+    private final ConcurrentSkipListSet<Long> removed = new ConcurrentSkipListSet<Long>();
+
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    private int capacity = -1;
 
-    private Lock lock = new ReentrantLock();
+    private boolean dropOldest = false;
+
+    /** Pending observer notifications, delivered in batches by one thread at a time */
+    private final Queue<Notification> notifications = new ConcurrentLinkedQueue<Notification>();
+
+    private final AtomicBoolean notifying = new AtomicBoolean(false);
+
+    public InMemoryMessageStore() {
+        for (int i = 0; i < ID_LOCKS; i++) {
+            idLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+        Object value = parameters != null ? parameters.get(CAPACITY) : null;
+        if (value != null) {
+            try {
+                capacity = Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                handleException("Invalid value : " + value + " for the parameter : " + CAPACITY);
+            }
+        }
+        value = parameters != null ? parameters.get(OVERFLOW_POLICY) : null;
+        if (value != null) {
+            String policy = value.toString().trim();
+            if (OVERFLOW_DROP_OLDEST.equals(policy)) {
+                dropOldest = true;
+            } else if (!OVERFLOW_REJECT.equals(policy)) {
+                handleException("Invalid value : " + policy + " for the parameter : " +
+                        OVERFLOW_POLICY + " - expected " + OVERFLOW_REJECT + " or " +
+                        OVERFLOW_DROP_OLDEST);
+            }
+        }
+    }
 
     @Override
     public boolean offer(MessageContext messageContext) {
-        lock.lock();
-        try {
-            if (messageContext != null) {
-                messageContext.getEnvelope().build();
-                messageList.offer(messageContext);
-                // Notify observers
-                notifyMessageAddition(messageContext.getMessageID());
-                if (log.isDebugEnabled()) {
-                    log.debug("Message with id " + messageContext.getMessageID() + " stored");
+        if (messageContext == null) {
+            return true;
+        }
+        if (!reserve()) {
+            log.warn("Message store : " + name + " is full - message with id " +
+                    messageContext.getMessageID() + " rejected");
+            return false;
+        }
+
+        messageContext.getEnvelope().build();
+        Long seq = sequence.getAndIncrement();
+        String messageId = messageContext.getMessageID();
+        synchronized (idLock(messageId)) {
+            messages.put(seq, messageContext);
+            if (messageId != null && messageIds.putIfAbsent(messageId, seq) != null) {
+                // the index keeps pointing at the first of the messages with this ID
+                TreeSet<Long> sequences = duplicateIds.get(messageId);
+                if (sequences == null) {
+                    sequences = new TreeSet<Long>();
+                    duplicateIds.put(messageId, sequences);
                 }
+                sequences.add(seq);
             }
-        } finally {
-            lock.unlock();
+            // queued before the message can be removed, so that the observers always learn
+            // of the addition of a message ahead of its removal
+            queueNotification(messageId, true);
+        }
+        // Notify observers
+        deliverNotifications();
+        if (log.isDebugEnabled()) {
+            log.debug("Message with id " + messageId + " stored");
         }
-
         return true;
     }
 
     @Override
     public MessageContext poll() {
-        lock.lock();
-        try {
-            MessageContext context = messageList.poll();
-            if (context != null) {
-                // notify observers
-                notifyMessageRemoval(context.getMessageID());
-            }
-            return context;
-        } finally {
-            lock.unlock();
+        Map.Entry<Long, MessageContext> entry = messages.pollFirstEntry();
+        if (entry == null) {
+            return null;
+        }
+        removed(entry.getKey(), entry.getValue());
+        if (!removed.isEmpty()) {
+            removed.headSet(entry.getKey(), true).clear();
         }
+        return entry.getValue();
     }
 
     @Override
     public MessageContext peek() {
-        return messageList.peek();        
+        Map.Entry<Long, MessageContext> entry = messages.firstEntry();
+        return entry != null ? entry.getValue() : null;
     }
 
     @Override
     public MessageContext remove() throws NoSuchElementException {
-        lock.lock();
-        try {
-            MessageContext msgCtx = messageList.remove();
-            if (msgCtx != null) {
-                notifyMessageRemoval(msgCtx.getMessageID());
-            }
-            return msgCtx;
-        } finally {
-            lock.unlock();
+        MessageContext msgCtx = poll();
+        if (msgCtx == null) {
+            throw new NoSuchElementException("Message store : " + name + " is empty");
         }
+        return msgCtx;
     }
 
     @Override
     public MessageContext get(int index) {
-        lock.lock();
-        try {
-            if (index >= 0 && index < messageList.size()) {
-                int i = 0;
-                for (MessageContext msgCtx : messageList) {
-                    if (index == i) {
-                        return msgCtx;
-                    }
-                    i++;
-                }
-            }
+        if (index < 0 || index >= count.get()) {
+            return null;
+        }
+        Map.Entry<Long, MessageContext> firstEntry = messages.firstEntry();
+        if (firstEntry == null) {
             return null;
-        } finally {
-            lock.unlock();
         }
+
+        // skip over the messages removed from the middle of the store
+        long first = firstEntry.getKey();
+        long seq = first + index;
+        int skipped = 0;
+        while (!removed.isEmpty()) {
+            int holes = removed.subSet(first, true, seq, true).size();
+            if (holes == skipped) {
+                break;
+            }
+            seq += holes - skipped;
+            skipped = holes;
+        }
+
+        MessageContext msgCtx = messages.get(seq);
+        if (msgCtx != null) {
+            return msgCtx;
+        }
+        // the store was modified concurrently - fall back to counting the messages
+        int i = 0;
+        for (MessageContext m : messages.values()) {
+            if (index == i++) {
+                return m;
+            }
+        }
+        return null;
     }
 
     @Override
     public MessageContext remove(String messageID) {
-        lock.lock();
-        try {
-            if (messageID != null) {
-                MessageContext removable = null;
-                for (MessageContext msgCtx : messageList) {
-                    if (msgCtx.getMessageID().equals(messageID)) {
-                        removable = msgCtx;
-                        break;
-                    }
-                }
+        Long seq = findSequence(messageID);
+        if (seq == null) {
+            return null;
+        }
+        MessageContext msgCtx = messages.remove(seq);
+        if (msgCtx == null) {
+            // polled by someone else in the meantime
+            return null;
+        }
 
-                if (removable != null && messageList.remove(removable)) {
-                    notifyMessageRemoval(messageID);
-                }
-            }
-        } finally {
-            lock.unlock();
+        Map.Entry<Long, MessageContext> firstEntry = messages.firstEntry();
+        if (firstEntry != null && firstEntry.getKey() < seq) {
+            removed.add(seq);
         }
-        return null;
+        removed(seq, msgCtx);
+        return msgCtx;
     }
 
     @Override
     public void clear() {
-        lock.lock();
-        try {
-            while (!messageList.isEmpty()) {
-                // We need to call remove() here because we need the notifications
-                // to get fired properly for each removal
-                remove();
-            }
-        } finally {
-            lock.unlock();
+        // We need to call poll() here because we need the notifications
+        // to get fired properly for each removal
+        while (poll() != null) {
         }
     }
 
     @Override
     public List<MessageContext> getAll() {
-        lock.lock();
-        try {
-            List<MessageContext> returnList = new ArrayList<MessageContext>();
-            returnList.addAll(messageList);
-            return returnList;
-        } finally {
-            lock.unlock();
-        }
+        return new ArrayList<MessageContext>(messages.values());
     }
 
     @Override
     public MessageContext get(String messageId) {
-        lock.lock();
-        try {
+        Long seq = findSequence(messageId);
+        return seq != null ? messages.get(seq) : null;
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Make room for a new message, dropping the oldest messages if the store is full and
+     * configured to do so
+     *
+     * @return false if the message has to be rejected
+     */
+    private boolean reserve() {
+        if (capacity < 0) {
+            count.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            int current = count.get();
+            if (current >= capacity) {
+                if (!dropOldest) {
+                    return false;
+                }
+                MessageContext dropped = poll();
+                if (dropped != null) {
+                    log.warn("Message store : " + name + " is full - dropped the message " +
+                            "with id " + dropped.getMessageID());
+                }
+                continue;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void removed(Long seq, MessageContext msgCtx) {
+        count.decrementAndGet();
+        String messageId = msgCtx.getMessageID();
+        synchronized (idLock(messageId)) {
             if (messageId != null) {
-                for (MessageContext msgCtx : messageList) {
-                    if (msgCtx.getMessageID().equals(messageId)) {
-                        return msgCtx;
+                if (messageIds.remove(messageId, seq)) {
+                    // point the index at the next message with the same ID, if any
+                    TreeSet<Long> sequences = duplicateIds.get(messageId);
+                    if (sequences != null) {
+                        messageIds.put(messageId, sequences.pollFirst());
+                        if (sequences.isEmpty()) {
+                            duplicateIds.remove(messageId);
+                        }
+                    }
+                } else {
+                    TreeSet<Long> sequences = duplicateIds.get(messageId);
+                    if (sequences != null && sequences.remove(seq) && sequences.isEmpty()) {
+                        duplicateIds.remove(messageId);
                     }
                 }
             }
-        } finally {
-            lock.unlock();
+            queueNotification(messageId, false);
         }
-        return null;
+        // notify observers
+        deliverNotifications();
     }
 
-    @Override
-    public int size() {
-        return messageList.size();
+    private Object idLock(String messageId) {
+        if (messageId == null) {
+            return idLocks[0];
+        }
+        return idLocks[(messageId.hashCode() & 0x7fffffff) % ID_LOCKS];
+    }
+
+    private Long findSequence(String messageId) {
+        return messageId != null ? messageIds.get(messageId) : null;
+    }
+
+    /**
+     * Queue a notification for the observers. This is called while holding the lock of the
+     * message ID, so that the notifications of a given message are queued in the order the
+     * message was added and removed.
+     */
+    private void queueNotification(String messageId, boolean added) {
+        if (!messageStoreObservers.isEmpty()) {
+            notifications.offer(new Notification(messageId, added));
+        }
+    }
+
+    /**
+     * Deliver the pending notifications, unless another thread is already delivering them.
+     * Observers are thus never called concurrently, and receive the notifications in the
+     * order they were queued.
+     */
+    private void deliverNotifications() {
+        while (!notifications.isEmpty() && notifying.compareAndSet(false, true)) {
+            try {
+                Notification notification;
+                while ((notification = notifications.poll()) != null) {
+                    if (notification.added) {
+                        notifyMessageAddition(notification.messageId);
+                    } else {
+                        notifyMessageRemoval(notification.messageId);
+                    }
+                }
+            } finally {
+                notifying.set(false);
+            }
+        }
+    }
+
+    private void handleException(String msg) {
+        log.error(msg);
+        throw new SynapseException(msg);
+    }
+
+    private static class Notification {
+
+        private final String messageId;
+        private final boolean added;
+
+        private Notification(String messageId, boolean added) {
+            this.messageId = messageId;
+            this.added = added;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,301 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A single file of the journal kept by a {@link JournaledMessageStore}. A segment is a
+ * memory mapped file of fixed size to which records are only ever appended. Each record is
+ * laid out as follows, followed by the record payload.
+ * <pre>
+ *  int  length of the record body (type, sequence and payload)
+ *  int  CRC32 checksum of the record body
+ *  byte record type
+ *  long message sequence number
+ * </pre>
+ * A zero length marks the end of the data written to the segment, since new files are zero
+ * filled. A record with a bad checksum or length, i.e. a record which was only partially
+ * written when the server went down, also ends the segment.
+ * <p>
+ * Segments are not thread safe, and are guarded by the lock of the owning store.
+ */
+class JournalSegment {
+
+    static final String FILE_EXTENSION = ".journal";
+
+    static final byte MESSAGE = 1;
+    static final byte REMOVAL = 2;
+
+    private static final int MAGIC = 0x534A524E;
+    private static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 4 + 4 + 1 + 8;
+
+    private final long id;
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition = HEADER_SIZE;
+
+    /** Number and total size of the message records in this segment yet to be removed */
+    private int liveCount = 0;
+    private long liveBytes = 0;
+
+    private JournalSegment(long id, File file, int size) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a new, empty segment
+     *
+     * @param directory journal directory
+     * @param id segment ID, which must be greater than the ID of any existing segment
+     * @param size size of the segment file in bytes
+     * @return the new segment
+     * @throws IOException if the segment file cannot be created
+     */
+    static JournalSegment create(File directory, long id, int size) throws IOException {
+        File file = new File(directory, getFileName(id));
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to replace the journal segment : " + file);
+        }
+        JournalSegment segment = new JournalSegment(id, file, size);
+        segment.writeHeader();
+        return segment;
+    }
+
+    /**
+     * Write the segment header and flush it to the disk, so that a segment file is never
+     * found without a header once records have been written to it
+     */
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.force();
+    }
+
+    /**
+     * Open an existing segment and read all the records in it
+     *
+     * @param file segment file
+     * @param last whether this is the newest segment of the journal, in which case a segment
+     *             without a header (i.e. one created just before the server went down) is
+     *             taken to be empty
+     * @param visitor callback notified of each record in the order of the records
+     * @return the opened segment, positioned to append after the last intact record
+     * @throws IOException if the segment cannot be opened
+     */
+    static JournalSegment open(File file, boolean last,
+                               RecordVisitor visitor) throws IOException {
+        String name = file.getName();
+        long id = Long.parseLong(name.substring(0, name.length() - FILE_EXTENSION.length()));
+        JournalSegment segment = new JournalSegment(id, file, (int) file.length());
+        ByteBuffer buffer = segment.buffer;
+        if (last && buffer.capacity() >= HEADER_SIZE &&
+                buffer.getInt(0) == 0 && buffer.getInt(4) == 0) {
+            segment.truncate();
+            segment.writeHeader();
+            return segment;
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            segment.close();
+            throw new IOException("Invalid journal segment : " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            segment.close();
+            throw new IOException("Unsupported journal segment version : " + buffer.getInt(4) +
+                    " in : " + file);
+        }
+
+        int position = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_HEADER_SIZE - 8 || position + 8 + length > buffer.capacity()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + 8);
+            view.get(body);
+            crc.reset();
+            crc.update(body, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(body);
+            byte type = record.get();
+            long sequence = record.getLong();
+            visitor.visit(segment, type, sequence, position, length + 8);
+            position += length + 8;
+        }
+
+        segment.writePosition = position;
+        return segment;
+    }
+
+    /**
+     * Wipe out whatever is left of a partially written record at the end of the segment, so
+     * that it cannot be mistaken for a complete record once new records are written over it.
+     * Only the segment being written to when the server went down can end with such a record.
+     */
+    void truncate() {
+        for (int i = writePosition; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    static String getFileName(long id) {
+        return String.format("%020d", id) + FILE_EXTENSION;
+    }
+
+    /**
+     * Append a record to the end of the segment
+     *
+     * @param type record type
+     * @param sequence sequence number of the message the record applies to
+     * @param payload record payload
+     * @return position of the record in the segment, or -1 if there is no room for it
+     */
+    int append(byte type, long sequence, byte[] payload) {
+        int size = RECORD_HEADER_SIZE + payload.length;
+        if (writePosition + size > buffer.capacity()) {
+            return -1;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(size - 8);
+        body.put(type).putLong(sequence).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, body.capacity());
+
+        // write the body ahead of the length, so that a record is never seen with a valid
+        // length and partial contents
+        ByteBuffer view = buffer.duplicate();
+        view.position(writePosition + 8);
+        view.put(body.array());
+        buffer.putInt(writePosition + 4, (int) crc.getValue());
+        buffer.putInt(writePosition, size - 8);
+
+        int position = writePosition;
+        writePosition += size;
+        return position;
+    }
+
+    /**
+     * Read the payload of the record at the given position
+     *
+     * @param position position of the record, as returned by {@link #append}
+     * @return record payload
+     */
+    byte[] read(int position) {
+        int length = buffer.getInt(position) - (RECORD_HEADER_SIZE - 8);
+        byte[] payload = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(payload);
+        return payload;
+    }
+
+    /**
+     * @param position position of a record in the segment
+     * @return total size of the record in bytes
+     */
+    int getRecordSize(int position) {
+        return buffer.getInt(position) + 8;
+    }
+
+    /**
+     * Flush the records written to the segment to the disk
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Close and delete the segment file. The mapped region itself is released once the
+     * segment gets garbage collected.
+     *
+     * @throws IOException if the segment file cannot be deleted
+     */
+    void delete() throws IOException {
+        close();
+        if (!file.delete()) {
+            throw new IOException("Unable to delete the journal segment : " + file);
+        }
+    }
+
+    void addLive(int size) {
+        liveCount++;
+        liveBytes += size;
+    }
+
+    void removeLive(int size) {
+        liveCount--;
+        liveBytes -= size;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getLiveCount() {
+        return liveCount;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Callback used to read the records of a segment when it is opened
+     */
+    interface RecordVisitor {
+
+        void visit(JournalSegment segment, byte type, long sequence, int position, int size)
+                throws IOException;
+    }
+}
@@ -0,0 +1,753 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Message store which keeps the stored messages in an append-only journal on the local disk,
+ * so that they survive restarts and do not have to be held in memory. The journal is made of
+ * memory mapped segment files of a fixed size. A stored message is appended to the last
+ * segment in a compact binary form, and its removal is recorded by appending a small removal
+ * record. Only the location of each message is kept in memory, and messages are read back
+ * from the journal when they are accessed.
+ * <p>
+ * Segments are deleted starting from the oldest, once all the messages in them have been
+ * removed. When the oldest segment holds just a few messages which have not been removed
+ * yet (i.e. messages removed out of order), those messages are copied to the end of the
+ * journal so that the segment can be reclaimed. On startup the journal is read from the
+ * oldest segment to rebuild the store.
+ * <p>
+ * By default {@link #offer(MessageContext)} returns only after the message has been flushed
+ * to the disk. Concurrent offers share the flushes, i.e. one thread flushes the journal on
+ * behalf of all the messages written while the previous flush was in progress. Removals are
+ * flushed along with the next offer, so a message removed just before a crash may be
+ * delivered again after the restart.
+ * <p>
+ * Only the properties of a message with string, numeric or boolean values are stored along
+ * with the envelope. See {@link StoredMessageCodec} for details.
+ */
+public class JournaledMessageStore extends AbstractMessageStore {
+
+    private static final Log log = LogFactory.getLog(JournaledMessageStore.class);
+
+    /** Directory which holds the journal files of the store */
+    public static final String JOURNAL_DIRECTORY = "store.journal.directory";
+
+    /** Size of a journal segment file in bytes */
+    public static final String SEGMENT_SIZE = "store.journal.segment.size";
+
+    /** Whether to wait for the stored messages to be flushed to the disk */
+    public static final String SYNC = "store.journal.sync";
+
+    /**
+     * Fraction of the oldest segment that may be occupied by messages not yet removed, for
+     * those messages to be moved to the end of the journal so that the segment can be deleted
+     */
+    public static final String COMPACTION_THRESHOLD = "store.journal.compaction.threshold";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.25;
+
+    /** Entries are dropped from the head of the entry list in batches of at least this size */
+    private static final int TRIM_THRESHOLD = 1024;
+
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private static final Comparator<Entry> SEQUENCE_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return e1.sequence < e2.sequence ? -1 : (e1.sequence == e2.sequence ? 0 : 1);
+        }
+    };
+
+    private File directory;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private boolean sync = true;
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** Journal segments, oldest first. New records are always written to the last segment */
+    private final LinkedList<JournalSegment> segments = new LinkedList<JournalSegment>();
+
+    /** Segments written to since they were last flushed */
+    private final Set<JournalSegment> unsynced = new LinkedHashSet<JournalSegment>();
+
+    /**
+     * Stored messages in the order they were added, starting at the position first. Removing
+     * messages from the head of the store just moves the first position ahead, so that the
+     * messages can be accessed by their positions without copying the list on each removal.
+     */
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private int first = 0;
+
+    /** The first of the stored messages with each message ID */
+    private final Map<String, Entry> entriesById = new HashMap<String, Entry>();
+
+    /**
+     * The remaining messages stored with the same ID as an earlier message, ordered by their
+     * sequence numbers, so that the next one can take over the index once the first is removed
+     */
+    private final Map<String, TreeMap<Long, Entry>> duplicateIds =
+            new HashMap<String, TreeMap<Long, Entry>>();
+
+    private long nextSequence = 0;
+
+    /** Number of records written to the journal */
+    private long recordCount = 0;
+
+    private final Object syncMonitor = new Object();
+
+    /** Number of records known to have been flushed to the disk */
+    private long syncedCount = 0;
+
+    private boolean syncing = false;
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+        lock.lock();
+        try {
+            readParameters();
+            if (!directory.exists() && !directory.mkdirs()) {
+                handleException("Unable to create the journal directory : " + directory +
+                        " of the message store : " + name);
+            }
+            recover();
+        } catch (IOException e) {
+            handleException("Error opening the journal of the message store : " + name, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        lock.lock();
+        try {
+            for (JournalSegment segment : segments) {
+                segment.force();
+                segment.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing the journal of the message store : " + name, e);
+        } finally {
+            segments.clear();
+            unsynced.clear();
+            entries.clear();
+            entriesById.clear();
+            duplicateIds.clear();
+            first = 0;
+            lock.unlock();
+        }
+        super.destroy();
+    }
+
+    @Override
+    public boolean offer(MessageContext messageContext) {
+        if (messageContext == null) {
+            return true;
+        }
+
+        String messageId = messageContext.getMessageID();
+        byte[] data;
+        try {
+            data = StoredMessageCodec.encode(messageContext);
+        } catch (IOException e) {
+            log.error("Error serializing the message with id " + messageId, e);
+            return false;
+        }
+
+        long count;
+        lock.lock();
+        try {
+            if (segments.isEmpty()) {
+                handleException("Message store : " + name + " is not initialized");
+            }
+            Entry entry = write(JournalSegment.MESSAGE, nextSequence, data, messageId);
+            if (entry == null) {
+                log.warn("Message with id " + messageId + " of " + data.length + " bytes " +
+                        "exceeds the segment size of the message store : " + name);
+                return false;
+            }
+            nextSequence++;
+            entries.add(entry);
+            addToIndex(entry);
+            count = recordCount;
+
+            // Notify observers
+            notifyMessageAddition(messageId);
+            if (log.isDebugEnabled()) {
+                log.debug("Message with id " + messageId + " stored");
+            }
+        } catch (IOException e) {
+            log.error("Error writing the message with id " + messageId + " to the journal", e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+
+        if (sync) {
+            sync(count);
+        }
+        return true;
+    }
+
+    @Override
+    public MessageContext poll() {
+        lock.lock();
+        try {
+            while (first < entries.size()) {
+                MessageContext synCtx = removeEntry(first);
+                if (synCtx != null) {
+                    return synCtx;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext peek() {
+        lock.lock();
+        try {
+            while (first < entries.size()) {
+                MessageContext synCtx = load(entries.get(first));
+                if (synCtx != null) {
+                    return synCtx;
+                }
+                removeEntry(first);
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext remove() throws NoSuchElementException {
+        lock.lock();
+        try {
+            while (first < entries.size()) {
+                MessageContext synCtx = removeEntry(first);
+                if (synCtx != null) {
+                    return synCtx;
+                }
+            }
+            throw new NoSuchElementException("Message store : " + name + " is empty");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext remove(String messageID) {
+        lock.lock();
+        try {
+            Entry entry = messageID != null ? entriesById.get(messageID) : null;
+            if (entry == null) {
+                return null;
+            }
+            // entries are always in the order of their sequence numbers
+            int index = Collections.binarySearch(
+                    entries.subList(first, entries.size()), entry, SEQUENCE_ORDER);
+            return removeEntry(first + index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            while (first < entries.size()) {
+                // remove one by one, so that the observers get notified of each removal
+                removeEntry(first);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext get(int index) {
+        lock.lock();
+        try {
+            if (index >= 0 && index < entries.size() - first) {
+                return load(entries.get(first + index));
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<MessageContext> getAll() {
+        lock.lock();
+        try {
+            List<MessageContext> returnList = new ArrayList<MessageContext>();
+            for (int i = first; i < entries.size(); i++) {
+                MessageContext synCtx = load(entries.get(i));
+                if (synCtx != null) {
+                    returnList.add(synCtx);
+                }
+            }
+            return returnList;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext get(String messageId) {
+        lock.lock();
+        try {
+            Entry entry = messageId != null ? entriesById.get(messageId) : null;
+            return entry != null ? load(entry) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size() - first;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void readParameters() {
+        String value = getParameter(JOURNAL_DIRECTORY);
+        if (value != null) {
+            directory = new File(value);
+        } else if (name != null) {
+            directory = new File(System.getProperty(SynapseConstants.SYNAPSE_HOME, "."),
+                    "repository" + File.separator + "stores" + File.separator + name);
+        } else {
+            handleException("The parameter : " + JOURNAL_DIRECTORY + " is required for a " +
+                    "message store without a name");
+        }
+
+        value = getParameter(SEGMENT_SIZE);
+        if (value != null) {
+            try {
+                segmentSize = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                handleException("Invalid value : " + value + " for the parameter : " +
+                        SEGMENT_SIZE, e);
+            }
+            if (segmentSize <= JournalSegment.HEADER_SIZE + JournalSegment.RECORD_HEADER_SIZE) {
+                handleException("The parameter : " + SEGMENT_SIZE + " is too small : " + value);
+            }
+        }
+
+        value = getParameter(SYNC);
+        if (value != null) {
+            sync = Boolean.parseBoolean(value);
+        }
+
+        value = getParameter(COMPACTION_THRESHOLD);
+        if (value != null) {
+            try {
+                compactionThreshold = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                handleException("Invalid value : " + value + " for the parameter : " +
+                        COMPACTION_THRESHOLD, e);
+            }
+        }
+    }
+
+    private String getParameter(String name) {
+        Object value = parameters != null ? parameters.get(name) : null;
+        return value != null ? value.toString().trim() : null;
+    }
+
+    /**
+     * Rebuild the store from the journal files found in the journal directory
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(JournalSegment.FILE_EXTENSION);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Unable to list the journal directory : " + directory);
+        }
+        // segment file names are zero padded segment IDs
+        Arrays.sort(files);
+
+        final TreeMap<Long, Entry> recovered = new TreeMap<Long, Entry>();
+        JournalSegment.RecordVisitor visitor = new JournalSegment.RecordVisitor() {
+            @Override
+            public void visit(JournalSegment segment, byte type, long sequence,
+                              int position, int size) throws IOException {
+                if (type == JournalSegment.MESSAGE) {
+                    String messageId = null;
+                    try {
+                        messageId = StoredMessageCodec.decodeMessageId(segment.read(position));
+                    } catch (IOException e) {
+                        // recover it anyway, it is discarded when it is taken off the store
+                        log.warn("Unable to read the id of the message : " + sequence +
+                                " in the journal of the message store : " + name, e);
+                    }
+                    Entry entry = new Entry(sequence, messageId, segment, position, size);
+                    segment.addLive(size);
+                    // a message appears more than once if compaction stopped before
+                    // deleting the segment the message was copied from
+                    Entry previous = recovered.put(sequence, entry);
+                    if (previous != null) {
+                        previous.segment.removeLive(previous.size);
+                    }
+                } else if (type == JournalSegment.REMOVAL) {
+                    Entry removed = recovered.remove(sequence);
+                    if (removed != null) {
+                        removed.segment.removeLive(removed.size);
+                    }
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            }
+        };
+
+        for (int i = 0; i < files.length; i++) {
+            segments.add(JournalSegment.open(files[i], i == files.length - 1, visitor));
+        }
+        if (segments.isEmpty()) {
+            segments.add(JournalSegment.create(directory, 0, segmentSize));
+        } else {
+            segments.getLast().truncate();
+        }
+
+        for (Entry entry : recovered.values()) {
+            entries.add(entry);
+            addToIndex(entry);
+        }
+        compact();
+
+        log.info("Message store : " + name + " recovered " + entries.size() + " message(s) " +
+                "from " + segments.size() + " journal segment(s) in : " + directory);
+    }
+
+    /**
+     * Append a record to the journal, starting a new segment if the last one is full
+     *
+     * @return the location of the record, or null if the record doesn't fit in a segment
+     */
+    private Entry write(byte type, long sequence, byte[] payload,
+                        String messageId) throws IOException {
+        int size = JournalSegment.RECORD_HEADER_SIZE + payload.length;
+        if (size > segmentSize - JournalSegment.HEADER_SIZE) {
+            return null;
+        }
+
+        JournalSegment segment = segments.getLast();
+        int position = segment.append(type, sequence, payload);
+        if (position < 0) {
+            segment = JournalSegment.create(directory, segment.getId() + 1, segmentSize);
+            segments.add(segment);
+            position = segment.append(type, sequence, payload);
+        }
+        if (type == JournalSegment.MESSAGE) {
+            segment.addLive(size);
+        }
+        unsynced.add(segment);
+        recordCount++;
+        return new Entry(sequence, messageId, segment, position, size);
+    }
+
+    /**
+     * Remove the message at the given index of the entries, writing a removal record for it
+     *
+     * @return the removed message, or null if the message could not be read from the journal
+     * in which case it is discarded
+     */
+    private MessageContext removeEntry(int index) {
+        Entry entry = entries.get(index);
+        MessageContext synCtx = load(entry);
+        if (synCtx == null) {
+            log.error("Discarding the message with id " + entry.messageId + " which can not " +
+                    "be read from the journal of the message store : " + name);
+        }
+        try {
+            write(JournalSegment.REMOVAL, entry.sequence, EMPTY_PAYLOAD, null);
+        } catch (IOException e) {
+            handleException("Error writing the removal of the message with id " +
+                    entry.messageId + " to the journal", e);
+        }
+
+        if (index == first) {
+            entries.set(first++, null);
+            if (first >= TRIM_THRESHOLD && first >= entries.size() / 2) {
+                entries.subList(0, first).clear();
+                first = 0;
+            }
+        } else {
+            entries.remove(index);
+        }
+        removeFromIndex(entry);
+        entry.segment.removeLive(entry.size);
+
+        try {
+            compact();
+        } catch (IOException e) {
+            log.warn("Error compacting the journal of the message store : " + name, e);
+        }
+
+        // notify observers
+        notifyMessageRemoval(entry.messageId);
+        return synCtx;
+    }
+
+    /**
+     * Add a newly stored message to the index of the messages by their IDs
+     */
+    private void addToIndex(Entry entry) {
+        if (entry.messageId == null) {
+            return;
+        }
+        if (!entriesById.containsKey(entry.messageId)) {
+            entriesById.put(entry.messageId, entry);
+            return;
+        }
+        // the index keeps pointing at the first of the messages with this ID
+        TreeMap<Long, Entry> duplicates = duplicateIds.get(entry.messageId);
+        if (duplicates == null) {
+            duplicates = new TreeMap<Long, Entry>();
+            duplicateIds.put(entry.messageId, duplicates);
+        }
+        duplicates.put(entry.sequence, entry);
+    }
+
+    /**
+     * Remove a message from the index of the messages by their IDs, pointing the index at
+     * the next message with the same ID if there is one
+     */
+    private void removeFromIndex(Entry entry) {
+        if (entry.messageId == null) {
+            return;
+        }
+        TreeMap<Long, Entry> duplicates = duplicateIds.get(entry.messageId);
+        if (entriesById.get(entry.messageId) == entry) {
+            if (duplicates != null) {
+                entriesById.put(entry.messageId, duplicates.pollFirstEntry().getValue());
+                if (duplicates.isEmpty()) {
+                    duplicateIds.remove(entry.messageId);
+                }
+            } else {
+                entriesById.remove(entry.messageId);
+            }
+        } else if (duplicates != null) {
+            duplicates.remove(entry.sequence);
+            if (duplicates.isEmpty()) {
+                duplicateIds.remove(entry.messageId);
+            }
+        }
+    }
+
+    /**
+     * Delete the oldest segments which no longer hold any messages, moving the remaining few
+     * messages of the oldest segment to the end of the journal where necessary. Segments are
+     * only ever deleted starting from the oldest, so that a removal record never outlives the
+     * message record it refers to.
+     */
+    private void compact() throws IOException {
+        while (segments.size() > 1) {
+            JournalSegment head = segments.getFirst();
+            if (head.getLiveCount() > 0) {
+                if (head.getLiveBytes() > head.getCapacity() * compactionThreshold) {
+                    break;
+                }
+                relocate(head);
+            }
+            head.delete();
+            segments.removeFirst();
+            unsynced.remove(head);
+            if (log.isDebugEnabled()) {
+                log.debug("Deleted the journal segment : " + head.getId() +
+                        " of the message store : " + name);
+            }
+        }
+    }
+
+    /**
+     * Copy the messages in the given segment to the end of the journal
+     */
+    private void relocate(JournalSegment segment) throws IOException {
+        Set<JournalSegment> written = new LinkedHashSet<JournalSegment>();
+        for (int i = first; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.segment == segment) {
+                Entry copy = write(JournalSegment.MESSAGE, entry.sequence,
+                        segment.read(entry.position), entry.messageId);
+                segment.removeLive(entry.size);
+                entry.segment = copy.segment;
+                entry.position = copy.position;
+                entry.size = copy.size;
+                written.add(copy.segment);
+            }
+        }
+        // the copies must be on the disk before the original segment goes away
+        for (JournalSegment copySegment : written) {
+            copySegment.force();
+        }
+    }
+
+    /**
+     * Wait until the given number of records have been flushed to the disk. If no other
+     * thread is flushing the journal at the moment, the calling thread flushes all the
+     * records written so far. An interrupt does not cut the wait short, as the caller is
+     * told the message is stored once this returns, but the interrupt status is kept.
+     */
+    private void sync(long count) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                synchronized (syncMonitor) {
+                    while (syncing && syncedCount < count) {
+                        try {
+                            syncMonitor.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (syncedCount >= count) {
+                        return;
+                    }
+                    syncing = true;
+                }
+
+                long target;
+                List<JournalSegment> dirty;
+                lock.lock();
+                try {
+                    target = recordCount;
+                    dirty = new ArrayList<JournalSegment>(unsynced);
+                    unsynced.clear();
+                } finally {
+                    lock.unlock();
+                }
+
+                boolean done = false;
+                try {
+                    for (JournalSegment segment : dirty) {
+                        segment.force();
+                    }
+                    done = true;
+                } finally {
+                    if (!done) {
+                        // let the next flush take care of these segments
+                        lock.lock();
+                        try {
+                            unsynced.addAll(dirty);
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    synchronized (syncMonitor) {
+                        syncing = false;
+                        if (done) {
+                            syncedCount = Math.max(syncedCount, target);
+                        }
+                        syncMonitor.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Read a message from the journal
+     *
+     * @return the message, or null if the record can not be decoded (i.e. it is corrupted)
+     */
+    private MessageContext load(Entry entry) {
+        try {
+            return StoredMessageCodec.decode(entry.segment.read(entry.position),
+                    synapseEnvironment);
+        } catch (Exception e) {
+            log.error("Error reading the message with id " + entry.messageId + " from the " +
+                    "journal of the message store : " + name, e);
+            return null;
+        }
+    }
+
+    private void handleException(String msg) {
+        log.error(msg);
+        throw new SynapseException(msg);
+    }
+
+    private void handleException(String msg, Exception e) {
+        log.error(msg, e);
+        throw new SynapseException(msg, e);
+    }
+
+    /**
+     * Location of a stored message in the journal
+     */
+    private static class Entry {
+
+        private final long sequence;
+        private final String messageId;
+        private JournalSegment segment;
+        private int position;
+        private int size;
+
+        private Entry(long sequence, String messageId, JournalSegment segment,
+                      int position, int size) {
+            this.sequence = sequence;
+            this.messageId = messageId;
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+        }
+    }
+}
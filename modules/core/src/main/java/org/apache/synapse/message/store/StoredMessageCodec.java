@@ -0,0 +1,308 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Converts message contexts to and from the compact binary form written to the journal of
+ * a {@link JournaledMessageStore}. A stored message consists of the message ID, the
+ * addressing and transport level attributes of the message, the Synapse properties with
+ * simple (string, numeric or boolean) values, the transport headers and the serialized
+ * SOAP envelope. Properties with any other types of values cannot be restored in a
+ * different runtime and are not stored.
+ */
+class StoredMessageCodec {
+
+    private static final Log log = LogFactory.getLog(StoredMessageCodec.class);
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+
+    /** Axis2 message context properties required to send the message out again */
+    private static final String[] AXIS2_PROPERTIES = {
+            Constants.Configuration.MESSAGE_TYPE,
+            Constants.Configuration.CONTENT_TYPE,
+            Constants.Configuration.HTTP_METHOD
+    };
+
+    private static final String CHARSET = "UTF-8";
+
+    private StoredMessageCodec() {
+    }
+
+    static byte[] encode(MessageContext synCtx) throws IOException {
+        org.apache.axis2.context.MessageContext axis2Ctx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeString(out, synCtx.getMessageID());
+        writeString(out, synCtx.getTo() != null ? synCtx.getTo().getAddress() : null);
+        writeString(out, synCtx.getReplyTo() != null ? synCtx.getReplyTo().getAddress() : null);
+        writeString(out, synCtx.getWSAAction());
+        writeString(out, synCtx.getSoapAction());
+        out.writeBoolean(synCtx.isDoingPOX());
+        out.writeBoolean(synCtx.isDoingGET());
+        out.writeBoolean(synCtx.isDoingMTOM());
+        out.writeBoolean(synCtx.isDoingSWA());
+        out.writeBoolean(axis2Ctx.isDoingREST());
+        out.writeBoolean(synCtx.isResponse());
+        out.writeBoolean(synCtx.isFaultResponse());
+
+        Map<String, Object> properties = new TreeMap<String, Object>();
+        Set keys = synCtx.getPropertyKeySet();
+        if (keys != null) {
+            for (Object key : keys) {
+                Object value = synCtx.getProperty((String) key);
+                if (isSimpleValue(value)) {
+                    properties.put((String) key, value);
+                } else if (value != null && log.isDebugEnabled()) {
+                    log.debug("Property : " + key + " of the message : " +
+                            synCtx.getMessageID() + " is not stored - unsupported value type : " +
+                            value.getClass().getName());
+                }
+            }
+        }
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            writeString(out, property.getKey());
+            writeValue(out, property.getValue());
+        }
+
+        Map<String, String> axis2Properties = new HashMap<String, String>();
+        for (String name : AXIS2_PROPERTIES) {
+            Object value = axis2Ctx.getProperty(name);
+            if (value instanceof String) {
+                axis2Properties.put(name, (String) value);
+            }
+        }
+        writeStringMap(out, axis2Properties);
+
+        Map<String, String> headers = new HashMap<String, String>();
+        Object transportHeaders = axis2Ctx.getProperty(
+                org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+        if (transportHeaders instanceof Map) {
+            for (Object o : ((Map) transportHeaders).entrySet()) {
+                Map.Entry header = (Map.Entry) o;
+                if (header.getKey() != null && header.getValue() != null) {
+                    headers.put(header.getKey().toString(), header.getValue().toString());
+                }
+            }
+        }
+        writeStringMap(out, headers);
+
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream(1024);
+        try {
+            synCtx.getEnvelope().serialize(envelope);
+        } catch (XMLStreamException e) {
+            throw new IOException("Error serializing the envelope of the message : " +
+                    synCtx.getMessageID(), e);
+        }
+        out.writeInt(envelope.size());
+        envelope.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the message ID of a stored message, without decoding the rest of the message
+     */
+    static String decodeMessageId(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in);
+        return readString(in);
+    }
+
+    static MessageContext decode(byte[] data, SynapseEnvironment se) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in);
+
+        MessageContext synCtx = se.createMessageContext();
+        org.apache.axis2.context.MessageContext axis2Ctx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+
+        synCtx.setMessageID(readString(in));
+        String to = readString(in);
+        if (to != null) {
+            synCtx.setTo(new EndpointReference(to));
+        }
+        String replyTo = readString(in);
+        if (replyTo != null) {
+            synCtx.setReplyTo(new EndpointReference(replyTo));
+        }
+        synCtx.setWSAAction(readString(in));
+        synCtx.setSoapAction(readString(in));
+        synCtx.setDoingPOX(in.readBoolean());
+        synCtx.setDoingGET(in.readBoolean());
+        synCtx.setDoingMTOM(in.readBoolean());
+        synCtx.setDoingSWA(in.readBoolean());
+        axis2Ctx.setDoingREST(in.readBoolean());
+        synCtx.setResponse(in.readBoolean());
+        synCtx.setFaultResponse(in.readBoolean());
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            synCtx.setProperty(name, readValue(in));
+        }
+
+        for (Map.Entry<String, String> property : readStringMap(in).entrySet()) {
+            axis2Ctx.setProperty(property.getKey(), property.getValue());
+        }
+        Map<String, String> headers = readStringMap(in);
+        if (!headers.isEmpty()) {
+            axis2Ctx.setProperty(
+                    org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS, headers);
+        }
+
+        byte[] envelopeBytes = new byte[in.readInt()];
+        in.readFully(envelopeBytes);
+        SOAPEnvelope envelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                new ByteArrayInputStream(envelopeBytes), CHARSET).getSOAPEnvelope();
+        envelope.build();
+        try {
+            synCtx.setEnvelope(envelope);
+        } catch (AxisFault e) {
+            throw new IOException("Error setting the envelope of the stored message : " +
+                    synCtx.getMessageID(), e);
+        }
+        return synCtx;
+    }
+
+    private static void checkVersion(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported stored message version : " + version);
+        }
+    }
+
+    private static boolean isSimpleValue(Object value) {
+        return value instanceof String || value instanceof Boolean || value instanceof Integer ||
+                value instanceof Long || value instanceof Double;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            default:
+                throw new IOException("Unknown property type : " + type);
+        }
+    }
+
+    private static void writeStringMap(DataOutputStream out,
+                                       Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readStringMap(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> map = new HashMap<String, String>(count);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            map.put(key, readString(in));
+        }
+        return map;
+    }
+
+    /**
+     * Strings are written as a length followed by the UTF-8 bytes, since property values may
+     * well exceed the 64K limit of {@link DataOutputStream#writeUTF(String)}. A length of -1
+     * stands for null.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(CHARSET);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+}
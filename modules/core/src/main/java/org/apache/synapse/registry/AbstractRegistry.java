@@ -22,23 +22,71 @@ package org.apache.synapse.registry;
 import org.apache.axiom.om.OMNode;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.Entry;
 import org.apache.synapse.config.XMLToObjectMapper;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.mediators.base.SequenceMediator;
 
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements the core Registry lookup algorithm
+ * <p>
+ * By default a cached resource is reloaded by the first thread that reads it after its cache
+ * period has expired. When the <code>refreshAhead</code> parameter is set, resources read during
+ * the last part of their cache period (as given by the <code>refreshAheadFactor</code>
+ * parameter) are reloaded in the background instead, so that frequently used resources never
+ * expire on the mediation threads. At most one thread reloads a given resource at any time, and
+ * the cached copy is served to the others. If a resource can't be reloaded, the cached copy is
+ * kept for another cache period. The cache statistics are published over JMX.
  */
 public abstract class AbstractRegistry implements Registry {
 
     private static final Log log = LogFactory.getLog(AbstractRegistry.class);
 
+    /** Registry parameter to enable reloading the cached resources in the background */
+    public static final String REFRESH_AHEAD = "refreshAhead";
+
+    /**
+     * Registry parameter giving the fraction of the cache period after which reading a
+     * resource triggers a background reload
+     */
+    public static final String REFRESH_AHEAD_FACTOR = "refreshAheadFactor";
+
+    private static final double DEFAULT_REFRESH_AHEAD_FACTOR = 0.75;
+
+    /** Cache period used when a resource fails to reload before it has been cached for long */
+    private static final long MIN_RETRY_INTERVAL = 1000;
+
     /** The list of configuration properties */
     protected final Properties properties = new Properties();
 
+    private volatile boolean refreshAhead = false;
+
+    private volatile double refreshAheadFactor = DEFAULT_REFRESH_AHEAD_FACTOR;
+
+    private ThreadPoolExecutor refreshExecutor;
+
+    private final ConcurrentMap<String, CacheState> cacheStates =
+            new ConcurrentHashMap<String, CacheState>();
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong staleHits = new AtomicLong(0);
+    private final AtomicLong refreshes = new AtomicLong(0);
+    private final AtomicLong refreshFailures = new AtomicLong(0);
+    private final AtomicLong totalRefreshTime = new AtomicLong(0);
+    private final AtomicLong maxRefreshTime = new AtomicLong(0);
+
     /**
      * Get the resource for the given key from this registry
      * @param entry The Entry instance that contains meta-data
@@ -46,7 +94,135 @@ public abstract class AbstractRegistry implements Registry {
      * @return the matching resultant object
      */
     @Override
-    public Object getResource(Entry entry, Properties properties) {
+    public Object getResource(final Entry entry, final Properties properties) {
+        if (!refreshAhead) {
+            return loadResource(entry, properties, false);
+        }
+
+        final CacheState state = getCacheState(entry.getKey());
+        if (!entry.isCached()) {
+            // only one thread loads the resource, the others wait for it
+            synchronized (state) {
+                if (!entry.isCached()) {
+                    misses.incrementAndGet();
+                    Object value = loadResource(entry, properties, false);
+                    renewLease(entry, state);
+                    return value;
+                }
+            }
+        }
+
+        if (!entry.isExpired()) {
+            hits.incrementAndGet();
+            if (System.currentTimeMillis() >= state.refreshTime &&
+                    state.loading.compareAndSet(false, true)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Scheduling a background refresh for key : " + entry.getKey());
+                }
+                refreshExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refresh(entry, properties, state);
+                        } catch (Throwable t) {
+                            log.error("Error refreshing the resource with key : " +
+                                    entry.getKey(), t);
+                        } finally {
+                            state.loading.set(false);
+                        }
+                    }
+                });
+            }
+            return entry.getValue();
+        }
+
+        if (!state.loading.compareAndSet(false, true)) {
+            // another thread is already reloading the resource
+            staleHits.incrementAndGet();
+            return entry.getValue();
+        }
+        try {
+            return refresh(entry, properties, state);
+        } finally {
+            state.loading.set(false);
+        }
+    }
+
+    /**
+     * Reload a cached resource from the registry, falling back to the cached copy if the
+     * resource is no longer available
+     */
+    private Object refresh(Entry entry, Properties properties, CacheState state) {
+        Object cached = entry.getValue();
+        long start = System.currentTimeMillis();
+        Object value = null;
+        try {
+            value = loadResource(entry, properties, true);
+        } catch (RuntimeException e) {
+            if (cached == null) {
+                throw e;
+            }
+            log.warn("Error reloading the resource with key : " + entry.getKey(), e);
+        }
+
+        long time = System.currentTimeMillis() - start;
+        refreshes.incrementAndGet();
+        totalRefreshTime.addAndGet(time);
+        long max;
+        while (time > (max = maxRefreshTime.get()) && !maxRefreshTime.compareAndSet(max, time)) {
+            // retry
+        }
+
+        if (value == null && cached != null) {
+            refreshFailures.incrementAndGet();
+            log.warn("Unable to reload the resource with key : " + entry.getKey() +
+                    " - The cached copy will be used for another " +
+                    Math.max(state.leaseDuration, MIN_RETRY_INTERVAL) + "ms");
+            entry.setExpiryTime(System.currentTimeMillis() +
+                    Math.max(state.leaseDuration, MIN_RETRY_INTERVAL));
+            renewLease(entry, state);
+            return cached;
+        }
+
+        renewLease(entry, state);
+        return value;
+    }
+
+    private CacheState getCacheState(String key) {
+        CacheState state = cacheStates.get(key);
+        if (state == null) {
+            state = new CacheState();
+            CacheState existing = cacheStates.putIfAbsent(key, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Compute when the given entry, which has just been (re)loaded, should be refreshed
+     */
+    private void renewLease(Entry entry, CacheState state) {
+        long now = System.currentTimeMillis();
+        long expiryTime = entry.getExpiryTime();
+        if (expiryTime > now) {
+            state.leaseDuration = expiryTime - now;
+            state.refreshTime = now + (long) (state.leaseDuration * refreshAheadFactor);
+        } else {
+            state.refreshTime = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Load the resource for the given entry, unless a valid cached copy exists
+     *
+     * @param entry The Entry instance that contains meta-data
+     * @param properties bag of properties with additional information
+     * @param revalidate whether an unexpired cached copy must be checked against the registry
+     * @return the matching resultant object
+     */
+    private Object loadResource(Entry entry, Properties properties, boolean revalidate) {
 
         OMNode omNode = null;
         RegistryEntry re = null;
@@ -55,7 +231,7 @@ public abstract class AbstractRegistry implements Registry {
         // it at least once and have it cached already?
 
         // if we have an unexpired cached copy, return the cached object
-        if (entry.isCached() && !entry.isExpired()) {
+        if (entry.isCached() && !entry.isExpired() && !revalidate) {
             return entry.getValue();
 
         // if we have not cached the referenced object, fetch it and its RegistryEntry
@@ -82,9 +258,9 @@ public abstract class AbstractRegistry implements Registry {
                 re = getRegistryEntry(entry.getKey());
             }
 
-        // if we have cached it before, and now the cache has expired
+        // if we have cached it before, and now the cache has expired (or is about to expire)
         // get its *new* registry entry and compare versions and pick new cache duration
-        } else if (entry.isExpired()) {
+        } else {
             if (log.isDebugEnabled()) {
                 log.debug("Cached object has expired for key : " + entry.getKey());
             }
@@ -209,10 +385,113 @@ public abstract class AbstractRegistry implements Registry {
     @Override
     public void init(Properties properties) {
         this.properties.putAll(properties);
+
+        String factor = this.properties.getProperty(REFRESH_AHEAD_FACTOR);
+        if (factor != null) {
+            try {
+                double value = Double.parseDouble(factor);
+                if (value > 0 && value <= 1) {
+                    refreshAheadFactor = value;
+                } else {
+                    log.warn("Invalid value : " + factor + " for the registry parameter : " +
+                            REFRESH_AHEAD_FACTOR + " - It must be greater than 0 and not " +
+                            "greater than 1");
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value : " + factor + " for the registry parameter : " +
+                        REFRESH_AHEAD_FACTOR);
+            }
+        }
+
+        if (Boolean.parseBoolean(this.properties.getProperty(REFRESH_AHEAD))) {
+            synchronized (this) {
+                if (refreshExecutor == null) {
+                    refreshExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "registry-refresh");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                    refreshExecutor.allowCoreThreadTimeOut(true);
+                    MBeanRegistrar.getInstance().registerMBean(new RegistryCacheView(this),
+                            "RegistryCache", getClass().getSimpleName());
+                }
+            }
+            refreshAhead = true;
+            log.info("Refresh-ahead caching of registry resources enabled - Resources are " +
+                    "reloaded after " + (int) (refreshAheadFactor * 100) + "% of their " +
+                    "cache period");
+        }
+    }
+
+    /**
+     * Check whether cached resources of this registry are reloaded ahead of their expiry
+     *
+     * @return true if the refreshAhead parameter has been set on this registry
+     */
+    public boolean isRefreshAheadEnabled() {
+        return refreshAhead;
+    }
+
+    long getCacheHitCount() {
+        return hits.get();
+    }
+
+    long getCacheMissCount() {
+        return misses.get();
+    }
+
+    long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    long getRefreshFailureCount() {
+        return refreshFailures.get();
+    }
+
+    double getAvgRefreshTime() {
+        long count = refreshes.get();
+        return count == 0 ? 0 : (double) totalRefreshTime.get() / count;
+    }
+
+    long getMaxRefreshTime() {
+        return maxRefreshTime.get();
+    }
+
+    void resetCacheStatistics() {
+        hits.set(0);
+        misses.set(0);
+        staleHits.set(0);
+        refreshes.set(0);
+        refreshFailures.set(0);
+        totalRefreshTime.set(0);
+        maxRefreshTime.set(0);
     }
 
     @Override
     public Properties getResourceProperties(String entryKey) {
         return null;
     }
+
+    /**
+     * Refresh-ahead bookkeeping of a cached resource
+     */
+    private static class CacheState {
+
+        /** Set while a thread is reloading the resource */
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+
+        /** Time after which reading the resource triggers a background reload */
+        private volatile long refreshTime = Long.MAX_VALUE;
+
+        /** Length of the last cache period of the resource */
+        private volatile long leaseDuration = 0;
+    }
 }
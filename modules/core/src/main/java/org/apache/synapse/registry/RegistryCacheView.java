@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.registry;
+
+public class RegistryCacheView implements RegistryCacheViewMBean {
+
+    private AbstractRegistry registry;
+
+    public RegistryCacheView(AbstractRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public long getHitCount() {
+        return registry.getCacheHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return registry.getCacheMissCount();
+    }
+
+    @Override
+    public long getStaleHitCount() {
+        return registry.getStaleHitCount();
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return registry.getRefreshCount();
+    }
+
+    @Override
+    public long getRefreshFailureCount() {
+        return registry.getRefreshFailureCount();
+    }
+
+    @Override
+    public double getAvgRefreshTime() {
+        return registry.getAvgRefreshTime();
+    }
+
+    @Override
+    public long getMaxRefreshTime() {
+        return registry.getMaxRefreshTime();
+    }
+
+    @Override
+    public void resetStatistics() {
+        registry.resetCacheStatistics();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.registry;
+
+/**
+ * JMX MBean interface for monitoring the resource cache of a registry. The statistics are
+ * collected only when refresh-ahead caching is enabled for the registry. Times are in
+ * milliseconds.
+ */
+public interface RegistryCacheViewMBean {
+
+    /**
+     * Get the number of reads served from an unexpired cached copy
+     *
+     * @return A long
+     */
+    public long getHitCount();
+
+    /**
+     * Get the number of reads which had to load an uncached resource
+     *
+     * @return A long
+     */
+    public long getMissCount();
+
+    /**
+     * Get the number of reads of expired resources served from the cached copy while
+     * another thread was reloading the resource
+     *
+     * @return A long
+     */
+    public long getStaleHitCount();
+
+    /**
+     * Get the number of times cached resources were reloaded, in the background or
+     * after they expired
+     *
+     * @return A long
+     */
+    public long getRefreshCount();
+
+    /**
+     * Get the number of reloads which failed and kept the cached copy
+     *
+     * @return A long
+     */
+    public long getRefreshFailureCount();
+
+    /**
+     * Get the average time taken to reload a resource
+     *
+     * @return A double
+     */
+    public double getAvgRefreshTime();
+
+    /**
+     * Get the maximum time taken to reload a resource
+     *
+     * @return A long
+     */
+    public long getMaxRefreshTime();
+
+    /**
+     * Reset all the cache statistics
+     */
+    public void resetStatistics();
+}
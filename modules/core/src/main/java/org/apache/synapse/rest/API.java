@@ -331,9 +331,14 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
                     msgCtx.getIncomingTransportName() + "://" + hostHeader);
         }
 
+        String method = (String) msgCtx.getProperty(Constants.Configuration.HTTP_METHOD);
+        synCtx.setProperty(RESTConstants.REST_METHOD, method);
+        int methodBit = RESTUtils.getMethodBit(method);
+
         Set<Resource> acceptableResources = new HashSet<Resource>();
         for (Resource r : resources.values()) {
-            if (r.canProcess(synCtx)) {
+            // the method bitmap quickly rules out the resources bound to other HTTP methods
+            if (r.acceptsMethod(methodBit) && r.canProcess(synCtx)) {
                 acceptableResources.add(r);
             }
         }
@@ -0,0 +1,195 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the deployed APIs, keyed by their URL contexts. The contexts are stored in a trie
+ * of path segments, so locating the APIs which may accept a request takes time proportional
+ * to the number of segments in the request path rather than the number of deployed APIs.
+ * A context matches a request path when the path equals the context, or continues after it
+ * with a '/' or a '?' character - the same rule applied by {@link API#canProcess}.
+ * <p>
+ * The index is updated in place as APIs are added and removed. Updates are serialized, while
+ * lookups never block and always see a consistent set of APIs for each context. Several APIs
+ * (i.e. different versions of an API) may share the same context, in which case it is up to
+ * {@link API#canProcess} to select among them.
+ * <p>
+ * Only the API contexts are indexed. The resources of the selected API are still matched
+ * against their URI templates and URL mappings by the
+ * {@link org.apache.synapse.rest.dispatch.RESTDispatcher} chain, after ruling out the
+ * resources bound to other HTTP methods.
+ */
+public class APIIndex {
+
+    private final Node root = new Node();
+
+    /** Deployed APIs by the names they were added under, used to locate them on removal */
+    private final Map<String, API> apis = new HashMap<String, API>();
+
+    /**
+     * Add an API to the index. If an API already exists by the given name, it gets replaced.
+     *
+     * @param name name of the API in the configuration
+     * @param api the API to be added
+     */
+    public synchronized void add(String name, API api) {
+        remove(name);
+        Node node = root;
+        for (String segment : split(api.getContext())) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+
+        Entry[] entries = new Entry[node.entries.length + 1];
+        System.arraycopy(node.entries, 0, entries, 0, node.entries.length);
+        entries[node.entries.length] = new Entry(name, api);
+        node.entries = entries;
+        apis.put(name, api);
+    }
+
+    /**
+     * Remove the API added under the given name from the index
+     *
+     * @param name name of the API in the configuration
+     */
+    public synchronized void remove(String name) {
+        API api = apis.remove(name);
+        if (api == null) {
+            return;
+        }
+
+        List<String> segments = split(api.getContext());
+        Node[] path = new Node[segments.size() + 1];
+        path[0] = root;
+        for (int i = 0; i < segments.size(); i++) {
+            path[i + 1] = path[i].children.get(segments.get(i));
+        }
+
+        Node node = path[segments.size()];
+        List<Entry> entries = new ArrayList<Entry>(node.entries.length);
+        for (Entry entry : node.entries) {
+            if (!entry.name.equals(name)) {
+                entries.add(entry);
+            }
+        }
+        node.entries = entries.toArray(new Entry[entries.size()]);
+
+        // prune the branches which no longer lead to any API
+        for (int i = segments.size(); i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].children.remove(segments.get(i - 1));
+        }
+    }
+
+    /**
+     * Find the APIs with a context matching the given request path. The APIs with the longest
+     * (most specific) contexts are returned first.
+     *
+     * @param path full request path, which may contain a query string
+     * @return the list of matching APIs, which may be empty
+     */
+    public List<API> getMatchingAPIs(String path) {
+        int end = path.indexOf('?');
+        if (end == -1) {
+            end = path.length();
+        }
+
+        List<Entry[]> matches = null;
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int slash = path.indexOf('/', start);
+            if (slash == -1 || slash > end) {
+                slash = end;
+            }
+            node = node.children.get(path.substring(start, slash));
+            if (node == null) {
+                break;
+            }
+
+            Entry[] entries = node.entries;
+            if (entries.length > 0) {
+                if (matches == null) {
+                    matches = new ArrayList<Entry[]>(2);
+                }
+                matches.add(entries);
+            }
+            if (slash == end) {
+                break;
+            }
+            start = slash + 1;
+        }
+
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        List<API> result = new ArrayList<API>();
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            for (Entry entry : matches.get(i)) {
+                result.add(entry.api);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> split(String context) {
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        int slash;
+        while ((slash = context.indexOf('/', start)) != -1) {
+            segments.add(context.substring(start, slash));
+            start = slash + 1;
+        }
+        segments.add(context.substring(start));
+        return segments;
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+        private volatile Entry[] entries = new Entry[0];
+
+        private boolean isEmpty() {
+            return entries.length == 0 && children.isEmpty();
+        }
+    }
+
+    private static class Entry {
+
+        private final String name;
+        private final API api;
+
+        private Entry(String name, API api) {
+            this.name = name;
+            this.api = api;
+        }
+    }
+}
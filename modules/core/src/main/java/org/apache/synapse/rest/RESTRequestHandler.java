@@ -23,6 +23,7 @@ import org.apache.axis2.Constants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 
 import java.util.*;
@@ -65,7 +66,22 @@ public class RESTRequestHandler {
     }
 
     private boolean dispatchToAPI(MessageContext synCtx) {
-        Collection<API> apiSet = synCtx.getEnvironment().getSynapseConfiguration().getAPIs();
+        SynapseConfiguration synCfg = synCtx.getEnvironment().getSynapseConfiguration();
+        if (synCfg.getAPIs().isEmpty()) {
+            return false;
+        }
+
+        Collection<API> apiSet;
+        if (synCtx.isResponse()) {
+            // responses are dispatched back to the API which processed the request
+            Object apiName = synCtx.getProperty(RESTConstants.SYNAPSE_REST_API);
+            API api = apiName != null ? synCfg.getAPI((String) apiName) : null;
+            apiSet = api != null ? Collections.singletonList(api) : synCfg.getAPIs();
+        } else {
+            // only the APIs with a context matching the request path need to be considered
+            apiSet = synCfg.getMatchingAPIs(RESTUtils.getFullRequestPath(synCtx));
+        }
+
         API defaultAPI = null;
         for (API api : apiSet) {
             if ("/".equals(api.getContext())) {
@@ -34,7 +34,9 @@ import org.apache.synapse.transport.nhttp.NhttpConstants;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class RESTUtils {
 
@@ -42,10 +44,16 @@ public class RESTUtils {
 
     private static final List<RESTDispatcher> dispatchers = new ArrayList<RESTDispatcher>();
 
+    private static final Map<String,Integer> methodBits = new HashMap<String,Integer>();
+
     static {
         dispatchers.add(new URLMappingBasedDispatcher());
         dispatchers.add(new URITemplateBasedDispatcher());
         dispatchers.add(new DefaultDispatcher());
+
+        for (RESTConstants.METHODS method : RESTConstants.METHODS.values()) {
+            methodBits.put(method.name(), 1 << method.ordinal());
+        }
     }
 
     public static String trimSlashes(String url) {
@@ -97,6 +105,17 @@ public class RESTUtils {
         return dispatchers;
     }
 
+    /**
+     * Get the bit representing the given HTTP method in the method bitmaps of the resources
+     *
+     * @param method name of the HTTP method
+     * @return a single bit for a supported method, or 0 for any other method
+     */
+    public static int getMethodBit(String method) {
+        Integer bit = method != null ? methodBits.get(method) : null;
+        return bit != null ? bit : 0;
+    }
+
     private static void handleException(String msg, Throwable t) {
         log.error(msg, t);
         throw new SynapseException(msg, t);
@@ -49,6 +49,11 @@ public class Resource extends AbstractRESTProcessor implements ManagedLifecycle
      */
     private Set<String> methods = new HashSet<String>(4);
 
+    /**
+     * Bitmap of the above methods, with the bits given by {@link RESTUtils#getMethodBit(String)}
+     */
+    private int methodMask = 0;
+
     private String contentType;
 
     private String userAgent;
@@ -139,6 +144,7 @@ public class Resource extends AbstractRESTProcessor implements ManagedLifecycle
         for (RESTConstants.METHODS allowedMethod : RESTConstants.METHODS.values()) {
             if (allowedMethod.name().equals(method)) {
                 methods.add(method);
+                methodMask |= RESTUtils.getMethodBit(method);
                 return true;
             }
         }
@@ -149,6 +155,18 @@ public class Resource extends AbstractRESTProcessor implements ManagedLifecycle
         return methods.toArray(new String[methods.size()]);
     }
 
+    /**
+     * Check whether this resource may accept requests with the given HTTP method, without
+     * going through the rest of the checks performed by {@link #canProcess(MessageContext)}.
+     *
+     * @param methodBit bit of the HTTP method as returned by {@link RESTUtils#getMethodBit(String)}
+     * @return false if {@link #canProcess(MessageContext)} would reject the method
+     */
+    boolean acceptsMethod(int methodBit) {
+        return methodMask == 0 || (methodMask & methodBit) != 0 ||
+                methodBit == RESTUtils.getMethodBit(RESTConstants.METHOD_OPTIONS);
+    }
+
     public DispatcherHelper getDispatcherHelper() {
         return dispatcherHelper;
     }
@@ -208,8 +226,8 @@ public class Resource extends AbstractRESTProcessor implements ManagedLifecycle
             return false;
         }
 
+        // REST_METHOD has already been set on the message by the API
         String method = (String) msgCtx.getProperty(Constants.Configuration.HTTP_METHOD);
-        synCtx.setProperty(RESTConstants.REST_METHOD, method);
 
         if (RESTConstants.METHOD_OPTIONS.equals(method)) {
             return true; // OPTIONS requests are always welcome
@@ -80,13 +80,31 @@ public class MessageHelper {
      * @see MessageHelper#cloneAxis2MessageContext 
      */
     public static MessageContext cloneMessageContext(MessageContext synCtx) throws AxisFault {
+        return cloneMessageContext(synCtx, true);
+    }
+
+    /**
+     * Clones the message context as {@link #cloneMessageContext(MessageContext)} does, but
+     * optionally without cloning the SOAPEnvelope. This should be used by callers which are
+     * going to set a different envelope (or an envelope they own) on the new message context
+     * anyway, since cloning a large envelope only to discard it is expensive. If the envelope
+     * is not cloned the new message context does not have an envelope until one is set.
+     *
+     * @param synCtx - this will be cloned
+     * @param cloneSOAPEnvelope - whether the SOAPEnvelope of the message should be cloned
+     * @return cloned Synapse MessageContext
+     * @throws AxisFault if there is a failure in creating the new Synapse MC or in a failure in
+     *          cloning the underlying axis2 MessageContext
+     */
+    public static MessageContext cloneMessageContext(MessageContext synCtx,
+                                                     boolean cloneSOAPEnvelope) throws AxisFault {
 
         // creates the new MessageContext and clone the internal axis2 MessageContext
         // inside the synapse message context and place that in the new one
         MessageContext newCtx = synCtx.getEnvironment().createMessageContext();
         Axis2MessageContext axis2MC = (Axis2MessageContext) newCtx;
-        axis2MC.setAxis2MessageContext(
-            cloneAxis2MessageContext(((Axis2MessageContext) synCtx).getAxis2MessageContext()));
+        axis2MC.setAxis2MessageContext(cloneAxis2MessageContext(
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext(), cloneSOAPEnvelope));
 
         newCtx.setConfiguration(synCtx.getConfiguration());
         newCtx.setEnvironment(synCtx.getEnvironment());
@@ -108,8 +126,8 @@ public class MessageHelper {
         for (Object o : synCtx.getPropertyKeySet()) {
             String key = (String) o;                    // MessageContext API enforce key to be a String
             Object obj = synCtx.getProperty(key);
-            if (obj instanceof String || obj instanceof Integer) {  // For immutable
-                // Do nothing
+            if (isImmutable(obj)) {
+                // immutable values can be shared between the message contexts
             } else if (obj instanceof ArrayList) {
                 obj = cloneArrayList((ArrayList) obj);
             } else if (obj instanceof Stack
@@ -167,9 +185,27 @@ public class MessageHelper {
      */
     public static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
         org.apache.axis2.context.MessageContext mc) throws AxisFault {
+        return cloneAxis2MessageContext(mc, true);
+    }
+
+    /**
+     * Clones the given axis2 MessageContext as {@link #cloneAxis2MessageContext(
+     * org.apache.axis2.context.MessageContext)} does, but optionally without cloning the
+     * SOAPEnvelope.
+     *
+     * @param mc - this will be cloned for getting an exact copy
+     * @param cloneSOAPEnvelope - whether the SOAPEnvelope of the message should be cloned
+     * @return cloned MessageContext from the given mc
+     * @throws AxisFault if there is a failure in copying the certain attributes of the
+     *          provided message context
+     */
+    public static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
+        org.apache.axis2.context.MessageContext mc, boolean cloneSOAPEnvelope) throws AxisFault {
 
         org.apache.axis2.context.MessageContext newMC = clonePartially(mc);
-        newMC.setEnvelope(cloneSOAPEnvelope(mc.getEnvelope()));
+        if (cloneSOAPEnvelope) {
+            newMC.setEnvelope(cloneSOAPEnvelope(mc.getEnvelope()));
+        }
         newMC.setOptions(cloneOptions(mc.getOptions()));
         
         newMC.setServiceContext(mc.getServiceContext());
@@ -457,6 +493,12 @@ public class MessageHelper {
         throw new SynapseException(msg);
     }
 
+    private static boolean isImmutable(Object obj) {
+        return obj instanceof String || obj instanceof Integer || obj instanceof Long ||
+                obj instanceof Boolean || obj instanceof Double || obj instanceof Float ||
+                obj instanceof Short || obj instanceof Byte || obj instanceof Character;
+    }
+
     /*
      * This method will deep clone array list by creating a new ArrayList and cloning and adding each element in it
      */
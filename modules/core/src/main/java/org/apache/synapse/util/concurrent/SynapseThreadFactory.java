@@ -70,4 +70,14 @@ public class SynapseThreadFactory implements ThreadFactory {
         return t;
     }
 
+    /**
+     * Check whether the given thread has been created by this factory
+     *
+     * @param thread - the thread to be checked
+     * @return true if the thread belongs to the group of the threads created by this factory
+     */
+    public boolean isFactoryThread(Thread thread) {
+        return thread.getThreadGroup() == group;
+    }
+
 }
@@ -19,13 +19,36 @@
 
 package org.apache.synapse.util.concurrent;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.jmx.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is the executor service that will be returned by the env
+ * <p/>
+ * When monitoring is enabled, the pool records the time each task waited in the queue and the
+ * time taken to execute it in histograms, and counts the rejected tasks. These values are
+ * harvested every few seconds by a monitor thread, and can be exposed over JMX using a
+ * {@link SynapseThreadPoolView}.
+ * <p/>
+ * The monitor thread can also size the pool adaptively. Since an unbounded work queue never
+ * triggers the creation of threads beyond the core pool size, the monitor grows the core pool
+ * size towards the maximum pool size while the tasks wait longer than the target queue wait
+ * time, unless the CPU is already busier than the given limit. When the queue is drained and
+ * most threads are idle, the core pool size is shrunk back towards its initial value and the
+ * excess threads are reclaimed after the keep alive time.
  */
 public class SynapseThreadPool extends ThreadPoolExecutor {
 
+    private static final Log log = LogFactory.getLog(SynapseThreadPool.class);
+
     // default values
     public static final int SYNAPSE_CORE_THREADS  = 20;
     public static final int SYNAPSE_MAX_THREADS   = 100;
@@ -33,6 +56,8 @@ public class SynapseThreadPool extends ThreadPoolExecutor {
     public static final int SYNAPSE_THREAD_QLEN   = -1;
     public static final String SYNAPSE_THREAD_GROUP     = "synapse-thread-group";
     public static final String SYNAPSE_THREAD_ID_PREFIX = "SynapseWorker";
+    public static final long SYNAPSE_ADAPTIVE_TARGET_WAIT = 100;
+    public static final double SYNAPSE_ADAPTIVE_MAX_CPU   = 0.8;
 
     // property keys
     public static final String SYN_THREAD_CORE     = "synapse.threads.core";
@@ -41,6 +66,44 @@ public class SynapseThreadPool extends ThreadPoolExecutor {
     public static final String SYN_THREAD_QLEN     = "synapse.threads.qlen";
     public static final String SYN_THREAD_GROUP    = "synapse.threads.group";
     public static final String SYN_THREAD_IDPREFIX = "synapse.threads.idprefix";
+    public static final String SYN_THREAD_ADAPTIVE = "synapse.threads.adaptive";
+    public static final String SYN_THREAD_ADAPTIVE_TARGET_WAIT =
+            "synapse.threads.adaptive.targetwait";
+    public static final String SYN_THREAD_ADAPTIVE_MAX_CPU = "synapse.threads.adaptive.maxcpu";
+    public static final String SYN_THREAD_VIRTUAL  = "synapse.threads.virtual";
+    public static final String SYN_THREAD_MONITORING = "synapse.threads.monitoring";
+
+    /** Interval in seconds at which the statistics are harvested and the pool is resized */
+    private static final int MONITOR_INTERVAL = 5;
+    private static final int SAMPLES_PER_MINUTE = 60 / MONITOR_INTERVAL;
+
+    /** Time spent by the tasks in the queue, in milliseconds */
+    private final LatencyHistogram queueWaitTime = new LatencyHistogram(SAMPLES_PER_MINUTE);
+
+    /** Time taken to execute the tasks, in milliseconds */
+    private final LatencyHistogram executionTime = new LatencyHistogram(SAMPLES_PER_MINUTE);
+
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    /** Queue wait time of the tasks started since the last monitor run, in nanoseconds */
+    private final AtomicLong intervalWaitTime = new AtomicLong(0);
+
+    private final AtomicLong intervalTaskCount = new AtomicLong(0);
+
+    private volatile boolean monitored = false;
+
+    private ScheduledExecutorService monitor;
+
+    private volatile boolean adaptive = false;
+
+    /** Core pool size configured at creation, the lower bound for adaptive sizing */
+    private final int minCorePoolSize;
+
+    private long targetQueueWait = SYNAPSE_ADAPTIVE_TARGET_WAIT;
+
+    private double maxCpuLoad = SYNAPSE_ADAPTIVE_MAX_CPU;
+
+    private volatile double lastCpuLoad = -1;
 
     /**
      * Constructor for the Synapse thread poll
@@ -57,6 +120,8 @@ public class SynapseThreadPool extends ThreadPoolExecutor {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
             new SynapseThreadFactory(
                 new ThreadGroup(SYNAPSE_THREAD_GROUP), SYNAPSE_THREAD_ID_PREFIX));
+        this.minCorePoolSize = corePoolSize;
+        setRejectedExecutionHandler(getRejectedExecutionHandler());
     }
 
     /**
@@ -83,5 +148,259 @@ public class SynapseThreadPool extends ThreadPoolExecutor {
         super(corePoolSize, maxPoolSize, keepAliveTime, TimeUnit.SECONDS,
             qlen > 0 ? new LinkedBlockingQueue<Runnable>(qlen) : new LinkedBlockingQueue<Runnable>(),
             new SynapseThreadFactory(new ThreadGroup(threadGroup), threadIdPrefix));
+        this.minCorePoolSize = corePoolSize;
+        setRejectedExecutionHandler(getRejectedExecutionHandler());
+    }
+
+    /**
+     * Start recording the queue wait and execution times of the tasks, and start the monitor
+     * thread which harvests them (and resizes the pool if adaptive sizing is enabled). The
+     * monitor is stopped when the pool terminates.
+     *
+     * @param monitorName name of the monitor thread
+     */
+    public synchronized void enableMonitoring(final String monitorName) {
+        if (monitor != null) {
+            return;
+        }
+        monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, monitorName);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        monitor.scheduleAtFixedRate(new Monitor(), MONITOR_INTERVAL, MONITOR_INTERVAL,
+                TimeUnit.SECONDS);
+        monitored = true;
+    }
+
+    /**
+     * Let the monitor resize the core pool between the initial core pool size and the maximum
+     * pool size. Takes effect once monitoring is enabled.
+     *
+     * @param targetQueueWait queue wait time in milliseconds above which the pool is grown
+     * @param maxCpuLoad system load per processor above which the pool is not grown
+     */
+    public void enableAdaptiveSizing(long targetQueueWait, double maxCpuLoad) {
+        this.targetQueueWait = targetQueueWait;
+        this.maxCpuLoad = maxCpuLoad;
+        this.adaptive = true;
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler instanceof CountingRejectionHandler) {
+            super.setRejectedExecutionHandler(handler);
+        } else {
+            super.setRejectedExecutionHandler(new CountingRejectionHandler(handler));
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (monitored && command != null) {
+            super.execute(new InstrumentedTask(command));
+        } else {
+            super.execute(command);
+        }
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        if (super.remove(task)) {
+            return true;
+        }
+        // the task may have been wrapped when it was submitted
+        for (Runnable r : getQueue()) {
+            if (r instanceof InstrumentedTask && ((InstrumentedTask) r).task == task) {
+                return super.remove(r);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        for (ListIterator<Runnable> it = tasks.listIterator(); it.hasNext();) {
+            Runnable r = it.next();
+            if (r instanceof InstrumentedTask) {
+                it.set(((InstrumentedTask) r).task);
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        if (r instanceof InstrumentedTask) {
+            InstrumentedTask task = (InstrumentedTask) r;
+            task.started = System.nanoTime();
+            long wait = task.started - task.submitted;
+            queueWaitTime.record(TimeUnit.NANOSECONDS.toMillis(wait));
+            intervalWaitTime.addAndGet(wait);
+            intervalTaskCount.incrementAndGet();
+        }
+        super.beforeExecute(t, r);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (r instanceof InstrumentedTask) {
+            executionTime.record(TimeUnit.NANOSECONDS.toMillis(
+                    System.nanoTime() - ((InstrumentedTask) r).started));
+        }
+    }
+
+    @Override
+    protected void terminated() {
+        synchronized (this) {
+            if (monitor != null) {
+                monitor.shutdownNow();
+            }
+        }
+        super.terminated();
+    }
+
+    /**
+     * Compute the core pool size for the next interval
+     *
+     * @param current current core pool size
+     * @param avgWait average queue wait time in milliseconds during the last interval
+     * @param queued number of tasks in the queue
+     * @param active number of threads executing tasks
+     * @param cpuLoad system load per processor, or a negative value if not available
+     * @return the new core pool size
+     */
+    int computeCorePoolSize(int current, double avgWait, int queued, int active, double cpuLoad) {
+        int max = getMaximumPoolSize();
+        if (avgWait > targetQueueWait && queued > 0 && current < max &&
+                (cpuLoad < 0 || cpuLoad < maxCpuLoad)) {
+            return Math.min(max, current + Math.max(1, current / 4));
+        }
+        if (avgWait < targetQueueWait / 4.0 && queued == 0 && active < current / 2 &&
+                current > minCorePoolSize) {
+            return Math.max(minCorePoolSize, current - Math.max(1, current / 8));
+        }
+        return current;
+    }
+
+    private void resize() {
+        long count = intervalTaskCount.getAndSet(0);
+        long wait = intervalWaitTime.getAndSet(0);
+        double avgWait = count == 0 ? 0 : (double) wait / count / 1000000;
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        double load = os.getSystemLoadAverage();
+        lastCpuLoad = load < 0 ? -1 : load / os.getAvailableProcessors();
+
+        int current = getCorePoolSize();
+        int size = computeCorePoolSize(current, avgWait, getQueue().size(), getActiveCount(),
+                lastCpuLoad);
+        if (size != current) {
+            if (log.isDebugEnabled()) {
+                log.debug("Resizing the core pool from " + current + " to " + size +
+                        " threads (average queue wait : " + avgWait + " ms, cpu load : " +
+                        lastCpuLoad + ")");
+            }
+            setCorePoolSize(size);
+        }
+    }
+
+    /**
+     * Check whether the given thread is one of the threads of this pool
+     *
+     * @param thread the thread to be checked
+     * @return true if the thread has been created by this pool
+     */
+    public boolean isPoolThread(Thread thread) {
+        ThreadFactory factory = getThreadFactory();
+        return factory instanceof SynapseThreadFactory &&
+                ((SynapseThreadFactory) factory).isFactoryThread(thread);
+    }
+
+        public LatencyHistogram getQueueWaitTime() {
+        return queueWaitTime;
+    }
+
+    public LatencyHistogram getExecutionTime() {
+        return executionTime;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public double getLastCpuLoad() {
+        return lastCpuLoad;
+    }
+
+    public void resetStatistics() {
+        queueWaitTime.reset();
+        executionTime.reset();
+        rejectedCount.set(0);
+    }
+
+    /**
+     * A task submitted while monitoring is enabled, which carries its submission time
+     */
+    private static class InstrumentedTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long submitted = System.nanoTime();
+
+        private long started;
+
+        InstrumentedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    private class CountingRejectionHandler implements RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler handler;
+
+        CountingRejectionHandler(RejectedExecutionHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejectedCount.incrementAndGet();
+            handler.rejectedExecution(r, executor);
+        }
+    }
+
+    private class Monitor implements Runnable {
+        @Override
+        public void run() {
+            try {
+                queueWaitTime.collect();
+                executionTime.collect();
+                if (adaptive && !isShutdown()) {
+                    resize();
+                }
+            } catch (Throwable t) {
+                log.warn("Error while monitoring the thread pool", t);
+            }
+        }
     }
 }
@@ -0,0 +1,136 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.util.concurrent;
+
+public class SynapseThreadPoolView implements SynapseThreadPoolViewMBean {
+
+    private SynapseThreadPool pool;
+
+    public SynapseThreadPoolView(SynapseThreadPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public int getActiveThreadCount() {
+        return pool.getActiveCount();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return pool.getPoolSize();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return pool.getLargestPoolSize();
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return pool.getCorePoolSize();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return pool.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public int getRemainingQueueCapacity() {
+        return pool.getQueue().remainingCapacity();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return pool.getCompletedTaskCount();
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return pool.getRejectedCount();
+    }
+
+    @Override
+    public boolean isAdaptive() {
+        return pool.isAdaptive();
+    }
+
+    @Override
+    public double getLastCpuLoad() {
+        return pool.getLastCpuLoad();
+    }
+
+    @Override
+    public double getAvgQueueWaitTime(String window) {
+        return pool.getQueueWaitTime().getAverage(toMinutes(window));
+    }
+
+    @Override
+    public double getQueueWaitTimePercentile(String window, double percentile) {
+        return pool.getQueueWaitTime().getPercentile(toMinutes(window), percentile);
+    }
+
+    @Override
+    public double getLastMinute99thPercentileQueueWaitTime() {
+        return pool.getQueueWaitTime().getPercentile(1, 99);
+    }
+
+    @Override
+    public double getAvgExecutionTime(String window) {
+        return pool.getExecutionTime().getAverage(toMinutes(window));
+    }
+
+    @Override
+    public double getExecutionTimePercentile(String window, double percentile) {
+        return pool.getExecutionTime().getPercentile(toMinutes(window), percentile);
+    }
+
+    @Override
+    public double getLastMinute99thPercentileExecutionTime() {
+        return pool.getExecutionTime().getPercentile(1, 99);
+    }
+
+    @Override
+    public void resetStatistics() {
+        pool.resetStatistics();
+    }
+
+    private int toMinutes(String window) {
+        if ("1m".equals(window)) {
+            return 1;
+        } else if ("5m".equals(window)) {
+            return 5;
+        } else if ("15m".equals(window)) {
+            return 15;
+        } else if ("1h".equals(window)) {
+            return 60;
+        } else if ("8h".equals(window)) {
+            return 8 * 60;
+        } else if ("24h".equals(window)) {
+            return 24 * 60;
+        }
+        throw new IllegalArgumentException("Unsupported window : " + window +
+                " - expected one of 1m, 5m, 15m, 1h, 8h or 24h");
+    }
+}
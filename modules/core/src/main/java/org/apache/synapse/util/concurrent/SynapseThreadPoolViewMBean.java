@@ -0,0 +1,156 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.util.concurrent;
+
+/**
+ * JMX MBean interface for monitoring a Synapse thread pool. The queue wait and execution times
+ * are in milliseconds, and are queried with a window name, one of 1m, 5m, 15m, 1h, 8h or 24h.
+ */
+public interface SynapseThreadPoolViewMBean {
+
+    /**
+     * Get the number of threads actively executing tasks
+     *
+     * @return An integer
+     */
+    public int getActiveThreadCount();
+
+    /**
+     * Get the number of threads in the pool
+     *
+     * @return An integer
+     */
+    public int getPoolSize();
+
+    /**
+     * Get the largest number of threads that have ever been in the pool
+     *
+     * @return An integer
+     */
+    public int getLargestPoolSize();
+
+    /**
+     * Get the current core pool size, which changes over time when adaptive sizing is enabled
+     *
+     * @return An integer
+     */
+    public int getCorePoolSize();
+
+    /**
+     * Get the maximum pool size
+     *
+     * @return An integer
+     */
+    public int getMaximumPoolSize();
+
+    /**
+     * Get the number of tasks waiting in the queue
+     *
+     * @return An integer
+     */
+    public int getQueueSize();
+
+    /**
+     * Get the number of additional tasks the queue can accept
+     *
+     * @return An integer
+     */
+    public int getRemainingQueueCapacity();
+
+    /**
+     * Get the number of tasks completed by the pool
+     *
+     * @return A long
+     */
+    public long getCompletedTaskCount();
+
+    /**
+     * Get the number of tasks rejected since the last reset
+     *
+     * @return A long
+     */
+    public long getRejectedTaskCount();
+
+    /**
+     * Is the core pool size adjusted based on the observed queue wait time and CPU load
+     *
+     * @return true if adaptive sizing is enabled
+     */
+    public boolean isAdaptive();
+
+    /**
+     * Get the system load per processor, as observed by the last run of the adaptive sizing
+     *
+     * @return A double, or -1 if not available
+     */
+    public double getLastCpuLoad();
+
+    /**
+     * Get the average queue wait time during the given window
+     *
+     * @param window one of 1m, 5m, 15m, 1h, 8h or 24h
+     * @return A double
+     */
+    public double getAvgQueueWaitTime(String window);
+
+    /**
+     * Get a percentile of the queue wait time during the given window
+     *
+     * @param window one of 1m, 5m, 15m, 1h, 8h or 24h
+     * @param percentile between 0 and 100
+     * @return A double
+     */
+    public double getQueueWaitTimePercentile(String window, double percentile);
+
+    /**
+     * Get the 99th percentile of the queue wait time during the last minute
+     *
+     * @return A double
+     */
+    public double getLastMinute99thPercentileQueueWaitTime();
+
+    /**
+     * Get the average execution time during the given window
+     *
+     * @param window one of 1m, 5m, 15m, 1h, 8h or 24h
+     * @return A double
+     */
+    public double getAvgExecutionTime(String window);
+
+    /**
+     * Get a percentile of the execution time during the given window
+     *
+     * @param window one of 1m, 5m, 15m, 1h, 8h or 24h
+     * @param percentile between 0 and 100
+     * @return A double
+     */
+    public double getExecutionTimePercentile(String window, double percentile);
+
+    /**
+     * Get the 99th percentile of the execution time during the last minute
+     *
+     * @return A double
+     */
+    public double getLastMinute99thPercentileExecutionTime();
+
+    /**
+     * Reset the queue wait, execution time and rejection statistics
+     */
+    public void resetStatistics();
+}
@@ -0,0 +1,313 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util.concurrent;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed timing wheel to track a large number of timeouts with a single timer. Each
+ * timeout is placed in the slot of the wheel corresponding to its deadline, so scheduling
+ * and cancelling a timeout are constant time operations which never block. The wheel is
+ * turned by calling {@link #expire(long)} periodically (typically from a single
+ * <code>TimerTask</code>), which only visits the slots whose time has passed since the
+ * previous call and hands the expired items over to the {@link ExpiryHandler}.
+ * <p/>
+ * Cancelled timeouts are not removed from their slots eagerly, they are discarded when the
+ * wheel reaches them. A cancelled timeout drops its item though, so that the item can be
+ * garbage collected right away. Timeouts with a deadline beyond one turn of the wheel stay in their
+ * slot until the turn in which they expire.
+ *
+ * @param <T> type of the items tracked by this wheel
+ */
+public class TimerWheel<T> {
+
+    private static final Log log = LogFactory.getLog(TimerWheel.class);
+
+    /**
+     * Call back invoked by the wheel for each item whose timeout has expired
+     *
+     * @param <T> type of the items tracked by the wheel
+     */
+    public interface ExpiryHandler<T> {
+
+        /**
+         * Invoked on the thread turning the wheel, hence implementations are expected to
+         * return quickly and hand over any heavy processing to a different thread
+         *
+         * @param item the item whose timeout has expired
+         */
+        void expired(T item);
+    }
+
+    /**
+     * Handle to a timeout scheduled on the wheel
+     *
+     * @param <T> type of the items tracked by the wheel
+     */
+    public static final class Timeout<T> {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel<T> wheel;
+        private volatile T item;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Timeout(TimerWheel<T> wheel, T item, long deadline) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return the item of this timeout, or null once the timeout has been cancelled
+         */
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Cancel this timeout
+         *
+         * @return true if the timeout was cancelled by this call, false if it has already
+         * expired or been cancelled
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                // the timeout stays in its slot until the wheel reaches it, do not keep the
+                // item reachable until then
+                item = null;
+                wheel.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private boolean isPending() {
+            return state.get() == PENDING;
+        }
+
+        private boolean markExpired() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                wheel.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final long tickMillis;
+
+    /** Number of slots in the wheel less one, the number of slots is a power of two */
+    private final int mask;
+
+    private final Queue<Timeout<T>>[] wheel;
+
+    private final ExpiryHandler<T> handler;
+
+    /** The last tick processed by the wheel */
+    private final AtomicLong currentTick;
+
+    /** Only one thread turns the wheel at a time */
+    private final AtomicBoolean turning = new AtomicBoolean(false);
+
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    private final AtomicLong expiredCount = new AtomicLong(0);
+
+    /**
+     * Create a timing wheel
+     *
+     * @param tickMillis length of the time covered by a slot of the wheel, which is also the
+     *                   resolution of the timeouts tracked by the wheel
+     * @param wheelSize  number of slots in the wheel, rounded up to a power of two
+     * @param handler    call back to be notified of the expired items
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int wheelSize, ExpiryHandler<T> handler) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive : " + tickMillis);
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.handler = handler;
+        this.wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<Timeout<T>>();
+        }
+        this.currentTick = new AtomicLong(System.currentTimeMillis() / tickMillis);
+    }
+
+    /**
+     * Schedule a timeout for the given item
+     *
+     * @param item     the item to be handed over to the handler on expiry
+     * @param deadline the time in millis at which the item expires
+     * @return a handle which can be used to cancel the timeout
+     */
+    public Timeout<T> schedule(T item, long deadline) {
+        Timeout<T> timeout = new Timeout<T>(this, item, deadline);
+        pending.incrementAndGet();
+        long tick = place(timeout);
+        if (tick <= currentTick.get() && timeout.isPending()) {
+            // the wheel went past the slot while we were placing the timeout, so it may
+            // have been missed - place it once more, only one copy can ever expire
+            place(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Turn the wheel up to the given time, handing the expired items over to the handler.
+     * If another thread is already turning the wheel this call returns immediately.
+     *
+     * @param now the current time in millis
+     * @return number of items expired by this call
+     */
+    public int expire(long now) {
+        if (!turning.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        int expired = 0;
+        try {
+            long from = currentTick.get() + 1;
+            long to = now / tickMillis;
+            if (to - from > mask) {
+                // visit each slot once
+                from = to - mask;
+            }
+
+            for (long tick = from; tick <= to; tick++) {
+                // publish the tick before draining the slot, so that concurrent schedule
+                // calls can detect that they may have missed it
+                currentTick.set(tick);
+                Queue<Timeout<T>> slot = wheel[(int) (tick & mask)];
+                List<Timeout<T>> notDue = null;
+                Timeout<T> timeout;
+                while ((timeout = slot.poll()) != null) {
+                    if (!timeout.isPending()) {
+                        continue;
+                    }
+                    if (timeout.getDeadline() <= now) {
+                        if (timeout.markExpired()) {
+                            expired++;
+                            fireExpired(timeout.getItem());
+                        }
+                    } else {
+                        if (notDue == null) {
+                            notDue = new ArrayList<Timeout<T>>();
+                        }
+                        notDue.add(timeout);
+                    }
+                }
+                if (notDue != null) {
+                    for (Timeout<T> t : notDue) {
+                        place(t);
+                    }
+                }
+            }
+        } finally {
+            turning.set(false);
+        }
+
+        expiredCount.addAndGet(expired);
+        return expired;
+    }
+
+    /**
+     * @return number of timeouts which have neither expired nor been cancelled
+     */
+    public int size() {
+        return pending.get();
+    }
+
+    /**
+     * @return number of timeouts expired by this wheel
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Cancel all the pending timeouts of this wheel
+     */
+    public void clear() {
+        for (Queue<Timeout<T>> slot : wheel) {
+            Timeout<T> timeout;
+            while ((timeout = slot.poll()) != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * Place a timeout in the slot corresponding to its deadline, or the next slot to be
+     * processed if the deadline has already passed
+     *
+     * @param timeout the timeout to be placed
+     * @return the tick of the slot in which the timeout was placed
+     */
+    private long place(Timeout<T> timeout) {
+        long tick = Math.max(timeout.getDeadline() / tickMillis, currentTick.get() + 1);
+        wheel[(int) (tick & mask)].offer(timeout);
+        return tick;
+    }
+
+    private void fireExpired(T item) {
+        try {
+            handler.expired(item);
+        } catch (Throwable t) {
+            // never let a failing handler stop the timer thread turning the wheel
+            log.error("Error while handling an expired timeout", t);
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.jaxen.*;
+import org.jaxen.function.BooleanFunction;
 import org.jaxen.util.SingletonList;
 
 import java.util.*;
@@ -83,6 +84,9 @@ public class SynapseXPath extends AXIOMXPath {
 
     private boolean contentAware;
 
+    /** Direct evaluation of simple expressions, null if Jaxen must evaluate this expression */
+    private transient XPathFastPath fastPath;
+
     /**
      * <p>Initializes the <code>SynapseXPath</code> with the given <code>xpathString</code> as the
      * XPath</p>
@@ -107,6 +111,7 @@ public class SynapseXPath extends AXIOMXPath {
                 xpathString.contains("$axis2")) {
             contentAware = false;
         }
+        fastPath = XPathFastPath.compile(this);
     }
 
     /**
@@ -122,6 +127,7 @@ public class SynapseXPath extends AXIOMXPath {
      */
     public SynapseXPath(OMElement element, String xpathExpr) throws JaxenException {
         super(element, xpathExpr);
+        fastPath = XPathFastPath.compile(this);
     }
 
     /**
@@ -136,6 +142,7 @@ public class SynapseXPath extends AXIOMXPath {
      */
     public SynapseXPath(OMAttribute attribute) throws JaxenException {
         super(attribute);
+        fastPath = XPathFastPath.compile(this);
     }
 
     public static SynapseXPath parseXPathString(String xPathStr) throws JaxenException {
@@ -193,39 +200,27 @@ public class SynapseXPath extends AXIOMXPath {
                 return null;
             }
 
-            StringBuffer textValue = new StringBuffer();
-            if (result instanceof List) {
-
-                List list = (List) result;
-                for (Object o : list) {
-
-                    if (o == null && list.size() == 1) {
-                        return null;
-                    }
-
-                    if (o instanceof OMText) {
-                        textValue.append(((OMText) o).getText());
-                    } else if (o instanceof OMElement) {
-
-                        String s = ((OMElement) o).getText();
-
-                        if (s.trim().length() == 0) {
-                            s = o.toString();
-                        }
-                        textValue.append(s);
-
-                    } else if (o instanceof OMDocument) {
+            if (!(result instanceof List)) {
+                return result.toString();
+            }
 
-                        textValue.append(
-                            ((OMDocument) o).getOMDocumentElement().toString());
-                    } else if (o instanceof OMAttribute) {
-                        textValue.append(
-                            ((OMAttribute) o).getAttributeValue());
-                    }
+            List list = (List) result;
+            if (list.size() == 1) {
+                // the common case of a single value doesn't need to be copied in to a buffer
+                Object o = list.get(0);
+                if (o == null) {
+                    return null;
                 }
+                String s = stringValueOfNode(o);
+                return s != null ? s : "";
+            }
 
-            } else {
-                textValue.append(result.toString());
+            StringBuilder textValue = new StringBuilder();
+            for (Object o : list) {
+                String s = stringValueOfNode(o);
+                if (s != null) {
+                    textValue.append(s);
+                }
             }
 
             return textValue.toString();
@@ -238,6 +233,23 @@ public class SynapseXPath extends AXIOMXPath {
         return null;
     }
 
+    private static String stringValueOfNode(Object o) {
+        if (o instanceof OMText) {
+            return ((OMText) o).getText();
+        } else if (o instanceof OMElement) {
+            String s = ((OMElement) o).getText();
+            if (s.trim().length() == 0) {
+                s = o.toString();
+            }
+            return s;
+        } else if (o instanceof OMDocument) {
+            return ((OMDocument) o).getOMDocumentElement().toString();
+        } else if (o instanceof OMAttribute) {
+            return ((OMAttribute) o).getAttributeValue();
+        }
+        return null;
+    }
+
     /**
      * Specialized form of xpath evaluation function.An xpath evaluate() will be performed using two contexts
      * (ie:-soap-envelope and on Synapse Message Context). This is useful for evaluating xpath on a
@@ -269,6 +281,68 @@ public class SynapseXPath extends AXIOMXPath {
         return result;
     }
 
+    /**
+     * Evaluates simple expressions (such as <code>$ctx:prop</code>, <code>get-property('prop')
+     * </code> or <code>//ns:a/ns:b</code>) directly against the object model, without going
+     * through the Jaxen evaluation contexts. All other expressions are evaluated by Jaxen.
+     *
+     * @see XPathFastPath
+     */
+    @Override
+    public Object evaluate(Object node) throws JaxenException {
+        if (fastPath != null) {
+            List list = fastPath.select(node);
+            if (list != null) {
+                if (list.size() == 1) {
+                    Object first = list.get(0);
+                    if (first instanceof String || first instanceof Number ||
+                            first instanceof Boolean) {
+                        return first;
+                    }
+                }
+                return list;
+            }
+        }
+        return super.evaluate(node);
+    }
+
+    @Override
+    public boolean booleanValueOf(Object node) throws JaxenException {
+        if (fastPath != null) {
+            List list = fastPath.select(node);
+            if (list != null) {
+                return BooleanFunction.evaluate(list, getNavigator());
+            }
+        }
+        return super.booleanValueOf(node);
+    }
+
+    @Override
+    public List selectNodes(Object node) throws JaxenException {
+        if (fastPath != null) {
+            List list = fastPath.select(node);
+            if (list != null) {
+                return list;
+            }
+        }
+        return super.selectNodes(node);
+    }
+
+    @Override
+    public Object selectSingleNode(Object node) throws JaxenException {
+        if (fastPath != null) {
+            List list = fastPath.select(node);
+            if (list != null) {
+                return list.isEmpty() ? null : list.get(0);
+            }
+        }
+        return super.selectSingleNode(node);
+    }
+
+    ContextSupport getBaseContextSupport() {
+        return getContextSupport();
+    }
+
     public void addNamespace(OMNamespace ns) throws JaxenException {
         addNamespace(ns.getPrefix(), ns.getNamespaceURI());
     }
@@ -351,7 +425,7 @@ public class SynapseXPath extends AXIOMXPath {
      * This is a wrapper class used to inject both envelope and message contexts for xpath
      * We use this to resolve function scope xpath variables
      */
-    private static class ContextWrapper{
+    static class ContextWrapper{
         private MessageContext ctxt;
         private SOAPEnvelope env;
 
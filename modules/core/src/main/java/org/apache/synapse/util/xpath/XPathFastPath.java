@@ -0,0 +1,388 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util.xpath;
+
+import org.apache.axiom.om.OMContainer;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMNode;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.mediators.GetPropertyFunction;
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.AllNodeStep;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FilterExpr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LiteralExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.PathExpr;
+import org.jaxen.expr.Step;
+import org.jaxen.expr.VariableReferenceExpr;
+import org.jaxen.saxpath.Axis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Evaluates a few simple and very common shapes of XPath expressions directly against the
+ * object model, without creating the Jaxen evaluation contexts and walking the expression tree.
+ * The supported shapes are
+ * <ul>
+ *   <li>variable references - <code>$ctx:prop</code>, <code>$axis2:prop</code>,
+ *   <code>$trp:header</code>, <code>$body</code> and <code>$header</code></li>
+ *   <li>calls to <code>get-property</code> with literal arguments</li>
+ *   <li>location paths made of child steps without predicates, optionally starting with
+ *   <code>//</code>, relative to the context node, the root, <code>$body</code> or
+ *   <code>$header</code> (i.e. <code>//ns:a/ns:b</code> or <code>$body/ns:a</code>)</li>
+ * </ul>
+ * The fast path is selected by inspecting the expression tree compiled by Jaxen, and yields the
+ * same result as the Jaxen evaluation. Whenever it can't (an unsupported context object, an
+ * unresolved namespace prefix, etc.) {@link #select(Object)} returns null and the caller falls
+ * back to Jaxen.
+ */
+class XPathFastPath {
+
+    private static final int VARIABLE = 0;
+    private static final int GET_PROPERTY = 1;
+    private static final int PATH = 2;
+
+    /** Paths starting at the context node, the root or at a variable */
+    private static final int FROM_CONTEXT = 0;
+    private static final int FROM_ROOT = 1;
+    private static final int FROM_VARIABLE = 2;
+
+    private final SynapseXPath xpath;
+
+    private final int kind;
+
+    private String variablePrefix;
+    private String variableName;
+
+    private List<String> literals;
+
+    private int pathStart;
+    private boolean descendants;
+    private String[] stepPrefixes;
+    private String[] stepNames;
+
+    /** Context handed over to get-property, which only uses it to find the navigator */
+    private volatile Context functionContext;
+
+    private XPathFastPath(SynapseXPath xpath, int kind) {
+        this.xpath = xpath;
+        this.kind = kind;
+    }
+
+    /**
+     * Inspect the compiled expression and create a fast path if it has one of the supported
+     * shapes
+     *
+     * @param xpath the compiled expression
+     * @return the fast path or null if the expression must always be evaluated by Jaxen
+     */
+    static XPathFastPath compile(SynapseXPath xpath) {
+        Expr expr = unwrap(xpath.getRootExpr());
+
+        if (expr instanceof VariableReferenceExpr) {
+            XPathFastPath fastPath = new XPathFastPath(xpath, VARIABLE);
+            return fastPath.setVariable((VariableReferenceExpr) expr) ? fastPath : null;
+
+        } else if (expr instanceof FunctionCallExpr) {
+            FunctionCallExpr call = (FunctionCallExpr) expr;
+            if (!SynapseXPathConstants.GET_PROPERTY_FUNCTION.equals(call.getFunctionName()) ||
+                    (call.getPrefix() != null && !"".equals(call.getPrefix())) ||
+                    call.getParameters().isEmpty()) {
+                return null;
+            }
+            List<String> literals = new ArrayList<String>();
+            for (Object param : call.getParameters()) {
+                if (!(param instanceof LiteralExpr)) {
+                    return null;
+                }
+                literals.add(((LiteralExpr) param).getLiteral());
+            }
+            XPathFastPath fastPath = new XPathFastPath(xpath, GET_PROPERTY);
+            fastPath.literals = Collections.unmodifiableList(literals);
+            return fastPath;
+
+        } else if (expr instanceof LocationPath) {
+            XPathFastPath fastPath = new XPathFastPath(xpath, PATH);
+            LocationPath path = (LocationPath) expr;
+            fastPath.pathStart = path.isAbsolute() ? FROM_ROOT : FROM_CONTEXT;
+            return fastPath.setSteps(path.getSteps()) ? fastPath : null;
+
+        } else if (expr instanceof PathExpr) {
+            PathExpr pathExpr = (PathExpr) expr;
+            Expr filter = unwrap(pathExpr.getFilterExpr());
+            LocationPath path = pathExpr.getLocationPath();
+            if (!(filter instanceof VariableReferenceExpr) || path == null || path.isAbsolute()) {
+                return null;
+            }
+            XPathFastPath fastPath = new XPathFastPath(xpath, PATH);
+            fastPath.pathStart = FROM_VARIABLE;
+            if (!fastPath.setVariable((VariableReferenceExpr) filter) ||
+                    !"".equals(fastPath.variablePrefix) ||
+                    !(SynapseXPathConstants.SOAP_BODY_VARIABLE.equals(fastPath.variableName) ||
+                    SynapseXPathConstants.SOAP_HEADER_VARIABLE.equals(fastPath.variableName))) {
+                return null;
+            }
+            return fastPath.setSteps(path.getSteps()) ? fastPath : null;
+        }
+        return null;
+    }
+
+    private static Expr unwrap(Expr expr) {
+        while (expr instanceof FilterExpr && ((FilterExpr) expr).getPredicates().isEmpty()) {
+            expr = ((FilterExpr) expr).getExpr();
+        }
+        return expr;
+    }
+
+    private boolean setVariable(VariableReferenceExpr variable) {
+        variablePrefix = variable.getPrefix() == null ? "" : variable.getPrefix();
+        variableName = variable.getVariableName();
+        if ("".equals(variablePrefix)) {
+            // other unprefixed variables come from the (replaceable) parent variable context
+            return SynapseXPathConstants.SOAP_BODY_VARIABLE.equals(variableName) ||
+                    SynapseXPathConstants.SOAP_HEADER_VARIABLE.equals(variableName);
+        }
+        return SynapseXPathConstants.MESSAGE_CONTEXT_VARIABLE_PREFIX.equals(variablePrefix) ||
+                SynapseXPathConstants.AXIS2_CONTEXT_VARIABLE_PREFIX.equals(variablePrefix) ||
+                SynapseXPathConstants.TRANSPORT_VARIABLE_PREFIX.equals(variablePrefix);
+    }
+
+    private boolean setSteps(List steps) {
+        int size = steps.size();
+        int first = 0;
+        if (size > 0 && steps.get(0) instanceof AllNodeStep) {
+            Step step = (Step) steps.get(0);
+            if (step.getAxis() != Axis.DESCENDANT_OR_SELF || !step.getPredicates().isEmpty()) {
+                return false;
+            }
+            descendants = true;
+            first = 1;
+        }
+        if (size == first) {
+            return false;
+        }
+
+        stepPrefixes = new String[size - first];
+        stepNames = new String[size - first];
+        for (int i = first; i < size; i++) {
+            if (!(steps.get(i) instanceof NameStep)) {
+                return false;
+            }
+            NameStep step = (NameStep) steps.get(i);
+            if (step.getAxis() != Axis.CHILD || !step.getPredicates().isEmpty()) {
+                return false;
+            }
+            stepPrefixes[i - first] = step.getPrefix() == null ? "" : step.getPrefix();
+            stepNames[i - first] = step.getLocalName();
+        }
+        return true;
+    }
+
+    /**
+     * Evaluate the expression in to the list Jaxen would select for the given context object
+     *
+     * @param node the context object
+     * @return the selected list, or null if the expression must be evaluated by Jaxen
+     * @throws JaxenException if an error occurs while evaluating get-property
+     */
+    List select(Object node) throws JaxenException {
+        MessageContext synCtx;
+        SOAPEnvelope env;
+        if (node instanceof MessageContext) {
+            synCtx = (MessageContext) node;
+            env = synCtx.getEnvelope();
+        } else if (node instanceof SynapseXPath.ContextWrapper) {
+            synCtx = ((SynapseXPath.ContextWrapper) node).getMessageCtxt();
+            env = ((SynapseXPath.ContextWrapper) node).getEnvelope();
+        } else if (node instanceof SOAPEnvelope) {
+            synCtx = null;
+            env = (SOAPEnvelope) node;
+        } else {
+            return null;
+        }
+
+        ContextSupport support = xpath.getBaseContextSupport();
+        switch (kind) {
+            case VARIABLE:
+                if (!isUnbound(support, variablePrefix) ||
+                        (!"".equals(variablePrefix) && synCtx == null)) {
+                    return null;
+                }
+                return toList(getVariable(support, synCtx, env));
+
+            case GET_PROPERTY:
+                // the get-property function is only available when evaluating on a message
+                if (!(node instanceof MessageContext)) {
+                    return null;
+                }
+                Context context = functionContext;
+                if (context == null) {
+                    context = new Context(support);
+                    functionContext = context;
+                }
+                return toList(new GetPropertyFunction(synCtx).call(context, literals));
+
+            default:
+                if (env == null) {
+                    return null;
+                }
+                String[] uris = new String[stepPrefixes.length];
+                for (int i = 0; i < uris.length; i++) {
+                    if (!"".equals(stepPrefixes[i])) {
+                        uris[i] = support.translateNamespacePrefixToUri(stepPrefixes[i]);
+                        if (uris[i] == null) {
+                            // let Jaxen report the unresolved prefix
+                            return null;
+                        }
+                    }
+                }
+
+                OMContainer start;
+                if (pathStart == FROM_VARIABLE) {
+                    if (!isUnbound(support, variablePrefix)) {
+                        return null;
+                    }
+                    Object value = getVariable(support, synCtx, env);
+                    if (!(value instanceof OMContainer)) {
+                        return null;
+                    }
+                    start = (OMContainer) value;
+                } else if (pathStart == FROM_ROOT) {
+                    start = getRoot(env);
+                } else {
+                    start = env;
+                }
+
+                List<Object> result = new ArrayList<Object>();
+                if (descendants) {
+                    selectDescendants(start, uris, new OMElement[8], 0, result);
+                } else {
+                    selectChildren(start, uris, 0, result);
+                }
+                return result;
+        }
+    }
+
+    private Object getVariable(ContextSupport support, MessageContext synCtx, SOAPEnvelope env)
+            throws JaxenException {
+        SynapseXPathVariableContext variables = synCtx != null ?
+                new SynapseXPathVariableContext(support.getVariableContext(), synCtx, env) :
+                new SynapseXPathVariableContext(support.getVariableContext(), env);
+        return variables.getVariableValue(null, variablePrefix, variableName);
+    }
+
+    /**
+     * Whether the prefix of a variable translates to no namespace, as the Synapse variables
+     * are only resolved in that case
+     */
+    private static boolean isUnbound(ContextSupport support, String prefix) {
+        return "".equals(prefix) || support.translateNamespacePrefixToUri(prefix) == null;
+    }
+
+    /**
+     * Convert the value of the expression to a list, the way Jaxen does
+     */
+    private static List toList(Object value) {
+        if (value instanceof List) {
+            return (List) value;
+        }
+        List<Object> list = new ArrayList<Object>(1);
+        list.add(value);
+        return list;
+    }
+
+    /**
+     * The root of the tree, as resolved by the AXIOM navigator
+     */
+    private static OMContainer getRoot(OMNode node) {
+        OMContainer parent = node.getParent();
+        while (parent instanceof OMNode && ((OMNode) parent).getParent() != null) {
+            parent = ((OMNode) parent).getParent();
+        }
+        if (parent == null) {
+            return (OMContainer) node;
+        }
+        return parent;
+    }
+
+    private void selectChildren(OMContainer parent, String[] uris, int step, List<Object> result) {
+        Iterator it = parent.getChildElements();
+        while (it.hasNext()) {
+            OMElement child = (OMElement) it.next();
+            if (matches(child, uris, step)) {
+                if (step == uris.length - 1) {
+                    result.add(child);
+                } else {
+                    selectChildren(child, uris, step + 1, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk the descendants in document order, selecting the elements for which the last
+     * elements on the path from the start match the steps
+     */
+    private void selectDescendants(OMContainer parent, String[] uris, OMElement[] path,
+                                   int depth, List<Object> result) {
+        if (depth == path.length) {
+            OMElement[] larger = new OMElement[path.length * 2];
+            System.arraycopy(path, 0, larger, 0, path.length);
+            path = larger;
+        }
+        Iterator it = parent.getChildElements();
+        while (it.hasNext()) {
+            OMElement child = (OMElement) it.next();
+            path[depth] = child;
+            if (depth + 1 >= uris.length) {
+                boolean match = true;
+                for (int i = 0; i < uris.length && match; i++) {
+                    match = matches(path[depth + 1 - uris.length + i], uris, i);
+                }
+                if (match) {
+                    result.add(child);
+                }
+            }
+            selectDescendants(child, uris, path, depth + 1, result);
+        }
+    }
+
+    private boolean matches(OMElement element, String[] uris, int step) {
+        String name = stepNames[step];
+        OMNamespace ns = element.getNamespace();
+        String uri = ns == null ? "" : ns.getNamespaceURI();
+        if (uris[step] == null) {
+            // an unprefixed wildcard matches any element, an unprefixed name only the elements
+            // without a namespace
+            return "*".equals(name) || ("".equals(uri) && name.equals(element.getLocalName()));
+        }
+        return uris[step].equals(uri) && ("*".equals(name) || name.equals(element.getLocalName()));
+    }
+}
@@ -41,4 +41,13 @@ public class AggregateMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, aggregateMediatorFactory, aggregateMediatorSerializer));
         assertTrue(serialization(inputXml, aggregateMediatorSerializer));
     }
-}
\ No newline at end of file
+
+    public void testIncrementalAggregateMediatorSerialization() {
+        String inputXml = "<aggregate xmlns=\"http://ws.apache.org/ns/synapse\">" +
+                          "<completeCondition timeout=\"10\"><messageCount min=\"1\" max=\"10\" />" +
+                          "</completeCondition><onComplete expression=\"get-property('To')\" " +
+                          "incremental=\"true\"><send /></onComplete></aggregate>";
+        assertTrue(serialization(inputXml, aggregateMediatorFactory, aggregateMediatorSerializer));
+        assertTrue(serialization(inputXml, aggregateMediatorSerializer));
+    }
+}
@@ -69,4 +69,13 @@ public class CloneMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, cloneMediatorFactory, cloneMediatorSerializer));
         assertTrue(serialization(inputXml, cloneMediatorSerializer));
     }
+
+    public void testCloneMediatorSerializationWithConcurrencyLimit() throws Exception {
+        String inputXml = "<clone xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "maxConcurrency=\"4\" maxPending=\"8\" executor=\"dedicated\">" +
+            "<target sequence=\"sequenceRef1\"/>" +
+            "<target sequence=\"sequenceRef2\"/></clone> ";
+        assertTrue(serialization(inputXml, cloneMediatorFactory, cloneMediatorSerializer));
+        assertTrue(serialization(inputXml, cloneMediatorSerializer));
+    }
 }
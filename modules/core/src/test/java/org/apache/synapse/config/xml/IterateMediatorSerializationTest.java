@@ -44,6 +44,23 @@ public class IterateMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, iterateMediatorSerializer));
     }
 
+    public void testIterateMediatorSerializationWithConcurrencyLimit() throws Exception {
+        String inputXml = "<iterate xmlns=\"http://ws.apache.org/ns/synapse\" expression=\".\" " +
+            "maxConcurrency=\"10\" maxPending=\"20\" executor=\"forkjoin\">" +
+            "<target sequence=\"sequenceRef1\"/>" +
+            "</iterate>";
+        assertTrue(serialization(inputXml, iterateMediatorFactory, iterateMediatorSerializer));
+        assertTrue(serialization(inputXml, iterateMediatorSerializer));
+    }
+
+    public void testIterateMediatorSerializationWithStreaming() throws Exception {
+        String inputXml = "<iterate xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "xmlns:m=\"http://services.samples\" streaming=\"true\" " +
+            "expression=\"//m:orders/m:order\"><target sequence=\"sequenceRef1\"/></iterate>";
+        assertTrue(serialization(inputXml, iterateMediatorFactory, iterateMediatorSerializer));
+        assertTrue(serialization(inputXml, iterateMediatorSerializer));
+    }
+
     public void testIterateMediatorSerializationScenarioTwo() throws Exception {
         String inputXml = "<iterate xmlns=\"http://ws.apache.org/ns/synapse\" expression=\".\">" +
             "<target endpoint=\"endpointRef1\"><sequence><log/></sequence></target>" + "</iterate>";
@@ -73,4 +73,14 @@ public class PayloadFactoryMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, payloadFactoryMediatorSerializer));
     }
 
+    public void testPayloadFactoryMediatorJsonFormatSerialization() throws Exception {
+
+        String inputXml = "<payloadFactory xmlns=\"http://ws.apache.org/ns/synapse\" media-type=\"json\">" +
+                "<format>{\"getQuote\":{\"symbol\":\"$1\"}}</format>" +
+                "<args><arg value=\"IBM\"/></args></payloadFactory>";
+
+        assertTrue(serialization(inputXml, payloadFactoryMediatorFactory, payloadFactoryMediatorSerializer));
+        assertTrue(serialization(inputXml, payloadFactoryMediatorSerializer));
+    }
+
 }
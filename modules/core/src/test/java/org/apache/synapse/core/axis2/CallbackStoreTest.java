@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import junit.framework.TestCase;
+import org.apache.synapse.SynapseConstants;
+
+import java.util.List;
+
+public class CallbackStoreTest extends TestCase {
+
+    private AsyncCallback createCallback(String endpoint, long timeOutOn, int action) {
+        AsyncCallback callback = new AsyncCallback(null);
+        callback.setEndpointName(endpoint);
+        callback.setTimeOutOn(timeOutOn);
+        callback.setTimeOutAction(action);
+        return callback;
+    }
+
+    public void testExpiry() {
+        CallbackStore store = new CallbackStore(60000);
+        long now = System.currentTimeMillis();
+        AsyncCallback expiring = createCallback("ep1", now + 1000, SynapseConstants.DISCARD);
+        AsyncCallback pending = createCallback("ep1", now + 10000, SynapseConstants.DISCARD);
+        store.put("msg1", expiring);
+        store.put("msg2", pending);
+        assertEquals(2, store.size());
+        assertEquals(2, store.getInFlightCountByEndpoint().get("ep1").intValue());
+
+        List<AsyncCallback> expired = store.expire(now + 2000);
+        assertEquals(1, expired.size());
+        assertSame(expiring, expired.get(0));
+        assertFalse(store.containsKey("msg1"));
+        assertTrue(store.containsKey("msg2"));
+        assertEquals(1, store.getTimeoutCount());
+        assertEquals(1, store.getTimeoutCountByEndpoint().get("ep1").longValue());
+        assertEquals(1, store.getInFlightCountByEndpoint().get("ep1").intValue());
+    }
+
+    public void testRemovedCallbackDoesNotExpire() {
+        CallbackStore store = new CallbackStore(60000);
+        long now = System.currentTimeMillis();
+        AsyncCallback callback = createCallback("ep1", now + 1000, SynapseConstants.DISCARD);
+        store.put("msg1", callback);
+        assertSame(callback, store.remove("msg1"));
+        assertNull(store.remove("msg1"));
+
+        assertTrue(store.expire(now + 2000).isEmpty());
+        assertEquals(0, store.getTimeoutCount());
+        assertEquals(0, store.getInFlightCountByEndpoint().get("ep1").intValue());
+    }
+
+    public void testGlobalTimeout() {
+        CallbackStore store = new CallbackStore(5000);
+        long now = System.currentTimeMillis();
+        AsyncCallback callback = createCallback(null, now, SynapseConstants.NONE);
+        store.put("msg1", callback);
+
+        assertTrue(store.expire(now + 2000).isEmpty());
+        assertEquals(1, store.expire(now + 6000).size());
+        assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.endpoints.LoadbalanceEndpoint;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LoadAwareAlgorithmTest extends TestCase {
+
+    private LoadbalanceEndpoint loadbalanceEndpoint;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (loadbalanceEndpoint != null) {
+            loadbalanceEndpoint.destroy();
+        }
+    }
+
+    public void testLeastOutstandingRequests() throws Exception {
+        LeastOutstandingRequests algorithm = new LeastOutstandingRequests();
+        loadbalanceEndpoint = createLoadBalanceEndpoint(algorithm, 2);
+        List<Endpoint> endpoints = loadbalanceEndpoint.getChildren();
+
+        MessageContext first = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        Endpoint firstEndpoint = algorithm.getNextEndpoint(first, null);
+        assertEquals(1, algorithm.getOutstandingRequests(endpoints.indexOf(firstEndpoint)));
+
+        // the other endpoint is not busy
+        MessageContext second = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        Endpoint secondEndpoint = algorithm.getNextEndpoint(second, null);
+        assertNotSame(firstEndpoint, secondEndpoint);
+
+        // once the first request completes, the first endpoint is the least busy one
+        AbstractLoadAwareAlgorithm.completeDispatches(first, true);
+        assertEquals(0, algorithm.getOutstandingRequests(endpoints.indexOf(firstEndpoint)));
+        MessageContext third = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        assertSame(firstEndpoint, algorithm.getNextEndpoint(third, null));
+
+        // completing twice must not release the request twice
+        AbstractLoadAwareAlgorithm.completeDispatches(first, true);
+        assertEquals(1, algorithm.getOutstandingRequests(endpoints.indexOf(firstEndpoint)));
+        assertNull(first.getProperty(AbstractLoadAwareAlgorithm.PENDING_DISPATCHES));
+
+        // nor completing a copy of the message, which carries the same pending requests
+        MessageContext copy = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        copy.setProperty(AbstractLoadAwareAlgorithm.PENDING_DISPATCHES,
+                third.getProperty(AbstractLoadAwareAlgorithm.PENDING_DISPATCHES));
+        AbstractLoadAwareAlgorithm.completeDispatches(third, true);
+        AbstractLoadAwareAlgorithm.completeDispatches(copy, true);
+        assertEquals(0, algorithm.getOutstandingRequests(endpoints.indexOf(firstEndpoint)));
+    }
+
+    public void testInactiveEndpointsSkipped() throws Exception {
+        LeastOutstandingRequests algorithm = new LeastOutstandingRequests();
+        loadbalanceEndpoint = createLoadBalanceEndpoint(algorithm, 4);
+        List<Endpoint> endpoints = loadbalanceEndpoint.getChildren();
+        for (int i = 0; i < 3; i++) {
+            endpoints.get(i).getContext().switchOff();
+        }
+
+        for (int i = 0; i < 10; i++) {
+            MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+            assertSame(endpoints.get(3), algorithm.getNextEndpoint(synCtx, null));
+        }
+
+        endpoints.get(3).getContext().switchOff();
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        assertNull(algorithm.getNextEndpoint(synCtx, null));
+    }
+
+    public void testLeastResponseTime() throws Exception {
+        LeastResponseTime algorithm = new LeastResponseTime();
+        loadbalanceEndpoint = createLoadBalanceEndpoint(algorithm, 2);
+        List<Endpoint> endpoints = loadbalanceEndpoint.getChildren();
+
+        algorithm.onCompletion(0, 100, true);
+        algorithm.onCompletion(1, 10, true);
+        for (int i = 0; i < 10; i++) {
+            MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+            assertSame(endpoints.get(1), algorithm.getNextEndpoint(synCtx, null));
+            AbstractLoadAwareAlgorithm.completeDispatches(synCtx, true);
+        }
+
+        // a fault makes the endpoint look slow at once
+        algorithm.onCompletion(1, 10, false);
+        long now = System.currentTimeMillis();
+        assertTrue(algorithm.getAverageResponseTime(1, now) >
+                algorithm.getAverageResponseTime(0, now));
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        assertSame(endpoints.get(0), algorithm.getNextEndpoint(synCtx, null));
+    }
+
+    private LoadbalanceEndpoint createLoadBalanceEndpoint(AbstractLoadAwareAlgorithm algorithm,
+                                                         int size) {
+        LoadbalanceEndpoint loadbalanceEndpoint = new LoadbalanceEndpoint();
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (int i = 0; i < size; i++) {
+            AddressEndpoint addressEndpoint = new AddressEndpoint();
+            addressEndpoint.setEnableMBeanStats(false);
+            EndpointDefinition definition = new EndpointDefinition();
+            definition.setAddress("http://localhost:900" + i + "/");
+            addressEndpoint.setDefinition(definition);
+            endpoints.add(addressEndpoint);
+        }
+
+        algorithm.setEndpoints(endpoints);
+        algorithm.setLoadBalanceEndpoint(loadbalanceEndpoint);
+
+        loadbalanceEndpoint.setChildren(endpoints);
+        loadbalanceEndpoint.setAlgorithm(algorithm);
+
+        SynapseEnvironment env = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), new SynapseConfiguration());
+        loadbalanceEndpoint.init(env);
+        return loadbalanceEndpoint;
+    }
+}
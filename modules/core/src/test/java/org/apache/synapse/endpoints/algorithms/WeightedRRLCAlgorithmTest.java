@@ -25,6 +25,8 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.synapse.endpoints.Endpoint;
@@ -108,6 +110,37 @@ public class WeightedRRLCAlgorithmTest extends TestCase {
         }
     }
 
+    public void testConcurrentNextEndpoint() throws Exception {
+        final MessageContext messageContext = createMessageContext();
+        final LoadbalanceAlgorithm algo = createLoadBalanceEndpoint().getAlgorithm();
+        final AtomicInteger errors = new AtomicInteger(0);
+
+        // many threads complete the rounds at once, none of them may be left without an endpoint
+        int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            if (algo.getNextEndpoint(messageContext, null) == null) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+
     private LoadbalanceEndpoint createLoadBalanceEndpoint() {
         LoadbalanceEndpoint loadbalanceEndpoint = new LoadbalanceEndpoint();
         List<Endpoint> endpoints = createEndpoints();
@@ -0,0 +1,183 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.endpoints.LoadbalanceEndpoint;
+import org.apache.synapse.mediators.MediatorProperty;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class WeightedRoundRobinAlgorithmTest extends TestCase {
+
+    private String[] weights = {"5", "3", "2"};
+
+    private LoadbalanceEndpoint loadbalanceEndpoint;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (loadbalanceEndpoint != null) {
+            loadbalanceEndpoint.destroy();
+        }
+    }
+
+    public void testWeightedRoundRobin() throws Exception {
+        loadbalanceEndpoint = createLoadBalanceEndpoint(false);
+        assertSequence(new String[] {"5", "5", "5", "5", "5", "3", "3", "3", "2", "2",
+                                   "5", "5", "5", "5", "5"}, nextWeights(15));
+    }
+
+    public void testSmoothWeightedRoundRobin() throws Exception {
+        loadbalanceEndpoint = createLoadBalanceEndpoint(true);
+        assertSequence(new String[] {"5", "3", "2", "5", "5", "3", "5", "2", "3", "5",
+                                   "5", "3", "2", "5", "5"}, nextWeights(15));
+    }
+
+    public void testInactiveEndpointsSkipped() throws Exception {
+        loadbalanceEndpoint = createLoadBalanceEndpoint(true);
+        loadbalanceEndpoint.getChildren().get(0).getContext().switchOff();
+
+        for (String weight : nextWeights(20)) {
+            assertFalse("5".equals(weight));
+        }
+
+        for (Endpoint endpoint : loadbalanceEndpoint.getChildren()) {
+            endpoint.getContext().switchOff();
+        }
+        MessageContext messageContext = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        assertNull(loadbalanceEndpoint.getAlgorithm().getNextEndpoint(messageContext, null));
+    }
+
+    public void testWeightedRoundRobinConcurrency() throws Exception {
+        // Send 10 full cycles using 10 concurrent threads. Each endpoint should receive
+        // exactly its share of the messages.
+        int concurrency = 10;
+        final int cycles = 10;
+        loadbalanceEndpoint = createLoadBalanceEndpoint(true);
+        final LoadbalanceAlgorithm algorithm = loadbalanceEndpoint.getAlgorithm();
+        final List<Endpoint> endpoints = loadbalanceEndpoint.getChildren();
+        final AtomicIntegerArray counts = new AtomicIntegerArray(weights.length);
+
+        ExecutorService exec = Executors.newFixedThreadPool(concurrency);
+        try {
+            Future[] futures = new Future[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                futures[i] = exec.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        MessageContext messageContext;
+                        try {
+                            messageContext = TestUtils.createLightweightSynapseMessageContext(
+                                    "<test/>");
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                        for (int j = 0; j < cycles; j++) {
+                            Endpoint endpoint = algorithm.getNextEndpoint(messageContext, null);
+                            counts.incrementAndGet(endpoints.indexOf(endpoint));
+                        }
+                    }
+                });
+            }
+            for (Future future : futures) {
+                future.get();
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(Integer.parseInt(weights[i]) * cycles, counts.get(i));
+        }
+    }
+
+    private void assertSequence(String[] expected, String[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Message " + i, expected[i], actual[i]);
+        }
+    }
+
+    private String[] nextWeights(int count) throws Exception {
+        LoadbalanceAlgorithm algorithm = loadbalanceEndpoint.getAlgorithm();
+        String[] results = new String[count];
+        for (int i = 0; i < count; i++) {
+            MessageContext messageContext =
+                    TestUtils.createLightweightSynapseMessageContext("<test/>");
+            Endpoint endpoint = algorithm.getNextEndpoint(messageContext, null);
+            results[i] = ((AddressEndpoint) endpoint).getProperty("loadbalance.weight").getValue();
+        }
+        return results;
+    }
+
+    private LoadbalanceEndpoint createLoadBalanceEndpoint(boolean smooth) {
+        LoadbalanceEndpoint loadbalanceEndpoint = new LoadbalanceEndpoint();
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (int i = 0; i < weights.length; i++) {
+            AddressEndpoint addressEndpoint = new AddressEndpoint();
+            addressEndpoint.setEnableMBeanStats(false);
+
+            EndpointDefinition definition = new EndpointDefinition();
+            definition.setAddress("http://localhost:900" + i + "/");
+            addressEndpoint.setDefinition(definition);
+
+            MediatorProperty property = new MediatorProperty();
+            property.setName("loadbalance.weight");
+            property.setValue(weights[i]);
+            addressEndpoint.addProperty(property);
+
+            endpoints.add(addressEndpoint);
+        }
+
+        if (smooth) {
+            MediatorProperty property = new MediatorProperty();
+            property.setName("loadbalance.smooth");
+            property.setValue("true");
+            loadbalanceEndpoint.addProperty(property);
+        }
+
+        WeightedRoundRobin algorithm = new WeightedRoundRobin();
+        algorithm.setEndpoints(endpoints);
+        algorithm.setLoadBalanceEndpoint(loadbalanceEndpoint);
+
+        loadbalanceEndpoint.setChildren(endpoints);
+        loadbalanceEndpoint.setAlgorithm(algorithm);
+
+        SynapseEnvironment env = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), new SynapseConfiguration());
+        loadbalanceEndpoint.init(env);
+        return loadbalanceEndpoint;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.dispatch;
+
+import junit.framework.TestCase;
+
+public class InMemorySessionStoreTest extends TestCase {
+
+    public void testLookup() {
+        InMemorySessionStore store = new InMemorySessionStore();
+        long now = System.currentTimeMillis();
+        SessionInformation information = new SessionInformation("s1", null, now + 60000);
+        store.put(information);
+
+        assertSame(information, store.get("s1"));
+        assertNull(store.get("s2"));
+        assertEquals(1, store.size());
+
+        store.remove("s1");
+        assertNull(store.get("s1"));
+        assertEquals(0, store.size());
+    }
+
+    public void testExpiry() {
+        InMemorySessionStore store = new InMemorySessionStore();
+        long now = System.currentTimeMillis();
+        store.put(new SessionInformation("short", null, now + 2000));
+        store.put(new SessionInformation("long", null, now + 60000));
+        SessionInformation extended = new SessionInformation("extended", null, now + 2000);
+        store.put(extended);
+        extended.setExpiryTime(now + 60000);
+
+        assertEquals(0, store.expire(now));
+        assertEquals(3, store.size());
+
+        assertEquals(1, store.expire(now + 5000));
+        assertNull(store.get("short"));
+        assertNotNull(store.get("long"));
+        assertNotNull(store.get("extended"));
+
+        // the extended session was moved to its new slot
+        assertEquals(2, store.expire(now + 65000));
+        assertEquals(0, store.size());
+        assertEquals(3, store.getExpiredCount());
+    }
+
+    public void testReplacedSessionNotExpired() {
+        InMemorySessionStore store = new InMemorySessionStore();
+        long now = System.currentTimeMillis();
+        store.put(new SessionInformation("s1", null, now + 2000));
+        SessionInformation renewed = new SessionInformation("s1", null, now + 60000);
+        store.put(renewed);
+
+        assertEquals(0, store.expire(now + 5000));
+        assertSame(renewed, store.get("s1"));
+    }
+
+    public void testEviction() {
+        InMemorySessionStore store = new InMemorySessionStore(10);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            store.put(new SessionInformation("s" + i, null, now + 10000 + i * 2000));
+        }
+
+        assertEquals(10, store.size());
+        assertEquals(10, store.getEvictedCount());
+        // the sessions closest to expiry go first
+        assertNull(store.get("s0"));
+        assertNotNull(store.get("s19"));
+    }
+}
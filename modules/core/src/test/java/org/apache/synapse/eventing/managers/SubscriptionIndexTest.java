@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.eventing.managers;
+
+import junit.framework.TestCase;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.synapse.eventing.SynapseEventingConstants;
+import org.apache.synapse.eventing.SynapseSubscription;
+import org.apache.synapse.mediators.TestUtils;
+import org.wso2.eventing.Subscription;
+
+import java.util.List;
+
+public class SubscriptionIndexTest extends TestCase {
+
+    public void testTopicMatching() throws Exception {
+        SubscriptionIndex index = new SubscriptionIndex();
+        Subscription weather = createSubscription("weather");
+        Subscription storms = createSubscription("weather/storms");
+        Subscription anyStorms = createSubscription("*/storms");
+        Subscription sports = createSubscription("sports");
+        index.add(weather);
+        index.add(storms);
+        index.add(anyStorms);
+        index.add(sports);
+        assertTrue(index.hasTopicSubscriptions());
+
+        List<Subscription> matches = index.getMatchingSubscriptions("weather", null);
+        assertEquals(1, matches.size());
+        assertTrue(matches.contains(weather));
+
+        matches = index.getMatchingSubscriptions("weather/storms", null);
+        assertEquals(3, matches.size());
+        assertTrue(matches.contains(weather));
+        assertTrue(matches.contains(storms));
+        assertTrue(matches.contains(anyStorms));
+
+        matches = index.getMatchingSubscriptions("weather/storms/north", null);
+        assertEquals(3, matches.size());
+
+        matches = index.getMatchingSubscriptions("news/storms", null);
+        assertEquals(1, matches.size());
+        assertTrue(matches.contains(anyStorms));
+
+        assertTrue(index.getMatchingSubscriptions("weathers", null).isEmpty());
+        assertTrue(index.getMatchingSubscriptions(null, null).isEmpty());
+    }
+
+    public void testRemove() throws Exception {
+        SubscriptionIndex index = new SubscriptionIndex();
+        Subscription first = createSubscription("weather");
+        Subscription second = createSubscription("weather");
+        index.add(first);
+        index.add(second);
+        assertEquals(2, index.getMatchingSubscriptions("weather/storms", null).size());
+
+        index.remove(first);
+        List<Subscription> matches = index.getMatchingSubscriptions("weather/storms", null);
+        assertEquals(1, matches.size());
+        assertTrue(matches.contains(second));
+
+        index.remove(second);
+        assertTrue(index.getMatchingSubscriptions("weather", null).isEmpty());
+        assertFalse(index.hasTopicSubscriptions());
+    }
+
+    public void testXPathFilter() throws Exception {
+        SubscriptionIndex index = new SubscriptionIndex();
+        Subscription snow = createSubscription("//weatherCondition = 'snow'");
+        snow.setFilterDialect(SynapseEventingConstants.XPATH_FILTER_DIALECT);
+        Subscription rain = createSubscription("//weatherCondition = 'rain'");
+        rain.setFilterDialect(SynapseEventingConstants.XPATH_FILTER_DIALECT);
+        index.add(snow);
+        index.add(rain);
+        assertFalse(index.hasTopicSubscriptions());
+
+        SOAPEnvelope envelope = TestUtils.createLightweightSynapseMessageContext(
+                "<weatherCondition>snow</weatherCondition>").getEnvelope();
+        List<Subscription> matches = index.getMatchingSubscriptions(null, envelope);
+        assertEquals(1, matches.size());
+        assertTrue(matches.contains(snow));
+
+        index.remove(snow);
+        assertTrue(index.getMatchingSubscriptions(null, envelope).isEmpty());
+    }
+
+    private Subscription createSubscription(String filter) {
+        SynapseSubscription subscription = new SynapseSubscription();
+        subscription.setId(filter + "-" + System.nanoTime());
+        subscription.setFilterDialect(SynapseEventingConstants.TOPIC_FILTER_DIALECT);
+        subscription.setFilterValue(filter);
+        subscription.setEndpointUrl("http://localhost:9000/services/Listener");
+        return subscription;
+    }
+}
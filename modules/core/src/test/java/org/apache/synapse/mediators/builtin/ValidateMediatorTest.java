@@ -21,22 +21,32 @@ package org.apache.synapse.mediators.builtin;
 
 import junit.framework.TestCase;
 
+import org.apache.axiom.om.OMNode;
 import org.apache.axiom.om.OMXMLBuilderFactory;
 import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.TestMessageContextBuilder;
 import org.apache.synapse.config.SynapseConfigUtils;
+import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.config.xml.ValidateMediatorFactory;
+import org.apache.synapse.mediators.TestUtils;
 import org.apache.synapse.mediators.Value;
 import org.apache.synapse.mediators.TestMediateHandler;
 import org.apache.synapse.mediators.TestMediator;
+import org.apache.synapse.registry.SimpleInMemoryRegistry;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ValidateMediatorTest extends TestCase {
 
@@ -361,6 +371,182 @@ public class ValidateMediatorTest extends TestCase {
         test(validate, synCtx, false);
     }
 
+    public void testValidatorReuse() throws Exception {
+        ValidateMediator validate = new ValidateMediator();
+        validate.setSchemaKeys(createKeyListFromStaticKey("xsd-key"));
+        validate.setSource(createXPath("//m0:CheckPriceRequest"));
+        final AtomicInteger failures = addFailureCounter(validate);
+
+        // the same validator is re-used for each message, and must not remember the
+        // errors of the previous one
+        for (int i = 0; i < 10; i++) {
+            boolean invalid = i % 2 == 0;
+            MessageContext synCtx = new TestMessageContextBuilder()
+                    .addFileEntry("xsd-key", "./../../repository/conf/sample/resources/validate/validate.xsd")
+                    .setBodyFromString(invalid ? IN_VALID_ENVELOPE : VALID_ENVELOPE).build();
+            assertTrue(validate.mediate(synCtx));
+            assertEquals(i / 2 + 1, failures.get());
+            if (invalid) {
+                assertNotNull(synCtx.getProperty(SynapseConstants.ERROR_MESSAGE));
+            } else {
+                assertNull(synCtx.getProperty(SynapseConstants.ERROR_MESSAGE));
+            }
+        }
+    }
+
+    public void testConcurrentValidation() throws Exception {
+        final ValidateMediator validate = new ValidateMediator();
+        validate.setSchemaKeys(createKeyListFromStaticKey("xsd-key"));
+        validate.setSource(createXPath("//m0:CheckPriceRequest"));
+        final AtomicInteger failures = addFailureCounter(validate);
+
+        final int threads = 8;
+        final int messages = 50;
+        final AtomicInteger errors = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < messages; i++) {
+                            boolean invalid = i % 2 == 0;
+                            MessageContext synCtx = new TestMessageContextBuilder()
+                                    .addFileEntry("xsd-key", "./../../repository/conf/sample/resources/validate/validate.xsd")
+                                    .setBodyFromString(invalid ? IN_VALID_ENVELOPE : VALID_ENVELOPE)
+                                    .build();
+                            validate.mediate(synCtx);
+                            if (invalid != (synCtx.getProperty(
+                                    SynapseConstants.ERROR_MESSAGE) != null)) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        assertEquals(threads * messages / 2, failures.get());
+    }
+
+    public void testDynamicSchemaRefresh() throws Exception {
+        Map<String, OMNode> data = new HashMap<String, OMNode>();
+        data.put("xsd-key", TestUtils.createOMElement(createSchema("Code")));
+        SimpleInMemoryRegistry registry = new SimpleInMemoryRegistry(data, 200L);
+        SynapseConfiguration config = new SynapseConfiguration();
+        config.setRegistry(registry);
+
+        ValidateMediator validate = new ValidateMediator();
+        validate.setSchemaKeys(createKeyListFromStaticKey("xsd-key"));
+        validate.setSource(createXPath("//m0:CheckPriceRequest"));
+        AtomicInteger failures = addFailureCounter(validate);
+
+        validate.mediate(TestUtils.createLightweightSynapseMessageContext(VALID_ENVELOPE, config));
+        assertEquals(0, failures.get());
+        assertEquals(1, registry.getHitCount());
+
+        Thread.sleep(10);
+        registry.updateResource("xsd-key", TestUtils.createOMElement(createSchema("Codes")));
+        Thread.sleep(300);
+
+        // the message which finds the schema expired is validated against the old schema,
+        // while the new one is loaded in the background
+        validate.mediate(TestUtils.createLightweightSynapseMessageContext(VALID_ENVELOPE, config));
+        assertEquals(0, failures.get());
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (true) {
+            int failed = failures.get();
+            validate.mediate(TestUtils.createLightweightSynapseMessageContext(
+                    IN_VALID_ENVELOPE, config));
+            if (failures.get() == failed) {
+                break;
+            }
+            assertTrue("The schema was not refreshed", System.currentTimeMillis() < timeout);
+            Thread.sleep(50);
+        }
+        assertEquals(2, registry.getHitCount());
+
+        int failed = failures.get();
+        validate.mediate(TestUtils.createLightweightSynapseMessageContext(VALID_ENVELOPE, config));
+        assertEquals(failed + 1, failures.get());
+
+        // a schema which does not compile is ignored, and the previous schema is kept
+        Thread.sleep(10);
+        registry.updateResource("xsd-key", TestUtils.createOMElement(createSchema("1Code")));
+        Thread.sleep(300);
+        failed = failures.get();
+        validate.mediate(TestUtils.createLightweightSynapseMessageContext(
+                IN_VALID_ENVELOPE, config));
+        timeout = System.currentTimeMillis() + 10000;
+        while (registry.getHitCount() < 3) {
+            assertTrue("The schema was not reloaded", System.currentTimeMillis() < timeout);
+            Thread.sleep(50);
+        }
+        Thread.sleep(500);
+        validate.mediate(TestUtils.createLightweightSynapseMessageContext(
+                IN_VALID_ENVELOPE, config));
+        assertEquals(failed, failures.get());
+    }
+
+    public void testStreamingValidation() throws Exception {
+        String[] envelopes = { VALID_ENVELOPE, IN_VALID_ENVELOPE, VALID_ENVELOPE_NO_NS,
+                IN_VALID_ENVELOPE_NO_NS };
+        for (String envelope : envelopes) {
+            String[] errors = new String[2];
+            for (int i = 0; i < 2; i++) {
+                ValidateMediator validate = new ValidateMediator();
+                validate.setSchemaKeys(createKeyListFromStaticKey("xsd-key"));
+                validate.setSource(createXPath("//m0:CheckPriceRequest"));
+                validate.addFeature(ValidateMediator.STREAMING_VALIDATION, i == 1);
+                addFailureCounter(validate);
+
+                MessageContext synCtx = new TestMessageContextBuilder()
+                        .addFileEntry("xsd-key", "./../../repository/conf/sample/resources/validate/validate.xsd")
+                        .setBodyFromString(envelope).build();
+                assertTrue(validate.mediate(synCtx));
+                errors[i] = (String) synCtx.getProperty(SynapseConstants.ERROR_MESSAGE);
+            }
+            // streaming validation reports the same errors as validating the AXIOM tree
+            if (errors[0] == null) {
+                assertNull(errors[1]);
+            } else {
+                assertNotNull(errors[1]);
+                // compare the error codes, e.g. cvc-complex-type.2.4.a
+                assertEquals(errors[0].substring(0, errors[0].indexOf(':')),
+                        errors[1].substring(0, errors[1].indexOf(':')));
+            }
+        }
+    }
+
+    private AtomicInteger addFailureCounter(ValidateMediator validate) {
+        final AtomicInteger failures = new AtomicInteger(0);
+        TestMediator testMediator = new TestMediator();
+        testMediator.setHandler(
+                new TestMediateHandler() {
+                    @Override
+                    public void handle(MessageContext synCtx) {
+                        failures.incrementAndGet();
+                    }
+                });
+        validate.addChild(testMediator);
+        return failures;
+    }
+
+    private String createSchema(String elementName) {
+        return "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" " +
+                "elementFormDefault=\"qualified\" " +
+                "targetNamespace=\"http://services.samples/xsd\">" +
+                "<xs:element name=\"CheckPriceRequest\"><xs:complexType><xs:sequence>" +
+                "<xs:element name=\"" + elementName + "\" type=\"xs:string\"/>" +
+                "</xs:sequence></xs:complexType></xs:element></xs:schema>";
+    }
+
     /**
      * Create a Value list which consists with one static element
      *
@@ -28,9 +28,14 @@ import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.config.xml.MediatorFactory;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.AbstractMediatorTestCase;
 import org.apache.synapse.mediators.base.SequenceMediator;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Preperation of the split mediator test cases 
  */
@@ -61,6 +66,51 @@ public abstract class AbstractSplitMediatorTestCase extends AbstractMediatorTest
         testCtx.getConfiguration().addSequence("fault", new SequenceMediator());
     }
 
+    /**
+     * Add a sequence which records the messages given to it, and then changes the text of the
+     * first element in the body of each message to "mutated-" followed by the number of the
+     * message, so that any envelope shared between the split messages shows up
+     *
+     * @param name name of the sequence
+     * @return the list the mediated messages are recorded in
+     */
+    List<MessageContext> addMutatingSequence(String name) {
+        final List<MessageContext> recorded =
+                Collections.synchronizedList(new ArrayList<MessageContext>());
+        SequenceMediator seq = new SequenceMediator();
+        seq.addChild(new AbstractMediator() {
+            @Override
+            public boolean mediate(MessageContext synCtx) {
+                int index;
+                synchronized (recorded) {
+                    index = recorded.size();
+                    recorded.add(synCtx);
+                }
+                synCtx.getEnvelope().getBody().getFirstElement().setText("mutated-" + index);
+                return false;
+            }
+        });
+        testCtx.getConfiguration().addSequence(name, seq);
+        return recorded;
+    }
+
+    /**
+     * Assert that each of the given messages has an envelope of its own, still carrying the
+     * change made by the sequence added with {@link #addMutatingSequence(String)}
+     */
+    void assertEnvelopesNotShared(List<MessageContext> recorded, SOAPEnvelope parent) {
+        for (int i = 0; i < recorded.size(); i++) {
+            SOAPEnvelope envelope = recorded.get(i).getEnvelope();
+            assertEquals("mutated-" + i, envelope.getBody().getFirstElement().getText());
+            for (int j = i + 1; j < recorded.size(); j++) {
+                assertNotSame(envelope, recorded.get(j).getEnvelope());
+            }
+            if (parent != null) {
+                assertNotSame(parent, envelope);
+            }
+        }
+    }
+
     @Override
     protected void tearDown() throws Exception {
         super.tearDown();
@@ -19,11 +19,22 @@
 
 package org.apache.synapse.mediators.eip;
 
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.Mediator;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.config.xml.CloneMediatorFactory;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.base.SequenceMediator;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -84,4 +95,175 @@ public class CloneMediatorTest extends AbstractSplitMediatorTestCase {
         assertEquals(testCtx.getSoapAction(), "urn:test");
         assertEquals(testCtx.getTo(), null);
     }
+
+    public void testClonedEnvelopesAreNotShared() throws Exception {
+        List<MessageContext> recorded = addMutatingSequence("mutatingSeq");
+        Mediator clone = fac.createMediator(createOMElement("<clone sequential=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\"><target sequence=\"mutatingSeq\"/>" +
+            "<target sequence=\"mutatingSeq\"/><target sequence=\"mutatingSeq\"/></clone>"),
+            new Properties());
+        assertFalse(clone.mediate(testCtx));
+
+        assertEquals(3, recorded.size());
+        assertEnvelopesNotShared(recorded, null);
+        for (MessageContext mediatedCtx : recorded) {
+            assertNotSame(testCtx, mediatedCtx);
+        }
+    }
+
+    public void testContinueParentLeavesParentIntact() throws Exception {
+        List<MessageContext> recorded = addMutatingSequence("mutatingSeq");
+        SOAPEnvelope envelope = testCtx.getEnvelope();
+        Mediator clone = fac.createMediator(createOMElement("<clone continueParent=\"true\" " +
+            "sequential=\"true\" xmlns=\"http://ws.apache.org/ns/synapse\">" +
+            "<target sequence=\"mutatingSeq\"/><target sequence=\"mutatingSeq\"/></clone>"),
+            new Properties());
+        assertTrue(clone.mediate(testCtx));
+
+        assertEquals(2, recorded.size());
+        assertEnvelopesNotShared(recorded, envelope);
+        // the parent still has its own, unchanged envelope
+        assertSame(envelope, testCtx.getEnvelope());
+        assertEquals("test-split-context",
+            testCtx.getEnvelope().getBody().getFirstElement().getText());
+    }
+
+    public void testCloningWithConcurrencyLimit() throws Exception {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        SequenceMediator slowSeq = new SequenceMediator();
+        slowSeq.addChild(new AbstractMediator() {
+            @Override
+            public boolean mediate(MessageContext synCtx) {
+                int current = active.incrementAndGet();
+                int max;
+                while ((max = maxActive.get()) < current &&
+                        !maxActive.compareAndSet(max, current)) {
+                    // retry until the maximum is recorded
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                completed.incrementAndGet();
+                return true;
+            }
+        });
+        testCtx.getConfiguration().addSequence("slowSeq", slowSeq);
+
+        StringBuilder config = new StringBuilder("<clone maxConcurrency=\"2\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\">");
+        for (int i = 0; i < 6; i++) {
+            config.append("<target sequence=\"slowSeq\"/>");
+        }
+        config.append("</clone>");
+        Mediator clone = fac.createMediator(createOMElement(config.toString()), new Properties());
+        ((ManagedLifecycle) clone).init(testCtx.getEnvironment());
+        try {
+            clone.mediate(testCtx);
+            // the messages over the limit are queued instead of blocking the mediating thread
+            assertTrue(completed.get() < 6);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (completed.get() < 6 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(6, completed.get());
+            assertTrue("at most 2 targets should run at once, but " + maxActive.get() +
+                    " did", maxActive.get() <= 2);
+            assertEquals(2, maxActive.get());
+        } finally {
+            ((ManagedLifecycle) clone).destroy();
+        }
+    }
+
+    public void testCloningBlocksOnFullQueue() throws Exception {
+        final AtomicInteger completed = new AtomicInteger();
+        addSlowSequence(completed, null);
+        Mediator clone = createSlowClone(6, 1, 2);
+        ((ManagedLifecycle) clone).init(testCtx.getEnvironment());
+        try {
+            clone.mediate(testCtx);
+            // one message may be running and two queued when mediate() returns, the splitting
+            // thread must have waited for the others
+            assertTrue("only " + completed.get() + " targets completed before mediate() " +
+                    "returned", completed.get() >= 3);
+
+            waitForCompletion(completed, 6);
+            assertEquals(6, completed.get());
+        } finally {
+            ((ManagedLifecycle) clone).destroy();
+        }
+    }
+
+    public void testCloningOnPoolThreadRunsTargetsInPlace() throws Exception {
+        final AtomicInteger completed = new AtomicInteger();
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        addSlowSequence(completed, threads);
+        final Mediator clone = createSlowClone(6, 1, 1);
+        ((ManagedLifecycle) clone).init(testCtx.getEnvironment());
+        try {
+            // split on a thread of the shared executor, which must never wait for the
+            // targets queued on the same executor
+            final Thread[] splitter = new Thread[1];
+            final CountDownLatch split = new CountDownLatch(1);
+            testCtx.getEnvironment().getExecutorService().execute(new Runnable() {
+                @Override
+                public void run() {
+                    splitter[0] = Thread.currentThread();
+                    clone.mediate(testCtx);
+                    split.countDown();
+                }
+            });
+            assertTrue(split.await(10, TimeUnit.SECONDS));
+            assertTrue("the targets over the limits must run on the splitting thread",
+                    threads.contains(splitter[0]));
+
+            waitForCompletion(completed, 6);
+            assertEquals(6, completed.get());
+        } finally {
+            ((ManagedLifecycle) clone).destroy();
+        }
+    }
+
+    private void addSlowSequence(final AtomicInteger completed, final Set<Thread> threads) {
+        SequenceMediator slowSeq = new SequenceMediator();
+        slowSeq.addChild(new AbstractMediator() {
+            @Override
+            public boolean mediate(MessageContext synCtx) {
+                if (threads != null) {
+                    threads.add(Thread.currentThread());
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+                completed.incrementAndGet();
+                return true;
+            }
+        });
+        testCtx.getConfiguration().addSequence("slowSeq", slowSeq);
+    }
+
+    private Mediator createSlowClone(int targets, int maxConcurrency, int maxPending)
+            throws Exception {
+        StringBuilder config = new StringBuilder("<clone maxConcurrency=\"" + maxConcurrency +
+            "\" maxPending=\"" + maxPending + "\" xmlns=\"http://ws.apache.org/ns/synapse\">");
+        for (int i = 0; i < targets; i++) {
+            config.append("<target sequence=\"slowSeq\"/>");
+        }
+        config.append("</clone>");
+        return fac.createMediator(createOMElement(config.toString()), new Properties());
+    }
+
+    private void waitForCompletion(AtomicInteger completed, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (completed.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
 }
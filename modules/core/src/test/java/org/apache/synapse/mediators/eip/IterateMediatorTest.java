@@ -19,13 +19,20 @@
 
 package org.apache.synapse.mediators.eip;
 
+import org.apache.synapse.config.xml.AggregateMediatorFactory;
 import org.apache.synapse.config.xml.IterateMediatorFactory;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.Mediator;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -89,4 +96,117 @@ public class IterateMediatorTest extends AbstractSplitMediatorTestCase {
                 .getFirstElement().getFirstElement().getText(), helperMediator.getCheckString());
         }
     }
+
+    public void testIteratedEnvelopesAreNotShared() throws Exception {
+        List<MessageContext> recorded = addMutatingSequence("mutatingSeq");
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"//original/itr\" sequential=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\"><target sequence=\"mutatingSeq\"/>" +
+            "</iterate>"), new Properties());
+        assertFalse(iterate.mediate(testCtx));
+
+        assertEquals(2, recorded.size());
+        assertEnvelopesNotShared(recorded, null);
+    }
+
+    public void testContinueParentLeavesParentIntact() throws Exception {
+        List<MessageContext> recorded = addMutatingSequence("mutatingSeq");
+        SOAPEnvelope envelope = testCtx.getEnvelope();
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"//original/itr\" continueParent=\"true\" sequential=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\"><target sequence=\"mutatingSeq\"/>" +
+            "</iterate>"), new Properties());
+        assertTrue(iterate.mediate(testCtx));
+
+        assertEquals(2, recorded.size());
+        assertEnvelopesNotShared(recorded, envelope);
+        // the iterated elements are neither detached from nor changed in the parent
+        assertSame(envelope, testCtx.getEnvelope());
+        Iterator itr = envelope.getBody().getFirstElement().getChildElements();
+        assertEquals("test-split-context-itr1-body", ((OMElement) itr.next()).getText());
+        assertEquals("test-split-context-itr2-body", ((OMElement) itr.next()).getText());
+        assertFalse(itr.hasNext());
+    }
+
+    public void testStreamingIteration() throws Exception {
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"//original/itr\" streaming=\"true\" sequential=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\"><target soapAction=\"urn:iterate\" " +
+            "sequence=\"seqRef\"/></iterate>"), new Properties());
+        helperMediator.clearMediatedContexts();
+        iterate.mediate(testCtx);
+
+        MessageContext mediatedCtx = helperMediator.getMediatedContext(0);
+        assertEquals("urn:iterate", mediatedCtx.getSoapAction());
+        assertEquals("0" + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + "-1",
+            mediatedCtx.getProperty(EIPConstants.MESSAGE_SEQUENCE));
+        mediatedCtx = helperMediator.getMediatedContext(1);
+        assertEquals("1" + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + "2",
+            mediatedCtx.getProperty(EIPConstants.MESSAGE_SEQUENCE));
+        assertEquals("test-split-context-itr2-body",
+            mediatedCtx.getEnvelope().getBody().getFirstElement().getText());
+        assertNull(helperMediator.getMediatedContext(2));
+    }
+
+    public void testStreamingIterationWithAggregation() throws Exception {
+        StringBuilder payload = new StringBuilder("<original xmlns:ns=\"urn:test\">");
+        for (int i = 0; i < 20; i++) {
+            payload.append("<itr>ns:item").append(i).append("</itr>");
+        }
+        payload.append("</original>");
+        SOAPEnvelope envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        envelope.getBody().addChild(createOMElement(payload.toString()));
+        testCtx.setEnvelope(envelope);
+
+        // the timeout is much longer than the test is allowed to wait, so the aggregation
+        // can only complete by finding the total number of messages
+        Mediator aggregate = new AggregateMediatorFactory().createMediator(createOMElement(
+            "<aggregate xmlns=\"http://ws.apache.org/ns/synapse\"><completeCondition " +
+            "timeout=\"60\"/><onComplete expression=\"//itr\" sequence=\"aggregated\"/>" +
+            "</aggregate>"), new Properties());
+        SequenceMediator aggregateSeq = new SequenceMediator();
+        aggregateSeq.addChild(aggregate);
+        testCtx.getConfiguration().addSequence("aggregateSeq", aggregateSeq);
+
+        final List<MessageContext> aggregated = new ArrayList<MessageContext>();
+        SequenceMediator onComplete = new SequenceMediator();
+        onComplete.addChild(new AbstractMediator() {
+            @Override
+            public boolean mediate(MessageContext synCtx) {
+                synchronized (aggregated) {
+                    aggregated.add(synCtx);
+                }
+                return false;
+            }
+        });
+        testCtx.getConfiguration().addSequence("aggregated", onComplete);
+
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"//original/itr\" streaming=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\"><target sequence=\"aggregateSeq\"/>" +
+            "</iterate>"), new Properties());
+        iterate.mediate(testCtx);
+
+        for (int i = 0; i < 100; i++) {
+            synchronized (aggregated) {
+                if (!aggregated.isEmpty()) {
+                    break;
+                }
+            }
+            Thread.sleep(100);
+        }
+        synchronized (aggregated) {
+            assertEquals(1, aggregated.size());
+            OMElement body = aggregated.get(0).getEnvelope().getBody();
+            int count = 0;
+            for (Iterator itr = body.getChildElements(); itr.hasNext();) {
+                OMElement item = (OMElement) itr.next();
+                // prefixes used in the content still resolve in the split messages
+                assertEquals("urn:test", item.findNamespaceURI("ns"));
+                count++;
+            }
+            assertEquals(20, count);
+        }
+        ((ManagedLifecycle) aggregate).destroy();
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.mediators.eip.splitter;
+
+import junit.framework.TestCase;
+import org.apache.synapse.SynapseException;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StreamingPathTest extends TestCase {
+
+    private static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String NS = "http://services.samples";
+
+    private Map<String, String> namespaces = new HashMap<String, String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        namespaces.put("soapenv", SOAP_NS);
+        namespaces.put("m", NS);
+    }
+
+    public void testAbsolutePath() {
+        StreamingPath path = StreamingPath.compile(
+                "/soapenv:Envelope/soapenv:Body/m:orders/m:order", namespaces);
+        assertTrue(path.matches(stack(new QName(NS, "orders"), new QName(NS, "order"))));
+        assertFalse(path.matches(stack(new QName(NS, "orders"))));
+        assertFalse(path.matches(stack(new QName(NS, "orders"), new QName("order"))));
+        assertFalse(path.matches(stack(new QName(NS, "orders"), new QName(NS, "order"),
+                new QName(NS, "order"))));
+    }
+
+    public void testDescendantPath() {
+        StreamingPath path = StreamingPath.compile("//m:orders/m:order", namespaces);
+        assertTrue(path.matches(stack(new QName(NS, "orders"), new QName(NS, "order"))));
+        assertTrue(path.matches(stack(new QName("batch"), new QName(NS, "orders"),
+                new QName(NS, "order"))));
+        assertFalse(path.matches(stack(new QName(NS, "order"))));
+
+        path = StreamingPath.compile("//order", namespaces);
+        assertTrue(path.matches(stack(new QName("batch"), new QName("order"))));
+        assertFalse(path.matches(stack(new QName("batch"), new QName(NS, "order"))));
+    }
+
+    public void testRelativePaths() {
+        StreamingPath path = StreamingPath.compile("soapenv:Body/*/m:order", namespaces);
+        assertTrue(path.matches(stack(new QName("orders"), new QName(NS, "order"))));
+        assertFalse(path.matches(stack(new QName(NS, "order"))));
+
+        path = StreamingPath.compile("$body/m:orders/m:order", namespaces);
+        assertTrue(path.matches(stack(new QName(NS, "orders"), new QName(NS, "order"))));
+        assertFalse(path.matches(stack(new QName("batch"), new QName(NS, "orders"),
+                new QName(NS, "order"))));
+    }
+
+    public void testUnsupportedPaths() {
+        String[] unsupported = {"//m:order[1]", "//x:order", "count(//m:order)", "//@id", "",
+                "$header/m:order", "//m:orders/text()"};
+        for (String expression : unsupported) {
+            try {
+                StreamingPath.compile(expression, namespaces);
+                fail("Expected the path to be rejected : " + expression);
+            } catch (SynapseException expected) {
+                // expected
+            }
+        }
+    }
+
+    private List<QName> stack(QName... names) {
+        List<QName> stack = new ArrayList<QName>();
+        stack.add(new QName(SOAP_NS, "Envelope"));
+        stack.add(new QName(SOAP_NS, "Body"));
+        for (QName name : names) {
+            stack.add(name);
+        }
+        return stack;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.mediators.store;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.store.InMemoryMessageStore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class MessageStoreMediatorTest extends TestCase {
+
+    public void testRefusedMessageFailsMediation() throws Exception {
+        SynapseConfiguration synCfg = new SynapseConfiguration();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(InMemoryMessageStore.CAPACITY, "1");
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        store.setName("testStore");
+        store.setParameters(parameters);
+        store.init(new Axis2SynapseEnvironment(synCfg));
+        synCfg.addMessageStore("testStore", store);
+
+        MessageContext stored = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        stored.setMessageID("ID0");
+        assertTrue(store.offer(stored));
+
+        MessageContext synCtx = TestUtils.createSynapseMessageContext("<test/>", synCfg);
+        synCtx.setMessageID("ID1");
+        ((Axis2MessageContext) synCtx).getAxis2MessageContext().setConfigurationContext(
+                new ConfigurationContext(new AxisConfiguration()));
+
+        MessageStoreMediator mediator = new MessageStoreMediator();
+        mediator.setMessageStoreName("testStore");
+        try {
+            mediator.mediate(synCtx);
+            fail("A message refused by the store should fail the mediation");
+        } catch (SynapseException expected) {
+            assertTrue(expected.getMessage().contains("ID1"));
+        }
+        assertEquals(1, store.size());
+        assertNull(store.get("ID1"));
+    }
+}
@@ -20,10 +20,21 @@
 package org.apache.synapse.mediators.transform;
 
 import junit.framework.TestCase;
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axis2.Constants;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.json.JSONMessageFormatter;
+import org.apache.axis2.json.JSONOMBuilder;
+import org.apache.axis2.transport.MessageFormatter;
+import org.apache.axis2.util.MessageProcessorSelector;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.TestUtils;
 import org.apache.synapse.util.xpath.SynapseXPath;
 
+import java.io.ByteArrayOutputStream;
+
 public class PayloadFactoryMediatorTest extends TestCase {
 
     private static final String SOURCE =
@@ -57,6 +68,100 @@ public class PayloadFactoryMediatorTest extends TestCase {
         testTransformation(mediator);
     }
 
+    public void testAttributeAndRepeatedArgs() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat("<m:getQuote xmlns:m=\"http://services.samples\" m:id=\"$1-$2\">" +
+                "<m:request><m:symbol>$1</m:symbol><m:symbol>$1</m:symbol></m:request></m:getQuote>");
+        PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+        arg.setValue("IBM");
+        mediator.addArgument(arg);
+        arg = new PayloadFactoryMediator.Argument();
+        arg.setValue("$2 co");
+        mediator.addArgument(arg);
+
+        MessageContext synCtx = TestUtils.getTestContext(SOURCE);
+        assertTrue(mediator.mediate(synCtx));
+
+        SynapseXPath xpath = new SynapseXPath("//m:getQuote/@m:id");
+        xpath.addNamespace("m", "http://services.samples");
+        assertEquals("IBM-$2 co", xpath.stringValueOf(synCtx));
+        xpath = new SynapseXPath("count(//m:getQuote/m:request/m:symbol[text()='IBM'])");
+        xpath.addNamespace("m", "http://services.samples");
+        assertEquals("2", xpath.stringValueOf(synCtx));
+    }
+
+    public void testMarkupArgs() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat("<m:getQuote xmlns:m=\"http://services.samples\"><m:request>$1" +
+                "</m:request></m:getQuote>");
+        PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+        arg.setValue("<m:symbol>IBM</m:symbol>");
+        mediator.addArgument(arg);
+
+        testTransformation(mediator);
+    }
+
+    public void testJsonFormat() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setMediaType(PayloadFactoryMediator.JSON_TYPE);
+        mediator.setFormat("{\"getQuote\":{\"request\":{\"symbol\":\"$1\"}}}");
+        PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+        SynapseXPath expression = new SynapseXPath("//m:Code");
+        expression.addNamespace("m", "http://services.samples");
+        arg.setExpression(expression);
+        mediator.addArgument(arg);
+
+        Axis2MessageContext synCtx = TestUtils.getAxis2MessageContext(SOURCE, null);
+        org.apache.axis2.context.MessageContext axis2MsgCtx = synCtx.getAxis2MessageContext();
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        axisConfig.addMessageBuilder("application/json", new JSONOMBuilder());
+        axisConfig.addMessageFormatter("application/json", new JSONMessageFormatter());
+        axis2MsgCtx.setConfigurationContext(new ConfigurationContext(axisConfig));
+
+        assertTrue(mediator.mediate(synCtx));
+        assertEquals("application/json",
+                axis2MsgCtx.getProperty(Constants.Configuration.MESSAGE_TYPE));
+        assertEquals("application/json",
+                axis2MsgCtx.getProperty(Constants.Configuration.CONTENT_TYPE));
+
+        MessageFormatter formatter = MessageProcessorSelector.getMessageFormatter(axis2MsgCtx);
+        assertTrue(formatter instanceof JSONMessageFormatter);
+        OMOutputFormat format = new OMOutputFormat();
+        format.setCharSetEncoding("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.writeTo(axis2MsgCtx, format, out, false);
+        assertEquals("{\"getQuote\":{\"request\":{\"symbol\":\"IBM\"}}}",
+                new String(out.toByteArray(), "UTF-8"));
+    }
+
+    public void testLargeFormat() throws Exception {
+
+        StringBuilder format = new StringBuilder("<m:getQuote xmlns:m=\"http://services.samples\">");
+        for (int i = 0; i < 2000; i++) {
+            format.append("<m:request><m:id>").append(i).append("</m:id><m:symbol>$1</m:symbol>")
+                    .append("</m:request>");
+        }
+        format.append("</m:getQuote>");
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat(format.toString());
+        PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+        arg.setValue("IBM");
+        mediator.addArgument(arg);
+
+        for (int i = 0; i < 3; i++) {
+            MessageContext synCtx = TestUtils.getTestContext(SOURCE);
+            assertTrue(mediator.mediate(synCtx));
+
+            SynapseXPath xpath = new SynapseXPath("count(//m:symbol[text()='IBM'])");
+            xpath.addNamespace("m", "http://services.samples");
+            assertEquals("2000", xpath.stringValueOf(synCtx));
+        }
+    }
+
     private void testTransformation(PayloadFactoryMediator mediator) throws Exception {
 
         MessageContext synCtx = TestUtils.getTestContext(SOURCE);
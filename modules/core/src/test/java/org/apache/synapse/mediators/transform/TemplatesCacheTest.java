@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+import junit.framework.TestCase;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TemplatesCacheTest extends TestCase {
+
+    private static final String XSLT =
+            "<xsl:stylesheet version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>" +
+            "<xsl:template match='/'><out/></xsl:template></xsl:stylesheet>";
+
+    private final AtomicInteger compilations = new AtomicInteger(0);
+
+    private Callable<Templates> compiler() {
+        return new Callable<Templates>() {
+            @Override
+            public Templates call() throws Exception {
+                compilations.incrementAndGet();
+                return TransformerFactory.newInstance().newTemplates(
+                        new StreamSource(new StringReader(XSLT)));
+            }
+        };
+    }
+
+    public void testTemplatesAreCompiledOnce() throws Exception {
+        TemplatesCache cache = new TemplatesCache(10);
+        Object source = new Object();
+        Templates first = cache.getTemplates("key", source, false, compiler());
+        Templates second = cache.getTemplates("key", source, false, compiler());
+        assertSame(first, second);
+        assertEquals(1, compilations.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testStaleTemplatesAreRecompiled() throws Exception {
+        TemplatesCache cache = new TemplatesCache(10);
+        Object source = new Object();
+        Templates first = cache.getTemplates("key", source, false, compiler());
+        // expired dynamic resource
+        Templates second = cache.getTemplates("key", source, true, compiler());
+        assertNotSame(first, second);
+        // redeployed entry definition
+        Templates third = cache.getTemplates("key", new Object(), false, compiler());
+        assertNotSame(second, third);
+        assertEquals(3, compilations.get());
+    }
+
+    public void testLeastRecentlyUsedTemplatesAreEvicted() throws Exception {
+        TemplatesCache cache = new TemplatesCache(2);
+        Object source = new Object();
+        cache.getTemplates("a", source, false, compiler());
+        cache.getTemplates("b", source, false, compiler());
+        cache.getTemplates("a", source, false, compiler());
+        cache.getTemplates("c", source, false, compiler());
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+
+        // "a" was used more recently than "b"
+        cache.getTemplates("a", source, false, compiler());
+        assertEquals(3, compilations.get());
+        cache.getTemplates("b", source, false, compiler());
+        assertEquals(4, compilations.get());
+    }
+
+    public void testFailuresAreNotCached() throws Exception {
+        TemplatesCache cache = new TemplatesCache(10);
+        try {
+            cache.getTemplates("key", null, false, new Callable<Templates>() {
+                @Override
+                public Templates call() throws Exception {
+                    throw new IllegalStateException("compilation failed");
+                }
+            });
+            fail("The compilation error should be propagated");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, cache.getSize());
+        assertNotNull(cache.getTemplates("key", null, false, compiler()));
+    }
+
+    public void testConcurrentMissesCompileOnce() throws Exception {
+        final TemplatesCache cache = new TemplatesCache(10);
+        final Object source = new Object();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch compiling = new CountDownLatch(1);
+        final Callable<Templates> slowCompiler = new Callable<Templates>() {
+            @Override
+            public Templates call() throws Exception {
+                compiling.countDown();
+                Thread.sleep(200);
+                return compiler().call();
+            }
+        };
+
+        Thread[] threads = new Thread[8];
+        final Templates[] results = new Templates[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[index] = cache.getTemplates("key", source, false, slowCompiler);
+                    } catch (Exception ignored) {
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, compilations.get());
+        for (Templates result : results) {
+            assertSame(results[0], result);
+        }
+    }
+}
@@ -21,10 +21,16 @@ package org.apache.synapse.message.store;
 
 import junit.framework.TestCase;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.mediators.TestUtils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 public class InMemoryMessageStoreTest extends TestCase {
     
@@ -124,6 +130,108 @@ public class InMemoryMessageStoreTest extends TestCase {
         assertEquals(0, observer.getCount());
     }
     
+    public void testIndexedAccess() throws Exception {
+        MessageStore store = new InMemoryMessageStore();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            store.offer(createMessageContext("ID" + i));
+            expected.add("ID" + i);
+        }
+
+        // remove messages from the middle as well as from the head of the store
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            String id = expected.remove(random.nextInt(expected.size()));
+            assertEquals(id, store.remove(id).getMessageID());
+            assertNull(store.get(id));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(expected.remove(0), store.poll().getMessageID());
+        }
+
+        assertEquals(expected.size(), store.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), store.get(i).getMessageID());
+            assertEquals(expected.get(i), store.get(expected.get(i)).getMessageID());
+        }
+        assertNull(store.get(expected.size()));
+        assertNull(store.remove("ID0"));
+    }
+
+    public void testDuplicateMessageIds() throws Exception {
+        MessageStore store = new InMemoryMessageStore();
+        MessageContext first = createMessageContext("FOO");
+        MessageContext second = createMessageContext("FOO");
+        store.offer(first);
+        store.offer(second);
+
+        assertSame(first, store.get("FOO"));
+        store.poll();
+        assertSame(second, store.get("FOO"));
+        assertSame(second, store.remove("FOO"));
+        assertEquals(0, store.size());
+    }
+
+    public void testManyDuplicateMessageIds() throws Exception {
+        MessageStore store = new InMemoryMessageStore();
+        List<MessageContext> copies = new ArrayList<MessageContext>();
+        for (int i = 0; i < 5; i++) {
+            MessageContext copy = createMessageContext("FOO");
+            copies.add(copy);
+            store.offer(copy);
+            store.offer(createMessageContext("ID" + i));
+        }
+
+        // the copies are found oldest first, however they are removed
+        assertSame(copies.get(0), store.poll());
+        assertSame(copies.get(1), store.get("FOO"));
+        assertEquals("ID0", store.poll().getMessageID());
+        assertSame(copies.get(1), store.remove("FOO"));
+        assertSame(copies.get(2), store.get("FOO"));
+        assertEquals("ID1", store.poll().getMessageID());
+        assertSame(copies.get(2), store.poll());
+        assertSame(copies.get(3), store.remove("FOO"));
+        assertSame(copies.get(4), store.get("FOO"));
+        assertEquals(4, store.size());
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertNull(store.get("FOO"));
+
+        // a store full of copies of the same message is still cleared in linear time
+        for (int i = 0; i < 100000; i++) {
+            store.offer(copies.get(0));
+        }
+        long start = System.currentTimeMillis();
+        store.clear();
+        assertEquals(0, store.size());
+        assertNull(store.get("FOO"));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    public void testCapacity() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(InMemoryMessageStore.CAPACITY, "3");
+        MessageStore store = new InMemoryMessageStore();
+        store.setParameters(parameters);
+        store.init(new Axis2SynapseEnvironment(new SynapseConfiguration()));
+        populateStore(store, 3);
+        assertFalse(store.offer(createMessageContext("FOO")));
+        assertEquals(3, store.size());
+        assertEquals("ID0", store.peek().getMessageID());
+
+        parameters.put(InMemoryMessageStore.OVERFLOW_POLICY,
+                InMemoryMessageStore.OVERFLOW_DROP_OLDEST);
+        store = new InMemoryMessageStore();
+        store.setParameters(parameters);
+        store.init(new Axis2SynapseEnvironment(new SynapseConfiguration()));
+        populateStore(store, 3);
+        assertTrue(store.offer(createMessageContext("FOO")));
+        assertEquals(3, store.size());
+        assertEquals("ID1", store.peek().getMessageID());
+        assertEquals("FOO", store.get(2).getMessageID());
+    }
+
     private MessageContext createMessageContext(String identifier) throws Exception {
         MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
         msg.setMessageID(identifier);
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+public class JournaledMessageStoreTest extends TestCase {
+
+    private static final File JOURNAL_DIR = new File("target" + File.separator + "journal");
+
+    @Override
+    protected void setUp() throws Exception {
+        File[] files = JOURNAL_DIR.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+    }
+
+    public void testBasics() throws Exception {
+        MessageStore store = createStore();
+        populateStore(store, 10);
+        assertEquals(10, store.size());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("ID" + i, store.get(i).getMessageID());
+            assertEquals("ID" + i, store.get("ID" + i).getMessageID());
+        }
+
+        List<MessageContext> list = store.getAll();
+        assertEquals(10, list.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("ID" + i, list.get(i).getMessageID());
+        }
+
+        assertEquals("ID0", store.peek().getMessageID());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("ID" + i, store.poll().getMessageID());
+        }
+        assertNull(store.poll());
+        try {
+            store.remove();
+            fail();
+        } catch (NoSuchElementException expected) {
+
+        }
+
+        populateStore(store, 10);
+        assertEquals("ID5", store.remove("ID5").getMessageID());
+        assertNull(store.get("ID5"));
+        assertEquals("ID6", store.get(5).getMessageID());
+        store.clear();
+        assertEquals(0, store.size());
+        store.destroy();
+    }
+
+    public void testMessageContent() throws Exception {
+        MessageStore store = createStore();
+        MessageContext msg = createMessageContext("FOO");
+        msg.setProperty("stringProperty", "bar");
+        msg.setProperty("intProperty", 10);
+        msg.setProperty("objectProperty", new Object());
+        msg.setSoapAction("urn:getQuote");
+        store.offer(msg);
+
+        msg = store.peek();
+        assertEquals("FOO", msg.getMessageID());
+        assertEquals("bar", msg.getProperty("stringProperty"));
+        assertEquals(10, msg.getProperty("intProperty"));
+        assertNull(msg.getProperty("objectProperty"));
+        assertEquals("urn:getQuote", msg.getSoapAction());
+        assertEquals("test", msg.getEnvelope().getBody().getFirstElement().getLocalName());
+        store.destroy();
+    }
+
+    public void testRecovery() throws Exception {
+        MessageStore store = createStore();
+        populateStore(store, 100);
+        for (int i = 0; i < 40; i++) {
+            store.poll();
+        }
+        store.remove("ID50");
+        store.destroy();
+
+        store = createStore();
+        assertEquals(59, store.size());
+        assertEquals("ID40", store.peek().getMessageID());
+        assertNull(store.get("ID50"));
+        assertEquals("ID51", store.get(10).getMessageID());
+        store.offer(createMessageContext("FOO"));
+        assertEquals("FOO", store.get(59).getMessageID());
+        store.destroy();
+    }
+
+    public void testDuplicateMessageIds() throws Exception {
+        MessageStore store = createStore();
+        for (int i = 0; i < 4; i++) {
+            MessageContext copy = createMessageContext("FOO");
+            copy.setProperty("copy", i);
+            store.offer(copy);
+            store.offer(createMessageContext("ID" + i));
+        }
+
+        // the copies are found oldest first, however they are removed
+        assertEquals(0, store.poll().getProperty("copy"));
+        assertEquals(1, store.get("FOO").getProperty("copy"));
+        assertEquals(1, store.remove("FOO").getProperty("copy"));
+        assertEquals(2, store.get("FOO").getProperty("copy"));
+        store.destroy();
+
+        store = createStore();
+        assertEquals(2, store.remove("FOO").getProperty("copy"));
+        assertEquals(3, store.get("FOO").getProperty("copy"));
+        assertEquals(3, store.remove("FOO").getProperty("copy"));
+        assertNull(store.get("FOO"));
+        assertEquals(4, store.size());
+        store.destroy();
+    }
+
+    public void testSegmentCompaction() throws Exception {
+        MessageStore store = createStore();
+        populateStore(store, 200);
+        int segments = countSegments();
+        assertTrue(segments > 2);
+
+        // leave a single message behind in the oldest segment
+        for (int i = 1; i < 200; i++) {
+            store.remove("ID" + i);
+        }
+        assertTrue(countSegments() <= 2);
+        store.destroy();
+
+        store = createStore();
+        assertEquals(1, store.size());
+        assertEquals("ID0", store.poll().getMessageID());
+        store.destroy();
+    }
+
+    public void testRecoveryWithBlankSegment() throws Exception {
+        MessageStore store = createStore();
+        populateStore(store, 3);
+        store.destroy();
+
+        // a new segment file whose header never made it to the disk
+        File[] files = JOURNAL_DIR.listFiles();
+        Arrays.sort(files);
+        String last = files[files.length - 1].getName();
+        long id = Long.parseLong(last.substring(0, last.length() -
+                JournalSegment.FILE_EXTENSION.length()));
+        RandomAccessFile file = new RandomAccessFile(
+                new File(JOURNAL_DIR, JournalSegment.getFileName(id + 1)), "rw");
+        try {
+            file.setLength(8192);
+        } finally {
+            file.close();
+        }
+
+        store = createStore();
+        assertEquals(3, store.size());
+        store.offer(createMessageContext("FOO"));
+        store.destroy();
+
+        store = createStore();
+        assertEquals(4, store.size());
+        assertEquals("FOO", store.get(3).getMessageID());
+        store.destroy();
+    }
+
+    public void testUndecodableMessageIsDiscarded() throws Exception {
+        MessageStore store = createStore();
+        populateStore(store, 4);
+        store.destroy();
+        corruptFirstMessage();
+
+        store = createStore();
+        assertEquals(4, store.size());
+        assertEquals("ID1", store.peek().getMessageID());
+        assertEquals(3, store.size());
+        assertEquals("ID1", store.poll().getMessageID());
+        store.destroy();
+
+        // the discarded message stays removed
+        store = createStore();
+        assertEquals(2, store.size());
+        assertEquals("ID2", store.poll().getMessageID());
+        store.destroy();
+    }
+
+    public void testOfferWhenInterrupted() throws Exception {
+        MessageStore store = createStore();
+        Thread.currentThread().interrupt();
+        try {
+            assertTrue(store.offer(createMessageContext("ID0")));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        store.destroy();
+
+        store = createStore();
+        assertEquals("ID0", store.poll().getMessageID());
+        store.destroy();
+    }
+
+    private MessageStore createStore() {
+        MessageStore store = new JournaledMessageStore();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(JournaledMessageStore.JOURNAL_DIRECTORY, JOURNAL_DIR.getPath());
+        parameters.put(JournaledMessageStore.SEGMENT_SIZE, "8192");
+        store.setParameters(parameters);
+        store.init(new Axis2SynapseEnvironment(new SynapseConfiguration()));
+        return store;
+    }
+
+    /**
+     * Overwrite the version of the first stored message with an unknown one, keeping the
+     * checksum of the record valid
+     */
+    private void corruptFirstMessage() throws Exception {
+        File[] files = JOURNAL_DIR.listFiles();
+        Arrays.sort(files);
+        RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+        try {
+            int position = JournalSegment.HEADER_SIZE;
+            file.seek(position);
+            byte[] body = new byte[file.readInt()];
+            file.seek(position + 8);
+            file.readFully(body);
+            // the record type and the sequence number are followed by the message version
+            body[9] = (byte) 0x7f;
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            file.seek(position + 4);
+            file.writeInt((int) crc.getValue());
+            file.write(body);
+        } finally {
+            file.close();
+        }
+    }
+
+    private int countSegments() {
+        return JOURNAL_DIR.list().length;
+    }
+
+    private MessageContext createMessageContext(String identifier) throws Exception {
+        MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        msg.setMessageID(identifier);
+        return msg;
+    }
+
+    private void populateStore(MessageStore store, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            store.offer(createMessageContext("ID" + i));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.registry;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMNode;
+import org.apache.synapse.config.Entry;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+public class RefreshAheadRegistryTest extends TestCase {
+
+    private static final String KEY = "resource";
+    private static final String VALUE_1 = "<value1/>";
+    private static final String VALUE_2 = "<value2/>";
+
+    private SimpleInMemoryRegistry registry;
+
+    @Override
+    public void setUp() {
+        Map<String, OMNode> data = new HashMap<String, OMNode>();
+        data.put(KEY, TestUtils.createOMElement(VALUE_1));
+        registry = new SimpleInMemoryRegistry(data, 2000L);
+
+        Properties props = new Properties();
+        props.setProperty(AbstractRegistry.REFRESH_AHEAD, "true");
+        props.setProperty(AbstractRegistry.REFRESH_AHEAD_FACTOR, "0.5");
+        registry.init(props);
+    }
+
+    public void testBackgroundRefresh() throws Exception {
+        Entry entry = newEntry();
+        assertEquals("value1", getLocalName(registry.getResource(entry, new Properties())));
+        assertEquals(1, registry.getHitCount());
+        assertEquals(1, registry.getCacheMissCount());
+
+        // change the resource and read it after half of the cache period
+        Thread.sleep(10L);
+        registry.updateResource(KEY, TestUtils.createOMElement(VALUE_2));
+        Thread.sleep(1200L);
+        assertEquals("value1", getLocalName(registry.getResource(entry, new Properties())));
+        waitForRefresh(1);
+
+        // the new version should be loaded by the background refresh, before the cache expires
+        assertFalse(entry.isExpired());
+        assertEquals("value2", getLocalName(registry.getResource(entry, new Properties())));
+        assertEquals(2, registry.getHitCount());
+        assertEquals(2, registry.getCacheHitCount());
+        assertEquals(0, registry.getRefreshFailureCount());
+    }
+
+    public void testStaleValueOnFailure() throws Exception {
+        Entry entry = newEntry();
+        assertEquals("value1", getLocalName(registry.getResource(entry, new Properties())));
+
+        // the resource can no longer be loaded once its cache period has expired
+        registry.delete(KEY);
+        entry.setExpiryTime(System.currentTimeMillis() - 1);
+        assertEquals("value1", getLocalName(registry.getResource(entry, new Properties())));
+        assertEquals(1, registry.getRefreshCount());
+        assertEquals(1, registry.getRefreshFailureCount());
+
+        // the cached copy should be kept for another cache period
+        assertFalse(entry.isExpired());
+        assertEquals("value1", getLocalName(registry.getResource(entry, new Properties())));
+    }
+
+    private Entry newEntry() {
+        Entry entry = new Entry(KEY);
+        entry.setType(Entry.REMOTE_ENTRY);
+        return entry;
+    }
+
+    private void waitForRefresh(long count) throws InterruptedException {
+        for (int i = 0; i < 50 && registry.getRefreshCount() < count; i++) {
+            Thread.sleep(100L);
+        }
+        assertEquals(count, registry.getRefreshCount());
+    }
+
+    private String getLocalName(Object value) {
+        return ((OMElement) value).getLocalName();
+    }
+}
@@ -309,6 +309,61 @@ public class APIDispatcherTest extends RESTMediationTestCase {
         assertNull(synCtx.getProperty(RESTConstants.SYNAPSE_REST_API_VERSION));
     }
 
+    public void testNestedContextDispatch() throws Exception {
+        API defaultAPI = new API("DefaultAPI", "/");
+        API fooAPI = new API("FooAPI", "/foo");
+        API fooBarAPI = new API("FooBarAPI", "/foo/bar");
 
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        synapseConfig.addAPI(defaultAPI.getName(), defaultAPI);
+        synapseConfig.addAPI(fooAPI.getName(), fooAPI);
+        synapseConfig.addAPI(fooBarAPI.getName(), fooBarAPI);
+
+        RESTRequestHandler handler = new RESTRequestHandler();
+
+        // The API with the most specific context should get the message
+        MessageContext synCtx = getMessageContext(synapseConfig, false, "/foo/bar/baz", "GET");
+        handler.process(synCtx);
+        assertEquals("FooBarAPI", synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+
+        synCtx = getMessageContext(synapseConfig, false, "/foo/barbaz?a=5", "GET");
+        handler.process(synCtx);
+        assertEquals("FooAPI", synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+
+        synCtx = getMessageContext(synapseConfig, false, "/bar/foo", "GET");
+        handler.process(synCtx);
+        assertEquals("DefaultAPI", synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+
+        // Removing an API should make the messages fall through to the next best match
+        synapseConfig.removeAPI(fooBarAPI.getName());
+        synCtx = getMessageContext(synapseConfig, false, "/foo/bar/baz", "GET");
+        handler.process(synCtx);
+        assertEquals("FooAPI", synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+
+        synapseConfig.removeAPI(fooAPI.getName());
+        synCtx = getMessageContext(synapseConfig, false, "/foo/bar/baz", "GET");
+        handler.process(synCtx);
+        assertEquals("DefaultAPI", synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+    }
+
+    public void testLargeNumberOfAPIs() throws Exception {
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        for (int i = 0; i < 1000; i++) {
+            API api = new API("API" + i, "/services/api" + i);
+            synapseConfig.addAPI(api.getName(), api);
+        }
 
-}
\ No newline at end of file
+        RESTRequestHandler handler = new RESTRequestHandler();
+        for (int i = 0; i < 1000; i += 37) {
+            MessageContext synCtx = getMessageContext(synapseConfig, false,
+                    "/services/api" + i + "/foo?a=" + i, "GET");
+            handler.process(synCtx);
+            assertEquals("API" + i, synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+        }
+
+        MessageContext synCtx = getMessageContext(synapseConfig, false,
+                "/services/api1000", "GET");
+        assertFalse(handler.process(synCtx));
+        assertNull(synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+    }
+}
@@ -22,6 +22,9 @@ package org.apache.synapse.util;
 import javax.activation.DataHandler;
 
 import junit.framework.TestCase;
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.context.MessageContext;
 
@@ -59,4 +62,20 @@ public class MessageHelperTest extends TestCase {
         assertEquals(fromValue, result.getAddress());
     }
 
+    public void testCloneAxis2MessageContextWithoutEnvelope() throws Exception {
+        MessageContext origMc = new MessageContext();
+        SOAPEnvelope envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        envelope.getBody().addChild(AXIOMUtil.stringToOM("<test>value</test>"));
+        origMc.setEnvelope(envelope);
+        origMc.setProperty("propKey", "propValue");
+
+        MessageContext newMc = MessageHelper.cloneAxis2MessageContext(origMc, false);
+        assertNull(newMc.getEnvelope());
+        assertEquals("propValue", newMc.getProperty("propKey"));
+
+        newMc = MessageHelper.cloneAxis2MessageContext(origMc);
+        assertNotSame(envelope, newMc.getEnvelope());
+        assertEquals("value", newMc.getEnvelope().getBody().getFirstElement().getText());
+    }
+
 }
@@ -29,9 +29,11 @@ import org.apache.synapse.TestMessageContext;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.TestUtils;
+import org.jaxen.JaxenException;
 import org.jaxen.SimpleVariableContext;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -135,4 +137,45 @@ public class SynapseXPathTest extends TestCase {
         xpath.setVariableContext(variableContext);
         assertEquals("myvalue", xpath.evaluate(TestUtils.getTestContext("<test/>")));
     }
+
+    public void testDescendantXPathDocumentOrder() throws Exception {
+        MessageContext ctx = TestUtils.getTestContext(
+                "<a><b>1</b><c><a><b>2</b></a></c><b>3</b></a>");
+        List nodes = new SynapseXPath("//a/b").selectNodes(ctx);
+        assertEquals(3, nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            assertEquals(String.valueOf(i + 1), ((OMElement) nodes.get(i)).getText());
+        }
+        assertEquals("1", new SynapseXPath("//a/b").stringValueOf(ctx));
+        assertEquals(2, new SynapseXPath("//c//b").numberValueOf(ctx).intValue());
+    }
+
+    public void testGetPropertyFunction() throws Exception {
+        MessageContext synCtx = new TestMessageContext();
+        synCtx.setProperty("test", message);
+        assertEquals(message, new SynapseXPath("get-property('test')").evaluate(synCtx));
+        assertEquals(message, new SynapseXPath("get-property('default', 'test')")
+                .stringValueOf(synCtx));
+        assertEquals("", new SynapseXPath("get-property('missing')").stringValueOf(synCtx));
+    }
+
+    public void testBooleanValueOf() throws Exception {
+        MessageContext ctx = TestUtils.getTestContext("<test>" + message + "</test>");
+        ctx.setProperty("test", message);
+        assertTrue(new SynapseXPath("//test").booleanValueOf(ctx));
+        assertFalse(new SynapseXPath("//missing").booleanValueOf(ctx));
+        assertTrue(new SynapseXPath("$body/test").booleanValueOf(ctx));
+        assertTrue(new SynapseXPath("$ctx:test").booleanValueOf(ctx));
+        assertFalse(new SynapseXPath("$ctx:missing").booleanValueOf(ctx));
+    }
+
+    public void testUnresolvedPrefix() throws Exception {
+        MessageContext ctx = TestUtils.getTestContext("<m0:test xmlns:m0=\"http://somens\"/>");
+        try {
+            new SynapseXPath("$body/m0:test").selectNodes(ctx);
+            fail("An unresolved namespace prefix should be reported");
+        } catch (JaxenException expected) {
+            // expected
+        }
+    }
 }
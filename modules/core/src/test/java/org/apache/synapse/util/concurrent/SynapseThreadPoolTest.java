@@ -0,0 +1,138 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.util.concurrent;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class SynapseThreadPoolTest extends TestCase {
+
+    public void testInstrumentation() throws Exception {
+        SynapseThreadPool pool = new SynapseThreadPool(1, 1, 5, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1));
+        pool.enableMonitoring("test-monitor");
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(2);
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignore) {}
+                    done.countDown();
+                }
+            };
+            pool.execute(task);
+            pool.execute(task);
+            try {
+                pool.execute(task);
+                fail("The third task should be rejected");
+            } catch (RejectedExecutionException expected) {}
+            assertEquals(1, pool.getRejectedCount());
+
+            Thread.sleep(50);
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+            pool.getQueueWaitTime().collect();
+            pool.getExecutionTime().collect();
+            assertEquals(2, pool.getQueueWaitTime().getAllTimeCount());
+            assertEquals(2, pool.getExecutionTime().getAllTimeCount());
+            // the second task waited for the first one to complete
+            assertTrue(pool.getQueueWaitTime().getPercentile(1, 100) >= 40);
+
+            pool.resetStatistics();
+            assertEquals(0, pool.getRejectedCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testQueuedTasksAreUnwrapped() throws Exception {
+        SynapseThreadPool pool = new SynapseThreadPool(1, 1, 5, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(2));
+        pool.enableMonitoring("test-monitor");
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignore) {}
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Runnable removed = new DummyTask();
+            Runnable queued = new DummyTask();
+            pool.execute(removed);
+            pool.execute(queued);
+            assertTrue(pool.remove(removed));
+            assertFalse(pool.remove(removed));
+            assertEquals(1, pool.getQueue().size());
+
+            List<Runnable> pending = pool.shutdownNow();
+            assertEquals(1, pending.size());
+            assertSame(queued, pending.get(0));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testAdaptiveSizing() {
+        SynapseThreadPool pool = new SynapseThreadPool(4, 16, 5, 0, "test-group", "test");
+        pool.enableAdaptiveSizing(100, 0.8);
+        try {
+            // tasks wait too long - grow
+            assertEquals(5, pool.computeCorePoolSize(4, 500, 10, 4, 0.2));
+            assertEquals(16, pool.computeCorePoolSize(16, 500, 10, 16, 0.2));
+            // unknown load average does not prevent growing
+            assertEquals(5, pool.computeCorePoolSize(4, 500, 10, 4, -1));
+            // cpu is saturated, more threads would not help
+            assertEquals(4, pool.computeCorePoolSize(4, 500, 10, 4, 0.95));
+            // nothing queued
+            assertEquals(4, pool.computeCorePoolSize(4, 500, 0, 4, 0.2));
+
+            // idle - shrink, but never below the configured core size
+            assertEquals(14, pool.computeCorePoolSize(16, 0, 0, 2, 0.2));
+            assertEquals(4, pool.computeCorePoolSize(4, 0, 0, 0, 0.2));
+            // still busy
+            assertEquals(16, pool.computeCorePoolSize(16, 0, 0, 12, 0.2));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static class DummyTask implements Runnable {
+        @Override
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util.concurrent;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerWheelTest extends TestCase {
+
+    private List<String> expired = new ArrayList<String>();
+
+    private TimerWheel<String> createWheel(int size) {
+        return new TimerWheel<String>(100, size, new TimerWheel.ExpiryHandler<String>() {
+            @Override
+            public void expired(String item) {
+                expired.add(item);
+            }
+        });
+    }
+
+    public void testExpiry() {
+        TimerWheel<String> wheel = createWheel(8);
+        long now = System.currentTimeMillis();
+        wheel.schedule("a", now + 150);
+        wheel.schedule("b", now + 450);
+        assertEquals(2, wheel.size());
+
+        assertEquals(0, wheel.expire(now + 100));
+        assertEquals(1, wheel.expire(now + 300));
+        assertEquals("a", expired.get(0));
+        assertEquals(1, wheel.expire(now + 500));
+        assertEquals("b", expired.get(1));
+        assertEquals(0, wheel.size());
+        assertEquals(2, wheel.getExpiredCount());
+    }
+
+    public void testCancel() {
+        TimerWheel<String> wheel = createWheel(8);
+        long now = System.currentTimeMillis();
+        TimerWheel.Timeout<String> timeout = wheel.schedule("a", now + 150);
+        assertEquals("a", timeout.getItem());
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        // the item is not kept reachable until the wheel reaches the cancelled timeout
+        assertNull(timeout.getItem());
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.expire(now + 1000));
+        assertTrue(expired.isEmpty());
+    }
+
+    public void testDeadlineBeyondOneTurn() {
+        // 4 slots of 100ms, the timeout is due after more than two turns
+        TimerWheel<String> wheel = createWheel(4);
+        long now = System.currentTimeMillis();
+        wheel.schedule("a", now + 1000);
+        for (long t = now; t < now + 900; t += 100) {
+            assertEquals(0, wheel.expire(t));
+        }
+        assertEquals(1, wheel.expire(now + 1100));
+        assertEquals("a", expired.get(0));
+    }
+
+    public void testPastDeadline() {
+        TimerWheel<String> wheel = createWheel(4);
+        long now = System.currentTimeMillis();
+        wheel.expire(now + 1000);
+        wheel.schedule("a", now);
+        assertEquals(1, wheel.expire(now + 1100));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testFailingHandler() {
+        TimerWheel<String> wheel = new TimerWheel<String>(100, 4,
+                new TimerWheel.ExpiryHandler<String>() {
+                    @Override
+                    public void expired(String item) {
+                        throw new IllegalStateException(item);
+                    }
+                });
+        long now = System.currentTimeMillis();
+        wheel.schedule("a", now);
+        wheel.schedule("b", now);
+        assertEquals(2, wheel.expire(now + 200));
+    }
+}
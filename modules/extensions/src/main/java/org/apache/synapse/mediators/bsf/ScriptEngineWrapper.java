@@ -0,0 +1,93 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package org.apache.synapse.mediators.bsf;
+
+import org.apache.bsf.xml.XMLHelper;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A script engine owned by a {@link ScriptMediator}, along with the state derived from it.
+ * Each engine holds its own compiled inline script, or its own copy of the functions of an
+ * external script, so that it can be handed out to a single message at a time without
+ * any further locking.
+ */
+public class ScriptEngineWrapper {
+
+    private final ScriptEngine engine;
+
+    private final XMLHelper xmlHelper;
+
+    private CompiledScript compiledScript;
+
+    /**
+     * The version of the external script sources last evaluated on this engine
+     */
+    private int scriptVersion = -1;
+
+    public ScriptEngineWrapper(ScriptEngine engine, XMLHelper xmlHelper) {
+        this.engine = engine;
+        this.xmlHelper = xmlHelper;
+    }
+
+    /**
+     * Compile the given inline script, if the underlying engine supports compilation
+     *
+     * @param scriptSourceCode the source code of the script
+     * @return true if the script was compiled
+     * @throws ScriptException if the script cannot be compiled
+     */
+    public boolean compile(String scriptSourceCode) throws ScriptException {
+        if (engine instanceof Compilable) {
+            compiledScript = ((Compilable) engine).compile(scriptSourceCode);
+            return true;
+        }
+        return false;
+    }
+
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+
+    public XMLHelper getXmlHelper() {
+        return xmlHelper;
+    }
+
+    public CompiledScript getCompiledScript() {
+        return compiledScript;
+    }
+
+    public Invocable getInvocable() {
+        return (Invocable) engine;
+    }
+
+    public int getScriptVersion() {
+        return scriptVersion;
+    }
+
+    public void setScriptVersion(int scriptVersion) {
+        this.scriptVersion = scriptVersion;
+    }
+}
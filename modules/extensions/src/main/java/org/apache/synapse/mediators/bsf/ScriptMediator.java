@@ -25,10 +25,14 @@ import com.sun.script.jruby.JRubyScriptEngineFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMText;
 import org.apache.bsf.xml.XMLHelper;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.SynapseLog;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.Entry;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.Value;
 import org.mozilla.javascript.Context;
@@ -38,8 +42,15 @@ import javax.script.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Synapse mediator that calls a function in any scripting language supported by the BSF.
@@ -57,8 +68,30 @@ import java.util.TreeMap;
  * if not specified it defaults to a function named 'mediate'. The function takes a single
  * parameter which is the Synapse MessageContext. The function may return a boolean, if it
  * does not then true is assumed.
+ * <p/>
+ * Script engines which are not multi-threaded are kept in a pool owned by the mediator, so
+ * that concurrent messages are processed by different engine instances. The size of the pool,
+ * the number of engines created at deployment time and the maximum time to wait for an
+ * engine are configured through the synapse.properties file.
  */
-public class ScriptMediator extends AbstractMediator {
+public class ScriptMediator extends AbstractMediator implements ManagedLifecycle {
+
+    /**
+     * The synapse.properties entry defining the maximum number of engines per mediator
+     */
+    public static final String ENGINE_POOL_SIZE = "synapse.script.engine.pool.size";
+
+    /**
+     * The synapse.properties entry defining the number of engines created at deployment time
+     */
+    public static final String ENGINE_POOL_WARMUP = "synapse.script.engine.pool.warmup";
+
+    /**
+     * The synapse.properties entry defining the maximum time (in milliseconds) a message
+     * waits for an engine when all the engines in the pool are in use
+     */
+    public static final String ENGINE_POOL_BORROW_TIMEOUT =
+            "synapse.script.engine.pool.borrow.timeout";
 
     /**
      * The name of the variable made available to the scripting language to access the message
@@ -70,6 +103,13 @@ public class ScriptMediator extends AbstractMediator {
      */
     private static final String JAVA_SCRIPT = "js";
 
+    /**
+     * The JMX category of the engine pool statistics
+     */
+    private static final String MBEAN_CATEGORY = "ScriptMediator";
+
+    private static final AtomicInteger mediatorCount = new AtomicInteger(0);
+
     /**
      * The registry entry key for a script loaded from the registry
      * Handle both static and dynamic(Xpath) Keys
@@ -90,9 +130,9 @@ public class ScriptMediator extends AbstractMediator {
     /**
      * The source code of the script
      */
-    private String scriptSourceCode;
+    private volatile String scriptSourceCode;
     /**
-     * The BSF engine created to process each message through the script
+     * The BSF engine created along with the mediator. This is the first engine in the pool
      */
     protected ScriptEngine scriptEngine;
     /**
@@ -100,18 +140,48 @@ public class ScriptMediator extends AbstractMediator {
      */
     private boolean multiThreadedEngine;
     /**
-     * The compiled script. Only used for inline scripts
+     * The engine shared by all the messages, if the engine supports multi-threading
      */
-    private CompiledScript compiledScript;
+    private ScriptEngineWrapper sharedEngine;
+    /**
+     * The idle engines available for the messages
+     */
+    private final BlockingQueue<ScriptEngineWrapper> enginePool =
+            new LinkedBlockingQueue<ScriptEngineWrapper>();
+    /**
+     * The number of engines created by this mediator
+     */
+    private final AtomicInteger engineCount = new AtomicInteger(0);
+
+    private int maxPoolSize = Integer.parseInt(
+            SynapsePropertiesLoader.getPropertyValue(ENGINE_POOL_SIZE,
+                    String.valueOf(Runtime.getRuntime().availableProcessors() * 2)));
+
+    private int warmupPoolSize = Integer.parseInt(
+            SynapsePropertiesLoader.getPropertyValue(ENGINE_POOL_WARMUP, "1"));
+
+    private long borrowTimeout = Long.parseLong(
+            SynapsePropertiesLoader.getPropertyValue(ENGINE_POOL_BORROW_TIMEOUT, "30000"));
+
+    private final AtomicLong borrowCount = new AtomicLong(0);
+
+    private final AtomicLong borrowWaitCount = new AtomicLong(0);
+
+    private final AtomicLong borrowWaitTime = new AtomicLong(0);
+
+    private final AtomicLong borrowTimeoutCount = new AtomicLong(0);
+
     /**
-     * The Invokable script. Only used for external scripts
+     * Name of the MBean publishing the engine pool statistics, once registered
      */
-    private Invocable invocableScript;
+    private String mbeanName;
+
     /**
-     * The BSF helper to convert between the XML representations used by Java
-     * and the scripting language
+     * The version of the external script sources. Incremented every time the main script
+     * or any of the included scripts is (re-)loaded, so that the pooled engines know when
+     * they have to evaluate the scripts again.
      */
-    private XMLHelper xmlHelper;
+    private volatile int scriptVersion = 0;
 
     /**
      * Lock used to ensure thread-safe lookup of the object from the registry
@@ -159,7 +229,7 @@ public class ScriptMediator extends AbstractMediator {
             throw new SynapseException("Script engine is not an Invocable" +
                     " engine for language: " + language);
         }
-        invocableScript = (Invocable) scriptEngine;
+        initEnginePool(new ScriptEngineWrapper(scriptEngine, xmlHelperFor(scriptEngine)));
     }
 
     /**
@@ -189,11 +259,13 @@ public class ScriptMediator extends AbstractMediator {
 
         boolean returnValue;
         if (multiThreadedEngine) {
-            returnValue = invokeScript(synCtx);
+            returnValue = invokeScript(sharedEngine, synCtx);
         } else {
-            // TODO: change to use a pool of script engines (requires an update to BSF)
-            synchronized (scriptEngine.getClass()) {
-                returnValue = invokeScript(synCtx);
+            ScriptEngineWrapper engine = borrowEngine(synCtx);
+            try {
+                returnValue = invokeScript(engine, synCtx);
+            } finally {
+                enginePool.offer(engine);
             }
         }
 
@@ -208,7 +280,7 @@ public class ScriptMediator extends AbstractMediator {
         return returnValue;
     }
 
-    private boolean invokeScript(MessageContext synCtx) {
+    private boolean invokeScript(ScriptEngineWrapper engine, MessageContext synCtx) {
         boolean returnValue;
         try {
 
@@ -220,9 +292,9 @@ public class ScriptMediator extends AbstractMediator {
 
             Object returnObject;
             if (key != null) {
-                returnObject = mediateWithExternalScript(synCtx);
+                returnObject = mediateWithExternalScript(engine, synCtx);
             } else {
-                returnObject = mediateForInlineScript(synCtx);
+                returnObject = mediateForInlineScript(engine, synCtx);
             }
             returnValue = !(returnObject != null && returnObject instanceof Boolean)
                     || (Boolean) returnObject;
@@ -250,37 +322,41 @@ public class ScriptMediator extends AbstractMediator {
     /**
      * Mediation implementation when the script to be executed should be loaded from the registry
      *
+     * @param engine the engine used to run the script
      * @param synCtx the message context
      * @return script result
      * @throws ScriptException       For any errors , when compile, run the script
      * @throws NoSuchMethodException If the function is not defined in the script
      */
-    private Object mediateWithExternalScript(MessageContext synCtx)
+    private Object mediateWithExternalScript(ScriptEngineWrapper engine, MessageContext synCtx)
             throws ScriptException, NoSuchMethodException {
         prepareExternalScript(synCtx);
-        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, xmlHelper);
-        return invocableScript.invokeFunction(function, new Object[]{scriptMC});        
+        prepareEngine(engine);
+        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, engine.getXmlHelper());
+        return engine.getInvocable().invokeFunction(function, new Object[]{scriptMC});
     }
 
     /**
      * Perform mediation with static inline script of the given scripting language
      *
+     * @param engine the engine used to run the script
      * @param synCtx message context
      * @return true, or the script return value
      * @throws ScriptException For any errors , when compile , run the script
      */
-    private Object mediateForInlineScript(MessageContext synCtx) throws ScriptException {
+    private Object mediateForInlineScript(ScriptEngineWrapper engine, MessageContext synCtx)
+            throws ScriptException {
 
-        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, xmlHelper);
+        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, engine.getXmlHelper());
 
-        Bindings bindings = scriptEngine.createBindings();
+        Bindings bindings = engine.getEngine().createBindings();
         bindings.put(MC_VAR_NAME, scriptMC);
 
         Object response;
-        if (compiledScript != null) {
-            response = compiledScript.eval(bindings);
+        if (engine.getCompiledScript() != null) {
+            response = engine.getCompiledScript().eval(bindings);
         } else {
-            response = scriptEngine.eval(scriptSourceCode, bindings);
+            response = engine.getEngine().eval(scriptSourceCode, bindings);
         }
 
         return response;
@@ -291,15 +367,24 @@ public class ScriptMediator extends AbstractMediator {
      * Initialise the Mediator for the inline script
      */
     protected void initInlineScript() {
-        try {
-            initScriptEngine();
+        initScriptEngine();
+        initEnginePool(createInlineEngine(scriptEngine));
+    }
 
-            if (scriptEngine instanceof Compilable) {
+    /**
+     * Create an engine for the inline script, compiling the script if possible
+     *
+     * @param engine the script engine
+     * @return the engine along with the compiled script
+     */
+    private ScriptEngineWrapper createInlineEngine(ScriptEngine engine) {
+        ScriptEngineWrapper wrapper = new ScriptEngineWrapper(engine, xmlHelperFor(engine));
+        try {
+            if (wrapper.compile(scriptSourceCode)) {
                 if (log.isDebugEnabled()) {
                     log.debug("Script engine supports Compilable interface, " +
-                            "compiling script code..");
+                            "compiled script code..");
                 }
-                compiledScript = ((Compilable) scriptEngine).compile(scriptSourceCode);
             } else {
                 // do nothing. If the script engine doesn't support Compilable then
                 // the inline script will be evaluated on each invocation
@@ -312,110 +397,155 @@ public class ScriptMediator extends AbstractMediator {
         } catch (ScriptException e) {
             throw new SynapseException("Exception initializing inline script", e);
         }
+        return wrapper;
     }
 
     /**
-     * Prepares the mediator for the invocation of an external script
+     * Prepares the mediator for the invocation of an external script. This (re-)loads the
+     * script and the included scripts from the registry when required. The loaded sources
+     * are evaluated on each engine the next time it is used.
      *
      * @param synCtx MessageContext script
      * @throws ScriptException For any errors , when compile the script
      */
-    protected synchronized void prepareExternalScript(MessageContext synCtx)
+    protected void prepareExternalScript(MessageContext synCtx)
             throws ScriptException {
 
-        // TODO: only need this synchronized method for dynamic registry entries. If there was a way
-        // to access the registry entry during mediator initialization then for non-dynamic entries
-        // this could be done just the once during mediator initialization.
-
         // Derive actual key from xpath expression or get static key
         String generatedScriptKey = key.evaluateValue(synCtx);
         Entry entry = synCtx.getConfiguration().getEntryDefinition(generatedScriptKey);
         boolean needsReload = (entry != null) && entry.isDynamic() &&
                 (!entry.isCached() || entry.isExpired());
+        if (!needsReload && scriptSourceCode != null && !includesNeedReload(synCtx)) {
+            // the sources evaluated on the engines are up to date
+            return;
+        }
+
         synchronized (resourceLock) {
+            boolean reloaded = false;
             if (scriptSourceCode == null || needsReload) {
-                Object o = synCtx.getEntry(generatedScriptKey);
-                if (o instanceof OMElement) {
-                    scriptSourceCode = ((OMElement) (o)).getText();
-                    scriptEngine.eval(scriptSourceCode);
-                } else if (o instanceof String) {
-                    scriptSourceCode = (String) o;
-                    scriptEngine.eval(scriptSourceCode);
-                } else if (o instanceof OMText) {
-
-                    DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
-                    if (dataHandler != null) {
-                        BufferedReader reader = null;
-                        try {
-                            reader = new BufferedReader(
-                                    new InputStreamReader(dataHandler.getInputStream()));
-                            scriptEngine.eval(reader);
+                String source = loadScriptSource(synCtx, generatedScriptKey);
+                if (source != null) {
+                    scriptSourceCode = source;
+                    reloaded = true;
+                }
+            }
 
-                        } catch (IOException e) {
-                            handleException("Error in reading script as a stream ", e, synCtx);
-                        } finally {
+            // load <include /> scripts; reload each script if needed
+            for (Map.Entry<Value, Object> include : includes.entrySet()) {
+                String generatedKey = include.getKey().evaluateValue(synCtx);
+                if (include.getValue() == null || includeNeedsReload(synCtx, generatedKey)) {
+                    log.debug("Re-/Loading the include script with key " + include.getKey());
+                    String source = loadScriptSource(synCtx, generatedKey);
+                    if (source != null) {
+                        include.setValue(source);
+                        reloaded = true;
+                    }
+                }
+            }
+
+            if (reloaded) {
+                scriptVersion++;
+            }
+        }
+    }
+
+    private boolean includesNeedReload(MessageContext synCtx) {
+        for (Map.Entry<Value, Object> include : includes.entrySet()) {
+            if (include.getValue() == null ||
+                    includeNeedsReload(synCtx, include.getKey().evaluateValue(synCtx))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean includeNeedsReload(MessageContext synCtx, String generatedKey) {
+        Entry includeEntry = synCtx.getConfiguration().getEntryDefinition(generatedKey);
+        return (includeEntry != null) && includeEntry.isDynamic()
+                && (!includeEntry.isCached() || includeEntry.isExpired());
+    }
 
-                            if (reader != null) {
-                                try {
-                                    reader.close();
-                                } catch (IOException e) {
-                                    handleException("Error in closing input stream ", e, synCtx);
-                                }
-                            }
+    /**
+     * Load the source of a script from the registry
+     *
+     * @param synCtx the message context
+     * @param scriptKey the registry key of the script
+     * @return the source of the script, or null if the entry does not hold a script
+     */
+    private String loadScriptSource(MessageContext synCtx, String scriptKey) {
+        Object o = synCtx.getEntry(scriptKey);
+        if (o instanceof OMElement) {
+            return ((OMElement) (o)).getText();
+        } else if (o instanceof String) {
+            return (String) o;
+        } else if (o instanceof OMText) {
+
+            DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
+            if (dataHandler != null) {
+                BufferedReader reader = null;
+                try {
+                    reader = new BufferedReader(
+                            new InputStreamReader(dataHandler.getInputStream()));
+                    StringBuilder source = new StringBuilder();
+                    char[] chars = new char[4096];
+                    int read;
+                    while ((read = reader.read(chars)) != -1) {
+                        source.append(chars, 0, read);
+                    }
+                    return source.toString();
+
+                } catch (IOException e) {
+                    handleException("Error in reading script as a stream ", e, synCtx);
+                } finally {
 
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            handleException("Error in closing input stream ", e, synCtx);
                         }
                     }
+
                 }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate the currently loaded external script sources on the given engine, unless
+     * the engine has already evaluated them
+     *
+     * @param engine the engine to be prepared
+     * @throws ScriptException if the scripts cannot be evaluated
+     */
+    private void prepareEngine(ScriptEngineWrapper engine) throws ScriptException {
+        if (engine.getScriptVersion() == scriptVersion) {
+            return;
+        }
 
+        int version;
+        List<String> sources = new ArrayList<String>();
+        synchronized (resourceLock) {
+            version = scriptVersion;
+            if (scriptSourceCode != null) {
+                sources.add(scriptSourceCode);
+            }
+            for (Object includeSource : includes.values()) {
+                if (includeSource != null) {
+                    sources.add((String) includeSource);
+                }
             }
         }
 
-        // load <include /> scripts; reload each script if needed
-        for (Value includeKey : includes.keySet()) {
-
-            String includeSourceCode = (String) includes.get(includeKey);
-
-            String generatedKey = includeKey.evaluateValue(synCtx);
-
-            Entry includeEntry = synCtx.getConfiguration().getEntryDefinition(generatedKey);
-            boolean includeEntryNeedsReload = (includeEntry != null) && includeEntry.isDynamic()
-                    && (!includeEntry.isCached() || includeEntry.isExpired());
-            synchronized (resourceLock) {
-                if (includeSourceCode == null || includeEntryNeedsReload) {
-                    log.debug("Re-/Loading the include script with key " + includeKey);
-                    Object o = synCtx.getEntry(generatedKey);
-                    if (o instanceof OMElement) {
-                        includeSourceCode = ((OMElement) (o)).getText();
-                        scriptEngine.eval(includeSourceCode);
-                    } else if (o instanceof String) {
-                        includeSourceCode = (String) o;
-                        scriptEngine.eval(includeSourceCode);
-                    } else if (o instanceof OMText) {
-
-                        DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
-                        if (dataHandler != null) {
-                            BufferedReader reader = null;
-                            try {
-                                reader = new BufferedReader(
-                                        new InputStreamReader(dataHandler.getInputStream()));
-                                scriptEngine.eval(reader);
-
-                            } catch (IOException e) {
-                                handleException("Error in reading script as a stream ", e, synCtx);
-                            } finally {
-
-                                if (reader != null) {
-                                    try {
-                                        reader.close();
-                                    } catch (IOException e) {
-                                        handleException("Error in closing input" +
-                                                " stream ", e, synCtx);
-                                    }
-                                }
-                            }
-                        }
-                    }
+        // a shared engine may be prepared by several messages at once
+        synchronized (engine) {
+            if (engine.getScriptVersion() != version) {
+                for (String source : sources) {
+                    engine.getEngine().eval(source);
                 }
+                engine.setScriptVersion(version);
             }
         }
     }
@@ -434,16 +564,223 @@ public class ScriptMediator extends AbstractMediator {
         if (scriptEngine == null) {
             handleException("No script engine found for language: " + language);
         }
+
+        this.multiThreadedEngine = scriptEngine.getFactory().getParameter("THREADING") != null;
+        log.debug("Script mediator for language : " + language +
+                " supports multithreading? : " + multiThreadedEngine);
+    }
+
+    private XMLHelper xmlHelperFor(ScriptEngine engine) {
         //Invoking a custom Helper class since there is an api change in rhino17 for js
         if (language.equalsIgnoreCase(JAVA_SCRIPT)) {
-            xmlHelper = new JavaScriptXmlHelper();
+            return new JavaScriptXmlHelper();
         } else {
-            xmlHelper = XMLHelper.getArgHelper(scriptEngine);
+            return XMLHelper.getArgHelper(engine);
         }
+    }
 
-        this.multiThreadedEngine = scriptEngine.getFactory().getParameter("THREADING") != null;
-        log.debug("Script mediator for language : " + language +
-                " supports multithreading? : " + multiThreadedEngine);
+    /**
+     * Reset the engine pool to contain only the given engine
+     *
+     * @param engine the engine created along with the mediator
+     */
+    private void initEnginePool(ScriptEngineWrapper engine) {
+        enginePool.clear();
+        sharedEngine = engine;
+        enginePool.offer(engine);
+        engineCount.set(1);
+    }
+
+    /**
+     * Create a new engine for the pool
+     *
+     * @return a new engine, ready to be prepared for the script
+     */
+    private ScriptEngineWrapper createEngine() {
+        ScriptEngine engine = scriptEngine.getFactory().getScriptEngine();
+        if (key == null) {
+            return createInlineEngine(engine);
+        }
+        return new ScriptEngineWrapper(engine, xmlHelperFor(engine));
+    }
+
+    /**
+     * Take an idle engine from the pool. A new engine is created if there is no idle engine
+     * and the pool has not reached its maximum size. Otherwise wait for an engine to be
+     * returned to the pool.
+     *
+     * @param synCtx the current message
+     * @return an engine which is not used by any other message
+     */
+    private ScriptEngineWrapper borrowEngine(MessageContext synCtx) {
+        borrowCount.incrementAndGet();
+        ScriptEngineWrapper engine = enginePool.poll();
+        if (engine != null) {
+            return engine;
+        }
+
+        int count;
+        while ((count = engineCount.get()) < maxPoolSize) {
+            if (engineCount.compareAndSet(count, count + 1)) {
+                try {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Creating script engine " + (count + 1) + " of " +
+                                maxPoolSize + " for language : " + language);
+                    }
+                    return createEngine();
+                } catch (RuntimeException e) {
+                    engineCount.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+
+        borrowWaitCount.incrementAndGet();
+        long start = System.currentTimeMillis();
+        try {
+            engine = enginePool.poll(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            handleException("Interrupted while waiting for a " + language +
+                    " script engine", e, synCtx);
+        } finally {
+            borrowWaitTime.addAndGet(System.currentTimeMillis() - start);
+        }
+
+        if (engine == null) {
+            borrowTimeoutCount.incrementAndGet();
+            handleException("Timed out after " + borrowTimeout + "ms waiting for one of the " +
+                    maxPoolSize + " " + language + " script engines", synCtx);
+        }
+        return engine;
+    }
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        synchronized (this) {
+            if (mbeanName == null) {
+                mbeanName = language + "-" + mediatorCount.incrementAndGet();
+                MBeanRegistrar.getInstance().registerMBean(new ScriptMediatorView(this),
+                        MBEAN_CATEGORY, mbeanName);
+            }
+        }
+        if (multiThreadedEngine) {
+            return;
+        }
+
+        List<ScriptEngineWrapper> warmedUp = new ArrayList<ScriptEngineWrapper>();
+        int count;
+        while ((count = engineCount.get()) < Math.min(warmupPoolSize, maxPoolSize)) {
+            if (engineCount.compareAndSet(count, count + 1)) {
+                warmedUp.add(createEngine());
+            }
+        }
+
+        if (key != null && key.getKeyValue() != null) {
+            // static registry keys can be resolved before the first message arrives
+            try {
+                prepareExternalScript(se.createMessageContext());
+                for (ScriptEngineWrapper engine : enginePool) {
+                    prepareEngine(engine);
+                }
+                for (ScriptEngineWrapper engine : warmedUp) {
+                    prepareEngine(engine);
+                }
+            } catch (Exception e) {
+                log.warn("Error loading the " + language + " script : " + key + " at " +
+                        "initialization. The script will be loaded with the first message", e);
+            }
+        }
+        enginePool.addAll(warmedUp);
+    }
+
+    @Override
+    public void destroy() {
+        enginePool.clear();
+        synchronized (this) {
+            if (mbeanName != null) {
+                MBeanRegistrar.getInstance().unRegisterMBean(MBEAN_CATEGORY, mbeanName);
+                mbeanName = null;
+            }
+        }
+    }
+
+    /**
+     * @return number of script engines created by this mediator
+     */
+    public int getEngineCount() {
+        return engineCount.get();
+    }
+
+    /**
+     * @return number of script engines not in use at the moment
+     */
+    public int getIdleEngineCount() {
+        return enginePool.size();
+    }
+
+    /**
+     * @return maximum number of script engines created by this mediator
+     */
+    public int getMaxPoolSize() {
+        return multiThreadedEngine ? 1 : maxPoolSize;
+    }
+
+    /**
+     * @return maximum time (in milliseconds) a message waits for an engine
+     */
+    public long getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    /**
+     * @return number of times an engine was requested from the pool
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return number of times a message had to wait for an engine
+     */
+    public long getBorrowWaitCount() {
+        return borrowWaitCount.get();
+    }
+
+    /**
+     * @return total time (in milliseconds) the messages waited for an engine
+     */
+    public long getBorrowWaitTime() {
+        return borrowWaitTime.get();
+    }
+
+    /**
+     * @return number of messages which failed because no engine became available in time
+     */
+    public long getBorrowTimeoutCount() {
+        return borrowTimeoutCount.get();
+    }
+
+    /**
+     * Reset the engine pool statistics
+     */
+    public void resetStatistics() {
+        borrowCount.set(0);
+        borrowWaitCount.set(0);
+        borrowWaitTime.set(0);
+        borrowTimeoutCount.set(0);
+    }
+
+    void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    void setWarmupPoolSize(int warmupPoolSize) {
+        this.warmupPoolSize = warmupPoolSize;
+    }
+
+    void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
     }
 
     public String getLanguage() {
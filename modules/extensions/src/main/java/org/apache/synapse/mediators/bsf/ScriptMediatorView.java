@@ -0,0 +1,80 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+public class ScriptMediatorView implements ScriptMediatorViewMBean {
+
+    private ScriptMediator mediator;
+
+    public ScriptMediatorView(ScriptMediator mediator) {
+        this.mediator = mediator;
+    }
+
+    @Override
+    public String getLanguage() {
+        return mediator.getLanguage();
+    }
+
+    @Override
+    public int getEngineCount() {
+        return mediator.getEngineCount();
+    }
+
+    @Override
+    public int getIdleEngineCount() {
+        return mediator.getIdleEngineCount();
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return mediator.getMaxPoolSize();
+    }
+
+    @Override
+    public long getBorrowTimeout() {
+        return mediator.getBorrowTimeout();
+    }
+
+    @Override
+    public long getBorrowCount() {
+        return mediator.getBorrowCount();
+    }
+
+    @Override
+    public long getBorrowWaitCount() {
+        return mediator.getBorrowWaitCount();
+    }
+
+    @Override
+    public double getAvgBorrowWaitTime() {
+        long count = mediator.getBorrowWaitCount();
+        return count == 0 ? 0 : (double) mediator.getBorrowWaitTime() / count;
+    }
+
+    @Override
+    public long getBorrowTimeoutCount() {
+        return mediator.getBorrowTimeoutCount();
+    }
+
+    @Override
+    public void resetStatistics() {
+        mediator.resetStatistics();
+    }
+}
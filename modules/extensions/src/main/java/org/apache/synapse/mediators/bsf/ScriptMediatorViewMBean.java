@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+/**
+ * JMX MBean interface for monitoring the script engine pool of a script mediator. Times are
+ * in milliseconds.
+ */
+public interface ScriptMediatorViewMBean {
+
+    /**
+     * Get the scripting language of the mediator
+     *
+     * @return A String
+     */
+    public String getLanguage();
+
+    /**
+     * Get the number of script engines created by the mediator
+     *
+     * @return An int
+     */
+    public int getEngineCount();
+
+    /**
+     * Get the number of script engines not in use at the moment
+     *
+     * @return An int
+     */
+    public int getIdleEngineCount();
+
+    /**
+     * Get the maximum number of script engines the mediator creates
+     *
+     * @return An int
+     */
+    public int getMaxPoolSize();
+
+    /**
+     * Get the maximum time a message waits for a script engine
+     *
+     * @return A long
+     */
+    public long getBorrowTimeout();
+
+    /**
+     * Get the number of times a script engine was requested from the pool
+     *
+     * @return A long
+     */
+    public long getBorrowCount();
+
+    /**
+     * Get the number of times a message had to wait for a script engine
+     *
+     * @return A long
+     */
+    public long getBorrowWaitCount();
+
+    /**
+     * Get the average time a waiting message waited for a script engine
+     *
+     * @return A double
+     */
+    public double getAvgBorrowWaitTime();
+
+    /**
+     * Get the number of messages which failed because no script engine became available
+     * before the borrow timeout
+     *
+     * @return A long
+     */
+    public long getBorrowTimeoutCount();
+
+    /**
+     * Reset all the engine pool statistics
+     */
+    public void resetStatistics();
+}
@@ -0,0 +1,371 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMNode;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.Value;
+import org.apache.synapse.registry.SimpleInMemoryRegistry;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.SimpleBindings;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the pool of script engines kept by the script mediator for engines which are not
+ * multi-threaded, using a script engine which records the scripts evaluated on it
+ */
+public class ScriptEnginePoolTest extends TestCase {
+
+    private static final String LANGUAGE = "test";
+
+    /** Scripts evaluated by this test engine wait for this latch */
+    private static final String BLOCK = "block";
+
+    private static final List<TestScriptEngine> engines =
+            new CopyOnWriteArrayList<TestScriptEngine>();
+
+    private static volatile CountDownLatch started;
+
+    private static volatile CountDownLatch release;
+
+    @Override
+    protected void setUp() throws Exception {
+        engines.clear();
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(0);
+    }
+
+    public void testWarmup() throws Exception {
+        ScriptMediator mediator = new PooledScriptMediator("inline");
+        mediator.setMaxPoolSize(4);
+        mediator.setWarmupPoolSize(3);
+        assertEquals(1, mediator.getEngineCount());
+
+        mediator.init(null);
+        try {
+            assertEquals(3, mediator.getEngineCount());
+            assertEquals(3, mediator.getIdleEngineCount());
+            assertEquals(3, engines.size());
+
+            // the warmed up engines are used before creating new ones
+            for (int i = 0; i < 5; i++) {
+                assertTrue(mediator.mediate(TestUtils.getTestContext("<a/>")));
+            }
+            assertEquals(3, mediator.getEngineCount());
+            assertEquals(3, engines.size());
+            assertEquals(5, mediator.getBorrowCount());
+            assertEquals(0, mediator.getBorrowWaitCount());
+        } finally {
+            mediator.destroy();
+        }
+    }
+
+    public void testBorrowTimeout() throws Exception {
+        final ScriptMediator mediator = new PooledScriptMediator(BLOCK);
+        mediator.setMaxPoolSize(1);
+        mediator.setBorrowTimeout(200);
+        mediator.init(null);
+        release = new CountDownLatch(1);
+        try {
+            Thread holder = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        mediator.mediate(TestUtils.getTestContext("<a/>"));
+                    } catch (Exception ignore) {
+                    }
+                }
+            };
+            holder.start();
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            long start = System.currentTimeMillis();
+            try {
+                mediator.mediate(TestUtils.getTestContext("<a/>"));
+                fail("The message should time out waiting for the only engine");
+            } catch (SynapseException expected) {
+            }
+            assertTrue(System.currentTimeMillis() - start >= 150);
+            assertEquals(1, mediator.getEngineCount());
+            assertEquals(1, mediator.getBorrowWaitCount());
+            assertEquals(1, mediator.getBorrowTimeoutCount());
+
+            // the statistics are published over JMX
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = findMBean(mbs);
+            assertEquals(1L, mbs.getAttribute(name, "BorrowTimeoutCount"));
+            assertEquals(1L, mbs.getAttribute(name, "BorrowWaitCount"));
+            assertTrue((Double) mbs.getAttribute(name, "AvgBorrowWaitTime") >= 150);
+
+            release.countDown();
+            holder.join(10000);
+            assertTrue(mediator.mediate(TestUtils.getTestContext("<a/>")));
+            assertEquals(1, mediator.getIdleEngineCount());
+
+            mbs.invoke(name, "resetStatistics", null, null);
+            assertEquals(0L, mbs.getAttribute(name, "BorrowTimeoutCount"));
+        } finally {
+            release.countDown();
+            mediator.destroy();
+        }
+        assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(
+                new ObjectName("org.apache.synapse:Type=ScriptMediator,Name=" + LANGUAGE + "-*"),
+                null).isEmpty());
+    }
+
+    public void testRegistryScriptVersionChange() throws Exception {
+        Map<String, OMNode> data = new HashMap<String, OMNode>();
+        data.put("script-key", TestUtils.createOMElement("<script>v1</script>"));
+        SimpleInMemoryRegistry registry = new SimpleInMemoryRegistry(data, 200L);
+        SynapseConfiguration config = new SynapseConfiguration();
+        config.setRegistry(registry);
+
+        ScriptMediator mediator = new PooledScriptMediator(new Value("script-key"));
+        mediator.setMaxPoolSize(2);
+        mediator.setWarmupPoolSize(2);
+        mediator.init(new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), config));
+        try {
+            // the script is loaded once, and evaluated on each engine at deployment time
+            assertEquals(1, registry.getHitCount());
+            assertEquals(2, engines.size());
+            for (TestScriptEngine engine : engines) {
+                assertEquals(Arrays.asList("v1"), engine.evaluated);
+            }
+            assertEquals("v1", mediate(mediator, config));
+            assertEquals("v1", mediate(mediator, config));
+
+            Thread.sleep(10);
+            registry.updateResource("script-key", TestUtils.createOMElement("<script>v2</script>"));
+            Thread.sleep(300);
+
+            // each engine evaluates the new version of the script before running it
+            assertEquals("v2", mediate(mediator, config));
+            assertEquals("v2", mediate(mediator, config));
+            assertEquals("v2", mediate(mediator, config));
+            assertEquals(2, registry.getHitCount());
+            assertEquals(2, engines.size());
+            for (TestScriptEngine engine : engines) {
+                assertEquals(Arrays.asList("v1", "v2"), engine.evaluated);
+            }
+        } finally {
+            mediator.destroy();
+        }
+    }
+
+    private String mediate(ScriptMediator mediator, SynapseConfiguration config)
+            throws Exception {
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<a/>", config);
+        assertTrue(mediator.mediate(synCtx));
+        return (String) synCtx.getProperty("script");
+    }
+
+    private ObjectName findMBean(MBeanServer mbs) throws Exception {
+        List<ObjectName> names = new ArrayList<ObjectName>(mbs.queryNames(
+                new ObjectName("org.apache.synapse:Type=ScriptMediator,Name=" + LANGUAGE + "-*"),
+                null));
+        assertEquals(1, names.size());
+        return names.get(0);
+    }
+
+    private static void runScript(String script) {
+        if (BLOCK.equals(script)) {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+            }
+        }
+    }
+
+    /**
+     * A script mediator using the test script engine, which is not multi-threaded
+     */
+    private static class PooledScriptMediator extends ScriptMediator {
+
+        PooledScriptMediator(String scriptSourceCode) {
+            super(LANGUAGE, scriptSourceCode, null);
+        }
+
+        PooledScriptMediator(Value key) {
+            super(LANGUAGE, new TreeMap<Value, Object>(), key, null, null);
+        }
+
+        @Override
+        protected void initScriptEngine() {
+            scriptEngine = new TestScriptEngineFactory().getScriptEngine();
+        }
+    }
+
+    /**
+     * A script engine which records the scripts evaluated on it. Invoking a function runs
+     * the last evaluated script, and sets it as the "script" property of the message.
+     */
+    private static class TestScriptEngine extends AbstractScriptEngine implements Invocable {
+
+        private final ScriptEngineFactory factory;
+
+        private final List<String> evaluated = new CopyOnWriteArrayList<String>();
+
+        private TestScriptEngine(ScriptEngineFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public Object eval(String script, ScriptContext context) {
+            if (context.getAttribute("mc") == null) {
+                evaluated.add(script);
+            } else {
+                runScript(script);
+            }
+            return Boolean.TRUE;
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return factory;
+        }
+
+        @Override
+        public Object invokeFunction(String name, Object... args) {
+            String script = evaluated.get(evaluated.size() - 1);
+            runScript(script);
+            ((MessageContext) args[0]).setProperty("script", script);
+            return Boolean.TRUE;
+        }
+
+        @Override
+        public Object invokeMethod(Object thiz, String name, Object... args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T getInterface(Class<T> clasz) {
+            return null;
+        }
+
+        @Override
+        public <T> T getInterface(Object thiz, Class<T> clasz) {
+            return null;
+        }
+    }
+
+    private static class TestScriptEngineFactory implements ScriptEngineFactory {
+
+        @Override
+        public String getEngineName() {
+            return "Test Engine";
+        }
+
+        @Override
+        public String getEngineVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public List<String> getExtensions() {
+            return Collections.singletonList(LANGUAGE);
+        }
+
+        @Override
+        public List<String> getMimeTypes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getNames() {
+            return Collections.singletonList(LANGUAGE);
+        }
+
+        @Override
+        public String getLanguageName() {
+            return LANGUAGE;
+        }
+
+        @Override
+        public String getLanguageVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public Object getParameter(String key) {
+            // not multi-threaded
+            return null;
+        }
+
+        @Override
+        public String getMethodCallSyntax(String obj, String m, String... args) {
+            return null;
+        }
+
+        @Override
+        public String getOutputStatement(String toDisplay) {
+            return null;
+        }
+
+        @Override
+        public String getProgram(String... statements) {
+            return null;
+        }
+
+        @Override
+        public ScriptEngine getScriptEngine() {
+            TestScriptEngine engine = new TestScriptEngine(this);
+            engines.add(engine);
+            return engine;
+        }
+    }
+}
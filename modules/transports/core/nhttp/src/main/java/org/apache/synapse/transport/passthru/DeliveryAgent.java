@@ -227,6 +227,8 @@ public class DeliveryAgent {
                 }
                 return;
             }
+            // The payload is passed through untouched
+            pipe.enableDirectRelay();
         }
 
         conn.requestOutput();
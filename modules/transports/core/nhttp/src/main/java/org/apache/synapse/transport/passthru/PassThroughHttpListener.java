@@ -47,6 +47,7 @@ import org.apache.http.nio.reactor.ListenerEndpoint;
 import org.apache.http.nio.reactor.ssl.SSLSetupHandler;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
+import org.apache.synapse.transport.passthru.jmx.BufferPoolView;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.jmx.TransportView;
 import org.apache.synapse.transport.utils.conn.logging.LoggingUtils;
@@ -93,6 +94,9 @@ public class PassThroughHttpListener implements TransportListener {
 
     private String namePrefix;
 
+    /** JMX view over the IO buffer pool of this listener */
+    private BufferPoolView bufferPoolView;
+
     @Override
     public void init(ConfigurationContext cfgCtx, TransportInDescription transportInDescription)
             throws AxisFault {
@@ -136,6 +140,8 @@ public class PassThroughHttpListener implements TransportListener {
                 new TransportView(this, null, metrics, null), "Transport",
                 "passthru-" + namePrefix.toLowerCase() + "-receiver");
         sourceConfiguration.setMetrics(metrics);
+        bufferPoolView = new BufferPoolView("passthru-" + namePrefix.toLowerCase() + "-receiver",
+                sourceConfiguration.getBufferFactory());
     }
 
     @Override
@@ -283,6 +289,7 @@ public class PassThroughHttpListener implements TransportListener {
         MBeanRegistrar.getInstance().unRegisterMBean("Transport",
                 "passthru-" + namePrefix.toLowerCase() + "-receiver");
         sourceConfiguration.getMetrics().destroy();
+        bufferPoolView.destroy();
     }
 
     /**
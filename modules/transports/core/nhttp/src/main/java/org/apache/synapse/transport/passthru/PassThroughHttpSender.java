@@ -59,6 +59,7 @@ import org.apache.synapse.transport.nhttp.util.NhttpUtil;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
 import org.apache.synapse.transport.passthru.config.TargetConfiguration;
 import org.apache.synapse.transport.passthru.connections.TargetConnections;
+import org.apache.synapse.transport.passthru.jmx.BufferPoolView;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.jmx.TransportView;
 import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
@@ -95,6 +96,9 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
 
     private String namePrefix;
 
+    /** JMX view over the IO buffer pool of this sender */
+    private BufferPoolView bufferPoolView;
+
     /** The proxy host */
     private String proxyHost = null;
 
@@ -171,6 +175,8 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         MBeanRegistrar.getInstance().registerMBean(view, "Transport",
                  "passthru-" + namePrefix.toLowerCase() + "-sender");
         targetConfiguration.setMetrics(metrics);
+        bufferPoolView = new BufferPoolView("passthru-" + namePrefix.toLowerCase() + "-sender",
+                targetConfiguration.getBufferFactory());
 
         try {
             String prefix = namePrefix + "-PT-Sender I/O Dispatcher";
@@ -249,6 +255,12 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         } catch (IOException e) {
             log.error("Error shutting down the PassThroughHttpSender", e);
         }
+        if (bufferPoolView != null) {
+            bufferPoolView.destroy();
+        }
+        if (targetConfiguration.getConnections() != null) {
+            targetConfiguration.getConnections().destroy();
+        }
     }
 
     @Override
@@ -567,6 +579,9 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
                 }
                 pipe.setSerializationComplete(true);
                 out.close();
+            } else if (pipe != null) {
+                // The payload is passed through untouched
+                pipe.enableDirectRelay();
             }
             conn.requestOutput();
         } else {
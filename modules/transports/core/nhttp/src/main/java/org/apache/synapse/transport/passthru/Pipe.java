@@ -26,6 +26,7 @@ import org.apache.synapse.transport.passthru.config.BaseConfiguration;
 import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -46,7 +47,7 @@ public class Pipe {
 
     private ControlledByteBuffer outputBuffer;
 
-    private boolean producerCompleted = false;
+    private volatile boolean producerCompleted = false;
 
 	/** Lock to synchronize the producers and consumers */
     private Lock lock = new ReentrantLock();
@@ -57,9 +58,9 @@ public class Pipe {
     /** Name to identify the buffer */
     private String name = "Buffer";
 
-    private boolean consumerError = false;
+    private volatile boolean consumerError = false;
 
-    private boolean producerError = false;
+    private volatile boolean producerError = false;
 
     private BaseConfiguration baseConfig;
 
@@ -72,6 +73,21 @@ public class Pipe {
     private ByteBufferInputStream inputStream;
     private ByteBufferOutputStream outputStream;
 
+    /**
+     * Whether the pipe relays bytes straight from the producer to the consumer. In this
+     * mode the buffer is treated as a single-producer/single-consumer ring and neither
+     * produce nor consume acquires the lock.
+     */
+    private volatile boolean directRelay = false;
+
+    /** Producer and consumer views of the buffer used in direct relay mode */
+    private ByteBuffer relayInput;
+    private ByteBuffer relayOutput;
+
+    /** Total number of bytes written to and read from the ring in direct relay mode */
+    private volatile long relayWritten = 0;
+    private volatile long relayRead = 0;
+
     public Pipe(IOControl producerIoControl, ControlledByteBuffer buffer,
                 String name, BaseConfiguration baseConfig) {
         this.producerIoControl = producerIoControl;
@@ -92,7 +108,52 @@ public class Pipe {
      * @param consumerIoControl IOControl of the consumer
      */
     public void attachConsumer(IOControl consumerIoControl) {
-        this.consumerIoControl = consumerIoControl;
+        // taken so that enableDirectRelay, which checks the consumer under the lock,
+        // always sees the consumer attached by another thread
+        lock.lock();
+        try {
+            this.consumerIoControl = consumerIoControl;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Switch the pipe to direct relay mode, where the bytes read by the producer are
+     * handed over to the consumer without going through the lock and the read/write
+     * conditions. This is only possible when the message has not been (and will not be)
+     * built or serialized through the streams of this pipe, i.e. the payload is passed
+     * through untouched. The consumer must be attached before calling this method.
+     *
+     * @return true if the pipe is now in direct relay mode
+     */
+    public boolean enableDirectRelay() {
+        lock.lock();
+        try {
+            if (directRelay) {
+                return true;
+            }
+            if (!hasHttpProducer || consumerIoControl == null || inputStream != null ||
+                    outputStream != null || (baseConfig != null && !baseConfig.isDirectRelay())) {
+                return false;
+            }
+
+            // Whatever the producer has already read becomes the initial content of the ring
+            setInputMode(buffer);
+            ByteBuffer byteBuffer = buffer.getByteBuffer();
+            relayInput = byteBuffer.duplicate();
+            relayOutput = byteBuffer.duplicate();
+            relayRead = 0;
+            relayWritten = byteBuffer.position();
+            directRelay = true;
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    public boolean isDirectRelay() {
+        return directRelay;
     }
 
     /**
@@ -113,7 +174,15 @@ public class Pipe {
             throw new IllegalStateException("Producer cannot be null when calling consume");
         }
 
+        if (directRelay) {
+            return consumeDirect(encoder);
+        }
+
         lock.lock();
+        if (directRelay) {
+            lock.unlock();
+            return consumeDirect(encoder);
+        }
         ControlledByteBuffer consumerBuffer;
         if (outputBuffer != null) {
             consumerBuffer = outputBuffer;
@@ -170,8 +239,15 @@ public class Pipe {
             throw new IllegalStateException("Producer cannot be null when calling produce");
         }
 
+        if (directRelay) {
+            return produceDirect(decoder);
+        }
+
         lock.lock();
         try {
+            if (directRelay) {
+                return produceDirect(decoder);
+            }
             setInputMode(buffer);
             int bytesRead = decoder.read(buffer.getByteBuffer());
 
@@ -203,6 +279,105 @@ public class Pipe {
         }
     }
 
+    /**
+     * Read data from the decoder into the free region of the ring. Only the producer
+     * thread updates relayWritten and only the consumer thread updates relayRead, so
+     * the volatile counters are enough to publish the data between the two threads.
+     *
+     * @param decoder decoder to read bytes from the underlying stream
+     * @return bytes read
+     * @throws IOException if an error occurs while reading data
+     */
+    private int produceDirect(final ContentDecoder decoder) throws IOException {
+        int capacity = relayInput.capacity();
+        long written = relayWritten;
+        long free = capacity - (written - relayRead);
+
+        int bytesRead = 0;
+        if (free > 0) {
+            int start = (int) (written % capacity);
+            relayInput.limit(capacity);
+            relayInput.position(start);
+            relayInput.limit(start + (int) Math.min(free, capacity - start));
+            bytesRead = decoder.read(relayInput);
+
+            // if consumer is at error we have to let the producer complete,
+            // so whatever we read is simply dropped
+            if (bytesRead > 0 && !consumerError) {
+                relayWritten = written + bytesRead;
+            }
+        }
+
+        if (capacity - (relayWritten - relayRead) == 0) {
+            // Ring is full. Suspend client input until the consumer frees up some space,
+            // and re-check in case the consumer drained the ring in the meantime
+            producerIoControl.suspendInput();
+            if (capacity - (relayWritten - relayRead) > 0) {
+                producerIoControl.requestInput();
+            }
+        }
+
+        if (decoder.isCompleted()) {
+            producerCompleted = true;
+        }
+        if (bytesRead > 0 || producerCompleted) {
+            consumerIoControl.requestOutput();
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Write data from the filled region of the ring to the encoder.
+     *
+     * @param encoder encoder used to write the data
+     * @return bytes written
+     * @throws IOException if an error occurs while writing data
+     */
+    private int consumeDirect(final ContentEncoder encoder) throws IOException {
+        // if producer at error we have to stop the encoding and return immediately
+        if (producerError) {
+            encoder.complete();
+            return -1;
+        }
+
+        int capacity = relayOutput.capacity();
+        long read = relayRead;
+        long available = relayWritten - read;
+
+        int bytesWritten = 0;
+        if (available > 0) {
+            int start = (int) (read % capacity);
+            relayOutput.limit(capacity);
+            relayOutput.position(start);
+            relayOutput.limit(start + (int) Math.min(available, capacity - start));
+            bytesWritten = encoder.write(relayOutput);
+            if (bytesWritten > 0) {
+                relayRead = read + bytesWritten;
+            }
+        }
+
+        // producerCompleted must be read before the counters, so that a completed
+        // producer is never mistaken for an empty ring with data still to come
+        boolean completed = producerCompleted;
+        if (relayWritten == relayRead) {
+            if (completed) {
+                encoder.complete();
+            } else {
+                // Ring is empty. Wait until the producer fills it up again, and
+                // re-check in case the producer added data in the meantime
+                consumerIoControl.suspendOutput();
+                if (relayWritten != relayRead || producerCompleted) {
+                    consumerIoControl.requestOutput();
+                }
+            }
+        }
+
+        if (bytesWritten > 0 && !encoder.isCompleted() && !completed) {
+            producerIoControl.requestInput();
+        }
+        return bytesWritten;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -235,11 +410,16 @@ public class Pipe {
      *
      * @return An InputStream object
      */
-    public synchronized InputStream getInputStream() {
-        if (inputStream == null) {
-            inputStream = new ByteBufferInputStream();
+    public InputStream getInputStream() {
+        lock.lock();
+        try {
+            if (inputStream == null) {
+                inputStream = new ByteBufferInputStream();
+            }
+            return inputStream;
+        } finally {
+            lock.unlock();
         }
-        return inputStream;
     }
 
     /**
@@ -248,27 +428,42 @@ public class Pipe {
      *
      * @return An OutputStream object
      */
-    public synchronized OutputStream getOutputStream() {
-        if (outputStream == null) {
-            outputBuffer = baseConfig.getBufferFactory().getBuffer();
-            outputStream = new ByteBufferOutputStream();
+    public OutputStream getOutputStream() {
+        lock.lock();
+        try {
+            if (outputStream == null) {
+                outputBuffer = baseConfig.getBufferFactory().getBuffer();
+                outputStream = new ByteBufferOutputStream();
+            }
+            return outputStream;
+        } finally {
+            lock.unlock();
         }
-        return outputStream;
     }
 
-    public synchronized void setSerializationComplete(boolean serializationComplete) {
-        if (!this.serializationComplete) {
-            this.serializationComplete = serializationComplete;
-            if (consumerIoControl != null && hasData(outputBuffer)) {
-                consumerIoControl.requestOutput();
+    public void setSerializationComplete(boolean serializationComplete) {
+        lock.lock();
+        try {
+            if (!this.serializationComplete) {
+                this.serializationComplete = serializationComplete;
+                if (consumerIoControl != null && hasData(outputBuffer)) {
+                    consumerIoControl.requestOutput();
+                }
             }
+        } finally {
+            lock.unlock();
         }
     }
     
-    public synchronized void setSerializationCompleteWithoutData(boolean serializationComplete) {
-        if (!this.serializationComplete) {
-            this.serializationComplete = serializationComplete;
-            consumerIoControl.requestOutput();
+    public void setSerializationCompleteWithoutData(boolean serializationComplete) {
+        lock.lock();
+        try {
+            if (!this.serializationComplete) {
+                this.serializationComplete = serializationComplete;
+                consumerIoControl.requestOutput();
+            }
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -280,8 +475,13 @@ public class Pipe {
         return buffer;
     }
 
-    public synchronized boolean isSerializationComplete(){
-        return serializationComplete;
+    public boolean isSerializationComplete(){
+        lock.lock();
+        try {
+            return serializationComplete;
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void setInputMode(ControlledByteBuffer buffer) {
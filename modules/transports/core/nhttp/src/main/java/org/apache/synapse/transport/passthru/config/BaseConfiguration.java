@@ -23,18 +23,25 @@ import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.description.ParameterInclude;
 import org.apache.axis2.transport.base.threads.WorkerPool;
 import org.apache.axis2.transport.base.threads.WorkerPoolFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.util.ByteBufferAllocator;
+import org.apache.http.nio.util.DirectByteBufferAllocator;
 import org.apache.http.nio.util.HeapByteBufferAllocator;
 import org.apache.http.protocol.HttpProcessor;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.util.BufferFactory;
+import org.apache.synapse.transport.passthru.util.VirtualThreadWorkerPool;
 
 /**
  * This class has common configurations for both sender and receiver.
  */
 public abstract class BaseConfiguration {
 
+    private static final Log log = LogFactory.getLog(BaseConfiguration.class);
+
     /**
      * Configurations given by axis2.xml
      */
@@ -52,6 +59,9 @@ public abstract class BaseConfiguration {
 
     private HttpProcessor httpProcessor;
 
+    /** Whether untouched payloads may be relayed without the pipe lock */
+    private boolean directRelay = true;
+
     protected PassThroughConfiguration conf = PassThroughConfiguration.getInstance();
 
     public BaseConfiguration(ConfigurationContext configurationContext,
@@ -59,6 +69,14 @@ public abstract class BaseConfiguration {
                              WorkerPool workerPool) {
         this.parameters = parameters;
         this.configurationContext = configurationContext;
+        if (workerPool == null && conf.isVirtualThreadWorkers()) {
+            if (VirtualThreadWorkerPool.isSupported()) {
+                workerPool = new VirtualThreadWorkerPool("PassThroughMessageProcessor");
+            } else {
+                log.warn("Virtual threads are not supported by this JVM - using the " +
+                        "worker thread pool to process messages");
+            }
+        }
         if (workerPool == null) {
             this.workerPool = WorkerPoolFactory.getWorkerPool(
                     conf.getWorkerPoolCoreSize(),
@@ -71,8 +89,11 @@ public abstract class BaseConfiguration {
             this.workerPool = workerPool;
         }
 
-        int bufferSize = conf.getIntProperty(PassThroughConfigPNames.IO_BUFFER_SIZE, 1024 * 8);
-        bufferFactory = new BufferFactory(bufferSize, HeapByteBufferAllocator.INSTANCE, 512);
+        ByteBufferAllocator allocator = conf.isDirectIOBuffers() ?
+                DirectByteBufferAllocator.INSTANCE : HeapByteBufferAllocator.INSTANCE;
+        bufferFactory = new BufferFactory(conf.getIOBufferSize(), allocator,
+                conf.getIOBufferPoolSize(), conf.getIOBufferPoolStripes());
+        directRelay = conf.isDirectRelay();
         httpProcessor = initHttpProcessor();
     }
 
@@ -102,6 +123,10 @@ public abstract class BaseConfiguration {
         return bufferFactory;
     }
 
+    public boolean isDirectRelay() {
+        return directRelay;
+    }
+
     public HttpProcessor getHttpProcessor() {
         return httpProcessor;
     }
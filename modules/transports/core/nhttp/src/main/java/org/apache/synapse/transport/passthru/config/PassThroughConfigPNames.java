@@ -45,6 +45,12 @@ public interface PassThroughConfigPNames {
      */
     public String WORKER_POOL_QUEUE_LENGTH = "worker_pool_queue_length";
 
+    /**
+     * Defines whether the messages should be processed on virtual threads instead of the
+     * worker thread pool, when supported by the JVM
+     */
+    public String WORKER_POOL_VIRTUAL_THREADS = "worker_pool_virtual_threads";
+
     /**
      * Defines the number of IO dispatcher threads used per reactor
      */
@@ -55,6 +61,27 @@ public interface PassThroughConfigPNames {
      */
     public String IO_BUFFER_SIZE = "io_buffer_size";
 
+    /**
+     * Defines the maximum number of IO buffers retained in the buffer pool
+     */
+    public String IO_BUFFER_POOL_SIZE = "io_buffer_pool_size";
+
+    /**
+     * Defines the number of stripes the IO buffer pool is split into
+     */
+    public String IO_BUFFER_POOL_STRIPES = "io_buffer_pool_stripes";
+
+    /**
+     * Defines whether IO buffers should be allocated off-heap (direct buffers)
+     */
+    public String IO_BUFFER_DIRECT = "io_buffer_direct";
+
+    /**
+     * Defines whether payloads that are not touched by the mediation are relayed directly
+     * from the source to the target connection without locking the pipe
+     */
+    public String DIRECT_RELAY = "http.direct.relay";
+
     /**
      * Defines whether ESB needs to preserve the original User-Agent header.
      */
@@ -80,6 +107,12 @@ public interface PassThroughConfigPNames {
      */
     public String MAX_CONNECTION_PER_TARGET = "http.max.connection.per.target";
 
+    /**
+     * Defines the time (in milliseconds) after which an unused connection to a target is
+     * closed. A value less than or equal to zero keeps idle connections open indefinitely
+     */
+    public String CONNECTION_IDLE_TIME = "http.connection.idle.time";
+
     /**
      * Determines the value of the User-Agent header sent by the transport, when sending
      * requests to a backend endpoint.
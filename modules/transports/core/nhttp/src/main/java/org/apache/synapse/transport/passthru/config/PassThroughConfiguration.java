@@ -35,6 +35,11 @@ public class PassThroughConfiguration extends HttpTransportConfiguration {
     private static final int DEFAULT_WORKER_THREAD_KEEPALIVE_SEC = 60;
     private static final int DEFAULT_WORKER_POOL_QUEUE_LENGTH    = -1;
     private static final int DEFAULT_IO_THREADS_PER_REACTOR      = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_IO_BUFFER_SIZE              = 1024 * 8;
+    private static final int DEFAULT_IO_BUFFER_POOL_SIZE         = 512;
+    private static final boolean DEFAULT_IO_BUFFER_DIRECT        = true;
+    private static final boolean DEFAULT_DIRECT_RELAY            = true;
+    private static final boolean DEFAULT_VIRTUAL_THREADS         = false;
 
     private static PassThroughConfiguration _instance = new PassThroughConfiguration();
 
@@ -66,12 +71,42 @@ public class PassThroughConfiguration extends HttpTransportConfiguration {
                 DEFAULT_WORKER_POOL_QUEUE_LENGTH);
     }
 
+    public boolean isVirtualThreadWorkers() {
+        return getBooleanProperty(PassThroughConfigPNames.WORKER_POOL_VIRTUAL_THREADS,
+                DEFAULT_VIRTUAL_THREADS);
+    }
+
     @Override
     protected int getThreadsPerReactor() {
         return getIntProperty(PassThroughConfigPNames.IO_THREADS_PER_REACTOR,
                 DEFAULT_IO_THREADS_PER_REACTOR);
     }
 
+    public int getIOBufferSize() {
+        return getIntProperty(PassThroughConfigPNames.IO_BUFFER_SIZE,
+                DEFAULT_IO_BUFFER_SIZE);
+    }
+
+    public int getIOBufferPoolSize() {
+        return getIntProperty(PassThroughConfigPNames.IO_BUFFER_POOL_SIZE,
+                DEFAULT_IO_BUFFER_POOL_SIZE);
+    }
+
+    public int getIOBufferPoolStripes() {
+        return getIntProperty(PassThroughConfigPNames.IO_BUFFER_POOL_STRIPES,
+                getThreadsPerReactor());
+    }
+
+    public boolean isDirectIOBuffers() {
+        return getBooleanProperty(PassThroughConfigPNames.IO_BUFFER_DIRECT,
+                DEFAULT_IO_BUFFER_DIRECT);
+    }
+
+    public boolean isDirectRelay() {
+        return getBooleanProperty(PassThroughConfigPNames.DIRECT_RELAY,
+                DEFAULT_DIRECT_RELAY);
+    }
+
     public String getPreserveHttpHeaders() {
         return getStringProperty(PassThroughConfigPNames.HTTP_HEADERS_PRESERVE, "");
     }
@@ -36,6 +36,8 @@ public class TargetConfiguration extends BaseConfiguration {
 
     private int maxConnections = Integer.MAX_VALUE;
 
+    private int connectionIdleTime = 60000;
+
     /** Whether User-Agent header coming from client should be preserved */
     private boolean preserveUserAgentHeader = false;
 
@@ -54,6 +56,8 @@ public class TargetConfiguration extends BaseConfiguration {
         maxConnections = conf.getIntProperty(
                 PassThroughConfigPNames.MAX_CONNECTION_PER_TARGET,
                 Integer.MAX_VALUE);
+        connectionIdleTime = conf.getIntProperty(
+                PassThroughConfigPNames.CONNECTION_IDLE_TIME, 60000);
         preserveUserAgentHeader = conf.getBooleanProperty(
                 PassThroughConfigPNames.USER_AGENT_HEADER_PRESERVE, false);
         preserveServerHeader = conf.getBooleanProperty(
@@ -78,6 +82,10 @@ public class TargetConfiguration extends BaseConfiguration {
         return maxConnections;
     }
 
+    public int getConnectionIdleTime() {
+        return connectionIdleTime;
+    }
+
     /**
      * Check preserving status of the given http header name
      *
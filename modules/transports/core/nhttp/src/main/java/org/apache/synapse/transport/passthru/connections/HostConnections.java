@@ -16,7 +16,6 @@
  *  specific language governing permissions and limitations
  *  under the License.
  */
-
 package org.apache.synapse.transport.passthru.connections;
 
 import org.apache.http.nio.NHttpClientConnection;
@@ -25,13 +24,25 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 
-import java.util.List;
 import java.util.ArrayList;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * This stores connections for a particular host + port.
+ * This stores connections for a particular host + port. The pool does not use any locks:
+ * free connections are kept in a concurrent deque and handed out in LIFO order, so that
+ * the most recently used (and therefore warmest) connection is reused first while the
+ * connections at the tail of the deque become idle and get evicted by the sweeper. The
+ * size of the pool is enforced with a single counter of the pending, busy and free
+ * connections, which only changes when a connection joins or leaves the pool.
  */
 public class HostConnections {
 
@@ -43,13 +54,24 @@ public class HostConnections {
     // maximum number of connections allowed for this host + port
     private int maxSize;
     // number of awaiting connections
-    private int pendingConnections;
-    // list of free connections available
-    private List<NHttpClientConnection> freeConnections = new ArrayList<NHttpClientConnection>();
-    // list of connections in use
-    private List<NHttpClientConnection> busyConnections = new ArrayList<NHttpClientConnection>();
+    private final AtomicInteger pendingConnections = new AtomicInteger(0);
+    // number of pending, busy and free connections
+    private final AtomicInteger connectionCount = new AtomicInteger(0);
+    // free connections available, most recently released first
+    private final ConcurrentLinkedDeque<IdleConnection> freeConnections =
+            new ConcurrentLinkedDeque<IdleConnection>();
+    // number of free connections (the size of a ConcurrentLinkedDeque is not a constant
+    // time operation)
+    private final AtomicInteger freeConnectionCount = new AtomicInteger(0);
+    // connections in use
+    private final Set<NHttpClientConnection> busyConnections = Collections.newSetFromMap(
+            new ConcurrentHashMap<NHttpClientConnection, Boolean>());
+    // start times of the pending connection attempts, oldest first
+    private final Queue<Long> pendingStartTimes = new ConcurrentLinkedQueue<Long>();
 
-    private Lock lock = new ReentrantLock();
+    private final AtomicLong connectCount = new AtomicLong(0);
+    private final AtomicLong totalConnectTime = new AtomicLong(0);
+    private final AtomicLong evictedCount = new AtomicLong(0);
 
     public HostConnections(String host, int port, int maxSize) {
         if (log.isDebugEnabled()) {
@@ -66,19 +88,14 @@ public class HostConnections {
      * @return a connection
      */
     public NHttpClientConnection getConnection() {
-        lock.lock();
-        try {
-            if (freeConnections.size() > 0) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Returning an existing free connection to " + host + ":" + port);
-                }
-                NHttpClientConnection conn = freeConnections.get(0);
-                freeConnections.remove(conn);
-                busyConnections.add(conn);
-                return conn;
+        IdleConnection idle = freeConnections.pollFirst();
+        if (idle != null) {
+            freeConnectionCount.decrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Returning an existing free connection to " + host + ":" + port);
             }
-        } finally {
-            lock.unlock();
+            busyConnections.add(idle.connection);
+            return idle.connection;
         }
         return null;
     }
@@ -89,26 +106,29 @@ public class HostConnections {
         ctx.removeAttribute(HttpCoreContext.HTTP_REQUEST);
         ctx.removeAttribute(HttpCoreContext.HTTP_RESPONSE);
 
-        lock.lock();
-        try {
-            if (busyConnections.remove(conn)) {
-                freeConnections.add(conn);
-            } else {
-                log.error("Attempted to releaseConnection connection not in the busy list");
-            }
-        } finally {
-            lock.unlock();
+        if (busyConnections.remove(conn)) {
+            freeConnections.offerFirst(new IdleConnection(conn));
+            freeConnectionCount.incrementAndGet();
+        } else {
+            log.error("Attempted to releaseConnection connection not in the busy list");
         }
     }
 
     public void forget(NHttpClientConnection conn) {
-        lock.lock();
-        try {
-            if (!freeConnections.remove(conn)) {
-                busyConnections.remove(conn);
+        if (busyConnections.remove(conn)) {
+            connectionCount.decrementAndGet();
+        } else {
+            Iterator<IdleConnection> it = freeConnections.iterator();
+            while (it.hasNext()) {
+                IdleConnection idle = it.next();
+                if (idle.connection == conn) {
+                    if (freeConnections.removeFirstOccurrence(idle)) {
+                        freeConnectionCount.decrementAndGet();
+                        connectionCount.decrementAndGet();
+                    }
+                    break;
+                }
             }
-        } finally {
-            lock.unlock();
         }
     }
 
@@ -116,13 +136,29 @@ public class HostConnections {
         if (log.isDebugEnabled()) {
             log.debug("New connection to " + host + ":" + port + " is added to the free list");
         }
-        lock.lock();
-        try {
-            // Adding to busyConnections to make sure the first requester get it.
-            // Otherwise someone else might acquire it.
-            busyConnections.add(conn);
-        } finally {
-            lock.unlock();
+        // Adding to busyConnections to make sure the first requester get it.
+        // Otherwise someone else might acquire it.
+        busyConnections.add(conn);
+    }
+
+    /**
+     * Reserve a slot for a new connection to this host:port, if the pool has not reached
+     * its maximum size yet. A successful reservation must be followed by a call to either
+     * {@link #pendingConnectionSucceeded()} or {@link #pendingConnectionFailed()}.
+     *
+     * @return true if a new connection may be created
+     */
+    public boolean reservePendingConnection() {
+        while (true) {
+            int count = connectionCount.get();
+            if (count >= maxSize) {
+                return false;
+            }
+            if (connectionCount.compareAndSet(count, count + 1)) {
+                pendingConnections.incrementAndGet();
+                pendingStartTimes.offer(System.currentTimeMillis());
+                return true;
+            }
         }
     }
 
@@ -130,13 +166,13 @@ public class HostConnections {
      * Indicates that a connection has been successfully established with a remote server
      * as notified by the session request call back.
      */
-    public synchronized void pendingConnectionSucceeded() {
-        lock.lock();
-        try {
-            pendingConnections--;
-        } finally {
-            lock.unlock();
+    public void pendingConnectionSucceeded() {
+        Long start = pendingStartTimes.poll();
+        if (start != null) {
+            connectCount.incrementAndGet();
+            totalConnectTime.addAndGet(System.currentTimeMillis() - start);
         }
+        pendingConnections.decrementAndGet();
     }
 
     /**
@@ -144,13 +180,40 @@ public class HostConnections {
      * consecutively
      */
     public void pendingConnectionFailed() {
-        lock.lock();
-        try {
-            pendingConnections--;
-        } finally {
-            lock.unlock();
+        pendingStartTimes.poll();
+        pendingConnections.decrementAndGet();
+        connectionCount.decrementAndGet();
+    }
+
+    /**
+     * Remove the free connections which have not been used since the given time. The
+     * caller is responsible for closing the returned connections.
+     *
+     * @param idleSince connections released before this time (in milliseconds) are evicted
+     * @return the evicted connections
+     */
+    public List<NHttpClientConnection> evictIdleConnections(long idleSince) {
+        List<NHttpClientConnection> evicted = null;
+        // The oldest connections are at the tail of the deque
+        Iterator<IdleConnection> it = freeConnections.descendingIterator();
+        while (it.hasNext()) {
+            IdleConnection idle = it.next();
+            if (idle.releasedTime >= idleSince) {
+                break;
+            }
+            // Only evict the connection if no one has acquired it in the meantime
+            if (freeConnections.removeFirstOccurrence(idle)) {
+                freeConnectionCount.decrementAndGet();
+                connectionCount.decrementAndGet();
+                if (evicted == null) {
+                    evicted = new ArrayList<NHttpClientConnection>();
+                }
+                evicted.add(idle.connection);
+                evictedCount.incrementAndGet();
+            }
         }
-    }    
+        return evicted == null ? Collections.<NHttpClientConnection>emptyList() : evicted;
+    }
 
     public String getHost() {
         return host;
@@ -161,6 +224,41 @@ public class HostConnections {
     }
 
     public boolean canHaveMoreConnections() {
-        return busyConnections.size() + pendingConnections < maxSize;
+        return connectionCount.get() < maxSize;
+    }
+
+    public int getIdleConnectionCount() {
+        return freeConnectionCount.get();
+    }
+
+    public int getBusyConnectionCount() {
+        return busyConnections.size();
+    }
+
+    public int getPendingConnectionCount() {
+        return pendingConnections.get();
+    }
+
+    public long getEvictedConnectionCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * @return average time (in milliseconds) taken to establish a new connection
+     */
+    public double getAverageConnectTime() {
+        long count = connectCount.get();
+        return count == 0 ? 0.0 : (double) totalConnectTime.get() / count;
+    }
+
+    private static class IdleConnection {
+
+        private final NHttpClientConnection connection;
+        private final long releasedTime;
+
+        private IdleConnection(NHttpClientConnection connection) {
+            this.connection = connection;
+            this.releasedTime = System.currentTimeMillis();
+        }
     }
 }
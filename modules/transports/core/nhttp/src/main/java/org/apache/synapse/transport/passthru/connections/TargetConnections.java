@@ -27,10 +27,16 @@ import org.apache.synapse.transport.passthru.ConnectCallback;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.TargetContext;
 import org.apache.synapse.transport.passthru.config.TargetConfiguration;
+import org.apache.synapse.transport.passthru.jmx.HostConnectionsView;
 
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.net.InetSocketAddress;
 
 /**
@@ -42,9 +48,13 @@ public class TargetConnections {
     private static final Log log = LogFactory.getLog(TargetConnections.class);
 
     /** map to hold the ConnectionPools. The key is host:port */
-    private final Map<String, HostConnections> poolMap =
+    private final ConcurrentMap<String, HostConnections> poolMap =
             new ConcurrentHashMap<String, HostConnections>();
 
+    /** JMX views of the ConnectionPools. The key is host:port */
+    private final ConcurrentMap<String, HostConnectionsView> viewMap =
+            new ConcurrentHashMap<String, HostConnectionsView>();
+
     /** max connections per host:port pair. At the moment all the host:ports can
      * have the same max */
     private int maxConnections;
@@ -55,6 +65,9 @@ public class TargetConnections {
     /** callback invoked when a connection is made */
     private ConnectCallback callback = null;
 
+    /** closes the connections which have been idle for too long */
+    private ScheduledExecutorService idleConnectionSweeper = null;
+
     /**
      * Create a TargetConnections with the given IO-Reactor
      *
@@ -69,6 +82,41 @@ public class TargetConnections {
         this.maxConnections = targetConfiguration.getMaxConnections();
         this.ioReactor = ioReactor;
         this.callback = callback;
+
+        final int idleTime = targetConfiguration.getConnectionIdleTime();
+        if (idleTime > 0) {
+            idleConnectionSweeper = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "PassThroughIdleConnectionSweeper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            Runnable sweeper = new Runnable() {
+                @Override
+                public void run() {
+                    closeIdleConnections(System.currentTimeMillis() - idleTime);
+                }
+            };
+            long period = Math.max(1000, idleTime / 2);
+            idleConnectionSweeper.scheduleWithFixedDelay(sweeper, period, period,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the idle connection sweeper and un-register the JMX views of the pools
+     */
+    public void destroy() {
+        if (idleConnectionSweeper != null) {
+            idleConnectionSweeper.shutdownNow();
+        }
+        for (HostConnectionsView view : viewMap.values()) {
+            view.destroy();
+        }
+        viewMap.clear();
     }
 
     /**
@@ -92,8 +140,13 @@ public class TargetConnections {
         // trying to get an existing connection
         NHttpClientConnection connection = pool.getConnection();
         if (connection == null) {
-            if (pool.canHaveMoreConnections()) {
-                ioReactor.connect(new InetSocketAddress(host, port), null, pool, callback);
+            if (pool.reservePendingConnection()) {
+                try {
+                    ioReactor.connect(new InetSocketAddress(host, port), null, pool, callback);
+                } catch (RuntimeException e) {
+                    pool.pendingConnectionFailed();
+                    throw e;
+                }
             } else {
                 log.warn("Connection pool reached maximum allowed connections for: "
                         + host + ":" + port + ". Target server may have become slow");
@@ -218,18 +271,40 @@ public class TargetConnections {
         }
     }
 
+    /**
+     * Close the free connections which have not been used since the given time
+     *
+     * @param idleSince connections released before this time (in milliseconds) are closed
+     */
+    void closeIdleConnections(long idleSince) {
+        for (HostConnections pool : poolMap.values()) {
+            List<NHttpClientConnection> evicted = pool.evictIdleConnections(idleSince);
+            for (NHttpClientConnection conn : evicted) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing idle connection to " + pool.getHost() + ":" +
+                            pool.getPort());
+                }
+                TargetContext.get(conn).reset();
+                try {
+                    conn.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
     private HostConnections getConnectionPool(String host, int port) {
         String key = host + ":" + port;
-        if (!poolMap.containsKey(key)) {
-            synchronized (poolMap) {
-                // see weather a pool already exists for this host:port
-                if (!poolMap.containsKey(key)) {
-                    HostConnections pool = new HostConnections(host, port, maxConnections);
-                    poolMap.put(key, pool);
-                }
+        HostConnections pool = poolMap.get(key);
+        if (pool == null) {
+            HostConnections newPool = new HostConnections(host, port, maxConnections);
+            pool = poolMap.putIfAbsent(key, newPool);
+            if (pool == null) {
+                pool = newPool;
+                viewMap.put(key, new HostConnectionsView(pool));
             }
         }
-        return poolMap.get(key);
+        return pool;
     }
 
 }
@@ -0,0 +1,95 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.transport.passthru.jmx;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.transport.passthru.util.BufferFactory;
+
+/**
+ * BufferPoolView MBean exposes the state of the IO buffer pool used by a pass-through
+ * connector. Hits are buffer requests served from the pool, misses are requests that
+ * had to allocate a new buffer and discards are released buffers dropped because the
+ * pool was already full. A steadily growing miss or discard count is a good indication
+ * that the io_buffer_pool_size setting is too small for the current load.
+ */
+public class BufferPoolView implements BufferPoolViewMBean {
+
+    private static final String PASS_THROUGH_BUFFER_POOL = "PassThroughBufferPool";
+
+    private BufferFactory bufferFactory;
+
+    private String name;
+
+    public BufferPoolView(String name, BufferFactory bufferFactory) {
+        this.name = name;
+        this.bufferFactory = bufferFactory;
+        MBeanRegistrar.getInstance().registerMBean(this, PASS_THROUGH_BUFFER_POOL, name);
+    }
+
+    public void destroy() {
+        MBeanRegistrar.getInstance().unRegisterMBean(PASS_THROUGH_BUFFER_POOL, name);
+    }
+
+    @Override
+    public long getHitCount() {
+        return bufferFactory.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return bufferFactory.getMissCount();
+    }
+
+    @Override
+    public long getDiscardCount() {
+        return bufferFactory.getDiscardCount();
+    }
+
+    @Override
+    public long getLiveBuffers() {
+        return bufferFactory.getLiveBufferCount();
+    }
+
+    @Override
+    public int getPooledBuffers() {
+        return bufferFactory.getPooledBufferCount();
+    }
+
+    @Override
+    public int getCapacity() {
+        return bufferFactory.getCapacity();
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferFactory.getBufferSize();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = bufferFactory.getHitCount();
+        long total = hits + bufferFactory.getMissCount();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public void reset() {
+        bufferFactory.resetStatistics();
+    }
+}
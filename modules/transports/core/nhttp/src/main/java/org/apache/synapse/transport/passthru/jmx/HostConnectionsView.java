@@ -0,0 +1,85 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.jmx;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.transport.passthru.connections.HostConnections;
+
+/**
+ * HostConnectionsView MBean exposes the state of the connection pool maintained by the
+ * pass-through sender for a single host:port pair. Idle connections are kept alive for
+ * reuse, busy connections are currently serving a request and pending connections are
+ * still being established. The average connect time is the time taken to establish a
+ * new connection to the host, which is what a request waits for when no idle connection
+ * is available.
+ */
+public class HostConnectionsView implements HostConnectionsViewMBean {
+
+    private static final String PASS_THROUGH_HOST_CONNECTIONS = "PassThroughHostConnections";
+
+    private HostConnections pool;
+
+    private String name;
+
+    public HostConnectionsView(HostConnections pool) {
+        this.pool = pool;
+        // ':' is not allowed in an unquoted ObjectName value (and may appear in IPv6 hosts)
+        this.name = (pool.getHost() + "_" + pool.getPort()).replace(':', '_');
+        MBeanRegistrar.getInstance().registerMBean(this, PASS_THROUGH_HOST_CONNECTIONS, name);
+    }
+
+    public void destroy() {
+        MBeanRegistrar.getInstance().unRegisterMBean(PASS_THROUGH_HOST_CONNECTIONS, name);
+    }
+
+    @Override
+    public String getHost() {
+        return pool.getHost();
+    }
+
+    @Override
+    public int getPort() {
+        return pool.getPort();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return pool.getIdleConnectionCount();
+    }
+
+    @Override
+    public int getBusyConnections() {
+        return pool.getBusyConnectionCount();
+    }
+
+    @Override
+    public int getPendingConnections() {
+        return pool.getPendingConnectionCount();
+    }
+
+    @Override
+    public long getEvictedConnections() {
+        return pool.getEvictedConnectionCount();
+    }
+
+    @Override
+    public double getAverageConnectTime() {
+        return pool.getAverageConnectTime();
+    }
+}
@@ -20,13 +20,11 @@
 package org.apache.synapse.transport.passthru.jmx;
 
 import org.apache.axis2.AxisFault;
+import org.apache.synapse.commons.jmx.LatencyHistogram;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
 
 import java.util.Calendar;
 import java.util.Date;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -34,73 +32,64 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>LatencyView provides statistical information related to the latency (overhead) incurred by
- * the Synapse NHTTP transport, when mediating messages back and forth. Statistics are available
- * under two main categories, namely short term data and long term data. Short term data is
- * statistical information related to the last 15 minutes of execution and these metrics are
- * updated every 5 seconds. Long term data is related to the last 24 hours of execution and
- * they are updated every 5 minutes. Two timer tasks and a single threaded scheduled executor
- * is used to perform these periodic calculations.</p>
+ * the Synapse pass-through transport, when mediating messages back and forth. The latency
+ * values are recorded in fixed size histograms (see {@link LatencyHistogram}), from which
+ * averages and percentiles are computed over windows of the last minute up to the last 24
+ * hours. The histograms are harvested every 5 seconds by a single threaded scheduled
+ * executor.</p>
  *
  * <p>Latency calculation for a single invocation is carried out by taking timestamps on
  * following events:</p>
  *
  * <ul>
- *  <li>t1 - Receiving a new request (ServerHandler#requestReceived)</li>
- *  <li>t2 - Obtaining a connection to forward the request (ClientHandler#processConnection)</li>
- *  <li>t3 - Reading the complete response from the backend server (ClientHandler#inputReady)</li>
- *  <li>t4 - Writing the complete response to the client (ServerHandler#outputReady)</li>
+ *  <li>t1 - Receiving a new request (SourceHandler#requestReceived)</li>
+ *  <li>t2 - Sending the request to the backend (TargetHandler#requestReady)</li>
+ *  <li>t3 - Receiving the response headers from the backend (TargetHandler#responseReceived)</li>
+ *  <li>t4 - Writing the complete response to the client (SourceHandler#outputReady)</li>
  * <ul>
  *
  * <p>Having taken these timestamps, the latency for the invocation is calculated as follows:<br/>
  *    Latency = (t4 - t1) - (t3 - t2)
  * </p>
  *
+ * <p>The latency is further broken down into the mediation latency (t2 - t1) and the client
+ * write latency (t4 - t3), while the backend latency (t3 - t2) is tracked separately.</p>
+ *
+ * <p>Percentiles are queried with a window name, one of 1m, 5m, 15m, 1h, 8h or 24h.</p>
  */
 public class LatencyView implements LatencyViewMBean {
 
     private static final String NHTTP_LATENCY_VIEW = "PassThroughTransportLatency";
 
     private static final int SMALL_DATA_COLLECTION_PERIOD = 5;
-    private static final int LARGE_DATA_COLLECTION_PERIOD = 5 * 60;
     private static final int SAMPLES_PER_MINUTE = 60/ SMALL_DATA_COLLECTION_PERIOD;
-    private static final int SAMPLES_PER_HOUR = (60 * 60)/LARGE_DATA_COLLECTION_PERIOD;
 
     /** Keeps track of th last reported latency value */
     private AtomicLong lastLatency = new AtomicLong(0);
 
-    /**
-     * Queue of all latency values reported. The short term data collector clears this queue up
-     * time to time thus ensuring it doesn't grow indefinitely.
-     */
-    private Queue<Long> latencyDataQueue = new ConcurrentLinkedQueue<Long>();
+    /** Overall latency (overhead) of the transport */
+    private final LatencyHistogram latency = new LatencyHistogram(SAMPLES_PER_MINUTE);
 
-    /**
-     * Queue of samples collected by the short term data collector. This is maintained
-     * as a fixed length queue
-     */
-    private Queue<Long> shortTermLatencyDataQueue = new LinkedList<Long>();
+    /** Time taken by the backend to respond */
+    private final LatencyHistogram backendLatency = new LatencyHistogram(SAMPLES_PER_MINUTE);
 
-    /**
-     * Queue of samples collected by the long term data collector. This is maintained
-     * as a fixed length queue
-     */
-    private Queue<Long> longTermLatencyDataQueue = new LinkedList<Long>();
+    /** Time from the arrival of the request until it is sent to the backend */
+    private final LatencyHistogram mediationLatency = new LatencyHistogram(SAMPLES_PER_MINUTE);
+
+    /** Time from the arrival of the response until it is completely written to the client */
+    private final LatencyHistogram clientWriteLatency = new LatencyHistogram(SAMPLES_PER_MINUTE);
 
     /** Scheduled executor on which data collectors are executed */
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
-    private double allTimeAvgLatency = 0.0;
-    private int count = 0;
     private Date resetTime = Calendar.getInstance().getTime();
 
     private String name;
 
     public LatencyView(boolean isHttps) throws AxisFault {
         name = "nio-http" + (isHttps ? "s" : "");
-        scheduler.scheduleAtFixedRate(new ShortTermDataCollector(), SMALL_DATA_COLLECTION_PERIOD,
+        scheduler.scheduleAtFixedRate(new DataCollector(), SMALL_DATA_COLLECTION_PERIOD,
                 SMALL_DATA_COLLECTION_PERIOD, TimeUnit.SECONDS);
-        scheduler.scheduleAtFixedRate(new LongTermDataCollector(), LARGE_DATA_COLLECTION_PERIOD,
-                LARGE_DATA_COLLECTION_PERIOD, TimeUnit.SECONDS);
 
         boolean registered = false;
         try {
@@ -130,151 +119,156 @@ public class LatencyView implements LatencyViewMBean {
     public void notifyTimes(long reqArrival, long reqDeparture,
                             long resArrival, long resDeparture) {
 
-        long latency = (resDeparture - reqArrival) - (resArrival - reqDeparture);
-        lastLatency.set(latency);
-        latencyDataQueue.offer(latency);
+        long mediation = reqDeparture - reqArrival;
+        long clientWrite = resDeparture - resArrival;
+        long total = mediation + clientWrite;
+        lastLatency.set(total);
+        latency.record(total);
+        mediationLatency.record(mediation);
+        clientWriteLatency.record(clientWrite);
+        backendLatency.record(resArrival - reqDeparture);
     }
 
     @Override
     public double getAllTimeAvgLatency() {
-        return allTimeAvgLatency;
+        return latency.getAllTimeAverage();
     }
 
     @Override
     public double getLastMinuteAvgLatency() {
-        return getAverageLatencyByMinute(1);
+        return latency.getAverage(1);
     }
 
     @Override
     public double getLast5MinuteAvgLatency() {
-        return getAverageLatencyByMinute(5);
+        return latency.getAverage(5);
     }
 
     @Override
     public double getLast15MinuteAvgLatency() {
-        return getAverageLatencyByMinute(15);
+        return latency.getAverage(15);
     }
 
     @Override
     public double getLastHourAvgLatency() {
-        return getAverageLatencyByHour(1);
+        return latency.getAverage(60);
     }
 
     @Override
     public double getLast8HourAvgLatency() {
-        return getAverageLatencyByHour(8);
+        return latency.getAverage(8 * 60);
     }
 
     @Override
     public double getLast24HourAvgLatency() {
-        return getAverageLatencyByHour(24);
+        return latency.getAverage(24 * 60);
     }
 
     @Override
-    public void reset() {
-        lastLatency.set(0);
-        allTimeAvgLatency = 0.0;
-        latencyDataQueue.clear();
-        shortTermLatencyDataQueue.clear();
-        longTermLatencyDataQueue.clear();
-        count = 0;
-        resetTime = Calendar.getInstance().getTime();
+    public double getLastMinute99thPercentileLatency() {
+        return latency.getPercentile(1, 99);
     }
 
     @Override
-    public Date getLastResetTime() {
-        return resetTime;
+    public double getLast5Minute99thPercentileLatency() {
+        return latency.getPercentile(5, 99);
     }
 
-    private double getAverageLatencyByMinute(int n) {
-        int samples = n * SAMPLES_PER_MINUTE;
-        double sum = 0.0;
-        Long[] array = shortTermLatencyDataQueue.toArray(new Long[shortTermLatencyDataQueue.size()]);
-
-        if (samples > array.length) {
-            // If we don't have enough samples collected yet
-            // add up everything we have
-            samples = array.length;
-            for (Long anArray : array) {
-                sum += anArray;
-            }
-        } else {
-            // We have enough samples to make the right calculation
-            // Add up starting from the end of the queue (to give the most recent values)
-            for (int i = 0; i < samples; i++) {
-                sum += array[array.length - 1 - i];
-            }
-        }
+    @Override
+    public double getLast15Minute99thPercentileLatency() {
+        return latency.getPercentile(15, 99);
+    }
 
-        if (samples == 0) {
-            return 0.0;
-        }
-        return sum/samples;
+    @Override
+    public double getLastHour99thPercentileLatency() {
+        return latency.getPercentile(60, 99);
     }
 
-    private double getAverageLatencyByHour(int n) {
-        int samples = n * SAMPLES_PER_HOUR;
-        double sum = 0.0;
-        Long[] array = longTermLatencyDataQueue.toArray(new Long[longTermLatencyDataQueue.size()]);
+    @Override
+    public double getLast24Hour99thPercentileLatency() {
+        return latency.getPercentile(24 * 60, 99);
+    }
 
-        if (samples > array.length) {
-            samples = array.length;
-            for (Long anArray : array) {
-                sum += anArray;
-            }
-        } else {
-            for (int i = 0; i < samples; i++) {
-                sum += array[array.length - 1 - i];
-            }
-        }
+    @Override
+    public double getLatencyPercentile(String window, double percentile) {
+        return latency.getPercentile(toMinutes(window), percentile);
+    }
 
-        if (samples == 0) {
-            return 0.0;
-        }
-        return sum/samples;
+    @Override
+    public double getBackendLatencyPercentile(String window, double percentile) {
+        return backendLatency.getPercentile(toMinutes(window), percentile);
     }
 
-    private class ShortTermDataCollector implements Runnable {
-        @Override
-        public void run() {
-            long latency = lastLatency.get();
-
-            // calculate all time average latency
-            int size = latencyDataQueue.size();
-            if (size > 0) {
-                long sum = 0;
-                for (int i = 0; i < size; i++) {
-                    sum += latencyDataQueue.poll();
-                }
-                allTimeAvgLatency = (allTimeAvgLatency * count + sum)/(count + size);
-                count = count + size;
-            }
+    @Override
+    public double getMediationLatencyPercentile(String window, double percentile) {
+        return mediationLatency.getPercentile(toMinutes(window), percentile);
+    }
 
-            if (shortTermLatencyDataQueue.size() == 0 && latency == 0) {
-                // we haven't started collecting data yet - skip ahead...
-                return;
-            }
+    @Override
+    public double getClientWriteLatencyPercentile(String window, double percentile) {
+        return clientWriteLatency.getPercentile(toMinutes(window), percentile);
+    }
 
-            // take a sample for the short term latency calculation
-            if (shortTermLatencyDataQueue.size() == SAMPLES_PER_MINUTE * 15) {
-                shortTermLatencyDataQueue.remove();
-            }
-            shortTermLatencyDataQueue.offer(latency);
+    @Override
+    public double getBackendAvgLatency(String window) {
+        return backendLatency.getAverage(toMinutes(window));
+    }
+
+    @Override
+    public double getMediationAvgLatency(String window) {
+        return mediationLatency.getAverage(toMinutes(window));
+    }
+
+    @Override
+    public double getClientWriteAvgLatency(String window) {
+        return clientWriteLatency.getAverage(toMinutes(window));
+    }
+
+    @Override
+    public long getLastLatency() {
+        return lastLatency.get();
+    }
+
+    @Override
+    public void reset() {
+        lastLatency.set(0);
+        latency.reset();
+        backendLatency.reset();
+        mediationLatency.reset();
+        clientWriteLatency.reset();
+        resetTime = Calendar.getInstance().getTime();
+    }
+
+    @Override
+    public Date getLastResetTime() {
+        return resetTime;
+    }
+
+    private int toMinutes(String window) {
+        if ("1m".equals(window)) {
+            return 1;
+        } else if ("5m".equals(window)) {
+            return 5;
+        } else if ("15m".equals(window)) {
+            return 15;
+        } else if ("1h".equals(window)) {
+            return 60;
+        } else if ("8h".equals(window)) {
+            return 8 * 60;
+        } else if ("24h".equals(window)) {
+            return 24 * 60;
         }
+        throw new IllegalArgumentException("Unsupported window : " + window +
+                " - expected one of 1m, 5m, 15m, 1h, 8h or 24h");
     }
 
-    private class LongTermDataCollector implements Runnable {
+    private class DataCollector implements Runnable {
         @Override
         public void run() {
-            long latency = lastLatency.get();
-            if (longTermLatencyDataQueue.size() == 0 && latency == 0) {
-                return;
-            }
-
-            if (longTermLatencyDataQueue.size() == SAMPLES_PER_HOUR * 24) {
-                longTermLatencyDataQueue.remove();
-            }
-            longTermLatencyDataQueue.offer(latency);
+            latency.collect();
+            backendLatency.collect();
+            mediationLatency.collect();
+            clientWriteLatency.collect();
         }
     }
-}
\ No newline at end of file
+}
@@ -30,6 +30,25 @@ public interface LatencyViewMBean {
     public double getLastHourAvgLatency();
     public double getLast8HourAvgLatency();
     public double getLast24HourAvgLatency();
+    public double getLastMinute99thPercentileLatency();
+    public double getLast5Minute99thPercentileLatency();
+    public double getLast15Minute99thPercentileLatency();
+    public double getLastHour99thPercentileLatency();
+    public double getLast24Hour99thPercentileLatency();
+    public long getLastLatency();
+
+    /*
+     * Breakdowns by window, which is one of 1m, 5m, 15m, 1h, 8h or 24h, and percentile,
+     * which is a value between 0 and 100 (e.g. 99.9)
+     */
+    public double getLatencyPercentile(String window, double percentile);
+    public double getBackendLatencyPercentile(String window, double percentile);
+    public double getMediationLatencyPercentile(String window, double percentile);
+    public double getClientWriteLatencyPercentile(String window, double percentile);
+    public double getBackendAvgLatency(String window);
+    public double getMediationAvgLatency(String window);
+    public double getClientWriteAvgLatency(String window);
+
     public void reset();
     public Date getLastResetTime();
 
@@ -21,22 +21,43 @@ package org.apache.synapse.transport.passthru.util;
 import org.apache.http.nio.util.ByteBufferAllocator;
 import org.apache.http.nio.util.HeapByteBufferAllocator;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * A pool of {@link ControlledByteBuffer} instances shared by the pipes of a pass-through
+ * connector. The pool is split into a number of stripes, each of which is a fixed array
+ * of slots claimed and returned using compare-and-set operations. A thread always starts
+ * looking at the stripe selected by its thread ID, so long lived IO dispatcher threads
+ * mostly work on their own stripe and never block each other. When the home stripe is
+ * empty (or full on release) the other stripes are visited before falling back to a
+ * fresh allocation (or dropping the buffer on release). The total number of pooled
+ * buffers never exceeds the configured high-water mark.
+ */
 public class BufferFactory {
 
-    private volatile ControlledByteBuffer [] buffers;
+    private final AtomicReferenceArray<ControlledByteBuffer>[] stripes;
 
-    private volatile int marker = -1;
+    private final int stripeMask;
 
     private ByteBufferAllocator allocator = null;
 
-    private Lock lock = new ReentrantLock();
-
     private int bufferSize = 1024 * 8;
 
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong live = new AtomicLong(0);
+
+    private final AtomicLong discards = new AtomicLong(0);
+
     public BufferFactory(int bufferSize, ByteBufferAllocator allocator, int size) {
+        this(bufferSize, allocator, size, Runtime.getRuntime().availableProcessors());
+    }
+
+    @SuppressWarnings("unchecked")
+    public BufferFactory(int bufferSize, ByteBufferAllocator allocator, int size, int stripeCount) {
         this.bufferSize = bufferSize;
         if (allocator != null) {
             this.allocator = allocator;
@@ -44,40 +65,138 @@ public class BufferFactory {
             this.allocator = HeapByteBufferAllocator.INSTANCE;
         }
 
-        buffers = new ControlledByteBuffer[size];
+        // Round the stripe count up to a power of two so that the stripe can be
+        // selected with a mask instead of a modulo operation
+        int count = 1;
+        while (count < stripeCount && count < size) {
+            count <<= 1;
+        }
+        stripeMask = count - 1;
+        stripes = new AtomicReferenceArray[count];
+        int slotsPerStripe = size / count;
+        int remainder = size % count;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new AtomicReferenceArray<ControlledByteBuffer>(
+                    slotsPerStripe + (i < remainder ? 1 : 0));
+        }
     }
 
     public ControlledByteBuffer getBuffer() {
-        if (marker == -1) {
-            return new ControlledByteBuffer(allocator.allocate(bufferSize));
-        } else {
-            try {
-                lock.lock();
-                if (marker >= 0) {
-                    ControlledByteBuffer controlledByteBuffer = buffers[marker];
-                    controlledByteBuffer.clear();
-                    controlledByteBuffer.forceSetInputMode();
-                    buffers[marker] = null;
-                    marker--;
-                    return controlledByteBuffer;
-                }
-            } finally {
-                lock.unlock();
+        live.incrementAndGet();
+        int home = homeStripe();
+        for (int i = 0; i < stripes.length; i++) {
+            ControlledByteBuffer buffer = take(stripes[(home + i) & stripeMask]);
+            if (buffer != null) {
+                hits.incrementAndGet();
+                buffer.clear();
+                buffer.forceSetInputMode();
+                return buffer;
             }
         }
+        misses.incrementAndGet();
         return new ControlledByteBuffer(allocator.allocate(bufferSize));
     }
 
     public void release(ControlledByteBuffer buffer) {
-        try {
-            lock.lock();
-            if (marker < buffers.length - 1) {
-                buffer.clear();
-                buffer.forceSetInputMode();
-                buffers[++marker] = buffer;
+        live.decrementAndGet();
+        buffer.clear();
+        buffer.forceSetInputMode();
+        int home = homeStripe();
+        for (int i = 0; i < stripes.length; i++) {
+            if (offer(stripes[(home + i) & stripeMask], buffer)) {
+                return;
+            }
+        }
+        // The pool is already at its high-water mark - let the GC reclaim this one
+        discards.incrementAndGet();
+    }
+
+    /**
+     * @return number of buffer requests served from the pool
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of buffer requests that resulted in a new allocation
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of released buffers dropped because the pool was full
+     */
+    public long getDiscardCount() {
+        return discards.get();
+    }
+
+    /**
+     * @return number of buffers handed out by this factory and not yet released
+     */
+    public long getLiveBufferCount() {
+        return live.get();
+    }
+
+    /**
+     * @return number of buffers currently available in the pool
+     */
+    public int getPooledBufferCount() {
+        int pooled = 0;
+        for (AtomicReferenceArray<ControlledByteBuffer> stripe : stripes) {
+            for (int i = 0; i < stripe.length(); i++) {
+                if (stripe.get(i) != null) {
+                    pooled++;
+                }
+            }
+        }
+        return pooled;
+    }
+
+    /**
+     * @return maximum number of buffers this pool will hold on to
+     */
+    public int getCapacity() {
+        int capacity = 0;
+        for (AtomicReferenceArray<ControlledByteBuffer> stripe : stripes) {
+            capacity += stripe.length();
+        }
+        return capacity;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        discards.set(0);
+    }
+
+    private int homeStripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & stripeMask;
+    }
+
+    private ControlledByteBuffer take(AtomicReferenceArray<ControlledByteBuffer> stripe) {
+        for (int i = 0; i < stripe.length(); i++) {
+            ControlledByteBuffer buffer = stripe.get(i);
+            if (buffer != null && stripe.compareAndSet(i, buffer, null)) {
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    private boolean offer(AtomicReferenceArray<ControlledByteBuffer> stripe,
+                          ControlledByteBuffer buffer) {
+        for (int i = 0; i < stripe.length(); i++) {
+            if (stripe.get(i) == null && stripe.compareAndSet(i, null, buffer)) {
+                return true;
             }
-        } finally {
-            lock.unlock();
         }
+        return false;
     }
 }
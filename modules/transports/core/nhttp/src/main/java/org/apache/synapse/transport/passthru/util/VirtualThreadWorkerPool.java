@@ -0,0 +1,172 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.util;
+
+import org.apache.axis2.transport.base.threads.WorkerPool;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A worker pool which runs each task on a new virtual thread. Blocking calls made by a task
+ * (i.e. a blocking callout to a slow backend) only park the virtual thread, and the carrier
+ * thread moves on to other tasks, so the number of concurrent blocking calls is not limited
+ * by the size of a thread pool.
+ * <p/>
+ * Virtual threads are only available on Java 21 and later. Since Synapse is compiled for
+ * older runtimes, the virtual thread API is looked up reflectively, and {@link #isSupported()}
+ * must be checked before creating a pool.
+ */
+public class VirtualThreadWorkerPool implements WorkerPool {
+
+    private static final Log log = LogFactory.getLog(VirtualThreadWorkerPool.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_EXECUTOR;
+    private static final Method IS_VIRTUAL;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newExecutor = null;
+        Method isVirtual = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newExecutor = Executors.class.getMethod(
+                    "newThreadPerTaskExecutor", ThreadFactory.class);
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (Exception e) {
+            // running on a JVM without virtual threads
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_EXECUTOR = newExecutor;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    private final ExecutorService executor;
+
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+
+    /**
+     * Create a worker pool
+     *
+     * @param namePrefix name prefix of the virtual threads
+     * @throws IllegalStateException if the JVM doesn't support virtual threads
+     */
+    public VirtualThreadWorkerPool(String namePrefix) {
+        executor = newExecutor(namePrefix);
+        if (executor == null) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM");
+        }
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param thread the thread to be checked
+     * @return true if the given thread is a virtual thread
+     */
+    public static boolean isVirtualThread(Thread thread) {
+        if (!isSupported()) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor which starts a new virtual thread for each task
+     *
+     * @param namePrefix name prefix of the virtual threads
+     * @return the executor, or null if the JVM doesn't support virtual threads
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_EXECUTOR.invoke(null, factory);
+        } catch (Exception e) {
+            log.warn("Error creating a virtual thread executor", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                activeCount.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    activeCount.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getActiveThreadCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * Tasks are never queued, each one gets a thread right away
+     *
+     * @return 0
+     */
+    @Override
+    public int getQueueSize() {
+        return 0;
+    }
+
+    @Override
+    public void shutdown(int timeout) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
+import org.junit.Test;
+
+public class PipeTest {
+
+    private static final int CAPACITY = 8;
+
+    @Test
+    public void testDirectRelayWrapAround() throws Exception {
+        TestIOControl producerControl = new TestIOControl();
+        TestIOControl consumerControl = new TestIOControl();
+        Pipe pipe = createPipe(producerControl, consumerControl);
+        assertTrue(pipe.enableDirectRelay());
+        assertTrue(pipe.isDirectRelay());
+
+        TestDecoder decoder = new TestDecoder();
+        TestEncoder encoder = new TestEncoder(Integer.MAX_VALUE);
+
+        decoder.append(bytes(0, 6));
+        assertEquals(6, pipe.produce(decoder));
+        assertEquals(6, pipe.consume(encoder));
+
+        // the second chunk starts at offset 6 of an 8 byte ring, so it has to wrap around
+        decoder.append(bytes(6, 6));
+        assertEquals(2, pipe.produce(decoder));
+        assertEquals(4, pipe.produce(decoder));
+        assertEquals(2, pipe.consume(encoder));
+        assertEquals(4, pipe.consume(encoder));
+
+        decoder.complete();
+        assertEquals(0, pipe.produce(decoder));
+        assertEquals(0, pipe.consume(encoder));
+        assertTrue(encoder.isCompleted());
+        assertArrayEquals(bytes(0, 12), encoder.getContent());
+    }
+
+    @Test
+    public void testFullRingSuspendsInput() throws Exception {
+        TestIOControl producerControl = new TestIOControl();
+        TestIOControl consumerControl = new TestIOControl();
+        Pipe pipe = createPipe(producerControl, consumerControl);
+        assertTrue(pipe.enableDirectRelay());
+
+        TestDecoder decoder = new TestDecoder();
+        decoder.append(bytes(0, 12));
+        assertEquals(CAPACITY, pipe.produce(decoder));
+        assertTrue(producerControl.inputSuspended);
+        assertTrue(consumerControl.outputRequested);
+
+        // nothing more fits until the consumer frees up some space
+        assertEquals(0, pipe.produce(decoder));
+
+        TestEncoder encoder = new TestEncoder(3);
+        assertEquals(3, pipe.consume(encoder));
+        assertFalse(producerControl.inputSuspended);
+
+        assertEquals(3, pipe.produce(decoder));
+        assertTrue(producerControl.inputSuspended);
+
+        encoder.setLimit(Integer.MAX_VALUE);
+        assertEquals(5, pipe.consume(encoder));
+        assertEquals(3, pipe.consume(encoder));
+        assertFalse(producerControl.inputSuspended);
+        assertEquals(1, pipe.produce(decoder));
+        assertArrayEquals(bytes(0, 11), encoder.getContent());
+    }
+
+    @Test
+    public void testEmptyRingSuspendsOutput() throws Exception {
+        TestIOControl producerControl = new TestIOControl();
+        TestIOControl consumerControl = new TestIOControl();
+        Pipe pipe = createPipe(producerControl, consumerControl);
+        assertTrue(pipe.enableDirectRelay());
+
+        TestDecoder decoder = new TestDecoder();
+        TestEncoder encoder = new TestEncoder(Integer.MAX_VALUE);
+
+        decoder.append(bytes(0, 4));
+        assertEquals(4, pipe.produce(decoder));
+        assertEquals(4, pipe.consume(encoder));
+        assertTrue(consumerControl.outputSuspended);
+        assertFalse(encoder.isCompleted());
+
+        assertEquals(0, pipe.consume(encoder));
+        assertTrue(consumerControl.outputSuspended);
+
+        decoder.append(bytes(4, 2));
+        assertEquals(2, pipe.produce(decoder));
+        assertFalse(consumerControl.outputSuspended);
+        assertEquals(2, pipe.consume(encoder));
+
+        decoder.complete();
+        pipe.produce(decoder);
+        assertFalse(consumerControl.outputSuspended);
+        pipe.consume(encoder);
+        assertTrue(encoder.isCompleted());
+        assertArrayEquals(bytes(0, 6), encoder.getContent());
+    }
+
+    @Test
+    public void testSwitchToDirectRelayWithBufferedData() throws Exception {
+        TestIOControl producerControl = new TestIOControl();
+        TestIOControl consumerControl = new TestIOControl();
+        Pipe pipe = createPipe(producerControl, consumerControl);
+
+        TestDecoder decoder = new TestDecoder();
+        decoder.append(bytes(0, 5));
+        assertEquals(5, pipe.produce(decoder));
+
+        // leave 3 bytes in the buffer before switching
+        TestEncoder encoder = new TestEncoder(2);
+        assertEquals(2, pipe.consume(encoder));
+        assertFalse(pipe.isDirectRelay());
+
+        assertTrue(pipe.enableDirectRelay());
+        assertTrue(pipe.isDirectRelay());
+
+        decoder.append(bytes(5, 7));
+        assertEquals(CAPACITY - 3, pipe.produce(decoder));
+        assertTrue(producerControl.inputSuspended);
+
+        encoder.setLimit(Integer.MAX_VALUE);
+        while (pipe.consume(encoder) > 0) {
+            pipe.produce(decoder);
+        }
+        decoder.complete();
+        pipe.produce(decoder);
+        pipe.consume(encoder);
+        assertTrue(encoder.isCompleted());
+        assertArrayEquals(bytes(0, 12), encoder.getContent());
+    }
+
+    @Test
+    public void testDirectRelayNotEnabledForBuiltMessages() throws Exception {
+        Pipe pipe = createPipe(new TestIOControl(), null);
+        assertFalse(pipe.enableDirectRelay());
+
+        pipe.attachConsumer(new TestIOControl());
+        pipe.getInputStream();
+        assertFalse(pipe.enableDirectRelay());
+        assertFalse(pipe.isDirectRelay());
+    }
+
+    @Test
+    public void testConcurrentDirectRelay() throws Exception {
+        TestIOControl producerControl = new TestIOControl();
+        TestIOControl consumerControl = new TestIOControl();
+        final Pipe pipe = createPipe(producerControl, consumerControl);
+        assertTrue(pipe.enableDirectRelay());
+
+        final byte[] content = new byte[16 * 1024];
+        new Random(42).nextBytes(content);
+        final TestDecoder decoder = new TestDecoder();
+        decoder.append(content);
+        decoder.complete();
+        final TestEncoder encoder = new TestEncoder(5);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!decoder.isCompleted()) {
+                        if (pipe.produce(decoder) == 0) {
+                            // the ring is full, let the consumer catch up
+                            Thread.yield();
+                        }
+                    }
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!encoder.isCompleted()) {
+                        if (pipe.consume(encoder) == 0) {
+                            // the ring is empty, let the producer catch up
+                            Thread.yield();
+                        }
+                    }
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        producer.start();
+        consumer.start();
+        producer.join(30000);
+        consumer.join(30000);
+
+        assertNull(error.get());
+        assertTrue(encoder.isCompleted());
+        assertArrayEquals(content, encoder.getContent());
+    }
+
+    private Pipe createPipe(IOControl producerControl, IOControl consumerControl) {
+        Pipe pipe = new Pipe(producerControl,
+                new ControlledByteBuffer(ByteBuffer.allocate(CAPACITY)), "test", null);
+        if (consumerControl != null) {
+            pipe.attachConsumer(consumerControl);
+        }
+        return pipe;
+    }
+
+    private static byte[] bytes(int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (start + i);
+        }
+        return bytes;
+    }
+
+    private static class TestIOControl implements IOControl {
+
+        volatile boolean inputSuspended = false;
+        volatile boolean outputSuspended = false;
+        volatile boolean outputRequested = false;
+
+        @Override
+        public void requestInput() {
+            inputSuspended = false;
+        }
+
+        @Override
+        public void suspendInput() {
+            inputSuspended = true;
+        }
+
+        @Override
+        public void requestOutput() {
+            outputSuspended = false;
+            outputRequested = true;
+        }
+
+        @Override
+        public void suspendOutput() {
+            outputSuspended = true;
+        }
+
+        @Override
+        public void shutdown() throws IOException {
+        }
+    }
+
+    /**
+     * Decoder reading from an in-memory source, which is completed once the source is
+     * marked complete and fully read.
+     */
+    private static class TestDecoder implements ContentDecoder {
+
+        private byte[] data = new byte[0];
+        private int offset = 0;
+        private volatile boolean sourceComplete = false;
+        private volatile boolean completed = false;
+
+        synchronized void append(byte[] bytes) {
+            byte[] newData = Arrays.copyOf(data, data.length + bytes.length);
+            System.arraycopy(bytes, 0, newData, data.length, bytes.length);
+            data = newData;
+        }
+
+        void complete() {
+            sourceComplete = true;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            int length = Math.min(dst.remaining(), data.length - offset);
+            dst.put(data, offset, length);
+            offset += length;
+            if (sourceComplete && offset == data.length) {
+                completed = true;
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+
+    /**
+     * Encoder collecting what is written, at most limit bytes per write.
+     */
+    private static class TestEncoder implements ContentEncoder {
+
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private int limit;
+        private volatile boolean completed = false;
+
+        TestEncoder(int limit) {
+            this.limit = limit;
+        }
+
+        void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        byte[] getContent() {
+            return content.toByteArray();
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = Math.min(src.remaining(), limit);
+            for (int i = 0; i < length; i++) {
+                content.write(src.get());
+            }
+            return length;
+        }
+
+        @Override
+        public void complete() throws IOException {
+            completed = true;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.connections;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Test;
+
+public class HostConnectionsTest {
+
+    @Test
+    public void testConnectionLimit() throws Exception {
+        final int maxSize = 4;
+        final HostConnections pool = new HostConnections("localhost", 8280, maxSize);
+        final Set<NHttpClientConnection> inUse = Collections.newSetFromMap(
+                new ConcurrentHashMap<NHttpClientConnection, Boolean>());
+        final AtomicInteger created = new AtomicInteger(0);
+        final AtomicInteger errors = new AtomicInteger(0);
+
+        final int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        int requests = 0;
+                        while (requests < 500) {
+                            NHttpClientConnection conn = pool.getConnection();
+                            if (conn == null) {
+                                if (!pool.reservePendingConnection()) {
+                                    // wait for a connection to be released
+                                    Thread.yield();
+                                    continue;
+                                }
+                                conn = createConnection();
+                                created.incrementAndGet();
+                                pool.pendingConnectionSucceeded();
+                                pool.addConnection(conn);
+                            }
+                            if (!inUse.add(conn)) {
+                                // handed out to two requests at once
+                                errors.incrementAndGet();
+                            }
+                            Thread.yield();
+                            inUse.remove(conn);
+                            pool.release(conn);
+                            requests++;
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        assertTrue(created.get() <= maxSize);
+        assertEquals(created.get(), pool.getIdleConnectionCount());
+        assertEquals(0, pool.getBusyConnectionCount());
+        assertEquals(0, pool.getPendingConnectionCount());
+        assertEquals(created.get() < maxSize, pool.canHaveMoreConnections());
+    }
+
+    @Test
+    public void testLifoOrder() throws Exception {
+        HostConnections pool = new HostConnections("localhost", 8280, 3);
+        NHttpClientConnection conn1 = addConnection(pool);
+        NHttpClientConnection conn2 = addConnection(pool);
+        NHttpClientConnection conn3 = addConnection(pool);
+        assertFalse(pool.reservePendingConnection());
+
+        pool.release(conn1);
+        pool.release(conn2);
+        pool.release(conn3);
+        assertEquals(3, pool.getIdleConnectionCount());
+
+        // the most recently released connection is reused first
+        assertSame(conn3, pool.getConnection());
+        assertSame(conn2, pool.getConnection());
+        pool.release(conn3);
+        assertSame(conn3, pool.getConnection());
+        assertSame(conn1, pool.getConnection());
+        assertNull(pool.getConnection());
+        assertEquals(3, pool.getBusyConnectionCount());
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        HostConnections pool = new HostConnections("localhost", 8280, 3);
+        NHttpClientConnection conn1 = addConnection(pool);
+        NHttpClientConnection conn2 = addConnection(pool);
+        NHttpClientConnection conn3 = addConnection(pool);
+
+        pool.release(conn1);
+        pool.release(conn2);
+        Thread.sleep(50);
+        long idleSince = System.currentTimeMillis();
+        Thread.sleep(10);
+        pool.release(conn3);
+
+        // only the connections released before the given time are evicted
+        List<NHttpClientConnection> evicted = pool.evictIdleConnections(idleSince);
+        assertEquals(2, evicted.size());
+        assertTrue(evicted.contains(conn1));
+        assertTrue(evicted.contains(conn2));
+        assertEquals(2, pool.getEvictedConnectionCount());
+        assertEquals(1, pool.getIdleConnectionCount());
+        assertTrue(pool.evictIdleConnections(idleSince).isEmpty());
+
+        // the evicted connections make room for new ones
+        assertTrue(pool.reservePendingConnection());
+        assertSame(conn3, pool.getConnection());
+        assertNull(pool.getConnection());
+
+        // a connection in use is never evicted
+        assertTrue(pool.evictIdleConnections(System.currentTimeMillis() + 1000).isEmpty());
+        assertEquals(1, pool.getBusyConnectionCount());
+    }
+
+    private NHttpClientConnection addConnection(HostConnections pool) {
+        assertTrue(pool.reservePendingConnection());
+        NHttpClientConnection conn = createConnection();
+        pool.pendingConnectionSucceeded();
+        pool.addConnection(conn);
+        assertEquals(0, pool.getPendingConnectionCount());
+        return conn;
+    }
+
+    private static NHttpClientConnection createConnection() {
+        final HttpContext context = new BasicHttpContext();
+        final HttpConnectionMetrics metrics = (HttpConnectionMetrics) Proxy.newProxyInstance(
+                HostConnectionsTest.class.getClassLoader(),
+                new Class[] { HttpConnectionMetrics.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return handleObjectMethod(proxy, method, args);
+                    }
+                });
+        return (NHttpClientConnection) Proxy.newProxyInstance(
+                HostConnectionsTest.class.getClassLoader(),
+                new Class[] { NHttpClientConnection.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getContext".equals(method.getName())) {
+                            return context;
+                        } else if ("getMetrics".equals(method.getName())) {
+                            return metrics;
+                        }
+                        return handleObjectMethod(proxy, method, args);
+                    }
+                });
+    }
+
+    private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+        if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(method.getName())) {
+            return "connection@" + Integer.toHexString(System.identityHashCode(proxy));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.junit.Test;
+
+public class BufferFactoryTest {
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 4, 1);
+        ControlledByteBuffer buffer = factory.getBuffer();
+        buffer.put((byte) 1);
+        buffer.setOutputMode();
+        factory.release(buffer);
+
+        ControlledByteBuffer reused = factory.getBuffer();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertTrue(reused.isInputMode());
+        assertEquals(1, factory.getHitCount());
+        assertEquals(1, factory.getMissCount());
+        assertEquals(1, factory.getLiveBufferCount());
+    }
+
+    @Test
+    public void testPoolNeverExceedsCapacity() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 6, 4);
+        assertEquals(6, factory.getCapacity());
+
+        List<ControlledByteBuffer> buffers = new ArrayList<ControlledByteBuffer>();
+        for (int i = 0; i < 10; i++) {
+            buffers.add(factory.getBuffer());
+        }
+        for (ControlledByteBuffer buffer : buffers) {
+            factory.release(buffer);
+        }
+        assertEquals(6, factory.getPooledBufferCount());
+        assertEquals(4, factory.getDiscardCount());
+        assertEquals(0, factory.getLiveBufferCount());
+
+        // Buffers in other stripes must be found before allocating new ones
+        for (int i = 0; i < 6; i++) {
+            factory.getBuffer();
+        }
+        assertEquals(6, factory.getHitCount());
+        assertEquals(0, factory.getPooledBufferCount());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final BufferFactory factory = new BufferFactory(128, HeapByteBufferAllocator.INSTANCE, 16);
+        final int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            ControlledByteBuffer buffer = factory.getBuffer();
+                            if (buffer.position() != 0) {
+                                failed.set(true);
+                            }
+                            buffer.put((byte) i);
+                            factory.release(buffer);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        assertFalse(failed.get());
+        assertEquals(0, factory.getLiveBufferCount());
+        assertTrue(factory.getPooledBufferCount() <= factory.getCapacity());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.util;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class VirtualThreadWorkerPoolTest {
+
+    @Test
+    public void testUnsupportedJvm() {
+        if (VirtualThreadWorkerPool.isSupported()) {
+            return;
+        }
+        assertNull(VirtualThreadWorkerPool.newExecutor("test"));
+        try {
+            new VirtualThreadWorkerPool("test");
+            fail("Virtual thread pool should not be created on this JVM");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testTasksRunOnNamedThreads() throws Exception {
+        assumeTrue(VirtualThreadWorkerPool.isSupported());
+        VirtualThreadWorkerPool pool = new VirtualThreadWorkerPool("test");
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(2);
+        final AtomicReference<String> name = new AtomicReference<String>();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                name.set(Thread.currentThread().getName());
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                }
+            }
+        };
+        pool.execute(task);
+        pool.execute(task);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, pool.getActiveThreadCount());
+        assertEquals(0, pool.getQueueSize());
+        assertTrue(name.get().startsWith("test-"));
+
+        release.countDown();
+        pool.shutdown(5000);
+        assertEquals(0, pool.getActiveThreadCount());
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        assumeTrue(VirtualThreadWorkerPool.isSupported());
+        ExecutorService executor = VirtualThreadWorkerPool.newExecutor("test");
+        assertNotNull(executor);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBlockingTasksRunOnVirtualThreads() throws Exception {
+        assumeTrue(VirtualThreadWorkerPool.isSupported());
+        final Method isVirtual = Thread.class.getMethod("isVirtual");
+
+        // far more blocking tasks than a platform thread pool would run at once, which
+        // only complete in time if none of them holds on to a carrier thread while blocked
+        final int tasks = 1000;
+        VirtualThreadWorkerPool pool = new VirtualThreadWorkerPool("test");
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final AtomicInteger platformThreads = new AtomicInteger();
+        for (int i = 0; i < tasks; i++) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!(Boolean) isVirtual.invoke(Thread.currentThread())) {
+                            platformThreads.incrementAndGet();
+                        }
+                        Thread.sleep(500);
+                    } catch (Exception ignore) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, platformThreads.get());
+        pool.shutdown(5000);
+        assertEquals(0, pool.getActiveThreadCount());
+    }
+}